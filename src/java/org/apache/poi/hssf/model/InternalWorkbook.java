@@ -80,6 +80,7 @@ import org.apache.poi.hssf.record.WindowOneRecord;
 import org.apache.poi.hssf.record.WindowProtectRecord;
 import org.apache.poi.hssf.record.WriteAccessRecord;
 import org.apache.poi.hssf.record.WriteProtectRecord;
+import org.apache.poi.hssf.record.aggregates.RecordAggregate.RecordVisitor;
 import org.apache.poi.hssf.record.common.UnicodeString;
 import org.apache.poi.hssf.util.HSSFColor;
 import org.apache.poi.poifs.crypt.CryptoFunctions;
@@ -1068,6 +1069,45 @@ public final class InternalWorkbook {
         return pos;
     }
 
+    /**
+     * Passes the records to the visitor in the order in which {@link #serialize(int, byte[])}
+     * writes them, so that they can be written to a stream one by one.  The visitor must serialize
+     * each record before the next one is visited, since the ExtSST record is created from the
+     * offsets of the serialized SST record.
+     *
+     * @param offset the position of the workbook records within the workbook stream
+     */
+    public void visitRecords(RecordVisitor rv, int offset) {
+        int pos = 0;
+
+        SSTRecord sst = null;
+        int sstPos = 0;
+        boolean wroteBoundSheets = false;
+        for (int k = 0; k < records.size(); k++) {
+            Record record = records.get(k);
+            if (record instanceof SSTRecord) {
+                sst = (SSTRecord)record;
+                sstPos = pos;
+            }
+            if (record.getSid() == ExtSSTRecord.sid && sst != null) {
+                record = sst.createExtSSTRecord(sstPos + offset);
+            }
+            if (record instanceof BoundSheetRecord) {
+                if (!wroteBoundSheets) {
+                    for (int i = 0; i < boundsheets.size(); i++) {
+                        BoundSheetRecord bsr = getBoundSheetRec(i);
+                        rv.visitRecord(bsr);
+                        pos += bsr.getRecordSize();
+                    }
+                    wroteBoundSheets = true;
+                }
+            } else {
+                rv.visitRecord(record);
+                pos += record.getRecordSize();
+            }
+        }
+    }
+
     /**
      * Perform any work necessary before the workbook is about to be serialized.
      *
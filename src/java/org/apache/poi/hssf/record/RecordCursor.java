@@ -0,0 +1,160 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.record;
+
+import java.io.InputStream;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+
+/**
+ * A pull style cursor over the records of a BIFF8 workbook stream, for reading
+ * selected records with as little work and allocation as possible.
+ * <p>
+ * Unlike {@link HSSFEventFactory} and {@link RecordFactoryInputStream}, the cursor
+ * does not create a {@link Record} for every record of the stream. After each call
+ * to {@link #next()} the caller can look at the sid and size of the current record and
+ * <ul>
+ * <li>ignore it, the cursor skips its data when moving on,</li>
+ * <li>read fields directly from {@link #getRecordInputStream()}, e.g. the row, column and
+ *  value of a {@link NumberRecord}, or</li>
+ * <li>create the full record with {@link #getRecord()}.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Records are returned as they are stored: {@link ContinueRecord}s, {@link DBCellRecord}s and
+ * {@link MulRKRecord}s are not merged, dropped or expanded. A record which spans continue records,
+ * e.g. {@link SSTRecord}, reads them when it is created with {@link #getRecord()}, otherwise
+ * they are returned as records of their own. Encrypted streams are decrypted with the password
+ * set by {@link org.apache.poi.hssf.record.crypto.Biff8EncryptionKey#setCurrentUserPassword(String)},
+ * the {@link FilePassRecord} itself is skipped.
+ * </p>
+ */
+public final class RecordCursor {
+    private final InputStream _in;
+    private RecordInputStream _recStream;
+    private boolean _isDecrypting;
+    /** size of the records read so far, needed until the stream is known not to be encrypted */
+    private int _bytesRead;
+    private int _bofDepth;
+    private boolean _lastRecordWasEOFLevelZero;
+    private boolean _hasCurrentRecord;
+    private boolean _isEndOfStream;
+
+    /**
+     * @param in the workbook stream, e.g. the "Workbook" document of the file system
+     */
+    public RecordCursor(InputStream in) {
+        _in = in;
+        _recStream = new RecordInputStream(in);
+    }
+
+    /**
+     * Moves to the next record, skipping the unread data of the current one
+     *
+     * @return <code>false</code> if the end of the workbook stream has been reached
+     */
+    public boolean next() {
+        if (_isEndOfStream) {
+            return false;
+        }
+        if (_hasCurrentRecord) {
+            _recStream.skipRemainder();
+            _hasCurrentRecord = false;
+        }
+        while (true) {
+            if (!_recStream.hasNextRecord()) {
+                _isEndOfStream = true;
+                return false;
+            }
+            if (_lastRecordWasEOFLevelZero && _recStream.getNextSid() != BOFRecord.sid) {
+                // The workbook stream ends after the last EOF record which is not followed by
+                // the BOF record of another sheet, see RecordFactoryInputStream for details
+                _isEndOfStream = true;
+                return false;
+            }
+            _recStream.nextRecord();
+            int sid = _recStream.getSid();
+            if (!_isDecrypting) {
+                _bytesRead += 4 + _recStream.remaining();
+                if (sid == FilePassRecord.sid) {
+                    FilePassRecord fpr = new FilePassRecord(_recStream);
+                    _recStream = RecordFactoryInputStream.createDecryptingStream(_in, fpr, _bytesRead);
+                    _isDecrypting = true;
+                    continue;
+                }
+            }
+            _lastRecordWasEOFLevelZero = false;
+            if (sid == BOFRecord.sid) {
+                _bofDepth++;
+            } else if (sid == EOFRecord.sid) {
+                _bofDepth--;
+                if (_bofDepth < 1) {
+                    _lastRecordWasEOFLevelZero = true;
+                }
+            }
+            _hasCurrentRecord = true;
+            return true;
+        }
+    }
+
+    /**
+     * @return the sid of the current record
+     */
+    public short getSid() {
+        checkCurrentRecord();
+        return _recStream.getSid();
+    }
+
+    /**
+     * @return the number of unread data bytes of the current record, which is the size
+     *  of its data (without the 4 byte header) as long as nothing has been read
+     */
+    public int getRemaining() {
+        checkCurrentRecord();
+        return _recStream.remaining();
+    }
+
+    /**
+     * Gives access to the data of the current record, to read selected fields without
+     * creating the record. Reading beyond the end of the record continues into a following
+     * {@link ContinueRecord}, which is then not returned by {@link #next()}.
+     *
+     * @return the stream positioned in the data of the current record
+     */
+    public RecordInputStream getRecordInputStream() {
+        checkCurrentRecord();
+        return _recStream;
+    }
+
+    /**
+     * Creates the current record from its data. Must be called before any of the data
+     * is read from {@link #getRecordInputStream()}, and at most once per record.
+     *
+     * @return the current record, an {@link UnknownRecord} if its sid is not known
+     */
+    public Record getRecord() {
+        checkCurrentRecord();
+        return RecordFactory.createSingleRecord(_recStream);
+    }
+
+    private void checkCurrentRecord() {
+        if (!_hasCurrentRecord) {
+            throw new IllegalStateException("No current record, next() must return true first");
+        }
+    }
+}
@@ -18,18 +18,11 @@
 package org.apache.poi.hssf.record;
 
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.poi.EncryptedDocumentException;
@@ -67,226 +60,185 @@ import org.apache.poi.hssf.record.pivottable.ViewSourceRecord;
 public final class RecordFactory {
     private static final int NUM_RECORDS = 512;
 
-    private interface I_RecordCreator {
-        Record create(RecordInputStream in);
-
-        Class<? extends Record> getRecordClass();
-    }
-    private static final class ReflectionConstructorRecordCreator implements I_RecordCreator {
-
-        private final Constructor<? extends Record> _c;
-        public ReflectionConstructorRecordCreator(Constructor<? extends Record> c) {
-            _c = c;
-        }
-        public Record create(RecordInputStream in) {
-            Object[] args = { in, };
-            try {
-                return _c.newInstance(args);
-            } catch (IllegalArgumentException e) {
-                throw new RuntimeException(e);
-            } catch (InstantiationException e) {
-                throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            } catch (InvocationTargetException e) {
-                Throwable t = e.getTargetException();
-                if (t instanceof RecordFormatException) {
-                    throw (RecordFormatException)t;
-                } else if (t instanceof EncryptedDocumentException) {
-                    throw (EncryptedDocumentException)t;
-                } else {
-                    throw new RecordFormatException("Unable to construct record instance" , t);
-                }
-            }
-        }
-        public Class<? extends Record> getRecordClass() {
-            return _c.getDeclaringClass();
-        }
-    }
     /**
-     * A "create" method is used instead of the usual constructor if the created record might
-     * be of a different class to the declaring class.
+     * Creates records of one class by calling its constructor (or <tt>create</tt> method) directly.
      */
-    private static final class ReflectionMethodRecordCreator implements I_RecordCreator {
-        private final Method _m;
-        public ReflectionMethodRecordCreator(Method m) {
-            _m = m;
+    private static abstract class RecordCreator {
+        private final int _sid;
+        private final Class<? extends Record> _recClass;
+
+        protected RecordCreator(int sid, Class<? extends Record> recClass) {
+            _sid = sid;
+            _recClass = recClass;
         }
-        public Record create(RecordInputStream in) {
-            Object[] args = { in, };
-            try {
-                return (Record) _m.invoke(null, args);
-            } catch (IllegalArgumentException e) {
-                throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            } catch (InvocationTargetException e) {
-                throw new RecordFormatException("Unable to construct record instance" , e.getTargetException());
-            }
+
+        public abstract Record create(RecordInputStream in);
+
+        public final int getSid() {
+            return _sid;
         }
-        @SuppressWarnings("unchecked")
-        public Class<? extends Record> getRecordClass() {
-            return (Class<? extends Record>) _m.getDeclaringClass();
+
+        public final Class<? extends Record> getRecordClass() {
+            return _recClass;
         }
     }
 
-    private static final Class<?>[] CONSTRUCTOR_ARGS = { RecordInputStream.class, };
-
     /**
-     * contains the classes for all the records we want to parse.<br/>
-     * Note - this most but not *every* subclass of Record.
+     * contains the creators for all the records we want to parse.<br/>
+     * Note - this most but not *every* subclass of Record.<br/>
+     * A "create" method is used instead of the usual constructor if the created record might
+     * be of a different class to the declaring class.
      */
-    @SuppressWarnings("unchecked")
-    private static final Class<? extends Record>[] recordClasses = new Class[] {
-        ArrayRecord.class,
-        AutoFilterInfoRecord.class,
-        BackupRecord.class,
-        BlankRecord.class,
-        BOFRecord.class,
-        BookBoolRecord.class,
-        BoolErrRecord.class,
-        BottomMarginRecord.class,
-        BoundSheetRecord.class,
-        CalcCountRecord.class,
-        CalcModeRecord.class,
-        CFHeaderRecord.class,
-        CFHeader12Record.class,
-        CFRuleRecord.class,
-        CFRule12Record.class,
-        ChartRecord.class,
-        ChartTitleFormatRecord.class,
-        CodepageRecord.class,
-        ColumnInfoRecord.class,
-        ContinueRecord.class,
-        CountryRecord.class,
-        CRNCountRecord.class,
-        CRNRecord.class,
-        DateWindow1904Record.class,
-        DBCellRecord.class,
-        DConRefRecord.class,
-        DefaultColWidthRecord.class,
-        DefaultRowHeightRecord.class,
-        DeltaRecord.class,
-        DimensionsRecord.class,
-        DrawingGroupRecord.class,
-        DrawingRecord.class,
-        DrawingSelectionRecord.class,
-        DSFRecord.class,
-        DVALRecord.class,
-        DVRecord.class,
-        EOFRecord.class,
-        ExtendedFormatRecord.class,
-        ExternalNameRecord.class,
-        ExternSheetRecord.class,
-        ExtSSTRecord.class,
-        FeatRecord.class,
-        FeatHdrRecord.class,
-        FilePassRecord.class,
-        FileSharingRecord.class,
-        FnGroupCountRecord.class,
-        FontRecord.class,
-        FooterRecord.class,
-        FormatRecord.class,
-        FormulaRecord.class,
-        GridsetRecord.class,
-        GutsRecord.class,
-        HCenterRecord.class,
-        HeaderRecord.class,
-        HeaderFooterRecord.class,
-        HideObjRecord.class,
-        HorizontalPageBreakRecord.class,
-        HyperlinkRecord.class,
-        IndexRecord.class,
-        InterfaceEndRecord.class,
-        InterfaceHdrRecord.class,
-        IterationRecord.class,
-        LabelRecord.class,
-        LabelSSTRecord.class,
-        LeftMarginRecord.class,
-        LegendRecord.class,
-        MergeCellsRecord.class,
-        MMSRecord.class,
-        MulBlankRecord.class,
-        MulRKRecord.class,
-        NameRecord.class,
-        NameCommentRecord.class,
-        NoteRecord.class,
-        NumberRecord.class,
-        ObjectProtectRecord.class,
-        ObjRecord.class,
-        PaletteRecord.class,
-        PaneRecord.class,
-        PasswordRecord.class,
-        PasswordRev4Record.class,
-        PrecisionRecord.class,
-        PrintGridlinesRecord.class,
-        PrintHeadersRecord.class,
-        PrintSetupRecord.class,
-        ProtectionRev4Record.class,
-        ProtectRecord.class,
-        RecalcIdRecord.class,
-        RefModeRecord.class,
-        RefreshAllRecord.class,
-        RightMarginRecord.class,
-        RKRecord.class,
-        RowRecord.class,
-        SaveRecalcRecord.class,
-        ScenarioProtectRecord.class,
-        SelectionRecord.class,
-        SeriesRecord.class,
-        SeriesTextRecord.class,
-        SharedFormulaRecord.class,
-        SSTRecord.class,
-        StringRecord.class,
-        StyleRecord.class,
-        SupBookRecord.class,
-        TabIdRecord.class,
-        TableRecord.class,
-        TableStylesRecord.class,
-        TextObjectRecord.class,
-        TopMarginRecord.class,
-        UncalcedRecord.class,
-        UseSelFSRecord.class,
-        UserSViewBegin.class,
-        UserSViewEnd.class,
-        ValueRangeRecord.class,
-        VCenterRecord.class,
-        VerticalPageBreakRecord.class,
-        WindowOneRecord.class,
-        WindowProtectRecord.class,
-        WindowTwoRecord.class,
-        WriteAccessRecord.class,
-        WriteProtectRecord.class,
-        WSBoolRecord.class,
+    private static final RecordCreator[] recordCreators = {
+        new RecordCreator(ArrayRecord.sid, ArrayRecord.class) { public Record create(RecordInputStream in) { return new ArrayRecord(in); } },
+        new RecordCreator(AutoFilterInfoRecord.sid, AutoFilterInfoRecord.class) { public Record create(RecordInputStream in) { return new AutoFilterInfoRecord(in); } },
+        new RecordCreator(BackupRecord.sid, BackupRecord.class) { public Record create(RecordInputStream in) { return new BackupRecord(in); } },
+        new RecordCreator(BlankRecord.sid, BlankRecord.class) { public Record create(RecordInputStream in) { return new BlankRecord(in); } },
+        new RecordCreator(BOFRecord.sid, BOFRecord.class) { public Record create(RecordInputStream in) { return new BOFRecord(in); } },
+        new RecordCreator(BookBoolRecord.sid, BookBoolRecord.class) { public Record create(RecordInputStream in) { return new BookBoolRecord(in); } },
+        new RecordCreator(BoolErrRecord.sid, BoolErrRecord.class) { public Record create(RecordInputStream in) { return new BoolErrRecord(in); } },
+        new RecordCreator(BottomMarginRecord.sid, BottomMarginRecord.class) { public Record create(RecordInputStream in) { return new BottomMarginRecord(in); } },
+        new RecordCreator(BoundSheetRecord.sid, BoundSheetRecord.class) { public Record create(RecordInputStream in) { return new BoundSheetRecord(in); } },
+        new RecordCreator(CalcCountRecord.sid, CalcCountRecord.class) { public Record create(RecordInputStream in) { return new CalcCountRecord(in); } },
+        new RecordCreator(CalcModeRecord.sid, CalcModeRecord.class) { public Record create(RecordInputStream in) { return new CalcModeRecord(in); } },
+        new RecordCreator(CFHeaderRecord.sid, CFHeaderRecord.class) { public Record create(RecordInputStream in) { return new CFHeaderRecord(in); } },
+        new RecordCreator(CFHeader12Record.sid, CFHeader12Record.class) { public Record create(RecordInputStream in) { return new CFHeader12Record(in); } },
+        new RecordCreator(CFRuleRecord.sid, CFRuleRecord.class) { public Record create(RecordInputStream in) { return new CFRuleRecord(in); } },
+        new RecordCreator(CFRule12Record.sid, CFRule12Record.class) { public Record create(RecordInputStream in) { return new CFRule12Record(in); } },
+        new RecordCreator(ChartRecord.sid, ChartRecord.class) { public Record create(RecordInputStream in) { return new ChartRecord(in); } },
+        new RecordCreator(ChartTitleFormatRecord.sid, ChartTitleFormatRecord.class) { public Record create(RecordInputStream in) { return new ChartTitleFormatRecord(in); } },
+        new RecordCreator(CodepageRecord.sid, CodepageRecord.class) { public Record create(RecordInputStream in) { return new CodepageRecord(in); } },
+        new RecordCreator(ColumnInfoRecord.sid, ColumnInfoRecord.class) { public Record create(RecordInputStream in) { return new ColumnInfoRecord(in); } },
+        new RecordCreator(ContinueRecord.sid, ContinueRecord.class) { public Record create(RecordInputStream in) { return new ContinueRecord(in); } },
+        new RecordCreator(CountryRecord.sid, CountryRecord.class) { public Record create(RecordInputStream in) { return new CountryRecord(in); } },
+        new RecordCreator(CRNCountRecord.sid, CRNCountRecord.class) { public Record create(RecordInputStream in) { return new CRNCountRecord(in); } },
+        new RecordCreator(CRNRecord.sid, CRNRecord.class) { public Record create(RecordInputStream in) { return new CRNRecord(in); } },
+        new RecordCreator(DateWindow1904Record.sid, DateWindow1904Record.class) { public Record create(RecordInputStream in) { return new DateWindow1904Record(in); } },
+        new RecordCreator(DBCellRecord.sid, DBCellRecord.class) { public Record create(RecordInputStream in) { return new DBCellRecord(in); } },
+        new RecordCreator(DConRefRecord.sid, DConRefRecord.class) { public Record create(RecordInputStream in) { return new DConRefRecord(in); } },
+        new RecordCreator(DefaultColWidthRecord.sid, DefaultColWidthRecord.class) { public Record create(RecordInputStream in) { return new DefaultColWidthRecord(in); } },
+        new RecordCreator(DefaultRowHeightRecord.sid, DefaultRowHeightRecord.class) { public Record create(RecordInputStream in) { return new DefaultRowHeightRecord(in); } },
+        new RecordCreator(DeltaRecord.sid, DeltaRecord.class) { public Record create(RecordInputStream in) { return new DeltaRecord(in); } },
+        new RecordCreator(DimensionsRecord.sid, DimensionsRecord.class) { public Record create(RecordInputStream in) { return new DimensionsRecord(in); } },
+        new RecordCreator(DrawingGroupRecord.sid, DrawingGroupRecord.class) { public Record create(RecordInputStream in) { return new DrawingGroupRecord(in); } },
+        new RecordCreator(DrawingRecord.sid, DrawingRecord.class) { public Record create(RecordInputStream in) { return new DrawingRecord(in); } },
+        new RecordCreator(DrawingSelectionRecord.sid, DrawingSelectionRecord.class) { public Record create(RecordInputStream in) { return new DrawingSelectionRecord(in); } },
+        new RecordCreator(DSFRecord.sid, DSFRecord.class) { public Record create(RecordInputStream in) { return new DSFRecord(in); } },
+        new RecordCreator(DVALRecord.sid, DVALRecord.class) { public Record create(RecordInputStream in) { return new DVALRecord(in); } },
+        new RecordCreator(DVRecord.sid, DVRecord.class) { public Record create(RecordInputStream in) { return new DVRecord(in); } },
+        new RecordCreator(EOFRecord.sid, EOFRecord.class) { public Record create(RecordInputStream in) { return new EOFRecord(in); } },
+        new RecordCreator(ExtendedFormatRecord.sid, ExtendedFormatRecord.class) { public Record create(RecordInputStream in) { return new ExtendedFormatRecord(in); } },
+        new RecordCreator(ExternalNameRecord.sid, ExternalNameRecord.class) { public Record create(RecordInputStream in) { return new ExternalNameRecord(in); } },
+        new RecordCreator(ExternSheetRecord.sid, ExternSheetRecord.class) { public Record create(RecordInputStream in) { return new ExternSheetRecord(in); } },
+        new RecordCreator(ExtSSTRecord.sid, ExtSSTRecord.class) { public Record create(RecordInputStream in) { return new ExtSSTRecord(in); } },
+        new RecordCreator(FeatRecord.sid, FeatRecord.class) { public Record create(RecordInputStream in) { return new FeatRecord(in); } },
+        new RecordCreator(FeatHdrRecord.sid, FeatHdrRecord.class) { public Record create(RecordInputStream in) { return new FeatHdrRecord(in); } },
+        new RecordCreator(FilePassRecord.sid, FilePassRecord.class) { public Record create(RecordInputStream in) { return new FilePassRecord(in); } },
+        new RecordCreator(FileSharingRecord.sid, FileSharingRecord.class) { public Record create(RecordInputStream in) { return new FileSharingRecord(in); } },
+        new RecordCreator(FnGroupCountRecord.sid, FnGroupCountRecord.class) { public Record create(RecordInputStream in) { return new FnGroupCountRecord(in); } },
+        new RecordCreator(FontRecord.sid, FontRecord.class) { public Record create(RecordInputStream in) { return new FontRecord(in); } },
+        new RecordCreator(FooterRecord.sid, FooterRecord.class) { public Record create(RecordInputStream in) { return new FooterRecord(in); } },
+        new RecordCreator(FormatRecord.sid, FormatRecord.class) { public Record create(RecordInputStream in) { return new FormatRecord(in); } },
+        new RecordCreator(FormulaRecord.sid, FormulaRecord.class) { public Record create(RecordInputStream in) { return new FormulaRecord(in); } },
+        new RecordCreator(GridsetRecord.sid, GridsetRecord.class) { public Record create(RecordInputStream in) { return new GridsetRecord(in); } },
+        new RecordCreator(GutsRecord.sid, GutsRecord.class) { public Record create(RecordInputStream in) { return new GutsRecord(in); } },
+        new RecordCreator(HCenterRecord.sid, HCenterRecord.class) { public Record create(RecordInputStream in) { return new HCenterRecord(in); } },
+        new RecordCreator(HeaderRecord.sid, HeaderRecord.class) { public Record create(RecordInputStream in) { return new HeaderRecord(in); } },
+        new RecordCreator(HeaderFooterRecord.sid, HeaderFooterRecord.class) { public Record create(RecordInputStream in) { return new HeaderFooterRecord(in); } },
+        new RecordCreator(HideObjRecord.sid, HideObjRecord.class) { public Record create(RecordInputStream in) { return new HideObjRecord(in); } },
+        new RecordCreator(HorizontalPageBreakRecord.sid, HorizontalPageBreakRecord.class) { public Record create(RecordInputStream in) { return new HorizontalPageBreakRecord(in); } },
+        new RecordCreator(HyperlinkRecord.sid, HyperlinkRecord.class) { public Record create(RecordInputStream in) { return new HyperlinkRecord(in); } },
+        new RecordCreator(IndexRecord.sid, IndexRecord.class) { public Record create(RecordInputStream in) { return new IndexRecord(in); } },
+        new RecordCreator(InterfaceEndRecord.sid, InterfaceEndRecord.class) { public Record create(RecordInputStream in) { return InterfaceEndRecord.create(in); } },
+        new RecordCreator(InterfaceHdrRecord.sid, InterfaceHdrRecord.class) { public Record create(RecordInputStream in) { return new InterfaceHdrRecord(in); } },
+        new RecordCreator(IterationRecord.sid, IterationRecord.class) { public Record create(RecordInputStream in) { return new IterationRecord(in); } },
+        new RecordCreator(LabelRecord.sid, LabelRecord.class) { public Record create(RecordInputStream in) { return new LabelRecord(in); } },
+        new RecordCreator(LabelSSTRecord.sid, LabelSSTRecord.class) { public Record create(RecordInputStream in) { return new LabelSSTRecord(in); } },
+        new RecordCreator(LeftMarginRecord.sid, LeftMarginRecord.class) { public Record create(RecordInputStream in) { return new LeftMarginRecord(in); } },
+        new RecordCreator(LegendRecord.sid, LegendRecord.class) { public Record create(RecordInputStream in) { return new LegendRecord(in); } },
+        new RecordCreator(MergeCellsRecord.sid, MergeCellsRecord.class) { public Record create(RecordInputStream in) { return new MergeCellsRecord(in); } },
+        new RecordCreator(MMSRecord.sid, MMSRecord.class) { public Record create(RecordInputStream in) { return new MMSRecord(in); } },
+        new RecordCreator(MulBlankRecord.sid, MulBlankRecord.class) { public Record create(RecordInputStream in) { return new MulBlankRecord(in); } },
+        new RecordCreator(MulRKRecord.sid, MulRKRecord.class) { public Record create(RecordInputStream in) { return new MulRKRecord(in); } },
+        new RecordCreator(NameRecord.sid, NameRecord.class) { public Record create(RecordInputStream in) { return new NameRecord(in); } },
+        new RecordCreator(NameCommentRecord.sid, NameCommentRecord.class) { public Record create(RecordInputStream in) { return new NameCommentRecord(in); } },
+        new RecordCreator(NoteRecord.sid, NoteRecord.class) { public Record create(RecordInputStream in) { return new NoteRecord(in); } },
+        new RecordCreator(NumberRecord.sid, NumberRecord.class) { public Record create(RecordInputStream in) { return new NumberRecord(in); } },
+        new RecordCreator(ObjectProtectRecord.sid, ObjectProtectRecord.class) { public Record create(RecordInputStream in) { return new ObjectProtectRecord(in); } },
+        new RecordCreator(ObjRecord.sid, ObjRecord.class) { public Record create(RecordInputStream in) { return new ObjRecord(in); } },
+        new RecordCreator(PaletteRecord.sid, PaletteRecord.class) { public Record create(RecordInputStream in) { return new PaletteRecord(in); } },
+        new RecordCreator(PaneRecord.sid, PaneRecord.class) { public Record create(RecordInputStream in) { return new PaneRecord(in); } },
+        new RecordCreator(PasswordRecord.sid, PasswordRecord.class) { public Record create(RecordInputStream in) { return new PasswordRecord(in); } },
+        new RecordCreator(PasswordRev4Record.sid, PasswordRev4Record.class) { public Record create(RecordInputStream in) { return new PasswordRev4Record(in); } },
+        new RecordCreator(PrecisionRecord.sid, PrecisionRecord.class) { public Record create(RecordInputStream in) { return new PrecisionRecord(in); } },
+        new RecordCreator(PrintGridlinesRecord.sid, PrintGridlinesRecord.class) { public Record create(RecordInputStream in) { return new PrintGridlinesRecord(in); } },
+        new RecordCreator(PrintHeadersRecord.sid, PrintHeadersRecord.class) { public Record create(RecordInputStream in) { return new PrintHeadersRecord(in); } },
+        new RecordCreator(PrintSetupRecord.sid, PrintSetupRecord.class) { public Record create(RecordInputStream in) { return new PrintSetupRecord(in); } },
+        new RecordCreator(ProtectionRev4Record.sid, ProtectionRev4Record.class) { public Record create(RecordInputStream in) { return new ProtectionRev4Record(in); } },
+        new RecordCreator(ProtectRecord.sid, ProtectRecord.class) { public Record create(RecordInputStream in) { return new ProtectRecord(in); } },
+        new RecordCreator(RecalcIdRecord.sid, RecalcIdRecord.class) { public Record create(RecordInputStream in) { return new RecalcIdRecord(in); } },
+        new RecordCreator(RefModeRecord.sid, RefModeRecord.class) { public Record create(RecordInputStream in) { return new RefModeRecord(in); } },
+        new RecordCreator(RefreshAllRecord.sid, RefreshAllRecord.class) { public Record create(RecordInputStream in) { return new RefreshAllRecord(in); } },
+        new RecordCreator(RightMarginRecord.sid, RightMarginRecord.class) { public Record create(RecordInputStream in) { return new RightMarginRecord(in); } },
+        new RecordCreator(RKRecord.sid, RKRecord.class) { public Record create(RecordInputStream in) { return new RKRecord(in); } },
+        new RecordCreator(RowRecord.sid, RowRecord.class) { public Record create(RecordInputStream in) { return new RowRecord(in); } },
+        new RecordCreator(SaveRecalcRecord.sid, SaveRecalcRecord.class) { public Record create(RecordInputStream in) { return new SaveRecalcRecord(in); } },
+        new RecordCreator(ScenarioProtectRecord.sid, ScenarioProtectRecord.class) { public Record create(RecordInputStream in) { return new ScenarioProtectRecord(in); } },
+        new RecordCreator(SelectionRecord.sid, SelectionRecord.class) { public Record create(RecordInputStream in) { return new SelectionRecord(in); } },
+        new RecordCreator(SeriesRecord.sid, SeriesRecord.class) { public Record create(RecordInputStream in) { return new SeriesRecord(in); } },
+        new RecordCreator(SeriesTextRecord.sid, SeriesTextRecord.class) { public Record create(RecordInputStream in) { return new SeriesTextRecord(in); } },
+        new RecordCreator(SharedFormulaRecord.sid, SharedFormulaRecord.class) { public Record create(RecordInputStream in) { return new SharedFormulaRecord(in); } },
+        new RecordCreator(SSTRecord.sid, SSTRecord.class) { public Record create(RecordInputStream in) { return new SSTRecord(in); } },
+        new RecordCreator(StringRecord.sid, StringRecord.class) { public Record create(RecordInputStream in) { return new StringRecord(in); } },
+        new RecordCreator(StyleRecord.sid, StyleRecord.class) { public Record create(RecordInputStream in) { return new StyleRecord(in); } },
+        new RecordCreator(SupBookRecord.sid, SupBookRecord.class) { public Record create(RecordInputStream in) { return new SupBookRecord(in); } },
+        new RecordCreator(TabIdRecord.sid, TabIdRecord.class) { public Record create(RecordInputStream in) { return new TabIdRecord(in); } },
+        new RecordCreator(TableRecord.sid, TableRecord.class) { public Record create(RecordInputStream in) { return new TableRecord(in); } },
+        new RecordCreator(TableStylesRecord.sid, TableStylesRecord.class) { public Record create(RecordInputStream in) { return new TableStylesRecord(in); } },
+        new RecordCreator(TextObjectRecord.sid, TextObjectRecord.class) { public Record create(RecordInputStream in) { return new TextObjectRecord(in); } },
+        new RecordCreator(TopMarginRecord.sid, TopMarginRecord.class) { public Record create(RecordInputStream in) { return new TopMarginRecord(in); } },
+        new RecordCreator(UncalcedRecord.sid, UncalcedRecord.class) { public Record create(RecordInputStream in) { return new UncalcedRecord(in); } },
+        new RecordCreator(UseSelFSRecord.sid, UseSelFSRecord.class) { public Record create(RecordInputStream in) { return new UseSelFSRecord(in); } },
+        new RecordCreator(UserSViewBegin.sid, UserSViewBegin.class) { public Record create(RecordInputStream in) { return new UserSViewBegin(in); } },
+        new RecordCreator(UserSViewEnd.sid, UserSViewEnd.class) { public Record create(RecordInputStream in) { return new UserSViewEnd(in); } },
+        new RecordCreator(ValueRangeRecord.sid, ValueRangeRecord.class) { public Record create(RecordInputStream in) { return new ValueRangeRecord(in); } },
+        new RecordCreator(VCenterRecord.sid, VCenterRecord.class) { public Record create(RecordInputStream in) { return new VCenterRecord(in); } },
+        new RecordCreator(VerticalPageBreakRecord.sid, VerticalPageBreakRecord.class) { public Record create(RecordInputStream in) { return new VerticalPageBreakRecord(in); } },
+        new RecordCreator(WindowOneRecord.sid, WindowOneRecord.class) { public Record create(RecordInputStream in) { return new WindowOneRecord(in); } },
+        new RecordCreator(WindowProtectRecord.sid, WindowProtectRecord.class) { public Record create(RecordInputStream in) { return new WindowProtectRecord(in); } },
+        new RecordCreator(WindowTwoRecord.sid, WindowTwoRecord.class) { public Record create(RecordInputStream in) { return new WindowTwoRecord(in); } },
+        new RecordCreator(WriteAccessRecord.sid, WriteAccessRecord.class) { public Record create(RecordInputStream in) { return new WriteAccessRecord(in); } },
+        new RecordCreator(WriteProtectRecord.sid, WriteProtectRecord.class) { public Record create(RecordInputStream in) { return new WriteProtectRecord(in); } },
+        new RecordCreator(WSBoolRecord.sid, WSBoolRecord.class) { public Record create(RecordInputStream in) { return new WSBoolRecord(in); } },
 
         // chart records
-        BeginRecord.class,
-        ChartFRTInfoRecord.class,
-        ChartStartBlockRecord.class,
-        ChartEndBlockRecord.class,
+        new RecordCreator(BeginRecord.sid, BeginRecord.class) { public Record create(RecordInputStream in) { return new BeginRecord(in); } },
+        new RecordCreator(ChartFRTInfoRecord.sid, ChartFRTInfoRecord.class) { public Record create(RecordInputStream in) { return new ChartFRTInfoRecord(in); } },
+        new RecordCreator(ChartStartBlockRecord.sid, ChartStartBlockRecord.class) { public Record create(RecordInputStream in) { return new ChartStartBlockRecord(in); } },
+        new RecordCreator(ChartEndBlockRecord.sid, ChartEndBlockRecord.class) { public Record create(RecordInputStream in) { return new ChartEndBlockRecord(in); } },
         // TODO ChartFormatRecord.class,
-        ChartStartObjectRecord.class,
-        ChartEndObjectRecord.class,
-        CatLabRecord.class,
-        DataFormatRecord.class,
-        EndRecord.class,
-        LinkedDataRecord.class,
-        SeriesToChartGroupRecord.class,
+        new RecordCreator(ChartStartObjectRecord.sid, ChartStartObjectRecord.class) { public Record create(RecordInputStream in) { return new ChartStartObjectRecord(in); } },
+        new RecordCreator(ChartEndObjectRecord.sid, ChartEndObjectRecord.class) { public Record create(RecordInputStream in) { return new ChartEndObjectRecord(in); } },
+        new RecordCreator(CatLabRecord.sid, CatLabRecord.class) { public Record create(RecordInputStream in) { return new CatLabRecord(in); } },
+        new RecordCreator(DataFormatRecord.sid, DataFormatRecord.class) { public Record create(RecordInputStream in) { return new DataFormatRecord(in); } },
+        new RecordCreator(EndRecord.sid, EndRecord.class) { public Record create(RecordInputStream in) { return new EndRecord(in); } },
+        new RecordCreator(LinkedDataRecord.sid, LinkedDataRecord.class) { public Record create(RecordInputStream in) { return new LinkedDataRecord(in); } },
+        new RecordCreator(SeriesToChartGroupRecord.sid, SeriesToChartGroupRecord.class) { public Record create(RecordInputStream in) { return new SeriesToChartGroupRecord(in); } },
 
         // pivot table records
-        DataItemRecord.class,
-        ExtendedPivotTableViewFieldsRecord.class,
-        PageItemRecord.class,
-        StreamIDRecord.class,
-        ViewDefinitionRecord.class,
-        ViewFieldsRecord.class,
-        ViewSourceRecord.class,
+        new RecordCreator(DataItemRecord.sid, DataItemRecord.class) { public Record create(RecordInputStream in) { return new DataItemRecord(in); } },
+        new RecordCreator(ExtendedPivotTableViewFieldsRecord.sid, ExtendedPivotTableViewFieldsRecord.class) { public Record create(RecordInputStream in) { return new ExtendedPivotTableViewFieldsRecord(in); } },
+        new RecordCreator(PageItemRecord.sid, PageItemRecord.class) { public Record create(RecordInputStream in) { return new PageItemRecord(in); } },
+        new RecordCreator(StreamIDRecord.sid, StreamIDRecord.class) { public Record create(RecordInputStream in) { return new StreamIDRecord(in); } },
+        new RecordCreator(ViewDefinitionRecord.sid, ViewDefinitionRecord.class) { public Record create(RecordInputStream in) { return new ViewDefinitionRecord(in); } },
+        new RecordCreator(ViewFieldsRecord.sid, ViewFieldsRecord.class) { public Record create(RecordInputStream in) { return new ViewFieldsRecord(in); } },
+        new RecordCreator(ViewSourceRecord.sid, ViewSourceRecord.class) { public Record create(RecordInputStream in) { return new ViewSourceRecord(in); } },
     };
 
     /**
-     * cache of the recordsToMap();
+     * the record creators indexed by SID, <code>null</code> for SIDs that are not interpreted
      */
-    private static final Map<Integer, I_RecordCreator> _recordCreatorsById  = recordsToMap(recordClasses);
+    private static final RecordCreator[] _recordCreatorsBySid = recordsToArray(recordCreators);
 
     private static short[] _allKnownRecordSIDs;
 
@@ -299,7 +251,7 @@ public final class RecordFactory {
      * <code>null</code> if the specified record is not interpreted by POI.
      */
     public static Class<? extends Record> getRecordClass(int sid) {
-        I_RecordCreator rc = _recordCreatorsById.get(Integer.valueOf(sid));
+        RecordCreator rc = getRecordCreator(sid);
         if (rc == null) {
             return null;
         }
@@ -325,13 +277,28 @@ public final class RecordFactory {
     }
 
     public static Record createSingleRecord(RecordInputStream in) {
-        I_RecordCreator constructor = _recordCreatorsById.get(Integer.valueOf(in.getSid()));
+        RecordCreator creator = getRecordCreator(in.getSid());
 
-        if (constructor == null) {
+        if (creator == null) {
             return new UnknownRecord(in);
         }
 
-        return constructor.create(in);
+        try {
+            return creator.create(in);
+        } catch (RecordFormatException e) {
+            throw e;
+        } catch (EncryptedDocumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new RecordFormatException("Unable to construct record instance" , e);
+        }
+    }
+
+    private static RecordCreator getRecordCreator(int sid) {
+        if (sid < 0 || sid >= _recordCreatorsBySid.length) {
+            return null;
+        }
+        return _recordCreatorsBySid[sid];
     }
 
     /**
@@ -386,13 +353,10 @@ public final class RecordFactory {
      */
     public static short[] getAllKnownRecordSIDs() {
         if (_allKnownRecordSIDs == null) {
-            short[] results = new short[ _recordCreatorsById.size() ];
-            int i = 0;
+            short[] results = new short[ recordCreators.length ];
 
-            for (Iterator<Integer> iterator = _recordCreatorsById.keySet().iterator(); iterator.hasNext(); ) {
-                Integer sid = iterator.next();
-
-                results[i++] = sid.shortValue();
+            for (int i = 0; i < recordCreators.length; i++) {
+                results[i] = (short) recordCreators[i].getSid();
             }
             Arrays.sort(results);
             _allKnownRecordSIDs = results;
@@ -402,63 +366,41 @@ public final class RecordFactory {
     }
 
     /**
-     * gets the record constructors and sticks them in the map by SID
-     * @return map of SIDs to short,short,byte[] constructors for Record classes
+     * sticks the record creators in an array indexed by SID
+     * @return array of SIDs to creators for Record classes
      * most of org.apache.poi.hssf.record.*
      */
-    private static Map<Integer, I_RecordCreator> recordsToMap(Class<? extends Record> [] records) {
-        Map<Integer, I_RecordCreator> result = new HashMap<Integer, I_RecordCreator>();
-        Set<Class<?>> uniqueRecClasses = new HashSet<Class<?>>(records.length * 3 / 2);
-
-        for (int i = 0; i < records.length; i++) {
+    private static RecordCreator[] recordsToArray(RecordCreator[] creators) {
+        int maxSid = 0;
+        for (int i = 0; i < creators.length; i++) {
+            maxSid = Math.max(maxSid, creators[i].getSid());
+        }
+        RecordCreator[] result = new RecordCreator[maxSid + 1];
+        Set<Class<?>> uniqueRecClasses = new HashSet<Class<?>>(creators.length * 3 / 2);
 
-            Class<? extends Record> recClass = records[ i ];
-            if(!Record.class.isAssignableFrom(recClass)) {
-                throw new RuntimeException("Invalid record sub-class (" + recClass.getName() + ")");
-            }
-            if(Modifier.isAbstract(recClass.getModifiers())) {
-                throw new RuntimeException("Invalid record class (" + recClass.getName() + ") - must not be abstract");
-            }
+        for (int i = 0; i < creators.length; i++) {
+            RecordCreator creator = creators[i];
+            Class<? extends Record> recClass = creator.getRecordClass();
             if(!uniqueRecClasses.add(recClass)) {
                 throw new RuntimeException("duplicate record class (" + recClass.getName() + ")");
             }
 
-            int sid;
-            try {
-                sid = recClass.getField("sid").getShort(null);
-            } catch (Exception illegalArgumentException) {
-                throw new RecordFormatException(
-                        "Unable to determine record types");
+            int sid = creator.getSid();
+            if (sid < 0) {
+                throw new RecordFormatException("Invalid record sid for class (" + recClass.getName() + ")");
             }
-            Integer key = Integer.valueOf(sid);
-            if (result.containsKey(key)) {
-                Class<?> prevClass = result.get(key).getRecordClass();
+            if (result[sid] != null) {
+                Class<?> prevClass = result[sid].getRecordClass();
                 throw new RuntimeException("duplicate record sid 0x" + 
                         Integer.toHexString(sid).toUpperCase(Locale.ROOT)
                         + " for classes (" + recClass.getName() + ") and ("
                         + prevClass.getName() + ")");
             }
-            result.put(key, getRecordCreator(recClass));
+            result[sid] = creator;
         }
-        // result.put(Integer.valueOf(0x0406), result.get(Integer.valueOf(0x06)));
         return result;
     }
 
-    private static I_RecordCreator getRecordCreator(Class<? extends Record> recClass) {
-        try {
-            Constructor<? extends Record> constructor;
-            constructor = recClass.getConstructor(CONSTRUCTOR_ARGS);
-            return new ReflectionConstructorRecordCreator(constructor);
-        } catch (NoSuchMethodException e) {
-            // fall through and look for other construction methods
-        }
-        try {
-            Method m = recClass.getDeclaredMethod("create", CONSTRUCTOR_ARGS);
-            return new ReflectionMethodRecordCreator(m);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException("Failed to find constructor or create method for (" + recClass.getName() + ").");
-        }
-    }
     /**
      * Create an array of records from an input stream
      *
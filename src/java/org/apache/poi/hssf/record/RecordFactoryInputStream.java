@@ -110,37 +110,7 @@ public final class RecordFactoryInputStream {
 		}
 
 		public RecordInputStream createDecryptingStream(InputStream original) {
-			FilePassRecord fpr = _filePassRec;
-			String userPassword = Biff8EncryptionKey.getCurrentUserPassword();
-			if (userPassword == null) {
-			    userPassword = Decryptor.DEFAULT_PASSWORD;
-			}
-
-			Biff8EncryptionKey key;
-			if (fpr.getRc4KeyData() != null) {
-			    Rc4KeyData rc4 = fpr.getRc4KeyData();
-			    Biff8RC4Key rc4key = Biff8RC4Key.create(userPassword, rc4.getSalt());
-			    key = rc4key;
-			    if (!rc4key.validate(rc4.getEncryptedVerifier(), rc4.getEncryptedVerifierHash())) {
-	                throw new EncryptedDocumentException(
-                        (Decryptor.DEFAULT_PASSWORD.equals(userPassword) ? "Default" : "Supplied")
-                        + " password is invalid for salt/verifier/verifierHash");
-			    }
-			} else if (fpr.getXorKeyData() != null) {
-			    XorKeyData xor = fpr.getXorKeyData();
-			    Biff8XORKey xorKey = Biff8XORKey.create(userPassword, xor.getKey());
-			    key = xorKey;
-			    
-			    if (!xorKey.validate(userPassword, xor.getVerifier())) {
-                    throw new EncryptedDocumentException(
-		                (Decryptor.DEFAULT_PASSWORD.equals(userPassword) ? "Default" : "Supplied")
-		                + " password is invalid for key/verifier");
-			    }
-			} else {
-			    throw new EncryptedDocumentException("Crypto API not yet supported.");
-			}
-
-			return new RecordInputStream(original, key, _initialRecordsSize);
+			return RecordFactoryInputStream.createDecryptingStream(original, _filePassRec, _initialRecordsSize);
 		}
 
 		public boolean hasEncryption() {
@@ -164,6 +134,49 @@ public final class RecordFactoryInputStream {
 		}
 	}
 
+	/**
+	 * Creates a stream which decrypts the records following a {@link FilePassRecord},
+	 * with the password set by {@link Biff8EncryptionKey#setCurrentUserPassword(String)}
+	 *
+	 * @param original the workbook stream, positioned just after the {@link FilePassRecord}
+	 * @param fpr the {@link FilePassRecord} of the stream
+	 * @param initialRecordsSize the size of the records up to and including the {@link FilePassRecord}
+	 * @throws EncryptedDocumentException if the password is invalid or the encryption is not supported
+	 */
+	/* package */ static RecordInputStream createDecryptingStream(InputStream original, FilePassRecord fpr,
+			int initialRecordsSize) {
+		String userPassword = Biff8EncryptionKey.getCurrentUserPassword();
+		if (userPassword == null) {
+		    userPassword = Decryptor.DEFAULT_PASSWORD;
+		}
+
+		Biff8EncryptionKey key;
+		if (fpr.getRc4KeyData() != null) {
+		    Rc4KeyData rc4 = fpr.getRc4KeyData();
+		    Biff8RC4Key rc4key = Biff8RC4Key.create(userPassword, rc4.getSalt());
+		    key = rc4key;
+		    if (!rc4key.validate(rc4.getEncryptedVerifier(), rc4.getEncryptedVerifierHash())) {
+                throw new EncryptedDocumentException(
+                        (Decryptor.DEFAULT_PASSWORD.equals(userPassword) ? "Default" : "Supplied")
+                        + " password is invalid for salt/verifier/verifierHash");
+		    }
+		} else if (fpr.getXorKeyData() != null) {
+		    XorKeyData xor = fpr.getXorKeyData();
+		    Biff8XORKey xorKey = Biff8XORKey.create(userPassword, xor.getKey());
+		    key = xorKey;
+		    
+		    if (!xorKey.validate(userPassword, xor.getVerifier())) {
+                    throw new EncryptedDocumentException(
+	                (Decryptor.DEFAULT_PASSWORD.equals(userPassword) ? "Default" : "Supplied")
+	                + " password is invalid for key/verifier");
+		    }
+		} else {
+		    throw new EncryptedDocumentException("Crypto API not yet supported.");
+		}
+
+		return new RecordInputStream(original, key, initialRecordsSize);
+	}
+
 
 	private final RecordInputStream _recStream;
 	private final boolean _shouldIncludeContinueRecords;
@@ -90,6 +90,8 @@ public final class RecordInputStream implements LittleEndianInput {
 	 * index within the data section of the current BIFF record
 	 */
 	private int _currentDataOffset;
+	/** scratch buffer for {@link #skipRemainder()}, allocated on first use */
+	private byte[] _skipBuffer;
 
 	private static final class SimpleHeaderInput implements BiffHeaderInput {
 
@@ -398,6 +400,22 @@ public final class RecordInputStream implements LittleEndianInput {
 		}
 	}
 
+	/**
+	 * Skips the remaining bytes of the current record without allocating an array for them.
+	 * Unlike {@link #readRemainder()}, subsequent {@link ContinueRecord}s are not skipped.
+	 */
+	public void skipRemainder() {
+		int size = remaining();
+		if (size == 0) {
+			return;
+		}
+		if (_skipBuffer == null) {
+			_skipBuffer = new byte[MAX_RECORD_DATA_SIZE];
+		}
+		_dataInput.readFully(_skipBuffer, 0, size);
+		_currentDataOffset += size;
+	}
+
 	/** Returns the remaining bytes for the current record.
 	 *
 	  * @return The remaining bytes of the current record.
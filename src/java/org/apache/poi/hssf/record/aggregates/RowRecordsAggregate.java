@@ -40,6 +40,8 @@ public final class RowRecordsAggregate extends RecordAggregate {
 	private final ValueRecordsAggregate _valuesAgg;
 	private final List<Record> _unknownRecords;
 	private final SharedValueManager _sharedValueManager;
+	/** row blocks written before the rows of this aggregate, or <code>null</code> */
+	private SerializedRowBlocks _serializedRowBlocks;
 
 	// Cache values to speed up performance of
     // getStartRowNumberForBlock / getEndRowNumberForBlock, see Bugzilla 47405
@@ -112,6 +114,23 @@ public final class RowRecordsAggregate extends RecordAggregate {
 		// keep the unknown records for re-serialization
 		_unknownRecords.add(rec);
 	}
+	/**
+	 * Sets the row blocks which have been serialized ahead of writing the sheet. They are
+	 * written before the rows held by this aggregate, so they must hold lower row numbers.
+	 *
+	 * @param serializedRowBlocks the serialized row blocks, or <code>null</code> for none
+	 */
+	public void setSerializedRowBlocks(SerializedRowBlocks serializedRowBlocks) {
+		_serializedRowBlocks = serializedRowBlocks;
+	}
+
+	/**
+	 * @return the number of serialized row blocks written before the rows of this aggregate
+	 */
+	private int getSerializedRowBlockCount() {
+		return _serializedRowBlocks == null ? 0 : _serializedRowBlocks.getBlockCount();
+	}
+
 	public void insertRow(RowRecord row) {
 		// Integer integer = Integer.valueOf(row.getRowNumber());
 		_rowRecords.put(Integer.valueOf(row.getRowNumber()), row);
@@ -248,6 +267,10 @@ public final class RowRecordsAggregate extends RecordAggregate {
     public void visitContainedRecords(RecordVisitor rv) {
 
 		PositionTrackingVisitor stv = new PositionTrackingVisitor(rv, 0);
+		final int serializedBlockCount = getSerializedRowBlockCount();
+		for (int blockIndex = 0; blockIndex < serializedBlockCount; blockIndex++) {
+			rv.visitRecord(_serializedRowBlocks.getBlock(blockIndex));
+		}
 		//DBCells are serialized before row records.
 		final int blockCount = getRowBlockCount();
 		for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
@@ -455,8 +478,14 @@ public final class RowRecordsAggregate extends RecordAggregate {
 
 	public IndexRecord createIndexRecord(int indexRecordOffset, int sizeOfInitialSheetRecords) {
 		IndexRecord result = new IndexRecord();
-		result.setFirstRow(_firstrow);
-		result.setLastRowAdd1(_lastrow + 1);
+		int serializedBlockCount = getSerializedRowBlockCount();
+		if (serializedBlockCount > 0) {
+			result.setFirstRow(_serializedRowBlocks.getFirstRow());
+			result.setLastRowAdd1((_lastrow == -1 ? _serializedRowBlocks.getLastRow() : _lastrow) + 1);
+		} else {
+			result.setFirstRow(_firstrow);
+			result.setLastRowAdd1(_lastrow + 1);
+		}
 		// Calculate the size of the records from the end of the BOF
 		// and up to the RowRecordsAggregate...
 
@@ -466,10 +495,15 @@ public final class RowRecordsAggregate extends RecordAggregate {
 
 		int blockCount = getRowBlockCount();
 		// Calculate the size of this IndexRecord
-		int indexRecSize = IndexRecord.getRecordSizeForBlockCount(blockCount);
+		int indexRecSize = IndexRecord.getRecordSizeForBlockCount(serializedBlockCount + blockCount);
 
 		int currentOffset = indexRecordOffset + indexRecSize + sizeOfInitialSheetRecords;
 
+		for (int block = 0; block < serializedBlockCount; block++) {
+			result.addDbcell(currentOffset + _serializedRowBlocks.getDBCellOffset(block));
+			currentOffset += _serializedRowBlocks.getBlock(block).getRecordSize();
+		}
+
 		for (int block = 0; block < blockCount; block++) {
 			// each row-block has a DBCELL record.
 			// The offset of each DBCELL record needs to be updated in the INDEX record
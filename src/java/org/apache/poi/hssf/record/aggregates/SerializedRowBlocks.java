@@ -0,0 +1,61 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.record.aggregates;
+
+import org.apache.poi.hssf.record.Record;
+
+/**
+ * Row blocks of a sheet which have been serialized before the sheet is written, e.g. by a
+ * streaming writer which keeps only a window of rows in memory. Each block holds the ROW
+ * records of up to {@link org.apache.poi.hssf.record.DBCellRecord#BLOCK_SIZE} rows, the
+ * cell value records of those rows and the DBCELL record of the block.
+ *
+ * @see RowRecordsAggregate#setSerializedRowBlocks(SerializedRowBlocks)
+ */
+public interface SerializedRowBlocks {
+
+    /**
+     * @return the number of serialized row blocks
+     */
+    int getBlockCount();
+
+    /**
+     * @return the zero based index of the first row, only meaningful if there are blocks
+     */
+    int getFirstRow();
+
+    /**
+     * @return the zero based index of the last row, only meaningful if there are blocks
+     */
+    int getLastRow();
+
+    /**
+     * @param blockIndex the zero based index of the block
+     * @return the distance from the start of the block to its DBCELL record
+     */
+    int getDBCellOffset(int blockIndex);
+
+    /**
+     * Gets the serialized records of a block as one {@link Record}. It serializes the
+     * records of the block unchanged, it does not have a sid of its own.
+     *
+     * @param blockIndex the zero based index of the block
+     * @return the records of the block
+     */
+    Record getBlock(int blockIndex);
+}
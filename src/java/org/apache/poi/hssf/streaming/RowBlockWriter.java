@@ -0,0 +1,263 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordBase;
+import org.apache.poi.hssf.record.RecordFormatException;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.aggregates.SerializedRowBlocks;
+import org.apache.poi.util.IntList;
+import org.apache.poi.util.TempFile;
+
+/**
+ * Serializes the rows flushed from a {@link SHSSFSheet} in blocks of
+ * {@link DBCellRecord#BLOCK_SIZE} rows to a temp file, and hands the blocks
+ * to the {@link org.apache.poi.hssf.record.aggregates.RowRecordsAggregate}
+ * of the sheet when the workbook is written.
+ */
+final class RowBlockWriter implements SerializedRowBlocks {
+    private final File _fd;
+    private final OutputStream _out;
+    /** reads the blocks back while the workbook is written, opened on demand */
+    private RandomAccessFile _in;
+    private int _filePos;
+
+    /** file position, size and DBCELL offset of each written block */
+    private final IntList _blockPositions = new IntList();
+    private final IntList _blockSizes = new IntList();
+    private final IntList _dbCellOffsets = new IntList();
+
+    /** the rows of the block which is not written yet */
+    private final RowRecord[] _rows = new RowRecord[DBCellRecord.BLOCK_SIZE];
+    private final int[] _rowCellsSizes = new int[DBCellRecord.BLOCK_SIZE];
+    private int _rowCount;
+    /** the serialized cells of the rows of the block which is not written yet */
+    private byte[] _cells = new byte[4096];
+    private int _cellsSize;
+
+    private int _firstRow = -1;
+    private int _lastRow = -1;
+    private int _firstCol = -1;
+    private int _lastCol = -1;
+
+    public RowBlockWriter() throws IOException {
+        _fd = TempFile.createTempFile("poi-shssf-sheet", ".biff");
+        _out = new BufferedOutputStream(new FileOutputStream(_fd));
+    }
+
+    /**
+     * Adds a row to the current block, the block is written out once it is full
+     */
+    public void writeRow(SHSSFRow row) throws IOException {
+        if (_rowCount == DBCellRecord.BLOCK_SIZE) {
+            writeBlock();
+        }
+        int cellsStart = _cellsSize;
+        for (SHSSFCell cell : row.getCells()) {
+            if (cell == null) {
+                continue;
+            }
+            RecordBase rec = (RecordBase) cell.getCellValueRecord();
+            ensureCellsCapacity(rec.getRecordSize());
+            _cellsSize += rec.serialize(_cellsSize, _cells);
+        }
+        RowRecord rr = row.getRowRecord();
+        _rows[_rowCount] = rr;
+        _rowCellsSizes[_rowCount] = _cellsSize - cellsStart;
+        _rowCount++;
+
+        if (_firstRow == -1) {
+            _firstRow = rr.getRowNumber();
+        }
+        _lastRow = rr.getRowNumber();
+        if (!rr.isEmpty()) {
+            if (_firstCol == -1 || rr.getFirstCol() < _firstCol) {
+                _firstCol = rr.getFirstCol();
+            }
+            if (rr.getLastCol() > _lastCol) {
+                _lastCol = rr.getLastCol();
+            }
+        }
+    }
+
+    private void ensureCellsCapacity(int recordSize) {
+        if (_cellsSize + recordSize > _cells.length) {
+            byte[] cells = new byte[Math.max(_cells.length * 2, _cellsSize + recordSize)];
+            System.arraycopy(_cells, 0, cells, 0, _cellsSize);
+            _cells = cells;
+        }
+    }
+
+    /**
+     * Writes the ROW records, the cells and the DBCELL record of the current block
+     */
+    private void writeBlock() throws IOException {
+        if (_rowCount == 0) {
+            return;
+        }
+        byte[] rows = new byte[_rowCount * RowRecord.ENCODED_SIZE];
+        int rowBlockSize = 0;
+        for (int i = 0; i < _rowCount; i++) {
+            rowBlockSize += _rows[i].serialize(rowBlockSize, rows);
+            _rows[i] = null;
+        }
+        DBCellRecord.Builder dbcrBuilder = new DBCellRecord.Builder();
+        // Note: Cell references start from the second row...
+        int cellRefOffset = rowBlockSize - RowRecord.ENCODED_SIZE;
+        for (int i = 0; i < _rowCount; i++) {
+            if (_rowCellsSizes[i] > 0) {
+                dbcrBuilder.addCellOffset(cellRefOffset);
+                cellRefOffset = _rowCellsSizes[i];
+            }
+        }
+        int dbCellOffset = rowBlockSize + _cellsSize;
+        byte[] dbCell = dbcrBuilder.build(dbCellOffset).serialize();
+
+        _out.write(rows, 0, rowBlockSize);
+        _out.write(_cells, 0, _cellsSize);
+        _out.write(dbCell);
+
+        int blockSize = dbCellOffset + dbCell.length;
+        _blockPositions.add(_filePos);
+        _blockSizes.add(blockSize);
+        _dbCellOffsets.add(dbCellOffset);
+        _filePos += blockSize;
+
+        _rowCount = 0;
+        _cellsSize = 0;
+    }
+
+    /**
+     * Writes the current block, even if it is not full, so that all flushed rows
+     * can be read back
+     */
+    public void flush() throws IOException {
+        writeBlock();
+        _out.flush();
+    }
+
+    /**
+     * @return the zero based index of the first column with a cell, or -1 if there are no cells
+     */
+    public int getFirstCol() {
+        return _firstCol;
+    }
+
+    /**
+     * @return one more than the zero based index of the last column with a cell, or -1 if there are no cells
+     */
+    public int getLastCol() {
+        return _lastCol;
+    }
+
+    @Override
+    public int getBlockCount() {
+        return _blockSizes.size();
+    }
+
+    @Override
+    public int getFirstRow() {
+        return _firstRow;
+    }
+
+    @Override
+    public int getLastRow() {
+        return _lastRow;
+    }
+
+    @Override
+    public int getDBCellOffset(int blockIndex) {
+        return _dbCellOffsets.get(blockIndex);
+    }
+
+    @Override
+    public Record getBlock(int blockIndex) {
+        return new BlockRecord(_blockPositions.get(blockIndex), _blockSizes.get(blockIndex));
+    }
+
+    private void readBlock(int position, byte[] data, int offset, int size) throws IOException {
+        if (_in == null) {
+            _in = new RandomAccessFile(_fd, "r");
+        }
+        _in.seek(position);
+        _in.readFully(data, offset, size);
+    }
+
+    /**
+     * Closes the file used to read the blocks back, it is opened again when needed
+     */
+    public void closeReader() throws IOException {
+        if (_in != null) {
+            _in.close();
+            _in = null;
+        }
+    }
+
+    /**
+     * Deletes the temp file
+     *
+     * @return whether the file was deleted
+     */
+    public boolean dispose() throws IOException {
+        _out.close();
+        closeReader();
+        return _fd.delete();
+    }
+
+    /**
+     * The records of a written block, read back from the temp file when serialized
+     */
+    private final class BlockRecord extends Record {
+        private final int _position;
+        private final int _size;
+
+        public BlockRecord(int position, int size) {
+            _position = position;
+            _size = size;
+        }
+
+        @Override
+        public short getSid() {
+            return -1;
+        }
+
+        @Override
+        public int serialize(int offset, byte[] data) {
+            try {
+                readBlock(_position, data, offset, _size);
+            } catch (IOException e) {
+                throw new RecordFormatException("Could not read the row block at " + _position, e);
+            }
+            return _size;
+        }
+
+        @Override
+        public int getRecordSize() {
+            return _size;
+        }
+    }
+}
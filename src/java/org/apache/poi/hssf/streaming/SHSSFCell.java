@@ -0,0 +1,238 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import java.util.Date;
+
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.common.UnicodeString;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * A cell of a {@link SHSSFRow}. It holds the cell value record which is written
+ * once the row is flushed, see {@link SHSSFSheet#flushRows(int)}.
+ */
+public class SHSSFCell {
+    private final SHSSFRow _row;
+    private CellValueRecordInterface _record;
+
+    SHSSFCell(SHSSFRow row, int column, short styleIndex) {
+        _row = row;
+        BlankRecord rec = new BlankRecord();
+        rec.setRow(row.getRowNum());
+        rec.setColumn((short) column);
+        rec.setXFIndex(styleIndex);
+        _record = rec;
+    }
+
+    /**
+     * @return the row this cell belongs to
+     */
+    public SHSSFRow getRow() {
+        return _row;
+    }
+
+    /**
+     * @return the zero based index of the row of this cell
+     */
+    public int getRowIndex() {
+        return _record.getRow();
+    }
+
+    /**
+     * @return the zero based index of the column of this cell
+     */
+    public int getColumnIndex() {
+        return _record.getColumn() & 0xFFFF;
+    }
+
+    /**
+     * @return the type of the cell value, one of the <code>CELL_TYPE_*</code> constants of {@link Cell}
+     */
+    public int getCellType() {
+        if (_record instanceof NumberRecord) {
+            return Cell.CELL_TYPE_NUMERIC;
+        }
+        if (_record instanceof LabelSSTRecord) {
+            return Cell.CELL_TYPE_STRING;
+        }
+        if (_record instanceof FormulaRecord) {
+            return Cell.CELL_TYPE_FORMULA;
+        }
+        if (_record instanceof BoolErrRecord) {
+            return ((BoolErrRecord) _record).isBoolean() ? Cell.CELL_TYPE_BOOLEAN : Cell.CELL_TYPE_ERROR;
+        }
+        return Cell.CELL_TYPE_BLANK;
+    }
+
+    /**
+     * Set a numeric value for the cell
+     *
+     * @param value the numeric value to set this cell to. Infinities and NaN are
+     *  written as #DIV/0! and #NUM! errors, as Excel does not support them.
+     */
+    public void setCellValue(double value) {
+        if (Double.isInfinite(value)) {
+            setCellErrorValue(FormulaError.DIV0.getCode());
+        } else if (Double.isNaN(value)) {
+            setCellErrorValue(FormulaError.NUM.getCode());
+        } else {
+            NumberRecord rec = new NumberRecord();
+            rec.setValue(value);
+            setRecord(rec);
+        }
+    }
+
+    /**
+     * Set a date value for the cell. Excel treats dates as numeric so you will need
+     * to format the cell as a date.
+     *
+     * @param value the date value to set this cell to, <code>null</code> makes the cell blank
+     */
+    public void setCellValue(Date value) {
+        if (value == null) {
+            setBlank();
+            return;
+        }
+        boolean date1904 = getWorkbook().getInternalWorkbook().isUsing1904DateWindowing();
+        setCellValue(DateUtil.getExcelDate(value, date1904));
+    }
+
+    /**
+     * Set a string value for the cell. The string is added to the shared string table
+     * of the workbook right away.
+     *
+     * @param value the string to set this cell to, <code>null</code> makes the cell blank
+     * @throws IllegalArgumentException if the string is longer than Excel supports
+     */
+    public void setCellValue(String value) {
+        if (value == null) {
+            setBlank();
+            return;
+        }
+        if (value.length() > SpreadsheetVersion.EXCEL97.getMaxTextLength()) {
+            throw new IllegalArgumentException("The maximum length of cell contents (text) is 32,767 characters");
+        }
+        LabelSSTRecord rec = new LabelSSTRecord();
+        rec.setSSTIndex(getWorkbook().getInternalWorkbook().addSSTString(new UnicodeString(value)));
+        setRecord(rec);
+    }
+
+    /**
+     * Set a boolean value for the cell
+     *
+     * @param value the boolean value to set this cell to
+     */
+    public void setCellValue(boolean value) {
+        BoolErrRecord rec = new BoolErrRecord();
+        rec.setValue(value);
+        setRecord(rec);
+    }
+
+    /**
+     * Set an error value for the cell
+     *
+     * @param errorCode the error value to set this cell to, see {@link FormulaError}
+     */
+    public void setCellErrorValue(byte errorCode) {
+        BoolErrRecord rec = new BoolErrRecord();
+        rec.setValue(errorCode);
+        setRecord(rec);
+    }
+
+    /**
+     * Sets a formula for the cell. No result is cached for the formula.
+     *
+     * @param formula the formula, without a leading '=', <code>null</code> makes the cell blank
+     * @throws org.apache.poi.ss.formula.FormulaParseException if the formula has incorrect syntax
+     */
+    public void setCellFormula(String formula) {
+        if (formula == null) {
+            setBlank();
+            return;
+        }
+        HSSFWorkbook wb = getWorkbook();
+        int sheetIndex = wb.getSheetIndex(_row.getSheet().getHSSFSheet());
+        Ptg[] ptgs = HSSFFormulaParser.parse(formula, wb, FormulaType.CELL, sheetIndex);
+        FormulaRecord rec = new FormulaRecord();
+        rec.setOptions((short) 2);
+        rec.setValue(0);
+        rec.setParsedExpression(ptgs);
+        setRecord(rec);
+        //only set to default if there is no extended format index already set
+        if (_record.getXFIndex() == (short)0) {
+            _record.setXFIndex((short) 0x0f);
+        }
+    }
+
+    /**
+     * Set the style for the cell
+     *
+     * @param style the style of the workbook, <code>null</code> resets the cell to the default style
+     */
+    public void setCellStyle(HSSFCellStyle style) {
+        if (style == null) {
+            _record.setXFIndex((short)0xf);
+            return;
+        }
+        style.verifyBelongsToWorkbook(getWorkbook());
+        _record.setXFIndex(style.getIndex());
+    }
+
+    /**
+     * @return the index of the extended format of this cell
+     */
+    public short getCellStyleIndex() {
+        return _record.getXFIndex();
+    }
+
+    private void setBlank() {
+        setRecord(new BlankRecord());
+    }
+
+    private void setRecord(CellValueRecordInterface rec) {
+        rec.setRow(_record.getRow());
+        rec.setColumn(_record.getColumn());
+        rec.setXFIndex(_record.getXFIndex());
+        _record = rec;
+    }
+
+    private HSSFWorkbook getWorkbook() {
+        return _row.getSheet().getWorkbook().getHSSFWorkbook();
+    }
+
+    /**
+     * @return the record which is written for this cell
+     */
+    CellValueRecordInterface getCellValueRecord() {
+        return _record;
+    }
+}
@@ -0,0 +1,164 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.ss.SpreadsheetVersion;
+
+/**
+ * A row of a {@link SHSSFSheet}. Rows are held in memory only until they are
+ * flushed, see {@link SHSSFSheet#flushRows(int)}.
+ */
+public class SHSSFRow {
+    private static final int INITIAL_CAPACITY = 5;
+
+    private final SHSSFSheet _sheet;
+    private final RowRecord _record;
+    private SHSSFCell[] _cells = new SHSSFCell[INITIAL_CAPACITY];
+
+    SHSSFRow(SHSSFSheet sheet, int rowNum) {
+        _sheet = sheet;
+        _record = new RowRecord(rowNum);
+    }
+
+    /**
+     * @return the sheet this row belongs to
+     */
+    public SHSSFSheet getSheet() {
+        return _sheet;
+    }
+
+    /**
+     * @return the zero based index of this row
+     */
+    public int getRowNum() {
+        return _record.getRowNumber();
+    }
+
+    /**
+     * Creates a new cell in this row, replacing any existing cell of the column.
+     * The cell takes the default style of its column.
+     *
+     * @param column the zero based index of the column
+     * @return the new blank cell
+     * @throws IllegalArgumentException if the column is outside the range supported by Excel
+     */
+    public SHSSFCell createCell(int column) {
+        int maxcol = SpreadsheetVersion.EXCEL97.getLastColumnIndex();
+        if (column < 0 || column > maxcol) {
+            throw new IllegalArgumentException("Invalid column index (" + column
+                    + ").  Allowable column range for " + SpreadsheetVersion.EXCEL97.name()
+                    + " is (0.." + maxcol + ") or ('A'..'" + SpreadsheetVersion.EXCEL97.getLastColumnName() + "')");
+        }
+        if (column >= _cells.length) {
+            SHSSFCell[] cells = new SHSSFCell[Math.max(column + 1, _cells.length * 2)];
+            System.arraycopy(_cells, 0, cells, 0, _cells.length);
+            _cells = cells;
+        }
+        short styleIndex = _sheet.getHSSFSheet().getInternalSheet().getXFIndexForColAt((short) column);
+        SHSSFCell cell = new SHSSFCell(this, column, styleIndex);
+        _cells[column] = cell;
+        return cell;
+    }
+
+    /**
+     * @param column the zero based index of the column
+     * @return the cell of the column, or <code>null</code> if there is none
+     */
+    public SHSSFCell getCell(int column) {
+        if (column < 0 || column >= _cells.length) {
+            return null;
+        }
+        return _cells[column];
+    }
+
+    /**
+     * set the row's height or set to ff (-1) for undefined/default-height.  Set the height in "twips" or
+     * 1/20th of a point.
+     * @param height  rowheight or -1 for undefined (use sheet default)
+     */
+    public void setHeight(short height) {
+        if (height == -1) {
+            _record.setHeight((short)(0xFF | 0x8000));
+            _record.setBadFontHeight(false);
+        } else {
+            _record.setBadFontHeight(true);
+            _record.setHeight(height);
+        }
+    }
+
+    /**
+     * set the row's height in points.
+     * @param height  row height in points, <code>-1</code> means to use the default height
+     */
+    public void setHeightInPoints(float height) {
+        if (height == -1) {
+            _record.setHeight((short)(0xFF | 0x8000));
+        } else {
+            _record.setBadFontHeight(true);
+            _record.setHeight((short) (height * 20));
+        }
+    }
+
+    /**
+     * set whether or not to display this row with 0 height
+     * @param zHeight  height is zero or not.
+     */
+    public void setZeroHeight(boolean zHeight) {
+        _record.setZeroHeight(zHeight);
+    }
+
+    /**
+     * Applies a whole-row cell styling to the row.
+     */
+    public void setRowStyle(HSSFCellStyle style) {
+        _record.setFormatted(true);
+        _record.setXFIndex(style.getIndex());
+    }
+
+    /**
+     * @return the cells of this row by column index, with <code>null</code> for missing cells
+     */
+    SHSSFCell[] getCells() {
+        return _cells;
+    }
+
+    /**
+     * @return the ROW record of this row, with the first and last column of its cells
+     */
+    RowRecord getRowRecord() {
+        int firstCol = -1;
+        int lastCol = -1;
+        for (int i = 0; i < _cells.length; i++) {
+            if (_cells[i] != null) {
+                if (firstCol == -1) {
+                    firstCol = i;
+                }
+                lastCol = i;
+            }
+        }
+        if (firstCol == -1) {
+            _record.setEmpty();
+        } else {
+            _record.setFirstCol(firstCol);
+            _record.setLastCol(lastCol + 1);
+        }
+        return _record;
+    }
+}
@@ -0,0 +1,186 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import java.io.IOException;
+import java.util.TreeMap;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.SpreadsheetVersion;
+
+/**
+ * Streaming version of {@link HSSFSheet}. Only a window of rows is held in memory,
+ * rows which fall out of the window are serialized in blocks to a temp file.
+ * All other sheet settings (column widths, merged regions, print setup etc.)
+ * are made on the underlying {@link HSSFSheet}, see {@link #getHSSFSheet()}.
+ */
+public class SHSSFSheet {
+    private final SHSSFWorkbook _workbook;
+    private final HSSFSheet _sh;
+    private final TreeMap<Integer,SHSSFRow> _rows = new TreeMap<Integer,SHSSFRow>();
+    private final RowBlockWriter _writer;
+    private int _randomAccessWindowSize;
+    private int _lastFlushedRowNumber = -1;
+
+    SHSSFSheet(SHSSFWorkbook workbook, HSSFSheet sh) throws IOException {
+        _workbook = workbook;
+        _sh = sh;
+        _writer = new RowBlockWriter();
+        _randomAccessWindowSize = workbook.getRandomAccessWindowSize();
+        sh.getInternalSheet().getRowsAggregate().setSerializedRowBlocks(_writer);
+    }
+
+    /**
+     * @return the workbook this sheet belongs to
+     */
+    public SHSSFWorkbook getWorkbook() {
+        return _workbook;
+    }
+
+    /**
+     * @return the underlying sheet, which holds everything but the rows
+     */
+    public HSSFSheet getHSSFSheet() {
+        return _sh;
+    }
+
+    /**
+     * @return the name of this sheet
+     */
+    public String getSheetName() {
+        return _sh.getSheetName();
+    }
+
+    /**
+     * Create a new row within the sheet. Rows may be created in any order within
+     * the window, but rows which are already flushed cannot be created again.
+     *
+     * @param rownum  row number
+     * @return the new row
+     * @throws IllegalArgumentException if the row number is outside the range supported
+     *  by Excel, or the row has already been flushed
+     */
+    public SHSSFRow createRow(int rownum) {
+        int maxrow = SpreadsheetVersion.EXCEL97.getLastRowIndex();
+        if (rownum < 0 || rownum > maxrow) {
+            throw new IllegalArgumentException("Invalid row number (" + rownum
+                    + ") outside allowable range (0.." + maxrow + ")");
+        }
+        // attempt to overwrite a row that is already flushed to disk
+        if (rownum <= _lastFlushedRowNumber) {
+            throw new IllegalArgumentException(
+                    "Attempting to write a row[" + rownum + "] " +
+                    "in the range [0," + _lastFlushedRowNumber + "] that is already written to disk.");
+        }
+
+        SHSSFRow newRow = new SHSSFRow(this, rownum);
+        _rows.put(Integer.valueOf(rownum), newRow);
+        if (_randomAccessWindowSize >= 0 && _rows.size() > _randomAccessWindowSize) {
+            try {
+                flushRows(_randomAccessWindowSize);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        }
+        return newRow;
+    }
+
+    /**
+     * Returns the logical row (0-based) if it is still held in memory
+     *
+     * @param rownum  row to get
+     * @return the row, or <code>null</code> if it does not exist or has already been flushed
+     */
+    public SHSSFRow getRow(int rownum) {
+        return _rows.get(Integer.valueOf(rownum));
+    }
+
+    /**
+     * @return the number of rows held in memory
+     */
+    public int getPhysicalNumberOfRows() {
+        return _rows.size();
+    }
+
+    /**
+     * @return the number of the last row created, or -1 if there are no rows
+     */
+    public int getLastRowNum() {
+        return _rows.isEmpty() ? _lastFlushedRowNumber : _rows.lastKey().intValue();
+    }
+
+    /**
+     * Specifies how many rows can be accessed at most via getRow().
+     * The exceeding rows (if any) are flushed to the disk while rows
+     * with lower index values are flushed first.
+     */
+    public void flushRows(int remaining) throws IOException {
+        while (_rows.size() > remaining) {
+            flushOneRow();
+        }
+    }
+
+    /**
+     * Flush all rows to disk. After this call no rows can be accessed via getRow()
+     */
+    public void flushRows() throws IOException {
+        flushRows(0);
+    }
+
+    private void flushOneRow() throws IOException {
+        Integer firstRowNum = _rows.firstKey();
+        SHSSFRow row = _rows.remove(firstRowNum);
+        _writer.writeRow(row);
+        _lastFlushedRowNumber = firstRowNum.intValue();
+    }
+
+    /**
+     * Flushes all rows and sets the dimensions of the underlying sheet, so that
+     * it can be written
+     */
+    void prepareForWrite() throws IOException {
+        flushRows();
+        _writer.flush();
+        if (_writer.getBlockCount() > 0) {
+            int firstCol = _writer.getFirstCol();
+            int lastCol = _writer.getLastCol();
+            if (firstCol == -1) {
+                firstCol = 0;
+                lastCol = 0;
+            }
+            _sh.getInternalSheet().setDimensions(_writer.getFirstRow(), (short) firstCol,
+                    _writer.getLastRow() + 1, (short) lastCol);
+        }
+    }
+
+    /**
+     * Closes the temp file after the workbook has been written
+     */
+    void afterWrite() throws IOException {
+        _writer.closeReader();
+    }
+
+    /**
+     * Deletes the temp file backing this sheet on disk
+     *
+     * @return true if the file was deleted
+     */
+    boolean dispose() throws IOException {
+        return _writer.dispose();
+    }
+}
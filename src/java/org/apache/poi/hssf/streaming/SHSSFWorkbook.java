@@ -0,0 +1,204 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+
+/**
+ * Streaming version of {@link HSSFWorkbook} for writing large .xls files, the
+ * equivalent of {@link org.apache.poi.xssf.streaming.SXSSFWorkbook} for .xlsx files.
+ * <p>
+ * The rows of the sheets created by this workbook are held in memory only within
+ * a window. Rows which fall out of the window are serialized, in blocks of
+ * {@link org.apache.poi.hssf.record.DBCellRecord#BLOCK_SIZE} rows with their DBCELL
+ * record, to a temp file per sheet. When the workbook is written the blocks are
+ * copied from the temp files, and the INDEX records are built from their positions.
+ * </p>
+ * <p>
+ * Styles, fonts, names and all sheet settings other than rows live in the underlying
+ * {@link HSSFWorkbook}, see {@link #getHSSFWorkbook()}. Strings are added to its shared
+ * string table as cell values are set, so the distinct strings stay in memory.
+ * </p>
+ * <p>
+ * Temp files are deleted by {@link #dispose()}, or when the workbook is closed.
+ * </p>
+ */
+public class SHSSFWorkbook implements Closeable {
+    /**
+     * Specifies how many rows can be accessed at most via {@link SHSSFSheet#getRow}.
+     * When a new row is created via {@link SHSSFSheet#createRow} and the total number
+     * of unflushed records would exceed the specified value, then the
+     * row with the lowest index value is flushed and cannot be accessed
+     * via {@link SHSSFSheet#getRow} anymore.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+
+    private static final POILogger logger = POILogFactory.getLogger(SHSSFWorkbook.class);
+
+    private final HSSFWorkbook _wb;
+    private final List<SHSSFSheet> _sheets = new ArrayList<SHSSFSheet>();
+    private final int _randomAccessWindowSize;
+
+    /**
+     * Construct a new workbook with default row window size
+     */
+    public SHSSFWorkbook() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a new workbook with the specified row window size
+     *
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out,
+     *  or -1 for an unlimited window, which keeps all rows until the workbook is written
+     */
+    public SHSSFWorkbook(int rowAccessWindowSize) {
+        this(new HSSFWorkbook(), rowAccessWindowSize);
+    }
+
+    /**
+     * Construct a workbook from a template. The sheets of the template are written
+     * as they are, only the sheets created by this workbook are streamed.
+     *
+     * @param workbook  the template workbook
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out,
+     *  or -1 for an unlimited window, which keeps all rows until the workbook is written
+     */
+    public SHSSFWorkbook(HSSFWorkbook workbook, int rowAccessWindowSize) {
+        if (rowAccessWindowSize == 0 || rowAccessWindowSize < -1) {
+            throw new IllegalArgumentException("rowAccessWindowSize must be greater than 0 or -1");
+        }
+        _wb = workbook;
+        _randomAccessWindowSize = rowAccessWindowSize;
+    }
+
+    /**
+     * @return the underlying workbook, which holds everything but the rows of the streamed sheets
+     */
+    public HSSFWorkbook getHSSFWorkbook() {
+        return _wb;
+    }
+
+    /**
+     * @return the number of rows that are kept in memory by each sheet until flushed out
+     */
+    public int getRandomAccessWindowSize() {
+        return _randomAccessWindowSize;
+    }
+
+    /**
+     * Create a streamed sheet with a default name
+     *
+     * @return the new sheet
+     */
+    public SHSSFSheet createSheet() {
+        return createSheet(_wb.createSheet());
+    }
+
+    /**
+     * Create a streamed sheet
+     *
+     * @param sheetname the name of the sheet
+     * @return the new sheet
+     * @throws IllegalArgumentException if the name is invalid or already in use
+     */
+    public SHSSFSheet createSheet(String sheetname) {
+        return createSheet(_wb.createSheet(sheetname));
+    }
+
+    private SHSSFSheet createSheet(HSSFSheet sh) {
+        SHSSFSheet sheet;
+        try {
+            sheet = new SHSSFSheet(this, sh);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        _sheets.add(sheet);
+        return sheet;
+    }
+
+    /**
+     * @param name the name of the sheet
+     * @return the streamed sheet with the given name, or <code>null</code> if there is none
+     */
+    public SHSSFSheet getSheet(String name) {
+        for (SHSSFSheet sheet : _sheets) {
+            if (sheet.getSheetName().equalsIgnoreCase(name)) {
+                return sheet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write out this workbook to an OutputStream. All rows are flushed first, so
+     * that none of them can be accessed afterwards.
+     *
+     * @param stream - the java OutputStream you wish to write to
+     * @exception IOException if anything can't be written.
+     */
+    public void write(OutputStream stream) throws IOException {
+        for (SHSSFSheet sheet : _sheets) {
+            sheet.prepareForWrite();
+        }
+        try {
+            _wb.write(stream);
+        } finally {
+            for (SHSSFSheet sheet : _sheets) {
+                sheet.afterWrite();
+            }
+        }
+    }
+
+    /**
+     * Dispose of temporary files backing this workbook on disk.
+     * Calling this method will render the workbook unusable.
+     * @return true if all temporary files were deleted successfully.
+     */
+    public boolean dispose() {
+        boolean success = true;
+        for (SHSSFSheet sheet : _sheets) {
+            try {
+                success = sheet.dispose() && success;
+            } catch (IOException e) {
+                logger.log(POILogger.WARN, e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Deletes the temporary files, see {@link #dispose()}, and closes the
+     * underlying {@link HSSFWorkbook}
+     */
+    @Override
+    public void close() throws IOException {
+        dispose();
+        _wb.close();
+    }
+}
@@ -17,9 +17,14 @@
 
 package org.apache.poi.hssf.usermodel;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment;
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationProfiler;
 import org.apache.poi.ss.formula.IStabilityClassifier;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.formula.WorkbookEvaluatorProvider;
@@ -32,6 +37,7 @@ import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellValue;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.IncrementalFormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -43,7 +49,7 @@ import org.apache.poi.ss.usermodel.Workbook;
  * cell values.  Be sure to call {@link #clearAllCachedResultValues()} if any workbook cells are changed between
  * calls to evaluate~ methods on this class.
  */
-public class HSSFFormulaEvaluator implements FormulaEvaluator, WorkbookEvaluatorProvider {
+public class HSSFFormulaEvaluator implements IncrementalFormulaEvaluator, WorkbookEvaluatorProvider {
 
 	private WorkbookEvaluator _bookEvaluator;
 	private HSSFWorkbook _book;
@@ -177,6 +183,34 @@ public class HSSFFormulaEvaluator implements FormulaEvaluator, WorkbookEvaluator
 		_bookEvaluator.notifyUpdateCell(new HSSFEvaluationCell((HSSFCell)cell));
 	}
 
+	@Override
+	public List<Cell> getDependentFormulaCells(Cell cell) {
+		List<EvaluationCell> evalCells = new ArrayList<EvaluationCell>(1);
+		evalCells.add(new HSSFEvaluationCell((HSSFCell)cell));
+		return toCells(_bookEvaluator.getDependentFormulaCells(evalCells));
+	}
+
+	@Override
+	public List<Cell> recalculateDependentCells(Collection<Cell> changedCells) {
+		List<EvaluationCell> evalCells = new ArrayList<EvaluationCell>(changedCells.size());
+		for (Cell cell : changedCells) {
+			evalCells.add(new HSSFEvaluationCell((HSSFCell)cell));
+		}
+		List<Cell> result = toCells(_bookEvaluator.notifyUpdateCells(evalCells));
+		for (Cell cell : result) {
+			evaluateFormulaCell(cell);
+		}
+		return result;
+	}
+
+	private static List<Cell> toCells(List<EvaluationCell> evalCells) {
+		List<Cell> result = new ArrayList<Cell>(evalCells.size());
+		for (EvaluationCell evalCell : evalCells) {
+			result.add(((HSSFEvaluationCell)evalCell).getHSSFCell());
+		}
+		return result;
+	}
+
 	/**
 	 * If cell contains a formula, the formula is evaluated and returned,
 	 * else the CellValue simply copies the appropriate cell value from
@@ -401,4 +435,23 @@ public void evaluateAll() {
     public void setDebugEvaluationOutputForNextEval(boolean value){
         _bookEvaluator.setDebugEvaluationOutputForNextEval(value);
     }
+
+    /**
+     * Drops the cached results of formulas calling volatile functions (like RAND or NOW) and of
+     * all formulas depending on them.
+     *
+     * @see org.apache.poi.ss.formula.IVolatilityClassifier
+     */
+    public void clearVolatileCachedResultValues() {
+        _bookEvaluator.clearVolatileCachedResultValues();
+    }
+
+    /**
+     * Sets the profiler which collects statistics about the evaluations of this evaluator.
+     *
+     * @param profiler pass <code>null</code> to stop profiling
+     */
+    public void setEvaluationProfiler(EvaluationProfiler profiler) {
+        _bookEvaluator.setEvaluationProfiler(profiler);
+    }
 }
@@ -69,6 +69,7 @@ import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.ss.util.SSCellRange;
 import org.apache.poi.ss.util.SheetUtil;
 import org.apache.poi.util.Configurator;
+import org.apache.poi.util.Internal;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 
@@ -886,6 +887,11 @@ public final class HSSFSheet implements org.apache.poi.ss.usermodel.Sheet {
         return _sheet;
     }
 
+    @Internal
+    public InternalSheet getInternalSheet() {
+        return _sheet;
+    }
+
     /**
      * whether alternate expression evaluation is on
      *
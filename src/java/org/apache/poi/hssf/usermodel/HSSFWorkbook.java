@@ -76,6 +76,8 @@ import org.apache.poi.poifs.filesystem.FilteringDirectoryNode;
 import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
 import org.apache.poi.poifs.filesystem.Ole10Native;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterEvent;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.formula.FormulaShifter;
 import org.apache.poi.ss.formula.FormulaType;
@@ -90,6 +92,7 @@ import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.apache.poi.util.Configurator;
 import org.apache.poi.util.HexDump;
+import org.apache.poi.util.IOUtils;
 import org.apache.poi.util.Internal;
 import org.apache.poi.util.LittleEndian;
 import org.apache.poi.util.POILogFactory;
@@ -323,6 +326,34 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
      */
     public HSSFWorkbook(DirectoryNode directory, boolean preserveNodes)
             throws IOException
+    {
+        this(directory, preserveNodes, false);
+    }
+
+    /**
+     * given a POI POIFSFileSystem object, and a specific directory
+     *  within it, read in its Workbook and populate the high and
+     *  low level models, optionally leaving the sheets to be read
+     *  when they are first accessed.
+     * <p>When loading sheets on demand, only the workbook globals are
+     *  decoded here. The Workbook stream is kept in memory, and the
+     *  records of each sheet are decoded the first time the sheet is
+     *  retrieved, e.g. by {@link #getSheetAt(int)}. This makes opening
+     *  a large workbook cheap when only some of its sheets are needed.
+     *  Encrypted workbooks are always read in full.
+     *
+     * @param directory the POI filesystem directory to process from
+     * @param preserveNodes whether to preserve other nodes, such as
+     *        macros.  This takes more memory, so only say yes if you
+     *        need to. If set, will store all of the POIFSFileSystem
+     *        in memory
+     * @param loadSheetsOnDemand whether to defer reading each sheet
+     *        until it is first accessed
+     * @see org.apache.poi.poifs.filesystem.POIFSFileSystem
+     * @exception IOException if the stream cannot be read
+     */
+    public HSSFWorkbook(DirectoryNode directory, boolean preserveNodes, boolean loadSheetsOnDemand)
+            throws IOException
     {
         super(directory);
         String workbookName = getWorkbookDirEntryName(directory);
@@ -335,29 +366,43 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
            this.directory = null;
         }
 
-        _sheets = new ArrayList<HSSFSheet>(INITIAL_CAPACITY);
         names  = new ArrayList<HSSFName>(INITIAL_CAPACITY);
 
         // Grab the data from the workbook stream, however
         //  it happens to be spelled.
         InputStream stream = directory.createDocumentInputStream(workbookName);
 
-        List<Record> records = RecordFactory.createRecords(stream);
+        LazySheetList lazySheets = null;
+        List<Record> records;
+        if (loadSheetsOnDemand) {
+            byte[] data = IOUtils.toByteArray(stream);
+            lazySheets = LazySheetList.create(this, data);
+            int length = lazySheets == null ? data.length : lazySheets.getGlobalsLength();
+            records = RecordFactory.createRecords(new ByteArrayInputStream(data, 0, length));
+        } else {
+            records = RecordFactory.createRecords(stream);
+        }
 
         workbook = InternalWorkbook.createWorkbook(records);
         setPropertiesFromWorkbook(workbook);
         int recOffset = workbook.getNumRecords();
 
-        // convert all LabelRecord records to LabelSSTRecord
-        convertLabelRecords(records, recOffset);
-        RecordStream rs = new RecordStream(records, recOffset);
-        while (rs.hasNext()) {
-            try {
-                InternalSheet sheet = InternalSheet.createSheet(rs);
-                _sheets.add(new HSSFSheet(this, sheet));
-            } catch (UnsupportedBOFType eb) {
-                // Hopefully there's a supported one after this!
-                log.log(POILogger.WARN, "Unsupported BOF found of type " + eb.getType());
+        if (lazySheets != null) {
+            _sheets = lazySheets;
+        } else {
+            _sheets = new ArrayList<HSSFSheet>(INITIAL_CAPACITY);
+
+            // convert all LabelRecord records to LabelSSTRecord
+            convertLabelRecords(records, recOffset);
+            RecordStream rs = new RecordStream(records, recOffset);
+            while (rs.hasNext()) {
+                try {
+                    InternalSheet sheet = InternalSheet.createSheet(rs);
+                    _sheets.add(new HSSFSheet(this, sheet));
+                } catch (UnsupportedBOFType eb) {
+                    // Hopefully there's a supported one after this!
+                    log.log(POILogger.WARN, "Unsupported BOF found of type " + eb.getType());
+                }
             }
         }
 
@@ -406,6 +451,17 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
      * used internally to set the workbook properties.
      */
 
+    /**
+     * Reads a sheet from its BOF..EOF substream of the Workbook stream,
+     *  for a workbook whose sheets are loaded on demand.
+     */
+    HSSFSheet readSheet(byte[] data, int offset, int length) {
+        List<Record> records = RecordFactory.createRecords(new ByteArrayInputStream(data, offset, length));
+        convertLabelRecords(records, 0);
+        InternalSheet sheet = InternalSheet.createSheet(new RecordStream(records, 0));
+        return new HSSFSheet(this, sheet);
+    }
+
     private void setPropertiesFromWorkbook(InternalWorkbook book)
     {
         this.workbook = book;
@@ -727,12 +783,9 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
      */
     @Override
     public int getSheetIndex(org.apache.poi.ss.usermodel.Sheet sheet) {
-        for(int i=0; i<_sheets.size(); i++) {
-            if(_sheets.get(i) == sheet) {
-                return i;
-            }
-        }
-        return -1;
+        // HSSFSheet does not override equals, so this compares identity
+        //  without loading any sheets that are read on demand
+        return _sheets.indexOf(sheet);
     }
 
     /**
@@ -1380,7 +1433,7 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
             List<String> excepts = new ArrayList<String>(1);
     
             // Write out the Workbook stream
-            fs.createDocument(new ByteArrayInputStream(getBytes()), "Workbook");
+            writeWorkbookDocument(fs);
     
             // Write out our HPFS properties, if we have them
             writeProperties(fs, excepts);
@@ -1437,22 +1490,122 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
             }
             return result;
         }
+        public void visitRecords(RecordVisitor rv) {
+            int nRecs = _list.size();
+            for(int i=0; i<nRecs; i++) {
+                rv.visitRecord(_list.get(i));
+            }
+        }
     }
 
+    /**
+     * Serializes records one by one to a stream, through a buffer of bounded size
+     */
+    private static final class RecordStreamWriter implements RecordVisitor {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final OutputStream _os;
+        private final byte[] _buffer;
+        private int _bufferPos;
+        private int _totalSize;
+        private IOException _exception;
+
+        public RecordStreamWriter(OutputStream os) {
+            _os = os;
+            _buffer = new byte[BUFFER_SIZE];
+        }
+        /**
+         * @return the number of bytes serialized so far
+         */
+        public int getTotalSize() {
+            return _totalSize;
+        }
+        @Override
+        public void visitRecord(Record r) {
+            if (_exception != null) {
+                // already failed, the remaining records would be lost anyway
+                return;
+            }
+            int recSize = r.getRecordSize();
+            try {
+                if (_bufferPos + recSize > _buffer.length) {
+                    flushBuffer();
+                }
+                if (recSize > _buffer.length) {
+                    // only huge records (e.g. with many continue records) are serialized on their own
+                    byte[] data = new byte[recSize];
+                    int len = r.serialize(0, data);
+                    _os.write(data, 0, len);
+                    _totalSize += len;
+                } else {
+                    int len = r.serialize(_bufferPos, _buffer);
+                    _bufferPos += len;
+                    _totalSize += len;
+                }
+            } catch (IOException e) {
+                _exception = e;
+            }
+        }
+        private void flushBuffer() throws IOException {
+            _os.write(_buffer, 0, _bufferPos);
+            _bufferPos = 0;
+        }
+        /**
+         * Writes the buffered records to the stream
+         *
+         * @throws IOException if any of the records could not be written
+         */
+        public void flush() throws IOException {
+            if (_exception == null) {
+                flushBuffer();
+            }
+            if (_exception != null) {
+                throw _exception;
+            }
+        }
+    }
 
     /**
-     * Method getBytes - get the bytes of just the HSSF portions of the XLS file.
-     * Use this to construct a POI POIFSFileSystem yourself.
-     *
-     *
-     * @return byte[] array containing the binary representation of this workbook and all contained
-     *         sheets, rows, cells, etc.
+     * Writes the records of the workbook and its sheets as the "Workbook" document, without
+     * serializing them into one byte array (see {@link #getBytes()}) first.
      */
-    public byte[] getBytes() {
-        if (log.check( POILogger.DEBUG )) {
-            log.log(DEBUG, "HSSFWorkbook.getBytes()");
+    private void writeWorkbookDocument(NPOIFSFileSystem fs) throws IOException {
+        final SheetRecordCollector[] srCollectors = new SheetRecordCollector[_sheets.size()];
+        final int totalsize = prepareSerialization(srCollectors);
+        final IOException[] exception = { null, };
+
+        fs.createDocument("Workbook", totalsize, new POIFSWriterListener() {
+            @Override
+            public void processPOIFSWriterEvent(POIFSWriterEvent event) {
+                RecordStreamWriter rsw = new RecordStreamWriter(event.getStream());
+                workbook.visitRecords(rsw, 0);
+                for (int k = 0; k < srCollectors.length; k++) {
+                    SheetRecordCollector src = srCollectors[k];
+                    int sheetStart = rsw.getTotalSize();
+                    src.visitRecords(rsw);
+                    checkSerializedSheetSize(rsw.getTotalSize() - sheetStart, src, k);
+                }
+                try {
+                    rsw.flush();
+                } catch (IOException e) {
+                    exception[0] = e;
+                }
+            }
+        });
+        if (exception[0] != null) {
+            throw exception[0];
         }
+    }
 
+    /**
+     * Tells the workbook and its sheets that serialization is about to occur, collects the
+     * records of each sheet and sets the BOF offsets of the sheets.
+     *
+     * @param srCollectors receives the records of each sheet
+     * @return the total size of the serialized workbook
+     */
+    private int prepareSerialization(SheetRecordCollector[] srCollectors) {
         HSSFSheet[] sheets = getSheets();
         int nSheets = sheets.length;
 
@@ -1468,7 +1621,6 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
         int totalsize = workbook.getSize();
 
         // pre-calculate all the sheet sizes and set BOF indexes
-        SheetRecordCollector[] srCollectors = new SheetRecordCollector[nSheets];
         for (int k = 0; k < nSheets; k++) {
             workbook.setSheetBof(k, totalsize);
             SheetRecordCollector src = new SheetRecordCollector();
@@ -1476,22 +1628,45 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
             totalsize += src.getTotalSize();
             srCollectors[k] = src;
         }
+        return totalsize;
+    }
+
+    private static void checkSerializedSheetSize(int serializedSize, SheetRecordCollector src, int sheetIndex) {
+        if (serializedSize != src.getTotalSize()) {
+            // Wrong offset values have been passed in the call to setSheetBof() above.
+            // For books with more than one sheet, this discrepancy would cause excel
+            // to report errors and loose data while reading the workbook
+            throw new IllegalStateException("Actual serialized sheet size (" + serializedSize
+                    + ") differs from pre-calculated size (" + src.getTotalSize()
+                    + ") for sheet (" + sheetIndex + ")");
+            // TODO - add similar sanity check to ensure that Sheet.serializeIndexRecord() does not write mis-aligned offsets either
+        }
+    }
+
+
+    /**
+     * Method getBytes - get the bytes of just the HSSF portions of the XLS file.
+     * Use this to construct a POI POIFSFileSystem yourself.
+     *
+     *
+     * @return byte[] array containing the binary representation of this workbook and all contained
+     *         sheets, rows, cells, etc.
+     */
+    public byte[] getBytes() {
+        if (log.check( POILogger.DEBUG )) {
+            log.log(DEBUG, "HSSFWorkbook.getBytes()");
+        }
+
+        SheetRecordCollector[] srCollectors = new SheetRecordCollector[_sheets.size()];
+        int totalsize = prepareSerialization(srCollectors);
 
         byte[] retval = new byte[totalsize];
         int pos = workbook.serialize(0, retval);
 
-        for (int k = 0; k < nSheets; k++) {
+        for (int k = 0; k < srCollectors.length; k++) {
             SheetRecordCollector src = srCollectors[k];
             int serializedSize = src.serialize(pos, retval);
-            if (serializedSize != src.getTotalSize()) {
-                // Wrong offset values have been passed in the call to setSheetBof() above.
-                // For books with more than one sheet, this discrepancy would cause excel
-                // to report errors and loose data while reading the workbook
-                throw new IllegalStateException("Actual serialized sheet size (" + serializedSize
-                        + ") differs from pre-calculated size (" + src.getTotalSize()
-                        + ") for sheet (" + k + ")");
-                // TODO - add similar sanity check to ensure that Sheet.serializeIndexRecord() does not write mis-aligned offsets either
-            }
+            checkSerializedSheetSize(serializedSize, src, k);
             pos += serializedSize;
         }
         return retval;
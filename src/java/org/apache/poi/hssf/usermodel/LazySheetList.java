@@ -0,0 +1,215 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.util.IntList;
+import org.apache.poi.util.LittleEndian;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+
+/**
+ * The sheets of a {@link HSSFWorkbook} which was read with sheets loaded on demand.
+ * <p>
+ * The workbook stream is kept in memory, and each sheet remembers where its BOF..EOF
+ * substream lies within it. The records of a sheet are only decoded, and its
+ * {@link HSSFSheet} built, the first time the sheet is retrieved from this list.
+ * The workbook stream is released once every sheet has been loaded.
+ */
+final class LazySheetList extends AbstractList<HSSFSheet> {
+    private static final POILogger log = POILogFactory.getLogger(LazySheetList.class);
+
+    private final HSSFWorkbook _book;
+    private final int _globalsLength;
+    /** the workbook stream, <code>null</code> once all sheets are loaded */
+    private byte[] _data;
+    /** the loaded sheets, <code>null</code> for those not yet loaded */
+    private final List<HSSFSheet> _sheets;
+    private final IntList _offsets;
+    private final IntList _lengths;
+    private int _unloadedCount;
+
+    private LazySheetList(HSSFWorkbook book, byte[] data, int globalsLength, IntList offsets, IntList lengths) {
+        _book = book;
+        _data = data;
+        _globalsLength = globalsLength;
+        _offsets = offsets;
+        _lengths = lengths;
+        _unloadedCount = offsets.size();
+        _sheets = new ArrayList<HSSFSheet>(_unloadedCount);
+        for (int i = 0; i < _unloadedCount; i++) {
+            _sheets.add(null);
+        }
+        if (_unloadedCount == 0) {
+            _data = null;
+        }
+    }
+
+    /**
+     * Locates the substreams of the given workbook stream by walking the record headers,
+     * which BIFF8 never encrypts. The first substream holds the workbook globals, each of
+     * the following ones a sheet. Substreams of an unsupported BOF type are skipped, as
+     * {@link HSSFWorkbook} does when it reads all sheets up front.
+     *
+     * @return the sheet list, or <code>null</code> if the stream cannot be split up this
+     *  way (because it is encrypted) and has to be read in one go
+     */
+    static LazySheetList create(HSSFWorkbook book, byte[] data) {
+        IntList offsets = new IntList();
+        IntList lengths = new IntList();
+        int globalsLength = -1;
+        int depth = 0;
+        int start = 0;
+        int pos = 0;
+        while (pos + 4 <= data.length) {
+            int sid = LittleEndian.getUShort(data, pos);
+            int size = LittleEndian.getUShort(data, pos + 2);
+            if (depth == 0) {
+                if (sid != BOFRecord.sid) {
+                    // only padding follows the last EOF
+                    break;
+                }
+                start = pos;
+            }
+            pos += 4 + size;
+            if (sid == BOFRecord.sid) {
+                depth++;
+            } else if (sid == EOFRecord.sid) {
+                depth--;
+                if (depth == 0) {
+                    if (globalsLength < 0) {
+                        globalsLength = pos;
+                    } else {
+                        addSheet(data, start, pos, offsets, lengths);
+                    }
+                }
+            } else if (sid == FilePassRecord.sid && globalsLength < 0) {
+                return null;
+            }
+        }
+        if (depth > 0) {
+            // truncated stream, hand over whatever there is of the last substream
+            pos = Math.min(pos, data.length);
+            if (globalsLength < 0) {
+                globalsLength = pos;
+            } else {
+                addSheet(data, start, pos, offsets, lengths);
+            }
+        }
+        if (globalsLength < 0) {
+            return null;
+        }
+        return new LazySheetList(book, data, globalsLength, offsets, lengths);
+    }
+
+    private static void addSheet(byte[] data, int start, int end, IntList offsets, IntList lengths) {
+        // the BOF type follows the BIFF version in the BOF record data
+        int type = BOFRecord.TYPE_WORKSHEET;
+        if (LittleEndian.getUShort(data, start + 2) >= 4) {
+            type = LittleEndian.getUShort(data, start + 6);
+        }
+        switch (type) {
+            case BOFRecord.TYPE_WORKSHEET:
+            case BOFRecord.TYPE_CHART:
+            case BOFRecord.TYPE_EXCEL_4_MACRO:
+                offsets.add(start);
+                lengths.add(end - start);
+                break;
+            default:
+                // Hopefully there's a supported one after this!
+                log.log(POILogger.WARN, "Unsupported BOF found of type " + type);
+        }
+    }
+
+    /**
+     * @return the length of the workbook globals substream at the start of the workbook stream
+     */
+    int getGlobalsLength() {
+        return _globalsLength;
+    }
+
+    /**
+     * @return <code>true</code> if the sheet at the given index has already been decoded
+     */
+    boolean isLoaded(int index) {
+        return _sheets.get(index) != null;
+    }
+
+    @Override
+    public HSSFSheet get(int index) {
+        HSSFSheet sheet = _sheets.get(index);
+        if (sheet == null) {
+            sheet = _book.readSheet(_data, _offsets.get(index), _lengths.get(index));
+            _sheets.set(index, sheet);
+            if (--_unloadedCount == 0) {
+                _data = null;
+            }
+        }
+        return sheet;
+    }
+
+    @Override
+    public int size() {
+        return _sheets.size();
+    }
+
+    @Override
+    public void add(int index, HSSFSheet sheet) {
+        if (sheet == null) {
+            throw new IllegalArgumentException("sheet must not be null");
+        }
+        _sheets.add(index, sheet);
+        _offsets.add(index, -1);
+        _lengths.add(index, 0);
+        modCount++;
+    }
+
+    @Override
+    public HSSFSheet set(int index, HSSFSheet sheet) {
+        if (sheet == null) {
+            throw new IllegalArgumentException("sheet must not be null");
+        }
+        HSSFSheet result = get(index);
+        _sheets.set(index, sheet);
+        return result;
+    }
+
+    @Override
+    public HSSFSheet remove(int index) {
+        HSSFSheet result = get(index);
+        _sheets.remove(index);
+        _offsets.remove(index);
+        _lengths.remove(index);
+        modCount++;
+        return result;
+    }
+
+    /**
+     * Sheets not loaded yet cannot be the one looked for, so this does not load them.
+     */
+    @Override
+    public int indexOf(Object o) {
+        return o == null ? -1 : _sheets.indexOf(o);
+    }
+}
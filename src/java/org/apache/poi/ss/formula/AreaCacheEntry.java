@@ -0,0 +1,62 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.ss.formula;
+
+/**
+ * Stands for an area whose values are read through {@link AreaValuesCache} or
+ * {@link LookupIndexCache}.  Formulas served from these caches do not read the cells of the
+ * area one by one, so they consume this entry instead of the entries of the cells.  Any change
+ * of a cell within the area clears the cached results of the consuming formulas.
+ */
+final class AreaCacheEntry extends CellCacheEntry {
+
+	private final int _bookIndex;
+	private final int _sheetIndex;
+	private final int _firstRow;
+	private final int _firstColumn;
+	private final int _lastRow;
+	private final int _lastColumn;
+
+	public AreaCacheEntry(int bookIndex, int sheetIndex, int firstRow, int firstColumn,
+			int lastRow, int lastColumn) {
+		_bookIndex = bookIndex;
+		_sheetIndex = sheetIndex;
+		_firstRow = firstRow;
+		_firstColumn = firstColumn;
+		_lastRow = lastRow;
+		_lastColumn = lastColumn;
+	}
+
+	public boolean contains(int bookIndex, int sheetIndex, int rowIndex, int columnIndex) {
+		return bookIndex == _bookIndex && sheetIndex == _sheetIndex
+				&& rowIndex >= _firstRow && rowIndex <= _lastRow
+				&& columnIndex >= _firstColumn && columnIndex <= _lastColumn;
+	}
+
+	/**
+	 * Clears the cached results of the formulas using this area and of all formulas depending
+	 * on them.
+	 */
+	public void clearConsumingFormulas(IEvaluationListener listener) {
+		// the area itself is not known to the listener, only its consumers are
+		if (listener == null) {
+			recurseClearCachedFormulaResults();
+		} else {
+			recurseClearCachedFormulaResults(listener, 1);
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.util.Internal;
+
+/**
+ * The values of areas used by range aggregations like SUM, SUMIF(S) and COUNTIF(S), read
+ * into arrays once so that functions can loop over them without evaluating cell by cell.<p/>
+ *
+ * One instance is kept per {@link WorkbookEvaluator}, so all formulas over the same area
+ * share its values.  The values are only read once a second formula uses an area, and only
+ * when none of its cells are formulas.  Formulas which used the cached values depend on an
+ * {@link AreaCacheEntry} instead of the cells of the area, so an update of a cell within it
+ * clears just these formulas.  The total size of the cached areas is limited, the least
+ * recently used areas are dropped first.
+ */
+@Internal
+public final class AreaValuesCache {
+
+	/** smaller areas are cheaper to evaluate cell by cell */
+	private static final int MIN_CACHED_SIZE = 64;
+	/** bigger areas (e.g. whole sheets) would take too much memory */
+	private static final int MAX_CACHED_SIZE = 1 << 22;
+	/** the default limit of the total size of all cached areas */
+	private static final int DEFAULT_MAX_CACHED_CELLS = 1 << 20;
+	/** the maximum number of areas remembered, whether cached or not */
+	private static final int MAX_AREAS = 1 << 14;
+
+	/**
+	 * The values of a (formula free) area, in row major order.
+	 */
+	public static final class AreaValues {
+		private final int _width;
+		/**
+		 * {@link BlankEval}, {@link NumberEval}, {@link BoolEval}, {@link ErrorEval} or
+		 * {@link StringEval}, with a single instance for each distinct string
+		 */
+		private final ValueEval[] _values;
+		/** the value of each number, 0.0 for all other values */
+		private final double[] _numbers;
+		/** just the numbers, in order */
+		private final double[] _numericValues;
+		private final ErrorEval _firstError;
+		private final boolean _hasBlanks;
+		private final boolean _hasBooleans;
+
+		/* package */ AreaValues(AreaEval area) {
+			int width = area.getWidth();
+			int height = area.getHeight();
+			int size = width * height;
+			ValueEval[] values = new ValueEval[size];
+			double[] numbers = new double[size];
+			Map<String, StringEval> strings = new HashMap<String, StringEval>();
+			int numberOfNumbers = 0;
+			ErrorEval firstError = null;
+			boolean hasBlanks = false;
+			boolean hasBooleans = false;
+			for (int r = 0, i = 0; r < height; r++) {
+				for (int c = 0; c < width; c++, i++) {
+					ValueEval ve = area.getRelativeValue(r, c);
+					if (ve instanceof NumberEval) {
+						numbers[i] = ((NumberEval) ve).getNumberValue();
+						numberOfNumbers++;
+					} else if (ve instanceof StringEval) {
+						String s = ((StringEval) ve).getStringValue();
+						StringEval shared = strings.get(s);
+						if (shared == null) {
+							strings.put(s, (StringEval) ve);
+						} else {
+							ve = shared;
+						}
+					} else if (ve instanceof ErrorEval) {
+						if (firstError == null) {
+							firstError = (ErrorEval) ve;
+						}
+					} else if (ve == BlankEval.instance) {
+						hasBlanks = true;
+					} else if (ve instanceof BoolEval) {
+						hasBooleans = true;
+					}
+					values[i] = ve;
+				}
+			}
+			double[] numericValues = new double[numberOfNumbers];
+			for (int i = 0, j = 0; j < numberOfNumbers; i++) {
+				if (values[i] instanceof NumberEval) {
+					numericValues[j++] = numbers[i];
+				}
+			}
+			_width = width;
+			_values = values;
+			_numbers = numbers;
+			_numericValues = numericValues;
+			_firstError = firstError;
+			_hasBlanks = hasBlanks;
+			_hasBooleans = hasBooleans;
+		}
+
+		public int getWidth() {
+			return _width;
+		}
+
+		public int getHeight() {
+			return _values.length / _width;
+		}
+
+		public int getSize() {
+			return _values.length;
+		}
+
+		/**
+		 * @param index the row major index of the cell, <tt>relativeRow * width + relativeColumn</tt>
+		 */
+		public ValueEval getValue(int index) {
+			return _values[index];
+		}
+
+		/**
+		 * @return the value of a number, 0.0 for other values (as added by SUMIF)
+		 */
+		public double getNumber(int index) {
+			return _numbers[index];
+		}
+
+		/**
+		 * @return the numbers of this area in row major order, not to be modified
+		 */
+		public double[] getNumericValues() {
+			return _numericValues;
+		}
+
+		/**
+		 * @return the first error value in row major order, <code>null</code> if there is none
+		 */
+		public ErrorEval getFirstError() {
+			return _firstError;
+		}
+
+		public boolean hasBlanks() {
+			return _hasBlanks;
+		}
+
+		public boolean hasBooleans() {
+			return _hasBooleans;
+		}
+	}
+
+	private static final class Area {
+		private final int _sheetIndex;
+		private final int _firstRow;
+		private final int _firstColumn;
+		private final int _lastRow;
+		private final int _lastColumn;
+
+		public Area(int sheetIndex, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+			_sheetIndex = sheetIndex;
+			_firstRow = firstRow;
+			_firstColumn = firstColumn;
+			_lastRow = lastRow;
+			_lastColumn = lastColumn;
+		}
+
+		public boolean contains(int sheetIndex, int rowIndex, int columnIndex) {
+			return sheetIndex == _sheetIndex
+					&& rowIndex >= _firstRow && rowIndex <= _lastRow
+					&& columnIndex >= _firstColumn && columnIndex <= _lastColumn;
+		}
+
+		public int hashCode() {
+			return (((_sheetIndex * 31 + _firstRow) * 31 + _firstColumn) * 31 + _lastRow) * 31 + _lastColumn;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Area)) {
+				return false;
+			}
+			Area other = (Area) obj;
+			return _sheetIndex == other._sheetIndex && _firstRow == other._firstRow
+					&& _firstColumn == other._firstColumn && _lastRow == other._lastRow
+					&& _lastColumn == other._lastColumn;
+		}
+	}
+
+	private static final class AreaEntry {
+		/** the formula which used the area first, <code>null</code> if not known */
+		private final FormulaCellCacheEntry _firstUser;
+		private AreaValues _values;
+		/** whether the area contains formula cells */
+		private boolean _uncacheable;
+		/** consumed by the formulas which used the values */
+		private AreaCacheEntry _dependency;
+
+		public AreaEntry(FormulaCellCacheEntry firstUser) {
+			_firstUser = firstUser;
+		}
+	}
+
+	/** the areas used so far, the least recently used first */
+	private final LinkedHashMap<Area, AreaEntry> _entries;
+	private final int _maxCachedCells;
+	private int _numberOfCachedCells;
+
+	/* package */ AreaValuesCache() {
+		this(DEFAULT_MAX_CACHED_CELLS);
+	}
+
+	/**
+	 * @param maxCachedCells the maximum total size of the cached areas
+	 */
+	/* package */ AreaValuesCache(int maxCachedCells) {
+		_entries = new LinkedHashMap<Area, AreaEntry>(16, 0.75f, true);
+		_maxCachedCells = maxCachedCells;
+	}
+
+	/**
+	 * @return the cached values of the area, or <code>null</code> if the area must be
+	 * evaluated cell by cell
+	 */
+	public static AreaValues getValues(ValueEval eval) {
+		if (!(eval instanceof LazyAreaEval)) {
+			// array constants and the like don't live long enough to be worth caching
+			return null;
+		}
+		LazyAreaEval area = (LazyAreaEval) eval;
+		if (area.getFirstSheetIndex() != area.getLastSheetIndex()) {
+			return null;
+		}
+		SheetRefEvaluator sre = area.getSheetEvaluator();
+		return sre.getAreaValuesCache().get(sre, area);
+	}
+
+	/* package */ AreaValues get(SheetRefEvaluator sre, LazyAreaEval area) {
+		int width = area.getWidth();
+		int height = area.getHeight();
+		long size = (long) width * height;
+		if (size < MIN_CACHED_SIZE || size > Math.min(MAX_CACHED_SIZE, _maxCachedCells)) {
+			return null;
+		}
+		Area key = new Area(area.getFirstSheetIndex(), area.getFirstRow(), area.getFirstColumn(),
+				area.getLastRow(), area.getLastColumn());
+		FormulaCellCacheEntry formula = sre.getEvaluatingFormula();
+		AreaEntry entry = _entries.get(key);
+		if (entry == null) {
+			// first use of this area, evaluating it once is as cheap as reading it
+			_entries.put(key, new AreaEntry(formula));
+			trim();
+			return null;
+		}
+		if (entry._uncacheable) {
+			return null;
+		}
+		if (entry._values == null) {
+			if (formula == null || formula == entry._firstUser) {
+				// only worth it when other formulas read the same area
+				return null;
+			}
+			if (containsFormulaCells(sre, area, width, height)) {
+				// changes to the inputs of these cells would not be noticed
+				entry._uncacheable = true;
+				return null;
+			}
+			entry._values = new AreaValues(area);
+			entry._dependency = sre.createAreaEntry(area.getFirstRow(), area.getFirstColumn(),
+					area.getLastRow(), area.getLastColumn());
+			_numberOfCachedCells += entry._values.getSize();
+			trim();
+		}
+		sre.acceptAreaDependency(entry._dependency);
+		return entry._values;
+	}
+
+	private static boolean containsFormulaCells(SheetRefEvaluator sre, LazyAreaEval area, int width, int height) {
+		int firstRow = area.getFirstRow();
+		int firstColumn = area.getFirstColumn();
+		for (int r = 0; r < height; r++) {
+			for (int c = 0; c < width; c++) {
+				if (sre.isFormulaCell(firstRow + r, firstColumn + c)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drops the least recently used areas until the limits are met again.
+	 */
+	private void trim() {
+		Iterator<AreaEntry> it = _entries.values().iterator();
+		while (it.hasNext() && (_numberOfCachedCells > _maxCachedCells || _entries.size() > MAX_AREAS)) {
+			AreaEntry entry = it.next();
+			if (entry._values != null) {
+				_numberOfCachedCells -= entry._values.getSize();
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return the total size of the areas whose values are cached
+	 */
+	/* package */ int getNumberOfCachedCells() {
+		return _numberOfCachedCells;
+	}
+
+	/**
+	 * Drops the values of the areas covering the specified cell.  The formulas which used them
+	 * are cleared through their {@link AreaCacheEntry}.
+	 */
+	public void notifyUpdateCell(int sheetIndex, int rowIndex, int columnIndex) {
+		Iterator<Map.Entry<Area, AreaEntry>> it = _entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Area, AreaEntry> entry = it.next();
+			AreaEntry areaEntry = entry.getValue();
+			if ((areaEntry._values != null || areaEntry._uncacheable)
+					&& entry.getKey().contains(sheetIndex, rowIndex, columnIndex)) {
+				it.remove();
+				if (areaEntry._values != null) {
+					_numberOfCachedCells -= areaEntry._values.getSize();
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		_entries.clear();
+		_numberOfCachedCells = 0;
+	}
+}
@@ -85,6 +85,9 @@ abstract class CellCacheEntry implements ICacheEntry {
 		_consumingCells.add(cellLoc);
 
 	}
+	public final boolean hasConsumingCells() {
+		return !_consumingCells.isEmpty();
+	}
 	public final FormulaCellCacheEntry[] getConsumingCells() {
 		return _consumingCells.toArray();
 	}
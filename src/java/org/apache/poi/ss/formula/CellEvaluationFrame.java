@@ -35,7 +35,7 @@ final class CellEvaluationFrame {
 		_cce = cce;
 		_sensitiveInputCells = new HashSet<CellCacheEntry>();
 	}
-	public CellCacheEntry getCCE() {
+	public FormulaCellCacheEntry getCCE() {
 		return _cce;
 	}
 
@@ -0,0 +1,166 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+
+/**
+ * The parsed reference texts of INDIRECT, so that each text is classified and parsed only once
+ * by a {@link WorkbookEvaluator} (see
+ * {@link OperationEvaluationContext#getDynamicReference(String, String, String, String, boolean)}).
+ * Only the coordinates are kept, the sheets are looked up every time.  Texts which refer to
+ * defined names are not cached.
+ */
+final class DynamicReferenceCache {
+
+	private static final int MAX_SIZE = 10000;
+
+	/**
+	 * The coordinates of a reference text, or the error it evaluates to.
+	 */
+	static final class Target {
+		private final String _workbookName;
+		private final String _sheetName;
+		private final ErrorEval _error;
+		private final boolean _isArea;
+		private final int _firstRow;
+		private final int _firstColumn;
+		private final int _lastRow;
+		private final int _lastColumn;
+
+		private Target(String workbookName, String sheetName, ErrorEval error, boolean isArea,
+				int firstRow, int firstColumn, int lastRow, int lastColumn) {
+			_workbookName = workbookName;
+			_sheetName = sheetName;
+			_error = error;
+			_isArea = isArea;
+			_firstRow = firstRow;
+			_firstColumn = firstColumn;
+			_lastRow = lastRow;
+			_lastColumn = lastColumn;
+		}
+
+		public static Target createError(String workbookName, String sheetName, ErrorEval error) {
+			return new Target(workbookName, sheetName, error, false, 0, 0, 0, 0);
+		}
+
+		public static Target createRef(String workbookName, String sheetName, int row, int column) {
+			return new Target(workbookName, sheetName, null, false, row, column, row, column);
+		}
+
+		public static Target createArea(String workbookName, String sheetName,
+				int firstRow, int firstColumn, int lastRow, int lastColumn) {
+			return new Target(workbookName, sheetName, null, true, firstRow, firstColumn, lastRow, lastColumn);
+		}
+
+		/**
+		 * @return the workbook name of the first lookup, which (unlike the substrings of later
+		 * lookups) hits the sheet index cache of the evaluator
+		 */
+		public String getWorkbookName() {
+			return _workbookName;
+		}
+
+		public String getSheetName() {
+			return _sheetName;
+		}
+
+		public ValueEval createEval(SheetRangeEvaluator sre) {
+			if (_error != null) {
+				return _error;
+			}
+			if (_isArea) {
+				return new LazyAreaEval(_firstRow, _firstColumn, _lastRow, _lastColumn, sre);
+			}
+			return new LazyRefEval(_firstRow, _firstColumn, sre);
+		}
+	}
+
+	private static final class Key {
+		private final String _workbookName;
+		private final String _sheetName;
+		private final String _refStrPart1;
+		private final String _refStrPart2;
+		private final int _hashCode;
+
+		public Key(String workbookName, String sheetName, String refStrPart1, String refStrPart2) {
+			_workbookName = workbookName;
+			_sheetName = sheetName;
+			_refStrPart1 = refStrPart1;
+			_refStrPart2 = refStrPart2;
+			_hashCode = ((hashCode(workbookName) * 31 + hashCode(sheetName)) * 31
+					+ refStrPart1.hashCode()) * 31 + hashCode(refStrPart2);
+		}
+
+		private static int hashCode(String s) {
+			return s == null ? 0 : s.hashCode();
+		}
+
+		private static boolean isEqual(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return _hashCode == other._hashCode
+					&& _refStrPart1.equals(other._refStrPart1)
+					&& isEqual(_refStrPart2, other._refStrPart2)
+					&& isEqual(_sheetName, other._sheetName)
+					&& isEqual(_workbookName, other._workbookName);
+		}
+	}
+
+	private final Map<Key, Target> _targets;
+
+	public DynamicReferenceCache() {
+		_targets = new LinkedHashMap<Key, Target>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Target> eldest) {
+				return size() > MAX_SIZE;
+			}
+		};
+	}
+
+	/**
+	 * @return <code>null</code> if the reference text was not parsed yet
+	 */
+	public Target get(String workbookName, String sheetName, String refStrPart1, String refStrPart2) {
+		return _targets.get(new Key(workbookName, sheetName, refStrPart1, refStrPart2));
+	}
+
+	public void put(String refStrPart1, String refStrPart2, Target target) {
+		_targets.put(new Key(target._workbookName, target._sheetName, refStrPart1, refStrPart2), target);
+	}
+
+	public void clear() {
+		_targets.clear();
+	}
+}
@@ -17,6 +17,13 @@
 
 package org.apache.poi.ss.formula;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
 import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -37,8 +44,14 @@ import org.apache.poi.ss.usermodel.Cell;
  */
 final class EvaluationCache {
 
+	/** the number of area entries above which the ones no longer used are dropped */
+	private static final int MIN_AREA_ENTRY_LIMIT = 64;
+
 	private final PlainCellCache _plainCellCache;
 	private final FormulaCellCache _formulaCellCache;
+	/** the areas whose cells are not tracked one by one (see {@link AreaCacheEntry}) */
+	private final Set<AreaCacheEntry> _areaEntries;
+	private int _areaEntryLimit;
 	/** only used for testing. <code>null</code> otherwise */
 	final IEvaluationListener _evaluationListener;
 
@@ -46,6 +59,8 @@ final class EvaluationCache {
 		_evaluationListener = evaluationListener;
 		_plainCellCache = new PlainCellCache();
 		_formulaCellCache = new FormulaCellCache();
+		_areaEntries = new HashSet<AreaCacheEntry>();
+		_areaEntryLimit = MIN_AREA_ENTRY_LIMIT;
 	}
 
 	public void notifyUpdateCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
@@ -53,12 +68,13 @@ final class EvaluationCache {
 
 		int rowIndex = cell.getRowIndex();
 		int columnIndex = cell.getColumnIndex();
+		notifyAreaEntries(bookIndex, sheetIndex, rowIndex, columnIndex);
 		Loc loc = new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
 		PlainValueCellCacheEntry pcce = _plainCellCache.get(loc);
 
 		if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
 			if (fcce == null) {
-				fcce = new FormulaCellCacheEntry();
+				fcce = new FormulaCellCacheEntry(cell, bookIndex);
 				if (pcce == null) {
 					if (_evaluationListener != null) {
 						_evaluationListener.onChangeFromBlankValue(sheetIndex, rowIndex,
@@ -71,6 +87,8 @@ final class EvaluationCache {
 			} else {
 				fcce.recurseClearCachedFormulaResults(_evaluationListener);
 				fcce.clearFormulaEntry();
+				// the formula itself may have changed
+				fcce.setFormulaPlan(null);
 			}
 			if (pcce == null) {
 				// was formula cell before - no change of type
@@ -126,6 +144,44 @@ final class EvaluationCache {
 		});
 	}
 
+	/**
+	 * Registers an area used by a formula, see {@link EvaluationTracker#acceptAreaDependency(AreaCacheEntry)}
+	 */
+	public void addAreaEntry(AreaCacheEntry ace) {
+		if (!_areaEntries.add(ace) || _areaEntries.size() <= _areaEntryLimit) {
+			return;
+		}
+		// drop the areas of formulas which have been cleared since
+		Iterator<AreaCacheEntry> it = _areaEntries.iterator();
+		while (it.hasNext()) {
+			if (!it.next().hasConsumingCells()) {
+				it.remove();
+			}
+		}
+		_areaEntryLimit = Math.max(MIN_AREA_ENTRY_LIMIT, _areaEntries.size() * 2);
+	}
+
+	/**
+	 * Clears the cached results of the formulas using an area which covers the specified cell.
+	 */
+	private void notifyAreaEntries(int bookIndex, int sheetIndex, int rowIndex, int columnIndex) {
+		if (_areaEntries.isEmpty()) {
+			return;
+		}
+		List<AreaCacheEntry> changedAreas = new ArrayList<AreaCacheEntry>();
+		Iterator<AreaCacheEntry> it = _areaEntries.iterator();
+		while (it.hasNext()) {
+			AreaCacheEntry ace = it.next();
+			if (ace.contains(bookIndex, sheetIndex, rowIndex, columnIndex)) {
+				it.remove();
+				changedAreas.add(ace);
+			}
+		}
+		for (AreaCacheEntry ace : changedAreas) {
+			ace.clearConsumingFormulas(_evaluationListener);
+		}
+	}
+
 	public PlainValueCellCacheEntry getPlainValueEntry(int bookIndex, int sheetIndex,
 			int rowIndex, int columnIndex, ValueEval value) {
 
@@ -175,16 +231,95 @@ final class EvaluationCache {
 		throw new IllegalStateException("Unexpected value class (" + cls.getName() + ")");
 	}
 
-	public FormulaCellCacheEntry getOrCreateFormulaCellEntry(EvaluationCell cell) {
+	public FormulaCellCacheEntry getOrCreateFormulaCellEntry(int bookIndex, EvaluationCell cell) {
 		FormulaCellCacheEntry result = _formulaCellCache.get(cell);
 		if (result == null) {
 
-			result = new FormulaCellCacheEntry();
+			result = new FormulaCellCacheEntry(cell, bookIndex);
 			_formulaCellCache.put(cell, result);
 		}
 		return result;
 	}
 
+	/**
+	 * Finds the formula cells whose cached results were computed, directly or indirectly, from
+	 * any of the specified cells.  Only the dependencies recorded by evaluations since the cache
+	 * was last cleared are known.
+	 *
+	 * @return the entries of the dependent formula cells, each listed before the entries
+	 * depending on it
+	 */
+	public List<FormulaCellCacheEntry> getDependentFormulaCells(int bookIndex, int[] sheetIndexes,
+			EvaluationCell[] cells) {
+		final List<FormulaCellCacheEntry> directDependents = new ArrayList<FormulaCellCacheEntry>();
+		for (int i = 0; i < cells.length; i++) {
+			EvaluationCell cell = cells[i];
+			final int rowIndex = cell.getRowIndex();
+			final int columnIndex = cell.getColumnIndex();
+			FormulaCellCacheEntry fcce = _formulaCellCache.get(cell);
+			PlainValueCellCacheEntry pcce = _plainCellCache.get(new Loc(bookIndex, sheetIndexes[i], rowIndex, columnIndex));
+			if (fcce != null) {
+				Collections.addAll(directDependents, fcce.getConsumingCells());
+			}
+			if (pcce != null) {
+				Collections.addAll(directDependents, pcce.getConsumingCells());
+			}
+			for (AreaCacheEntry ace : _areaEntries) {
+				if (ace.contains(bookIndex, sheetIndexes[i], rowIndex, columnIndex)) {
+					Collections.addAll(directDependents, ace.getConsumingCells());
+				}
+			}
+			if (fcce == null && pcce == null) {
+				// formulas which have read the cell as blank
+				final BookSheetKey bsk = new BookSheetKey(bookIndex, sheetIndexes[i]);
+				_formulaCellCache.applyOperation(new IEntryOperation() {
+
+					public void processEntry(FormulaCellCacheEntry entry) {
+						if (entry.isUsingBlankCell(bsk, rowIndex, columnIndex)) {
+							directDependents.add(entry);
+						}
+					}
+				});
+			}
+		}
+
+		// depth first search, listing each entry after all entries depending on it
+		Set<FormulaCellCacheEntry> visited = new HashSet<FormulaCellCacheEntry>();
+		List<FormulaCellCacheEntry> result = new ArrayList<FormulaCellCacheEntry>();
+		List<FormulaCellCacheEntry[]> consumerStack = new ArrayList<FormulaCellCacheEntry[]>();
+		List<FormulaCellCacheEntry> entryStack = new ArrayList<FormulaCellCacheEntry>();
+		List<Integer> indexStack = new ArrayList<Integer>();
+		for (FormulaCellCacheEntry start : directDependents) {
+			if (!visited.add(start)) {
+				continue;
+			}
+			entryStack.add(start);
+			consumerStack.add(start.getConsumingCells());
+			indexStack.add(Integer.valueOf(0));
+			while (!entryStack.isEmpty()) {
+				int top = entryStack.size() - 1;
+				FormulaCellCacheEntry[] consumers = consumerStack.get(top);
+				int index = indexStack.get(top).intValue();
+				if (index < consumers.length) {
+					indexStack.set(top, Integer.valueOf(index + 1));
+					FormulaCellCacheEntry consumer = consumers[index];
+					if (visited.add(consumer)) {
+						entryStack.add(consumer);
+						consumerStack.add(consumer.getConsumingCells());
+						indexStack.add(Integer.valueOf(0));
+					}
+				} else {
+					result.add(entryStack.remove(top));
+					consumerStack.remove(top);
+					indexStack.remove(top);
+				}
+			}
+		}
+		// reverse to have each entry before its consumers
+		Collections.reverse(result);
+		return result;
+	}
+
 	/**
 	 * Should be called whenever there are changes to input cells in the evaluated workbook.
 	 */
@@ -194,8 +329,24 @@ final class EvaluationCache {
 		}
 		_plainCellCache.clear();
 		_formulaCellCache.clear();
+		_areaEntries.clear();
+		_areaEntryLimit = MIN_AREA_ENTRY_LIMIT;
 	}
+	/**
+	 * Clears the results of the formulas calling volatile functions and of all formulas
+	 * depending on them.
+	 */
+	public void clearVolatileFormulaResults() {
+		for (FormulaCellCacheEntry fcce : _formulaCellCache.getCacheEntries()) {
+			if (fcce.isVolatile() && fcce.getValue() != null) {
+				fcce.recurseClearCachedFormulaResults(_evaluationListener);
+				fcce.clearFormulaEntry();
+			}
+		}
+	}
+
 	public void notifyDeleteCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
+		notifyAreaEntries(bookIndex, sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
 
 		if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
 			FormulaCellCacheEntry fcce = _formulaCellCache.remove(cell);
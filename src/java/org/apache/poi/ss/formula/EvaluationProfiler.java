@@ -0,0 +1,330 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.OperationPtg;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Collects statistics about formula evaluations, to find out which formulas and functions
+ * dominate a slow recalculation.  Attach it with
+ * {@link WorkbookEvaluator#setEvaluationProfiler(EvaluationProfiler)} (or the
+ * <tt>setEvaluationProfiler</tt> method of the formula evaluator) and print
+ * {@link #formatReport()} after the recalculation.<p/>
+ *
+ * It records:
+ * <ul>
+ * <li>the number of calls and the total time of each function and operator.  The time includes
+ * the evaluation of formula cells which the function reads from areas</li>
+ * <li>the number of cached formula results used (hits) and formulas evaluated (misses)</li>
+ * <li>the deepest chain of formula cells which were evaluated within each other</li>
+ * <li>the formula cells which took the longest to evaluate themselves, i.e. without the time
+ * spent evaluating other formula cells</li>
+ * </ul>
+ *
+ * Like the evaluator, this class is not thread safe.  Profiling adds a timer call around
+ * each function call, so it slows the evaluation down a bit.
+ */
+public final class EvaluationProfiler {
+
+	private static final int DEFAULT_MAX_SLOWEST_CELLS = 20;
+
+	/**
+	 * The calls of one function or operator.
+	 */
+	public static final class FunctionStatistics {
+		private final String _name;
+		private long _callCount;
+		private long _totalNanos;
+
+		FunctionStatistics(String name) {
+			_name = name;
+		}
+
+		public String getName() {
+			return _name;
+		}
+
+		public long getCallCount() {
+			return _callCount;
+		}
+
+		public long getTotalNanos() {
+			return _totalNanos;
+		}
+	}
+
+	/**
+	 * The evaluation of one formula cell.
+	 */
+	public static final class CellStatistics {
+		private final CellReference _cell;
+		private final long _totalNanos;
+		private final long _selfNanos;
+
+		CellStatistics(CellReference cell, long totalNanos, long selfNanos) {
+			_cell = cell;
+			_totalNanos = totalNanos;
+			_selfNanos = selfNanos;
+		}
+
+		public CellReference getCell() {
+			return _cell;
+		}
+
+		/**
+		 * @return the time of the evaluation, including other formula cells evaluated for it
+		 */
+		public long getTotalNanos() {
+			return _totalNanos;
+		}
+
+		/**
+		 * @return the time of the evaluation, without other formula cells evaluated for it
+		 */
+		public long getSelfNanos() {
+			return _selfNanos;
+		}
+	}
+
+	private static final Comparator<CellStatistics> BY_SELF_NANOS = new Comparator<CellStatistics>() {
+		public int compare(CellStatistics a, CellStatistics b) {
+			return a._selfNanos < b._selfNanos ? -1 : a._selfNanos == b._selfNanos ? 0 : 1;
+		}
+	};
+
+	private final int _maxSlowestCells;
+	private final Map<String, FunctionStatistics> _functionStatistics;
+	/** the slowest cells, the fastest of them first */
+	private final PriorityQueue<CellStatistics> _slowestCells;
+	private long _cacheHits;
+	private long _cacheMisses;
+
+	// the formula cells currently being evaluated, outermost first
+	private int _depth;
+	private String[] _sheetNames;
+	private int[] _rowIndexes;
+	private int[] _columnIndexes;
+	private long[] _startNanos;
+	private long[] _childNanos;
+
+	private String[] _deepestSheetNames;
+	private int[] _deepestRowIndexes;
+	private int[] _deepestColumnIndexes;
+
+	public EvaluationProfiler() {
+		this(DEFAULT_MAX_SLOWEST_CELLS);
+	}
+
+	/**
+	 * @param maxSlowestCells the number of slowest cells to keep
+	 */
+	public EvaluationProfiler(int maxSlowestCells) {
+		if (maxSlowestCells < 1) {
+			throw new IllegalArgumentException("maxSlowestCells must be positive but was " + maxSlowestCells);
+		}
+		_maxSlowestCells = maxSlowestCells;
+		_functionStatistics = new HashMap<String, FunctionStatistics>();
+		_slowestCells = new PriorityQueue<CellStatistics>(maxSlowestCells, BY_SELF_NANOS);
+		_sheetNames = new String[16];
+		_rowIndexes = new int[16];
+		_columnIndexes = new int[16];
+		_startNanos = new long[16];
+		_childNanos = new long[16];
+		reset();
+	}
+
+	/**
+	 * Discards all statistics collected so far.
+	 */
+	public void reset() {
+		_functionStatistics.clear();
+		_slowestCells.clear();
+		_cacheHits = 0;
+		_cacheMisses = 0;
+		_depth = 0;
+		_deepestSheetNames = new String[0];
+		_deepestRowIndexes = new int[0];
+		_deepestColumnIndexes = new int[0];
+	}
+
+	/* package */ void onCacheHit() {
+		_cacheHits++;
+	}
+
+	/* package */ void onStartEvaluate(String sheetName, int rowIndex, int columnIndex) {
+		_cacheMisses++;
+		int depth = _depth;
+		if (depth == _startNanos.length) {
+			int newLength = depth * 2;
+			_sheetNames = Arrays.copyOf(_sheetNames, newLength);
+			_rowIndexes = Arrays.copyOf(_rowIndexes, newLength);
+			_columnIndexes = Arrays.copyOf(_columnIndexes, newLength);
+			_startNanos = Arrays.copyOf(_startNanos, newLength);
+			_childNanos = Arrays.copyOf(_childNanos, newLength);
+		}
+		_sheetNames[depth] = sheetName;
+		_rowIndexes[depth] = rowIndex;
+		_columnIndexes[depth] = columnIndex;
+		_childNanos[depth] = 0;
+		_depth = depth + 1;
+		if (_depth > _deepestRowIndexes.length) {
+			_deepestSheetNames = Arrays.copyOf(_sheetNames, _depth);
+			_deepestRowIndexes = Arrays.copyOf(_rowIndexes, _depth);
+			_deepestColumnIndexes = Arrays.copyOf(_columnIndexes, _depth);
+		}
+		_startNanos[depth] = System.nanoTime();
+	}
+
+	/* package */ void onEndEvaluate() {
+		long totalNanos = System.nanoTime() - _startNanos[--_depth];
+		int depth = _depth;
+		long selfNanos = totalNanos - _childNanos[depth];
+		if (depth > 0) {
+			_childNanos[depth - 1] += totalNanos;
+		}
+		if (_slowestCells.size() < _maxSlowestCells || selfNanos > _slowestCells.peek()._selfNanos) {
+			CellReference cell = new CellReference(_sheetNames[depth], _rowIndexes[depth], _columnIndexes[depth], false, false);
+			_slowestCells.add(new CellStatistics(cell, totalNanos, selfNanos));
+			if (_slowestCells.size() > _maxSlowestCells) {
+				_slowestCells.poll();
+			}
+		}
+		_sheetNames[depth] = null;
+	}
+
+	/**
+	 * @param startNanos the value of {@link System#nanoTime()} before the operation was called
+	 */
+	/* package */ void onEndOperation(OperationPtg ptg, long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		String name = getOperationName(ptg);
+		FunctionStatistics statistics = _functionStatistics.get(name);
+		if (statistics == null) {
+			statistics = new FunctionStatistics(name);
+			_functionStatistics.put(name, statistics);
+		}
+		statistics._callCount++;
+		statistics._totalNanos += nanos;
+	}
+
+	private static String getOperationName(OperationPtg ptg) {
+		if (ptg instanceof AbstractFunctionPtg) {
+			return ((AbstractFunctionPtg) ptg).getName();
+		}
+		// operators, e.g. 'AddPtg' -> 'Add'
+		String className = ptg.getClass().getSimpleName();
+		return className.endsWith("Ptg") ? className.substring(0, className.length() - 3) : className;
+	}
+
+	/**
+	 * @return the number of formula results taken from the cache
+	 */
+	public long getCacheHits() {
+		return _cacheHits;
+	}
+
+	/**
+	 * @return the number of formula cells evaluated
+	 */
+	public long getCacheMisses() {
+		return _cacheMisses;
+	}
+
+	/**
+	 * @return the statistics of the functions and operators, the most time consuming first
+	 */
+	public List<FunctionStatistics> getFunctionStatistics() {
+		List<FunctionStatistics> result = new ArrayList<FunctionStatistics>(_functionStatistics.values());
+		Collections.sort(result, new Comparator<FunctionStatistics>() {
+			public int compare(FunctionStatistics a, FunctionStatistics b) {
+				return a._totalNanos > b._totalNanos ? -1 : a._totalNanos == b._totalNanos ? 0 : 1;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return the formula cells which took the longest to evaluate themselves, the slowest first
+	 */
+	public List<CellStatistics> getSlowestCells() {
+		List<CellStatistics> result = new ArrayList<CellStatistics>(_slowestCells);
+		Collections.sort(result, Collections.reverseOrder(BY_SELF_NANOS));
+		return result;
+	}
+
+	/**
+	 * @return the deepest chain of formula cells evaluated within each other, the outermost first
+	 */
+	public List<CellReference> getDeepestDependencyChain() {
+		List<CellReference> result = new ArrayList<CellReference>(_deepestRowIndexes.length);
+		for (int i = 0; i < _deepestRowIndexes.length; i++) {
+			result.add(new CellReference(_deepestSheetNames[i], _deepestRowIndexes[i], _deepestColumnIndexes[i], false, false));
+		}
+		return result;
+	}
+
+	/**
+	 * @return a human readable report of the collected statistics
+	 */
+	public String formatReport() {
+		StringBuilder sb = new StringBuilder(1024);
+		long lookups = _cacheHits + _cacheMisses;
+		sb.append("Formula results: ").append(_cacheMisses).append(" evaluated, ")
+				.append(_cacheHits).append(" from cache");
+		if (lookups > 0) {
+			sb.append(" (hit ratio ").append(Math.round(_cacheHits * 1000.0 / lookups) / 10.0).append("%)");
+		}
+		sb.append('\n');
+
+		sb.append("Functions (calls, total ms):\n");
+		for (FunctionStatistics statistics : getFunctionStatistics()) {
+			sb.append("  ").append(statistics._name).append(": ").append(statistics._callCount)
+					.append(", ").append(formatMillis(statistics._totalNanos)).append('\n');
+		}
+
+		List<CellReference> chain = getDeepestDependencyChain();
+		sb.append("Deepest dependency chain (").append(chain.size()).append(" cells):");
+		for (CellReference cell : chain) {
+			sb.append(' ').append(cell.formatAsString());
+		}
+		sb.append('\n');
+
+		sb.append("Slowest cells (self ms, total ms):\n");
+		for (CellStatistics statistics : getSlowestCells()) {
+			sb.append("  ").append(statistics._cell.formatAsString()).append(": ")
+					.append(formatMillis(statistics._selfNanos)).append(", ")
+					.append(formatMillis(statistics._totalNanos)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String formatMillis(long nanos) {
+		return String.valueOf(Math.round(nanos / 1000.0) / 1000.0);
+	}
+}
@@ -131,6 +131,35 @@ final class EvaluationTracker {
 		}
 	}
 
+	/**
+	 * @return the entry of the formula cell currently being evaluated, <code>null</code> if
+	 * there is none
+	 */
+	public FormulaCellCacheEntry getCurrentFormula() {
+		int nFrames = _evaluationFrames.size();
+		if (nFrames < 1) {
+			return null;
+		}
+		return _evaluationFrames.get(nFrames - 1).getCCE();
+	}
+
+	/**
+	 * Records that the currently evaluating formula used cached values of the specified area
+	 * instead of reading its cells.
+	 */
+	public void acceptAreaDependency(AreaCacheEntry ace) {
+		int prevFrameIndex = _evaluationFrames.size() - 1;
+		if (prevFrameIndex < 0) {
+			// Top level frame, there is no 'cell' above this frame that is using the area
+			return;
+		}
+		CellEvaluationFrame consumingFrame = _evaluationFrames.get(prevFrameIndex);
+		consumingFrame.addSensitiveInputCell(ace);
+		// linked right away, so that the area is known to be in use while the formula is evaluated
+		ace.addConsumingCell(consumingFrame.getCCE());
+		_cache.addAreaEntry(ace);
+	}
+
 	public void acceptPlainValueDependency(int bookIndex, int sheetIndex,
 			int rowIndex, int columnIndex, ValueEval value) {
 		// Tell the currently evaluating cell frame that it has a dependency on the specified
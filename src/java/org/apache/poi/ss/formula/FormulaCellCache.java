@@ -38,7 +38,7 @@ final class FormulaCellCache {
 		_formulaEntriesByCell = new HashMap<Object, FormulaCellCacheEntry>();
 	}
 
-	public CellCacheEntry[] getCacheEntries() {
+	public FormulaCellCacheEntry[] getCacheEntries() {
 
 		FormulaCellCacheEntry[] result = new FormulaCellCacheEntry[_formulaEntriesByCell.size()];
 		_formulaEntriesByCell.values().toArray(result);
@@ -41,8 +41,43 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 
 	private FormulaUsedBlankCellSet _usedBlankCellGroup;
 
+	/** the cell of this entry, <code>null</code> if not known */
+	private final EvaluationCell _cell;
+	private final int _bookIndex;
+
+	/** the compiled formula of the cell, kept until the cell is changed */
+	private FormulaPlan _formulaPlan;
+
 	public FormulaCellCacheEntry() {
-		// leave fields un-set
+		this(null, -1);
+	}
+
+	public FormulaCellCacheEntry(EvaluationCell cell, int bookIndex) {
+		_cell = cell;
+		_bookIndex = bookIndex;
+	}
+
+	public EvaluationCell getCell() {
+		return _cell;
+	}
+
+	public int getBookIndex() {
+		return _bookIndex;
+	}
+
+	public FormulaPlan getFormulaPlan() {
+		return _formulaPlan;
+	}
+
+	public void setFormulaPlan(FormulaPlan formulaPlan) {
+		_formulaPlan = formulaPlan;
+	}
+
+	/**
+	 * @return <code>true</code> if the formula calls a volatile function (only known once it was evaluated)
+	 */
+	public boolean isVolatile() {
+		return _formulaPlan != null && _formulaPlan.isVolatile();
 	}
 	
 	public boolean isInputSensitive() {
@@ -110,6 +145,13 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 		_usedBlankCellGroup = usedBlankAreas;
 	}
 
+	/**
+	 * @return whether the current result was computed from the specified cell while it was blank
+	 */
+	public boolean isUsingBlankCell(BookSheetKey bsk, int rowIndex, int columnIndex) {
+		return _usedBlankCellGroup != null && _usedBlankCellGroup.containsCell(bsk, rowIndex, columnIndex);
+	}
+
 	public void notifyUpdatedBlankCell(BookSheetKey bsk, int rowIndex, int columnIndex, IEvaluationListener evaluationListener) {
 		if (_usedBlankCellGroup != null) {
 			if (_usedBlankCellGroup.containsCell(bsk, rowIndex, columnIndex)) {
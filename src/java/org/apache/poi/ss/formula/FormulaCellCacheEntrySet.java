@@ -36,6 +36,10 @@ final class FormulaCellCacheEntrySet {
 		_arr = EMPTY_ARRAY;
 	}
 
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
 	public FormulaCellCacheEntry[] toArray() {
 		int nItems = _size;
 		if (nItems < 1) {
@@ -0,0 +1,129 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.ptg.OperandPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+
+/**
+ * A bounded cache of parsed formulas, shared by all workbooks, so that filling many cells
+ * with the same formula text only tokenizes it once.<p/>
+ *
+ * Only formulas which the parser could tokenize without consulting the workbook are cached,
+ * i.e. formulas without defined names, sheet references or user defined functions.  Their
+ * tokens only depend on the formula text, the {@link FormulaType} and the
+ * {@link SpreadsheetVersion} (and not on the sheet index, which is only used to resolve
+ * names), so they stay valid however the workbooks change.<p/>
+ *
+ * Tokens are handed out as copies, because the operand tokens are mutable.
+ */
+final class FormulaParseCache {
+
+	private static final int MAX_SIZE = 1000;
+
+	private static final class Key {
+		private final String _formula;
+		private final int _formulaType;
+		private final SpreadsheetVersion _ssVersion;
+		private final int _hashCode;
+
+		public Key(String formula, int formulaType, SpreadsheetVersion ssVersion) {
+			_formula = formula;
+			_formulaType = formulaType;
+			_ssVersion = ssVersion;
+			_hashCode = (formula.hashCode() * 31 + formulaType) * 31 + ssVersion.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return _formulaType == other._formulaType
+					&& _ssVersion == other._ssVersion
+					&& _formula.equals(other._formula);
+		}
+	}
+
+	private static final Map<Key, Ptg[]> _parsedFormulas = new LinkedHashMap<Key, Ptg[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Ptg[]> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private FormulaParseCache() {
+		// no instances of this class
+	}
+
+	/**
+	 * @return a copy of the cached tokens of the formula, or <code>null</code> if it is not cached
+	 */
+	public static Ptg[] get(String formula, int formulaType, SpreadsheetVersion ssVersion) {
+		Ptg[] ptgs;
+		synchronized (_parsedFormulas) {
+			ptgs = _parsedFormulas.get(new Key(formula, formulaType, ssVersion));
+		}
+		return ptgs == null ? null : copy(ptgs);
+	}
+
+	/**
+	 * Caches a copy of the tokens of a formula which was parsed without the workbook.
+	 */
+	public static void put(String formula, int formulaType, SpreadsheetVersion ssVersion, Ptg[] ptgs) {
+		Ptg[] copy = copy(ptgs);
+		synchronized (_parsedFormulas) {
+			_parsedFormulas.put(new Key(formula, formulaType, ssVersion), copy);
+		}
+	}
+
+	/* package */ static void clear() {
+		synchronized (_parsedFormulas) {
+			_parsedFormulas.clear();
+		}
+	}
+
+	/* package */ static int size() {
+		synchronized (_parsedFormulas) {
+			return _parsedFormulas.size();
+		}
+	}
+
+	/**
+	 * Copies the operand tokens.  The other tokens are either shared constants or not
+	 * modified once the formula is parsed.
+	 */
+	private static Ptg[] copy(Ptg[] ptgs) {
+		Ptg[] result = new Ptg[ptgs.length];
+		for (int i = 0; i < ptgs.length; i++) {
+			Ptg ptg = ptgs[i];
+			result[i] = ptg instanceof OperandPtg ? ((OperandPtg) ptg).copy() : ptg;
+		}
+		return result;
+	}
+}
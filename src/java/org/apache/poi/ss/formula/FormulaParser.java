@@ -118,6 +118,12 @@ public final class FormulaParser {
 
 	private final int _sheetIndex;
 
+	/**
+	 * <code>true</code> if the parser had to look up names or sheets in the workbook, in which
+	 * case the tokens can not be reused by other workbooks (see {@link FormulaParseCache})
+	 */
+	private boolean _usedWorkbook;
+
 
 	/**
 	 * Create the formula parser, with the string that is to be
@@ -156,8 +162,16 @@ public final class FormulaParser {
 	 */
 	public static Ptg[] parse(String formula, FormulaParsingWorkbook workbook, int formulaType, int sheetIndex) {
 		FormulaParser fp = new FormulaParser(formula, workbook, sheetIndex);
+		Ptg[] result = FormulaParseCache.get(formula, formulaType, fp._ssVersion);
+		if (result != null) {
+			return result;
+		}
 		fp.parse();
-		return fp.getRPNPtg(formulaType);
+		result = fp.getRPNPtg(formulaType);
+		if (!fp._usedWorkbook) {
+			FormulaParseCache.put(formula, formulaType, fp._ssVersion, result);
+		}
+		return result;
 	}
 	
 	/** Read New Character From Input Stream */
@@ -431,6 +445,7 @@ public final class FormulaParser {
                         throw new FormulaParseException("Cell reference or Named Range "
                                 + "expected after sheet name at index " + _pointer + ".");
                     }
+                    _usedWorkbook = true;
                     Ptg nameXPtg = _book.getNameXPtg(name, sheetIden);
                     if (nameXPtg == null) {
                         throw new FormulaParseException("Specified name '" + name +
@@ -565,6 +580,7 @@ public final class FormulaParser {
 			// Only test cases omit the book (expecting it not to be needed)
 			throw new IllegalStateException("Need book to evaluate name '" + name + "'");
 		}
+		_usedWorkbook = true;
 		EvaluationName evalName = _book.getName(name, _sheetIndex);
 		if (evalName == null) {
 			throw new FormulaParseException("Specified named range '"
@@ -626,6 +642,7 @@ public final class FormulaParser {
 			if (sheetIden == null) {
 				ptg = new RefPtg(cr);
 			} else {
+				_usedWorkbook = true;
 				ptg = _book.get3DReferencePtg(cr, sheetIden);
 			}
 		} else {
@@ -634,6 +651,7 @@ public final class FormulaParser {
 			if (sheetIden == null) {
 				ptg = new AreaPtg(areaRef);
 			} else {
+				_usedWorkbook = true;
 				ptg = _book.get3DReferencePtg(areaRef, sheetIden);
 			}
 		}
@@ -945,6 +963,7 @@ public final class FormulaParser {
 				// Only test cases omit the book (expecting it not to be needed)
 				throw new IllegalStateException("Need book to evaluate name '" + name + "'");
 			}
+			_usedWorkbook = true;
 			// Check to see if name is a named range in the workbook
 			EvaluationName hName = _book.getName(name, _sheetIndex);
 			if (hName != null) {
@@ -0,0 +1,442 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.EvaluationException;
+import org.apache.poi.ss.formula.eval.MissingArgEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
+import org.apache.poi.ss.formula.functions.Choose;
+import org.apache.poi.ss.formula.functions.Function;
+import org.apache.poi.ss.formula.functions.IfFunc;
+import org.apache.poi.ss.formula.ptg.*;
+import org.apache.poi.util.LittleEndianByteArrayOutputStream;
+
+/**
+ * The tokens of a formula, compiled once into a form that can be evaluated repeatedly
+ * without re-examining each {@link Ptg}.<p/>
+ *
+ * Constants are converted to their values up front, operator and function implementations are
+ * looked up, and the byte distances of the tAttr control tokens are turned into token counts.
+ * Plain cell and area references are stored relative to the formula cell where the reference is
+ * relative, so a plan can be shared by all cells holding the same formula copied across rows or
+ * columns (see {@link #createKey(Ptg[], int, int)}).<p/>
+ *
+ * Formulas which cannot be compiled (e.g. malformed skip distances) are evaluated by
+ * {@link WorkbookEvaluator} the usual way.
+ *
+ * For POI internal use only
+ */
+final class FormulaPlan {
+
+	private static final byte SKIP = 0;
+	private static final byte CONSTANT = 1;
+	private static final byte OPERATION = 2;
+	private static final byte OPERAND = 3;
+	private static final byte REF = 4;
+	private static final byte AREA = 5;
+	private static final byte ATTR_CHOOSE = 6;
+	private static final byte ATTR_IF = 7;
+	private static final byte ATTR_SKIP = 8;
+
+	private static final int FIRST_ROW_RELATIVE = 0x01;
+	private static final int FIRST_COL_RELATIVE = 0x02;
+	private static final int LAST_ROW_RELATIVE = 0x04;
+	private static final int LAST_COL_RELATIVE = 0x08;
+
+	/** marks a (relocatable) plain reference in a key, never a char of a serialized token */
+	private static final char KEY_REF = '\u0100';
+	private static final char KEY_END = '\u0101';
+
+	private final Ptg[] _ptgs;
+	/** <code>null</code> if the formula could not be compiled */
+	private final byte[] _actions;
+	/**
+	 * per token: the ValueEval of a constant, the OperationPtg of an operation, the
+	 * coordinates of a plain reference or the skip counts of a tAttr token
+	 */
+	private final Object[] _data;
+	/** <code>null</code> entries are evaluated through {@link OperationEvaluatorFactory} */
+	private final Function[] _functions;
+	/** <code>true</code> if the formula calls a volatile function, see {@link IVolatilityClassifier} */
+	private boolean _isVolatile;
+
+	private FormulaPlan(Ptg[] ptgs, byte[] actions, Object[] data, Function[] functions) {
+		_ptgs = ptgs;
+		_actions = actions;
+		_data = data;
+		_functions = functions;
+	}
+
+	/**
+	 * @param rowIndex row of the formula cell, relative references are stored as offsets from it
+	 * @param columnIndex column of the formula cell
+	 */
+	public static FormulaPlan compile(Ptg[] ptgs, int rowIndex, int columnIndex) {
+		int nPtgs = ptgs.length;
+		byte[] actions = new byte[nPtgs];
+		Object[] data = new Object[nPtgs];
+		Function[] functions = new Function[nPtgs];
+		try {
+			for (int i = 0; i < nPtgs; i++) {
+				Ptg ptg = ptgs[i];
+				if (ptg instanceof AttrPtg) {
+					AttrPtg attrPtg = (AttrPtg) ptg;
+					if (attrPtg.isOptimizedChoose()) {
+						int[] jumpTable = attrPtg.getJumpTable();
+						int nChoices = jumpTable.length;
+						// Encoded dist for tAttrChoose includes size of jump table
+						int jumpTableSize = nChoices*2+2;
+						int[] skips = new int[nChoices + 1];
+						// +4 for tFuncFar(CHOOSE)
+						skips[0] = countTokensToBeSkipped(ptgs, i, attrPtg.getChooseFuncOffset() + 4 - jumpTableSize);
+						for (int j = 0; j < nChoices; j++) {
+							skips[j + 1] = countTokensToBeSkipped(ptgs, i, jumpTable[j] - jumpTableSize);
+						}
+						actions[i] = ATTR_CHOOSE;
+						data[i] = skips;
+						continue;
+					}
+					if (attrPtg.isOptimizedIf()) {
+						int falseSkip = countTokensToBeSkipped(ptgs, i, attrPtg.getData());
+						int j = i + falseSkip;
+						AttrPtg gotoPtg = (AttrPtg) ptgs[j];
+						int errorSkip = falseSkip + countTokensToBeSkipped(ptgs, j, gotoPtg.getData()+1);
+						Ptg nextPtg = ptgs[j+1];
+						// an IF without a false param (as opposed to MissingArgPtg as the false param)
+						boolean hasFalseParam = !(nextPtg instanceof FuncVarPtg
+								&& ((FuncVarPtg)nextPtg).getFunctionIndex() == FunctionMetadataRegistry.FUNCTION_INDEX_IF);
+						actions[i] = ATTR_IF;
+						data[i] = new int[] { falseSkip, errorSkip, hasFalseParam ? 0 : 1, };
+						continue;
+					}
+					if (attrPtg.isSkip()) {
+						actions[i] = ATTR_SKIP;
+						data[i] = new int[] { countTokensToBeSkipped(ptgs, i, attrPtg.getData()+1), };
+						continue;
+					}
+					if (attrPtg.isSum()) {
+						// Excel prefers to encode 'SUM()' as a tAttr token
+						ptg = FuncVarPtg.SUM;
+					}
+				}
+				if (ptg instanceof ControlPtg || ptg instanceof MemFuncPtg
+						|| ptg instanceof MemAreaPtg || ptg instanceof MemErrPtg || ptg instanceof UnionPtg) {
+					actions[i] = SKIP;
+				} else if (ptg instanceof OperationPtg) {
+					actions[i] = OPERATION;
+					data[i] = ptg;
+					functions[i] = OperationEvaluatorFactory.getFunction((OperationPtg) ptg);
+				} else if (ptg instanceof RefPtg) {
+					RefPtg rptg = (RefPtg) ptg;
+					int flags = (rptg.isRowRelative() ? FIRST_ROW_RELATIVE : 0)
+							| (rptg.isColRelative() ? FIRST_COL_RELATIVE : 0);
+					actions[i] = REF;
+					data[i] = new int[] {
+						relocate(rptg.getRow(), flags, FIRST_ROW_RELATIVE, rowIndex),
+						relocate(rptg.getColumn(), flags, FIRST_COL_RELATIVE, columnIndex),
+						0, 0, flags,
+					};
+				} else if (ptg instanceof AreaPtg) {
+					AreaPtg aptg = (AreaPtg) ptg;
+					int flags = (aptg.isFirstRowRelative() ? FIRST_ROW_RELATIVE : 0)
+							| (aptg.isFirstColRelative() ? FIRST_COL_RELATIVE : 0)
+							| (aptg.isLastRowRelative() ? LAST_ROW_RELATIVE : 0)
+							| (aptg.isLastColRelative() ? LAST_COL_RELATIVE : 0);
+					actions[i] = AREA;
+					data[i] = new int[] {
+						relocate(aptg.getFirstRow(), flags, FIRST_ROW_RELATIVE, rowIndex),
+						relocate(aptg.getFirstColumn(), flags, FIRST_COL_RELATIVE, columnIndex),
+						relocate(aptg.getLastRow(), flags, LAST_ROW_RELATIVE, rowIndex),
+						relocate(aptg.getLastColumn(), flags, LAST_COL_RELATIVE, columnIndex),
+						flags,
+					};
+				} else {
+					ValueEval constant = getConstantValue(ptg);
+					if (constant == null) {
+						actions[i] = OPERAND;
+					} else {
+						actions[i] = CONSTANT;
+						data[i] = constant;
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			// leave it to the evaluator to report any problems when (and if) the tokens are reached
+			return new FormulaPlan(ptgs, null, null, null);
+		}
+		return new FormulaPlan(ptgs, actions, data, functions);
+	}
+
+	private static int relocate(int value, int flags, int flag, int base) {
+		return (flags & flag) == 0 ? value : value - base;
+	}
+
+	private static ValueEval getConstantValue(Ptg ptg) {
+		if (ptg instanceof IntPtg) {
+			return new NumberEval(((IntPtg)ptg).getValue());
+		}
+		if (ptg instanceof NumberPtg) {
+			return new NumberEval(((NumberPtg)ptg).getValue());
+		}
+		if (ptg instanceof StringPtg) {
+			return new StringEval(((StringPtg) ptg).getValue());
+		}
+		if (ptg instanceof BoolPtg) {
+			return BoolEval.valueOf(((BoolPtg) ptg).getValue());
+		}
+		if (ptg instanceof ErrPtg) {
+			return ErrorEval.valueOf(((ErrPtg) ptg).getErrorCode());
+		}
+		if (ptg instanceof MissingArgPtg) {
+			return MissingArgEval.instance;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a key which is equal for formulas that only differ by the position of their cell,
+	 * i.e. a formula that was filled down or right.  Plans of formulas with equal keys are
+	 * interchangeable.
+	 *
+	 * @return <code>null</code> if the formula contains tokens which are not known to be fully
+	 * described by their serialized form (e.g. array constants or XSSF 3D references)
+	 */
+	public static String createKey(Ptg[] ptgs, int rowIndex, int columnIndex) {
+		StringBuilder sb = new StringBuilder(ptgs.length * 8);
+		byte[] buf = new byte[64];
+		for (int i = 0; i < ptgs.length; i++) {
+			Ptg ptg = ptgs[i];
+			if (ptg instanceof RefPtg) {
+				RefPtg rptg = (RefPtg) ptg;
+				sb.append(KEY_REF).append((char)rptg.getPtgClass());
+				appendCoordinate(sb, rptg.getRow(), rptg.isRowRelative(), rowIndex);
+				appendCoordinate(sb, rptg.getColumn(), rptg.isColRelative(), columnIndex);
+				sb.append(KEY_END);
+				continue;
+			}
+			if (ptg instanceof AreaPtg) {
+				AreaPtg aptg = (AreaPtg) ptg;
+				sb.append(KEY_REF).append(KEY_REF).append((char)aptg.getPtgClass());
+				appendCoordinate(sb, aptg.getFirstRow(), aptg.isFirstRowRelative(), rowIndex);
+				appendCoordinate(sb, aptg.getFirstColumn(), aptg.isFirstColRelative(), columnIndex);
+				appendCoordinate(sb, aptg.getLastRow(), aptg.isLastRowRelative(), rowIndex);
+				appendCoordinate(sb, aptg.getLastColumn(), aptg.isLastColRelative(), columnIndex);
+				sb.append(KEY_END);
+				continue;
+			}
+			if (!isFullySerialized(ptg)) {
+				return null;
+			}
+			int size = ptg.getSize();
+			if (size > buf.length) {
+				buf = new byte[size];
+			}
+			ptg.write(new LittleEndianByteArrayOutputStream(buf, 0, size));
+			for (int j = 0; j < size; j++) {
+				sb.append((char)(buf[j] & 0xFF));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendCoordinate(StringBuilder sb, int value, boolean isRelative, int base) {
+		if (isRelative) {
+			sb.append('r').append(value - base);
+		} else {
+			sb.append(value);
+		}
+		sb.append(',');
+	}
+
+	private static boolean isFullySerialized(Ptg ptg) {
+		return ptg instanceof ScalarConstantPtg || ptg instanceof OperationPtg
+				|| ptg instanceof AttrPtg || ptg instanceof ParenthesisPtg
+				|| ptg instanceof Ref3DPtg || ptg instanceof Area3DPtg
+				|| ptg instanceof NamePtg || ptg instanceof NameXPtg
+				|| ptg instanceof MemFuncPtg || ptg instanceof MemAreaPtg || ptg instanceof MemErrPtg
+				|| ptg instanceof RefErrorPtg || ptg instanceof AreaErrPtg
+				|| ptg instanceof DeletedRef3DPtg || ptg instanceof DeletedArea3DPtg;
+	}
+
+	/**
+	 * @return <code>false</code> if the formula must be evaluated token by token from {@link #getTokens()}
+	 */
+	public boolean isCompiled() {
+		return _actions != null;
+	}
+
+	public boolean isVolatile() {
+		return _isVolatile;
+	}
+
+	/**
+	 * Set by the evaluator, before the plan is shared between cells.
+	 */
+	public void setVolatile(boolean isVolatile) {
+		_isVolatile = isVolatile;
+	}
+
+	/**
+	 * @return the tokens this plan was compiled from (for a shared plan, those of the first cell)
+	 */
+	public Ptg[] getTokens() {
+		return _ptgs;
+	}
+
+	public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+		byte[] actions = _actions;
+		Object[] data = _data;
+		int rowIndex = ec.getRowIndex();
+		int columnIndex = ec.getColumnIndex();
+		EvaluationProfiler profiler = evaluator.getEvaluationProfiler();
+
+		ValueEval[] stack = new ValueEval[actions.length + 1];
+		int stackSize = 0;
+		for (int i = 0, iSize = actions.length; i < iSize; i++) {
+			ValueEval opResult;
+			switch (actions[i]) {
+				case SKIP:
+					continue;
+				case CONSTANT:
+					stack[stackSize++] = (ValueEval) data[i];
+					continue;
+				case ATTR_CHOOSE: {
+					ValueEval arg0 = stack[--stackSize];
+					int[] skips = (int[]) data[i];
+					int nChoices = skips.length - 1;
+					int skipIndex;
+					try {
+						int switchIndex = Choose.evaluateFirstArg(arg0, rowIndex, columnIndex);
+						if (switchIndex<1 || switchIndex > nChoices) {
+							stack[stackSize++] = ErrorEval.VALUE_INVALID;
+							skipIndex = 0;
+						} else {
+							skipIndex = switchIndex;
+						}
+					} catch (EvaluationException e) {
+						stack[stackSize++] = e.getErrorEval();
+						skipIndex = 0;
+					}
+					i += skips[skipIndex];
+					continue;
+				}
+				case ATTR_IF: {
+					ValueEval arg0 = stack[--stackSize];
+					int[] skips = (int[]) data[i];
+					boolean evaluatedPredicate;
+					try {
+						evaluatedPredicate = IfFunc.evaluateFirstArg(arg0, rowIndex, columnIndex);
+					} catch (EvaluationException e) {
+						stack[stackSize++] = e.getErrorEval();
+						i += skips[1];
+						continue;
+					}
+					if (!evaluatedPredicate) {
+						i += skips[0];
+						if (skips[2] != 0) {
+							i++;
+							stack[stackSize++] = BoolEval.FALSE;
+						}
+					}
+					continue;
+				}
+				case ATTR_SKIP:
+					i += ((int[]) data[i])[0];
+					if (stack[stackSize - 1] == MissingArgEval.instance) {
+						stack[stackSize - 1] = BlankEval.instance;
+					}
+					continue;
+				case OPERATION: {
+					OperationPtg optg = (OperationPtg) data[i];
+					int numops = optg.getNumberOfOperands();
+					ValueEval[] ops = new ValueEval[numops];
+					stackSize -= numops;
+					if (stackSize < 0) {
+						throw new IllegalStateException("evaluation stack underflow");
+					}
+					System.arraycopy(stack, stackSize, ops, 0, numops);
+					Function function = _functions[i];
+					long startNanos = profiler == null ? 0 : System.nanoTime();
+					if (function == null) {
+						opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+					} else {
+						opResult = function.evaluate(ops, rowIndex, (short) columnIndex);
+					}
+					if (profiler != null) {
+						profiler.onEndOperation(optg, startNanos);
+					}
+					break;
+				}
+				case REF: {
+					int[] c = (int[]) data[i];
+					int flags = c[4];
+					opResult = ec.getRefEval(
+							relocate(c[0], flags, FIRST_ROW_RELATIVE, -rowIndex),
+							relocate(c[1], flags, FIRST_COL_RELATIVE, -columnIndex));
+					break;
+				}
+				case AREA: {
+					int[] c = (int[]) data[i];
+					int flags = c[4];
+					opResult = ec.getAreaEval(
+							relocate(c[0], flags, FIRST_ROW_RELATIVE, -rowIndex),
+							relocate(c[1], flags, FIRST_COL_RELATIVE, -columnIndex),
+							relocate(c[2], flags, LAST_ROW_RELATIVE, -rowIndex),
+							relocate(c[3], flags, LAST_COL_RELATIVE, -columnIndex));
+					break;
+				}
+				default:
+					opResult = evaluator.getEvalForPtg(_ptgs[i], ec);
+					break;
+			}
+			if (opResult == null) {
+				throw new RuntimeException("Evaluation result must not be null");
+			}
+			stack[stackSize++] = opResult;
+		}
+
+		ValueEval value = stack[--stackSize];
+		if (stackSize != 0) {
+			throw new IllegalStateException("evaluation stack not empty");
+		}
+		return WorkbookEvaluator.dereferenceResult(value, rowIndex, columnIndex);
+	}
+
+	/**
+	 * Calculates the number of tokens to skip to achieve the specified <tt>distInBytes</tt>,
+	 * in the same way as the evaluator does upon reaching a tAttrSkip.
+	 */
+	private static int countTokensToBeSkipped(Ptg[] ptgs, int startIndex, int distInBytes) {
+		int remBytes = distInBytes;
+		int index = startIndex;
+		while (remBytes != 0) {
+			index++;
+			remBytes -= ptgs[index].getSize();
+			if (remBytes < 0) {
+				throw new RuntimeException("Bad skip distance (wrong token size calculation).");
+			}
+		}
+		return index-startIndex;
+	}
+}
@@ -0,0 +1,43 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.util.Internal;
+
+/**
+ * Supplies the results of formula cells which have been evaluated elsewhere, for example by
+ * another {@link WorkbookEvaluator} over the same workbook.  A {@link WorkbookEvaluator} asks
+ * its provider before evaluating a formula cell, and caches the supplied result without any
+ * input cells.  The provider must therefore only supply results which are still valid, and
+ * the formula cells whose result it stops supplying must be passed to
+ * {@link WorkbookEvaluator#notifyUpdateCell(EvaluationCell)}.
+ *
+ * For POI internal use only
+ */
+@Internal
+public interface IFormulaResultProvider {
+
+	/**
+	 * @param sheetIndex zero based index into workbook sheet list
+	 * @param rowIndex zero based row index of the formula cell
+	 * @param columnIndex zero based column index of the formula cell
+	 * @return the result of the formula cell, or <code>null</code> if it must be evaluated
+	 */
+	ValueEval getFormulaResult(int sheetIndex, int rowIndex, int columnIndex);
+}
@@ -51,6 +51,8 @@ package org.apache.poi.ss.formula;
  * does not constitute changing the definition of the cell.</li>
  * <li>Updating cells which have been classified as 'final' will cause the evaluator to behave 
  * unpredictably (typically ignoring the update).</li> 
+ * <li>Classifiers may also implement {@link IVolatilityClassifier} to decide which functions are
+ * volatile.</li>
  * </ul>
  * 
  * @author Josh Micich
@@ -0,0 +1,45 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import org.apache.poi.ss.formula.function.FunctionMetadata;
+
+/**
+ * An {@link IStabilityClassifier} which also decides which built-in functions are
+ * <em>volatile</em>, i.e. have results which may change on every recalculation although none of
+ * their inputs changed (like RAND, NOW or TODAY).<br/>
+ * <br/>
+ * The results of formulas calling volatile functions are cached like any other results, but
+ * {@link WorkbookEvaluator#clearVolatileCachedResultValues()} drops them together with the
+ * results of all formulas depending on them, so that an incremental recalculation only evaluates
+ * those formulas again.<br/>
+ * <br/>
+ * If the stability classifier of an evaluator does not implement this interface, the functions
+ * flagged as volatile in the {@link FunctionMetadata} are volatile, except INDIRECT and OFFSET:
+ * Excel recalculates them because it can not know which cells they refer to, whereas the
+ * evaluator records the cells they actually read as inputs of the formula.
+ */
+public interface IVolatilityClassifier extends IStabilityClassifier {
+
+	/**
+	 * @param function the metadata of a built-in function
+	 * @return <code>true</code> if the results of formulas calling the specified function must
+	 * be dropped by {@link WorkbookEvaluator#clearVolatileCachedResultValues()}
+	 */
+	boolean isFunctionVolatile(FunctionMetadata function);
+}
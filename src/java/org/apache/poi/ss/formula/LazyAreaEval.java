@@ -88,6 +88,10 @@ final class LazyAreaEval extends AreaEvalBase {
 		return sb.toString();
 	}
 
+	/* package */ SheetRefEvaluator getSheetEvaluator() {
+		return _evaluator.getSheetEvaluator(getFirstSheetIndex());
+	}
+
     /**
      * @return  whether cell at rowIndex and columnIndex is a subtotal
     */
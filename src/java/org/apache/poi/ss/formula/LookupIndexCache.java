@@ -0,0 +1,314 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.util.Internal;
+
+/**
+ * Hash indexes over the lookup row or column of the tables used by exact match
+ * VLOOKUP, HLOOKUP and MATCH.<p/>
+ *
+ * One instance is kept per {@link WorkbookEvaluator}, so all formulas looking up the same
+ * range share an index.  An index is only built the second time a range is looked up, and
+ * only when none of its cells are formulas.  Formulas answered from an index depend on an
+ * {@link AreaCacheEntry} instead of the cells of the indexed range, so an update of a cell
+ * within it clears just these formulas.  The total size of the indexed ranges is limited,
+ * the least recently used indexes are dropped first.
+ */
+@Internal
+public final class LookupIndexCache {
+
+	/**
+	 * Returned by {@link #lookupIndexOfExactValue(TwoDEval, boolean, int, ValueEval)} when
+	 * the range has no index and must be searched linearly
+	 */
+	public static final int NOT_INDEXED = -2;
+
+	/** ranges shorter than this are cheaper to scan than to index */
+	private static final int MIN_INDEXED_SIZE = 16;
+	/** the default limit of the total size of all indexed ranges */
+	private static final int DEFAULT_MAX_INDEXED_CELLS = 1 << 20;
+	/** the maximum number of ranges remembered, whether indexed or not */
+	private static final int MAX_LINES = 1 << 14;
+
+	private static final class Line {
+		private final int _sheetIndex;
+		private final boolean _isColumn;
+		/** the column (or row) index of the line */
+		private final int _lineIndex;
+		private final int _first;
+		private final int _last;
+
+		public Line(int sheetIndex, boolean isColumn, int lineIndex, int first, int last) {
+			_sheetIndex = sheetIndex;
+			_isColumn = isColumn;
+			_lineIndex = lineIndex;
+			_first = first;
+			_last = last;
+		}
+
+		public boolean contains(int sheetIndex, int rowIndex, int columnIndex) {
+			if (sheetIndex != _sheetIndex) {
+				return false;
+			}
+			if (_isColumn) {
+				return columnIndex == _lineIndex && rowIndex >= _first && rowIndex <= _last;
+			}
+			return rowIndex == _lineIndex && columnIndex >= _first && columnIndex <= _last;
+		}
+
+		public int hashCode() {
+			return ((_sheetIndex * 31 + _lineIndex) * 31 + _first) * 31 + _last + (_isColumn ? 1 : 0);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Line)) {
+				return false;
+			}
+			Line other = (Line) obj;
+			return _sheetIndex == other._sheetIndex && _isColumn == other._isColumn
+					&& _lineIndex == other._lineIndex && _first == other._first && _last == other._last;
+		}
+	}
+
+	private static final class LineEntry {
+		/** maps the keys to their first position, <code>null</code> until built */
+		private Map<Object, Integer> _index;
+		/** the number of cells of the indexed range */
+		private int _size;
+		/** whether the range contains formula cells */
+		private boolean _unindexable;
+		/** consumed by the formulas which used the index */
+		private AreaCacheEntry _dependency;
+	}
+
+	/** the ranges looked up so far, the least recently used first */
+	private final LinkedHashMap<Line, LineEntry> _lines;
+	private final int _maxIndexedCells;
+	private int _numberOfIndexedCells;
+
+	/* package */ LookupIndexCache() {
+		this(DEFAULT_MAX_INDEXED_CELLS);
+	}
+
+	/**
+	 * @param maxIndexedCells the maximum total size of the indexed ranges
+	 */
+	/* package */ LookupIndexCache(int maxIndexedCells) {
+		_lines = new LinkedHashMap<Line, LineEntry>(16, 0.75f, true);
+		_maxIndexedCells = maxIndexedCells;
+	}
+
+	/**
+	 * Finds the first item equal to <tt>lookupValue</tt> in a row or column of <tt>tableArray</tt>,
+	 * using the same equality as the exact match comparers of VLOOKUP, HLOOKUP and MATCH.
+	 * The caller must not use this for wildcard lookup strings.
+	 *
+	 * @param isColumn <code>true</code> to search a column, <code>false</code> for a row
+	 * @param relativeIndex the index of the row or column within <tt>tableArray</tt>
+	 * @param lookupValue a {@link NumberEval}, {@link StringEval} or {@link BoolEval}
+	 * @return zero based index of the value, -1 if it is not present, or {@link #NOT_INDEXED}
+	 */
+	public static int lookupIndexOfExactValue(TwoDEval tableArray, boolean isColumn, int relativeIndex,
+			ValueEval lookupValue) {
+		if (!(tableArray instanceof LazyAreaEval)) {
+			// array constants and the like don't live long enough to be worth indexing
+			return NOT_INDEXED;
+		}
+		LazyAreaEval area = (LazyAreaEval) tableArray;
+		if (area.getFirstSheetIndex() != area.getLastSheetIndex()) {
+			return NOT_INDEXED;
+		}
+		Object key = toKey(lookupValue);
+		if (key == null) {
+			return NOT_INDEXED;
+		}
+		SheetRefEvaluator sre = area.getSheetEvaluator();
+		return sre.getLookupIndexCache().lookup(sre, area, isColumn, relativeIndex, key);
+	}
+
+	/* package */ int lookup(SheetRefEvaluator sre, LazyAreaEval area, boolean isColumn, int relativeIndex, Object key) {
+		Line line;
+		int size;
+		int firstRow;
+		int firstColumn;
+		int lastRow;
+		int lastColumn;
+		if (isColumn) {
+			firstRow = area.getFirstRow();
+			lastRow = area.getLastRow();
+			firstColumn = lastColumn = area.getFirstColumn() + relativeIndex;
+			line = new Line(area.getFirstSheetIndex(), true, firstColumn, firstRow, lastRow);
+			size = area.getHeight();
+		} else {
+			firstRow = lastRow = area.getFirstRow() + relativeIndex;
+			firstColumn = area.getFirstColumn();
+			lastColumn = area.getLastColumn();
+			line = new Line(area.getFirstSheetIndex(), false, firstRow, firstColumn, lastColumn);
+			size = area.getWidth();
+		}
+		if (size < MIN_INDEXED_SIZE || size > _maxIndexedCells) {
+			return NOT_INDEXED;
+		}
+		LineEntry entry = _lines.get(line);
+		if (entry == null) {
+			// first lookup of this range, a single scan is cheaper than building an index
+			_lines.put(line, new LineEntry());
+			trim();
+			return NOT_INDEXED;
+		}
+		if (entry._unindexable) {
+			return NOT_INDEXED;
+		}
+		if (entry._index == null) {
+			if (containsFormulaCells(sre, area, isColumn, relativeIndex, size)) {
+				// changes to the inputs of these cells would not be noticed
+				entry._unindexable = true;
+				return NOT_INDEXED;
+			}
+			entry._index = createIndex(area, isColumn, relativeIndex, size);
+			entry._size = size;
+			entry._dependency = sre.createAreaEntry(firstRow, firstColumn, lastRow, lastColumn);
+			_numberOfIndexedCells += size;
+			trim();
+		}
+		sre.acceptAreaDependency(entry._dependency);
+		Integer result = entry._index.get(key);
+		return result == null ? -1 : result.intValue();
+	}
+
+	private static boolean containsFormulaCells(SheetRefEvaluator sre, LazyAreaEval area, boolean isColumn,
+			int relativeIndex, int size) {
+		int firstRow = area.getFirstRow();
+		int firstColumn = area.getFirstColumn();
+		for (int i = 0; i < size; i++) {
+			boolean isFormula = isColumn
+					? sre.isFormulaCell(firstRow + i, firstColumn + relativeIndex)
+					: sre.isFormulaCell(firstRow + relativeIndex, firstColumn + i);
+			if (isFormula) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Map<Object, Integer> createIndex(LazyAreaEval area, boolean isColumn,
+			int relativeIndex, int size) {
+		Map<Object, Integer> result = new HashMap<Object, Integer>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			ValueEval item = isColumn ? area.getValue(i, relativeIndex) : area.getValue(relativeIndex, i);
+			Object key = toKey(item);
+			if (key != null && !result.containsKey(key)) {
+				result.put(key, Integer.valueOf(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drops the least recently used ranges until the limits are met again.
+	 */
+	private void trim() {
+		Iterator<LineEntry> it = _lines.values().iterator();
+		while (it.hasNext() && (_numberOfIndexedCells > _maxIndexedCells || _lines.size() > MAX_LINES)) {
+			LineEntry entry = it.next();
+			if (entry._index != null) {
+				_numberOfIndexedCells -= entry._size;
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return the total size of the indexed ranges
+	 */
+	/* package */ int getNumberOfIndexedCells() {
+		return _numberOfIndexedCells;
+	}
+
+	/**
+	 * @return a key equal to that of any other value the lookup comparers consider equal,
+	 * or <code>null</code> if the value never matches an exact lookup
+	 */
+	private static Object toKey(ValueEval value) {
+		if (value instanceof NumberEval) {
+			// Double.equals() agrees with the Double.compare() of the comparer
+			return Double.valueOf(((NumberEval) value).getNumberValue());
+		}
+		if (value instanceof StringEval) {
+			return foldCase(((StringEval) value).getStringValue());
+		}
+		if (value instanceof BoolEval) {
+			return Boolean.valueOf(((BoolEval) value).getBooleanValue());
+		}
+		return null;
+	}
+
+	/**
+	 * Two strings are equal under {@link String#compareToIgnoreCase(String)} exactly when their
+	 * folded forms are equal.
+	 */
+	private static String foldCase(String value) {
+		int len = value.length();
+		char[] chars = null;
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			char folded = Character.toLowerCase(Character.toUpperCase(c));
+			if (folded != c) {
+				if (chars == null) {
+					chars = value.toCharArray();
+				}
+				chars[i] = folded;
+			}
+		}
+		return chars == null ? value : new String(chars);
+	}
+
+	/**
+	 * Drops the indexes covering the specified cell.  The formulas which used them are cleared
+	 * through their {@link AreaCacheEntry}.
+	 */
+	public void notifyUpdateCell(int sheetIndex, int rowIndex, int columnIndex) {
+		Iterator<Map.Entry<Line, LineEntry>> it = _lines.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Line, LineEntry> entry = it.next();
+			LineEntry lineEntry = entry.getValue();
+			if ((lineEntry._index != null || lineEntry._unindexable)
+					&& entry.getKey().contains(sheetIndex, rowIndex, columnIndex)) {
+				it.remove();
+				if (lineEntry._index != null) {
+					_numberOfIndexedCells -= lineEntry._size;
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		_lines.clear();
+		_numberOfIndexedCells = 0;
+	}
+}
@@ -191,42 +191,64 @@ public final class OperationEvaluationContext {
 		if (!isA1Style) {
 			throw new RuntimeException("R1C1 style not supported yet");
 		}
-		SheetRefEvaluator se = createExternSheetRefEvaluator(workbookName, sheetName);
+		DynamicReferenceCache cache = _bookEvaluator.getDynamicReferenceCache();
+		DynamicReferenceCache.Target target = cache.get(workbookName, sheetName, refStrPart1, refStrPart2);
+		SheetRefEvaluator se;
+		if (target == null) {
+			se = createExternSheetRefEvaluator(workbookName, sheetName);
+		} else {
+			se = createExternSheetRefEvaluator(target.getWorkbookName(), target.getSheetName());
+		}
 		if (se == null) {
 			return ErrorEval.REF_INVALID;
 		}
 		SheetRangeEvaluator sre = new SheetRangeEvaluator(_sheetIndex, se);
-		
+		if (target == null) {
+			target = parseDynamicReference(workbookName, sheetName, refStrPart1, refStrPart2);
+			if (target == null) {
+				// named range
+				EvaluationName nm = ((FormulaParsingWorkbook)_workbook).getName(refStrPart1, _sheetIndex);
+				if(!nm.isRange()){
+					throw new RuntimeException("Specified name '" + refStrPart1 + "' is not a range as expected.");
+				}
+				return _bookEvaluator.evaluateNameFormula(nm.getNameDefinition(), this);
+			}
+			cache.put(refStrPart1, refStrPart2, target);
+		}
+		return target.createEval(sre);
+	}
+
+	/**
+	 * @return <code>null</code> if <tt>refStrPart1</tt> is the name of a defined name
+	 */
+	private DynamicReferenceCache.Target parseDynamicReference(String workbookName, String sheetName,
+			String refStrPart1, String refStrPart2) {
 		// ugly typecast - TODO - make spreadsheet version more easily accessible
 		SpreadsheetVersion ssVersion = ((FormulaParsingWorkbook)_workbook).getSpreadsheetVersion();
 
 		NameType part1refType = classifyCellReference(refStrPart1, ssVersion);
 		switch (part1refType) {
 			case BAD_CELL_OR_NAMED_RANGE:
-				return ErrorEval.REF_INVALID;
+				return DynamicReferenceCache.Target.createError(workbookName, sheetName, ErrorEval.REF_INVALID);
 			case NAMED_RANGE:
-                EvaluationName nm = ((FormulaParsingWorkbook)_workbook).getName(refStrPart1, _sheetIndex);
-                if(!nm.isRange()){
-                    throw new RuntimeException("Specified name '" + refStrPart1 + "' is not a range as expected.");
-                }
-                return _bookEvaluator.evaluateNameFormula(nm.getNameDefinition(), this);
+				return null;
 		}
 		if (refStrPart2 == null) {
 			// no ':'
 			switch (part1refType) {
 				case COLUMN:
 				case ROW:
-					return ErrorEval.REF_INVALID;
+					return DynamicReferenceCache.Target.createError(workbookName, sheetName, ErrorEval.REF_INVALID);
 				case CELL:
 					CellReference cr = new CellReference(refStrPart1);
-					return new LazyRefEval(cr.getRow(), cr.getCol(), sre);
+					return DynamicReferenceCache.Target.createRef(workbookName, sheetName, cr.getRow(), cr.getCol());
 			}
 			throw new IllegalStateException("Unexpected reference classification of '" + refStrPart1 + "'.");
 		}
 		NameType part2refType = classifyCellReference(refStrPart1, ssVersion);
 		switch (part2refType) {
 			case BAD_CELL_OR_NAMED_RANGE:
-				return ErrorEval.REF_INVALID;
+				return DynamicReferenceCache.Target.createError(workbookName, sheetName, ErrorEval.REF_INVALID);
 			case NAMED_RANGE:
 				throw new RuntimeException("Cannot evaluate '" + refStrPart1
 						+ "'. Indirect evaluation of defined names not supported yet");
@@ -234,7 +256,7 @@ public final class OperationEvaluationContext {
 
 		if (part2refType != part1refType) {
 			// LHS and RHS of ':' must be compatible
-			return ErrorEval.REF_INVALID;
+			return DynamicReferenceCache.Target.createError(workbookName, sheetName, ErrorEval.REF_INVALID);
 		}
 		int firstRow, firstCol, lastRow, lastCol;
 		switch (part1refType) {
@@ -278,7 +300,7 @@ public final class OperationEvaluationContext {
 			default:
 				throw new IllegalStateException("Unexpected reference classification of '" + refStrPart1 + "'.");
 		}
-		return new LazyAreaEval(firstRow, firstCol, lastRow, lastCol, sre);
+		return DynamicReferenceCache.Target.createArea(workbookName, sheetName, firstRow, firstCol, lastRow, lastCol);
 	}
 
 	private static int parseRowRef(String refStrPart) {
@@ -44,6 +44,7 @@ import org.apache.poi.ss.formula.ptg.UnaryPlusPtg;
 import org.apache.poi.ss.formula.eval.ConcatEval;
 import org.apache.poi.ss.formula.eval.FunctionEval;
 import org.apache.poi.ss.formula.eval.IntersectionEval;
+import org.apache.poi.ss.formula.eval.NotImplementedException;
 import org.apache.poi.ss.formula.eval.PercentEval;
 import org.apache.poi.ss.formula.eval.RangeEval;
 import org.apache.poi.ss.formula.eval.RelationalOperationEval;
@@ -54,6 +55,7 @@ import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
 import org.apache.poi.ss.formula.functions.Function;
 import org.apache.poi.ss.formula.functions.Indirect;
+import org.apache.poi.ss.formula.functions.NotImplementedFunction;
 
 /**
  * This class creates <tt>OperationEval</tt> instances to help evaluate <tt>OperationPtg</tt>
@@ -133,4 +135,34 @@ final class OperationEvaluatorFactory {
 		}
 		throw new RuntimeException("Unexpected operation ptg class (" + ptg.getClass().getName() + ")");
 	}
+
+	/**
+	 * Looks up the function for the supplied operationPtg once, so that it can be invoked
+	 * repeatedly without going through {@link #evaluate(OperationPtg, ValueEval[], OperationEvaluationContext)}.
+	 *
+	 * @return <code>null</code> if the operation needs the evaluation context (e.g. INDIRECT),
+	 * or if it is not implemented yet (the error is reported when it is actually evaluated,
+	 * and the function may still be registered with {@link FunctionEval#registerFunction(String, Function)})
+	 */
+	/* package */ static Function getFunction(OperationPtg ptg) {
+		Function result = _instancesByPtgClass.get(ptg);
+		if (result != null) {
+			return result;
+		}
+		if (ptg instanceof AbstractFunctionPtg) {
+			int functionIndex = ((AbstractFunctionPtg)ptg).getFunctionIndex();
+			switch (functionIndex) {
+				case FunctionMetadataRegistry.FUNCTION_INDEX_INDIRECT:
+				case FunctionMetadataRegistry.FUNCTION_INDEX_EXTERNAL:
+					return null;
+			}
+			try {
+				result = FunctionEval.getBasicFunction(functionIndex);
+			} catch (NotImplementedException e) {
+				return null;
+			}
+			return result instanceof NotImplementedFunction ? null : result;
+		}
+		return null;
+	}
 }
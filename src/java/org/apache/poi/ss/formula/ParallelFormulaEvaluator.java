@@ -0,0 +1,489 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.poi.ss.formula.EvaluationWorkbook.ExternalSheet;
+import org.apache.poi.ss.formula.EvaluationWorkbook.ExternalSheetRange;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumericValueEval;
+import org.apache.poi.ss.formula.eval.StringValueEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg3D;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Evaluates all formula cells of a workbook on several threads.<p/>
+ *
+ * The references in the formula tokens of each cell are used to build a dependency graph of
+ * the formula cells, which is split into levels: a formula cell only refers to formula cells of
+ * lower levels.  A reference to an area depends on a few nodes of a tree over the formula cells
+ * of each of its columns rather than on each of these cells, so that even ranges growing with
+ * every row, like running totals, only need a few links per formula.  The cells of a level are evaluated concurrently, each thread using its own
+ * {@link WorkbookEvaluator} which is given the results of all lower levels.  Formulas whose
+ * inputs can't be seen in their tokens (names, <tt>INDIRECT</tt>, <tt>OFFSET</tt>) still
+ * evaluate correctly since the evaluator computes any missing input itself, at the cost of
+ * duplicated work.  Circular references are evaluated one by one after all other cells.<p/>
+ *
+ * As with {@link FormulaEvaluator#evaluateAll()}, the results are saved to the formula cells.
+ * The workbook must not be modified while it is evaluated, and formulas referring to other
+ * workbooks are evaluated as if there were no collaborating workbooks.
+ */
+public final class ParallelFormulaEvaluator {
+
+	/** levels smaller than this are evaluated by the calling thread */
+	private static final int MIN_PARALLEL_LEVEL_SIZE = 64;
+
+	private static final class Node {
+		/** <code>null</code> for the nodes standing for a group of formula cells */
+		public final Cell _cell;
+		public final int _sheetIndex;
+		public final EvaluationCell _evalCell;
+		public final List<Node> _consumers;
+		public int _numberOfPendingInputs;
+		public ValueEval _result;
+
+		public Node(Cell cell, int sheetIndex, EvaluationCell evalCell) {
+			_cell = cell;
+			_sheetIndex = sheetIndex;
+			_evalCell = evalCell;
+			_consumers = new ArrayList<Node>(2);
+		}
+
+		public boolean isGroup() {
+			return _cell == null;
+		}
+	}
+
+	/**
+	 * The formula cells of a column of a sheet.  The first reference to an area over the column
+	 * builds a segment tree over these cells, each inner node being a group node depending on
+	 * its two children, and the leaves the formula cells themselves.  A consumer of an area
+	 * then depends on the O(log n) tree nodes covering the area.
+	 */
+	private final class Column {
+		public final SortedMap<Integer, Node> _nodesByRow;
+		/** the rows of the formula cells, in order, once the tree is built */
+		private int[] _rows;
+		/** the tree nodes, the children of node i being 2i and 2i+1 and the root 1 */
+		private Node[] _tree;
+
+		public Column() {
+			_nodesByRow = new TreeMap<Integer, Node>();
+		}
+
+		public void addInputs(Node consumer, int firstRow, int lastRow) {
+			if (firstRow == lastRow) {
+				Node input = _nodesByRow.get(Integer.valueOf(firstRow));
+				if (input != null) {
+					link(input, consumer);
+				}
+				return;
+			}
+			if (_tree == null) {
+				buildTree();
+			}
+			int from = Arrays.binarySearch(_rows, firstRow);
+			if (from < 0) {
+				from = -from - 1;
+			}
+			int to = Arrays.binarySearch(_rows, lastRow);
+			if (to < 0) {
+				to = -to - 2;
+			}
+			if (from <= to) {
+				addInputs(1, 0, _rows.length - 1, from, to, consumer);
+			}
+		}
+
+		private void addInputs(int treeIndex, int low, int high, int from, int to, Node consumer) {
+			if (from <= low && high <= to) {
+				link(_tree[treeIndex], consumer);
+				return;
+			}
+			int middle = (low + high) >>> 1;
+			if (from <= middle) {
+				addInputs(2 * treeIndex, low, middle, from, to, consumer);
+			}
+			if (to > middle) {
+				addInputs(2 * treeIndex + 1, middle + 1, high, from, to, consumer);
+			}
+		}
+
+		private void buildTree() {
+			int size = _nodesByRow.size();
+			_rows = new int[size];
+			Node[] cells = new Node[size];
+			int i = 0;
+			for (Map.Entry<Integer, Node> entry : _nodesByRow.entrySet()) {
+				_rows[i] = entry.getKey().intValue();
+				cells[i] = entry.getValue();
+				i++;
+			}
+			_tree = new Node[4 * size];
+			buildTree(1, 0, size - 1, cells);
+		}
+
+		private void buildTree(int treeIndex, int low, int high, Node[] cells) {
+			if (low == high) {
+				_tree[treeIndex] = cells[low];
+				return;
+			}
+			int middle = (low + high) >>> 1;
+			buildTree(2 * treeIndex, low, middle, cells);
+			buildTree(2 * treeIndex + 1, middle + 1, high, cells);
+			Node group = new Node(null, cells[low]._sheetIndex, null);
+			link(_tree[2 * treeIndex], group);
+			link(_tree[2 * treeIndex + 1], group);
+			_tree[treeIndex] = group;
+		}
+	}
+
+	/**
+	 * A {@link WorkbookEvaluator} along with the number of levels whose results it has been given
+	 */
+	private static final class Worker {
+		public final WorkbookEvaluator _evaluator;
+		public int _numberOfKnownLevels;
+
+		public Worker(WorkbookEvaluator evaluator) {
+			_evaluator = evaluator;
+		}
+	}
+
+	private final EvaluationWorkbook _workbook;
+	private final boolean _ignoreMissingWorkbooks;
+	/** per sheet index, the formula cells by column */
+	private final Map<Integer, SortedMap<Integer, Column>> _columnsBySheet;
+	/** the formula cells */
+	private final List<Node> _nodes;
+	private int _numberOfLinks;
+	private final List<Node[]> _levels;
+	/** whether the last level holds the cells which are part of or depend on circular references */
+	private boolean _isLastLevelCircular;
+	private final List<Worker> _idleWorkers;
+
+	private ParallelFormulaEvaluator(WorkbookEvaluator bookEvaluator) {
+		_workbook = bookEvaluator.getWorkbook();
+		_ignoreMissingWorkbooks = bookEvaluator.isIgnoreMissingWorkbooks();
+		_columnsBySheet = new HashMap<Integer, SortedMap<Integer, Column>>();
+		_nodes = new ArrayList<Node>();
+		_levels = new ArrayList<Node[]>();
+		_idleWorkers = new ArrayList<Worker>();
+	}
+
+	/**
+	 * Evaluates all formula cells of the workbook using a pool of <tt>numberOfThreads</tt> threads.
+	 */
+	public static void evaluateAllFormulaCells(Workbook wb, int numberOfThreads) {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be positive: " + numberOfThreads);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			evaluateAllFormulaCells(wb, executor, numberOfThreads);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Evaluates all formula cells of the workbook, running at most <tt>parallelism</tt> tasks
+	 * at a time on the supplied executor.  The executor is not shut down.
+	 */
+	public static void evaluateAllFormulaCells(Workbook wb, ExecutorService executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		FormulaEvaluator fe = wb.getCreationHelper().createFormulaEvaluator();
+		if (!(fe instanceof WorkbookEvaluatorProvider)) {
+			throw new IllegalArgumentException("Unsupported formula evaluator " + fe.getClass().getName());
+		}
+		ParallelFormulaEvaluator pfe = create(wb, ((WorkbookEvaluatorProvider) fe)._getWorkbookEvaluator());
+		pfe.evaluateLevels(executor, parallelism);
+		pfe.saveResults();
+	}
+
+	/**
+	 * Builds the levels of the formula cells of the workbook, without evaluating them
+	 */
+	/* package */ static ParallelFormulaEvaluator create(Workbook wb, WorkbookEvaluator bookEvaluator) {
+		ParallelFormulaEvaluator pfe = new ParallelFormulaEvaluator(bookEvaluator);
+		pfe.collectFormulaCells(wb);
+		pfe.linkFormulaCells();
+		pfe.createLevels();
+		return pfe;
+	}
+
+	/* package */ int getNumberOfLinks() {
+		return _numberOfLinks;
+	}
+
+	/* package */ int getNumberOfLevels() {
+		return _levels.size();
+	}
+
+	private void collectFormulaCells(Workbook wb) {
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			Sheet sheet = wb.getSheetAt(i);
+			EvaluationSheet evalSheet = _workbook.getSheet(i);
+			SortedMap<Integer, Column> columns = new TreeMap<Integer, Column>();
+			_columnsBySheet.put(Integer.valueOf(i), columns);
+			for (Row r : sheet) {
+				for (Cell c : r) {
+					if (c.getCellType() != Cell.CELL_TYPE_FORMULA) {
+						continue;
+					}
+					Node node = new Node(c, i, evalSheet.getCell(c.getRowIndex(), c.getColumnIndex()));
+					Integer columnIndex = Integer.valueOf(c.getColumnIndex());
+					Column column = columns.get(columnIndex);
+					if (column == null) {
+						column = new Column();
+						columns.put(columnIndex, column);
+					}
+					column._nodesByRow.put(Integer.valueOf(c.getRowIndex()), node);
+					_nodes.add(node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes each formula cell a consumer of the formula cells its tokens refer to
+	 */
+	private void linkFormulaCells() {
+		for (Node node : _nodes) {
+			int sheetIndex = node._sheetIndex;
+			for (Ptg ptg : _workbook.getFormulaTokens(node._evalCell)) {
+				int firstSheet = sheetIndex;
+				int lastSheet = sheetIndex;
+				if (ptg instanceof ExternSheetReferenceToken) {
+					ExternalSheet externalSheet = _workbook.getExternalSheet(
+							((ExternSheetReferenceToken) ptg).getExternSheetIndex());
+					if (externalSheet == null || externalSheet.getWorkbookName() != null) {
+						continue;
+					}
+					firstSheet = _workbook.getSheetIndex(externalSheet.getSheetName());
+					lastSheet = externalSheet instanceof ExternalSheetRange
+							? _workbook.getSheetIndex(((ExternalSheetRange) externalSheet).getLastSheetName())
+							: firstSheet;
+				} else if (ptg instanceof Pxg3D) {
+					Pxg3D pxg = (Pxg3D) ptg;
+					if (pxg.getExternalWorkbookNumber() > 0) {
+						continue;
+					}
+					firstSheet = _workbook.getSheetIndex(pxg.getSheetName());
+					lastSheet = pxg.getLastSheetName() == null
+							? firstSheet : _workbook.getSheetIndex(pxg.getLastSheetName());
+				}
+				if (firstSheet < 0 || lastSheet < 0) {
+					continue;
+				}
+				if (ptg instanceof RefPtgBase) {
+					RefPtgBase ref = (RefPtgBase) ptg;
+					addInputs(node, firstSheet, lastSheet, ref.getRow(), ref.getColumn(), ref.getRow(), ref.getColumn());
+				} else if (ptg instanceof AreaPtgBase) {
+					AreaPtgBase area = (AreaPtgBase) ptg;
+					addInputs(node, firstSheet, lastSheet, area.getFirstRow(), area.getFirstColumn(),
+							area.getLastRow(), area.getLastColumn());
+				}
+			}
+		}
+	}
+
+	private void addInputs(Node consumer, int firstSheet, int lastSheet, int firstRow, int firstColumn,
+			int lastRow, int lastColumn) {
+		for (int i = firstSheet; i <= lastSheet; i++) {
+			SortedMap<Integer, Column> columns = _columnsBySheet.get(Integer.valueOf(i));
+			if (columns == null) {
+				continue;
+			}
+			for (Column column : columns.subMap(
+					Integer.valueOf(firstColumn), Integer.valueOf(lastColumn + 1)).values()) {
+				column.addInputs(consumer, firstRow, lastRow);
+			}
+		}
+	}
+
+	private void link(Node input, Node consumer) {
+		input._consumers.add(consumer);
+		consumer._numberOfPendingInputs++;
+		_numberOfLinks++;
+	}
+
+	/**
+	 * Sorts the formula cells topologically, in levels of cells which don't depend on each other
+	 */
+	private void createLevels() {
+		List<Node> level = new ArrayList<Node>();
+		for (Node node : _nodes) {
+			if (node._numberOfPendingInputs == 0) {
+				level.add(node);
+			}
+		}
+		int numberOfLevelledNodes = 0;
+		while (!level.isEmpty()) {
+			_levels.add(level.toArray(new Node[level.size()]));
+			numberOfLevelledNodes += level.size();
+			List<Node> nextLevel = new ArrayList<Node>();
+			// group nodes are complete along with their last input, on the same level
+			List<Node> completed = new ArrayList<Node>(level);
+			while (!completed.isEmpty()) {
+				Node node = completed.remove(completed.size() - 1);
+				for (Node consumer : node._consumers) {
+					if (--consumer._numberOfPendingInputs == 0) {
+						if (consumer.isGroup()) {
+							completed.add(consumer);
+						} else {
+							nextLevel.add(consumer);
+						}
+					}
+				}
+			}
+			level = nextLevel;
+		}
+		if (numberOfLevelledNodes < _nodes.size()) {
+			// the remaining cells are part of or depend on circular references
+			List<Node> remaining = new ArrayList<Node>();
+			for (Node node : _nodes) {
+				if (node._numberOfPendingInputs > 0) {
+					remaining.add(node);
+				}
+			}
+			_levels.add(remaining.toArray(new Node[remaining.size()]));
+			_isLastLevelCircular = true;
+		}
+	}
+
+	private void evaluateLevels(ExecutorService executor, int parallelism) {
+		int lastLevel = _levels.size() - 1;
+		for (int i = 0; i <= lastLevel; i++) {
+			Node[] level = _levels.get(i);
+			boolean isCircular = i == lastLevel && _isLastLevelCircular;
+			int numberOfTasks = Math.min(parallelism, level.length / MIN_PARALLEL_LEVEL_SIZE);
+			if (isCircular || numberOfTasks < 2) {
+				evaluate(level, 0, level.length, i);
+				continue;
+			}
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(numberOfTasks);
+			for (int j = 0; j < numberOfTasks; j++) {
+				final int from = (int) ((long) level.length * j / numberOfTasks);
+				final int to = (int) ((long) level.length * (j + 1) / numberOfTasks);
+				final Node[] nodes = level;
+				final int levelIndex = i;
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() {
+						evaluate(nodes, from, to, levelIndex);
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while evaluating formulas", e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+	}
+
+	private void evaluate(Node[] level, int from, int to, int levelIndex) {
+		Worker worker = acquireWorker();
+		try {
+			while (worker._numberOfKnownLevels < levelIndex) {
+				for (Node node : _levels.get(worker._numberOfKnownLevels)) {
+					worker._evaluator.setCachedFormulaResult(node._evalCell, node._result);
+				}
+				worker._numberOfKnownLevels++;
+			}
+			for (int i = from; i < to; i++) {
+				level[i]._result = worker._evaluator.evaluate(level[i]._evalCell);
+			}
+		} finally {
+			releaseWorker(worker);
+		}
+	}
+
+	private Worker acquireWorker() {
+		synchronized (_idleWorkers) {
+			if (!_idleWorkers.isEmpty()) {
+				return _idleWorkers.remove(_idleWorkers.size() - 1);
+			}
+		}
+		WorkbookEvaluator evaluator = new WorkbookEvaluator(_workbook, null, null);
+		evaluator.setIgnoreMissingWorkbooks(_ignoreMissingWorkbooks);
+		return new Worker(evaluator);
+	}
+
+	private void releaseWorker(Worker worker) {
+		synchronized (_idleWorkers) {
+			_idleWorkers.add(worker);
+		}
+	}
+
+	private void saveResults() {
+		for (Node node : _nodes) {
+			setCellValue(node._cell, node._result);
+		}
+	}
+
+	private static void setCellValue(Cell cell, ValueEval eval) {
+		if (eval instanceof BoolEval) {
+			cell.setCellValue(((BoolEval) eval).getBooleanValue());
+		} else if (eval instanceof NumericValueEval) {
+			cell.setCellValue(((NumericValueEval) eval).getNumberValue());
+		} else if (eval instanceof StringValueEval) {
+			cell.setCellValue(((StringValueEval) eval).getStringValue());
+		} else if (eval instanceof ErrorEval) {
+			cell.setCellErrorValue((byte) ((ErrorEval) eval).getErrorCode());
+		} else {
+			throw new RuntimeException("Unexpected eval class (" + eval.getClass().getName() + ")");
+		}
+	}
+}
@@ -48,6 +48,33 @@ final class SheetRefEvaluator {
 		return _bookEvaluator.evaluateReference(getSheet(), _sheetIndex, rowIndex, columnIndex, _tracker);
 	}
 
+	public LookupIndexCache getLookupIndexCache() {
+		return _bookEvaluator.getLookupIndexCache();
+	}
+
+	public AreaValuesCache getAreaValuesCache() {
+		return _bookEvaluator.getAreaValuesCache();
+	}
+
+	/**
+	 * @return the entry of the formula cell being evaluated, <code>null</code> if there is none
+	 */
+	public FormulaCellCacheEntry getEvaluatingFormula() {
+		return _tracker.getCurrentFormula();
+	}
+
+	public AreaCacheEntry createAreaEntry(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+		return new AreaCacheEntry(_bookEvaluator.getWorkbookIndex(), _sheetIndex,
+				firstRow, firstColumn, lastRow, lastColumn);
+	}
+
+	/**
+	 * Records that the formula being evaluated used cached values of the specified area.
+	 */
+	public void acceptAreaDependency(AreaCacheEntry ace) {
+		_tracker.acceptAreaDependency(ace);
+	}
+
 	private EvaluationSheet getSheet() {
 		if (_sheet == null) {
 			_sheet = _bookEvaluator.getSheet(_sheetIndex);
@@ -77,4 +104,12 @@ final class SheetRefEvaluator {
         return subtotal;
     }
 
+    /**
+     * @return  whether cell at rowIndex and columnIndex holds a formula
+     */
+    public boolean isFormulaCell(int rowIndex, int columnIndex) {
+        EvaluationCell cell = getSheet().getCell(rowIndex, columnIndex);
+        return cell != null && cell.getCellType() == Cell.CELL_TYPE_FORMULA;
+    }
+
 }
@@ -17,16 +17,22 @@
 
 package org.apache.poi.ss.formula;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
 
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment.WorkbookNotFoundException;
 import org.apache.poi.ss.formula.atp.AnalysisToolPak;
 import org.apache.poi.ss.formula.eval.*;
+import org.apache.poi.ss.formula.function.FunctionMetadata;
 import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
 import org.apache.poi.ss.formula.functions.Choose;
 import org.apache.poi.ss.formula.functions.FreeRefFunction;
@@ -55,9 +61,16 @@ import org.apache.poi.util.POILogger;
 public final class WorkbookEvaluator {
 	
 	private static final POILogger LOG = POILogFactory.getLogger(WorkbookEvaluator.class);
+	/** the maximum number of distinct compiled formulas kept for sharing */
+	private static final int MAX_FORMULA_PLANS = 1000;
 
     private final EvaluationWorkbook _workbook;
 	private EvaluationCache _cache;
+	private final LookupIndexCache _lookupIndexCache;
+	private final AreaValuesCache _areaValuesCache;
+	private final DynamicReferenceCache _dynamicReferenceCache;
+	/** compiled formulas shared by the cells of filled down or right formulas */
+	private final Map<String, FormulaPlan> _formulaPlansByKey;
 	/** part of cache entry key (useful when evaluating multiple workbooks) */
 	private int _workbookIx;
 
@@ -66,6 +79,8 @@ public final class WorkbookEvaluator {
 	private final Map<String, Integer> _sheetIndexesByName;
 	private CollaboratingWorkbooksEnvironment _collaboratingWorkbookEnvironment;
 	private final IStabilityClassifier _stabilityClassifier;
+	private IFormulaResultProvider _formulaResultProvider;
+	private EvaluationProfiler _profiler;
 	private final AggregatingUDFFinder _udfFinder;
 
     private boolean _ignoreMissingWorkbooks = false;
@@ -81,6 +96,15 @@ public final class WorkbookEvaluator {
 		_workbook = workbook;
 		_evaluationListener = evaluationListener;
 		_cache = new EvaluationCache(evaluationListener);
+		_lookupIndexCache = new LookupIndexCache();
+		_areaValuesCache = new AreaValuesCache();
+		_dynamicReferenceCache = new DynamicReferenceCache();
+		_formulaPlansByKey = new LinkedHashMap<String, FormulaPlan>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FormulaPlan> eldest) {
+				return size() > MAX_FORMULA_PLANS;
+			}
+		};
 		_sheetIndexesBySheet = new IdentityHashMap<EvaluationSheet, Integer>();
 		_sheetIndexesByName = new IdentityHashMap<String, Integer>();
 		_collaboratingWorkbookEnvironment = CollaboratingWorkbooksEnvironment.EMPTY;
@@ -110,6 +134,61 @@ public final class WorkbookEvaluator {
 		return _workbook;
 	}
 
+	/* package */ int getWorkbookIndex() {
+		return _workbookIx;
+	}
+
+	/* package */ LookupIndexCache getLookupIndexCache() {
+		return _lookupIndexCache;
+	}
+
+	/* package */ AreaValuesCache getAreaValuesCache() {
+		return _areaValuesCache;
+	}
+
+	/* package */ int getNumberOfFormulaPlans() {
+		return _formulaPlansByKey.size();
+	}
+
+	/* package */ DynamicReferenceCache getDynamicReferenceCache() {
+		return _dynamicReferenceCache;
+	}
+
+	/* package */ boolean isIgnoreMissingWorkbooks() {
+		return _ignoreMissingWorkbooks;
+	}
+
+	/**
+	 * Stores the result of a formula cell evaluated elsewhere, as if this evaluator had computed it.
+	 * The result is kept until the cache is cleared, since no inputs are recorded for it.
+	 */
+	/* package */ void setCachedFormulaResult(EvaluationCell cell, ValueEval result) {
+		_cache.getOrCreateFormulaCellEntry(_workbookIx, cell).updateFormulaResult(result, CellCacheEntry.EMPTY_ARRAY, null);
+	}
+
+	/**
+	 * Sets the provider of formula results computed elsewhere, which are used instead of
+	 * evaluating the formula cells.
+	 *
+	 * @param formulaResultProvider pass <code>null</code> to evaluate all formula cells
+	 */
+	public void setFormulaResultProvider(IFormulaResultProvider formulaResultProvider) {
+		_formulaResultProvider = formulaResultProvider;
+	}
+
+	/**
+	 * Sets the profiler which collects statistics about the evaluations of this evaluator.
+	 *
+	 * @param profiler pass <code>null</code> to stop profiling
+	 */
+	public void setEvaluationProfiler(EvaluationProfiler profiler) {
+		_profiler = profiler;
+	}
+
+	/* package */ EvaluationProfiler getEvaluationProfiler() {
+		return _profiler;
+	}
+
 	/* package */ EvaluationName getName(String name, int sheetIndex) {
 	    EvaluationName evalName = _workbook.getName(name, sheetIndex);
 	    return evalName;
@@ -135,6 +214,8 @@ public final class WorkbookEvaluator {
 		_collaboratingWorkbookEnvironment = collaboratingWorkbooksEnvironment;
 		_cache = cache;
 		_workbookIx = workbookIx;
+		_lookupIndexCache.clear();
+		_areaValuesCache.clear();
 	}
 	/* package */ CollaboratingWorkbooksEnvironment getEnvironment() {
 		return _collaboratingWorkbookEnvironment;
@@ -148,6 +229,8 @@ public final class WorkbookEvaluator {
 		_collaboratingWorkbookEnvironment = CollaboratingWorkbooksEnvironment.EMPTY;
 		_cache = new EvaluationCache(_evaluationListener);
 		_workbookIx = 0;
+		_lookupIndexCache.clear();
+		_areaValuesCache.clear();
 	}
 	/**
 	 * @return the evaluator for another workbook which is part of the same {@link CollaboratingWorkbooksEnvironment}
@@ -167,9 +250,24 @@ public final class WorkbookEvaluator {
 	 */
 	public void clearAllCachedResultValues() {
 		_cache.clear();
+		_lookupIndexCache.clear();
+		_areaValuesCache.clear();
+		_dynamicReferenceCache.clear();
+		_formulaPlansByKey.clear();
 		_sheetIndexesBySheet.clear();
 	}
 
+	/**
+	 * Drops the cached results of formulas calling volatile functions (like RAND or NOW) and of
+	 * all formulas depending on them, so that only those are evaluated again on the next
+	 * recalculation.
+	 *
+	 * @see IVolatilityClassifier
+	 */
+	public void clearVolatileCachedResultValues() {
+		_cache.clearVolatileFormulaResults();
+	}
+
 	/**
 	 * Should be called to tell the cell value cache that the specified (value or formula) cell
 	 * has changed.
@@ -177,6 +275,7 @@ public final class WorkbookEvaluator {
 	public void notifyUpdateCell(EvaluationCell cell) {
 		int sheetIndex = getSheetIndex(cell.getSheet());
 		_cache.notifyUpdateCell(_workbookIx, sheetIndex, cell);
+		notifyRangeCaches(sheetIndex, cell);
 	}
 	/**
 	 * Should be called to tell the cell value cache that the specified cell has just been
@@ -185,6 +284,65 @@ public final class WorkbookEvaluator {
 	public void notifyDeleteCell(EvaluationCell cell) {
 		int sheetIndex = getSheetIndex(cell.getSheet());
 		_cache.notifyDeleteCell(_workbookIx, sheetIndex, cell);
+		notifyRangeCaches(sheetIndex, cell);
+	}
+
+	/**
+	 * Finds the formula cells of this workbook whose cached results depend, directly or
+	 * indirectly, on any of the specified cells.  Dependencies are recorded while evaluating,
+	 * so formula cells which have not been evaluated since the cache was last cleared are not
+	 * included.
+	 *
+	 * @return the dependent formula cells, each before the formula cells depending on it
+	 */
+	public List<EvaluationCell> getDependentFormulaCells(Collection<EvaluationCell> cells) {
+		EvaluationCell[] cellArray = cells.toArray(new EvaluationCell[cells.size()]);
+		int[] sheetIndexes = new int[cellArray.length];
+		for (int i = 0; i < cellArray.length; i++) {
+			EvaluationCell cell = cellArray[i];
+			sheetIndexes[i] = getSheetIndex(cell.getSheet());
+		}
+		List<EvaluationCell> result = new ArrayList<EvaluationCell>();
+		for (FormulaCellCacheEntry entry : _cache.getDependentFormulaCells(_workbookIx, sheetIndexes, cellArray)) {
+			if (entry.getBookIndex() == _workbookIx) {
+				result.add(entry.getCell());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tells the cell value cache that the specified (value or formula) cells have changed, as
+	 * {@link #notifyUpdateCell(EvaluationCell)} does for each of them.
+	 *
+	 * @return the formula cells whose results may have changed: the changed formula cells followed
+	 * by the {@link #getDependentFormulaCells(Collection) dependent formula cells}
+	 */
+	public List<EvaluationCell> notifyUpdateCells(Collection<EvaluationCell> cells) {
+		Set<Object> identityKeys = new HashSet<Object>();
+		List<EvaluationCell> result = new ArrayList<EvaluationCell>();
+		for (EvaluationCell cell : cells) {
+			if (cell.getCellType() == Cell.CELL_TYPE_FORMULA && identityKeys.add(cell.getIdentityKey())) {
+				result.add(cell);
+			}
+		}
+		for (EvaluationCell cell : getDependentFormulaCells(cells)) {
+			if (identityKeys.add(cell.getIdentityKey())) {
+				result.add(cell);
+			}
+		}
+		for (EvaluationCell cell : cells) {
+			notifyUpdateCell(cell);
+		}
+		return result;
+	}
+
+	private void notifyRangeCaches(int sheetIndex, EvaluationCell cell) {
+		int rowIndex = cell.getRowIndex();
+		int columnIndex = cell.getColumnIndex();
+		// the formulas which used the dropped indexes or values were cleared through their areas
+		_lookupIndexCache.notifyUpdateCell(sheetIndex, rowIndex, columnIndex);
+		_areaValuesCache.notifyUpdateCell(sheetIndex, rowIndex, columnIndex);
 	}
 	
 	private int getSheetIndex(EvaluationSheet sheet) {
@@ -244,26 +402,38 @@ public final class WorkbookEvaluator {
 			return result;
 		}
 
-		FormulaCellCacheEntry cce = _cache.getOrCreateFormulaCellEntry(srcCell);
-		if (shouldCellDependencyBeRecorded || cce.isInputSensitive()) {
+		FormulaCellCacheEntry cce = _cache.getOrCreateFormulaCellEntry(_workbookIx, srcCell);
+		// volatile results must be tracked, so that clearing them also clears the formulas using them
+		boolean isDependencyRecorded = shouldCellDependencyBeRecorded || cce.isInputSensitive() || cce.isVolatile();
+		if (isDependencyRecorded) {
 			tracker.acceptFormulaDependency(cce);
 		}
 		IEvaluationListener evalListener = _evaluationListener;
 		ValueEval result;
+		if (cce.getValue() == null && _formulaResultProvider != null) {
+			result = _formulaResultProvider.getFormulaResult(sheetIndex, rowIndex, columnIndex);
+			if (result != null) {
+				cce.updateFormulaResult(result, CellCacheEntry.EMPTY_ARRAY, null);
+				return result;
+			}
+		}
 		if (cce.getValue() == null) {
 			if (!tracker.startEvaluate(cce)) {
 				return ErrorEval.CIRCULAR_REF_ERROR;
 			}
 			OperationEvaluationContext ec = new OperationEvaluationContext(this, _workbook, sheetIndex, rowIndex, columnIndex, tracker);
+			EvaluationProfiler profiler = _profiler;
+			if (profiler != null) {
+				profiler.onStartEvaluate(getSheetName(sheetIndex), rowIndex, columnIndex);
+			}
 
 			try {
 
-				Ptg[] ptgs = _workbook.getFormulaTokens(srcCell);
 				if (evalListener == null) {
-					result = evaluateFormula(ec, ptgs);
+					result = evaluateFormula(ec, srcCell, cce);
 				} else {
 					evalListener.onStartEvaluate(srcCell, cce);
-					result = evaluateFormula(ec, ptgs);
+					result = evaluateFormula(ec, srcCell, cce);
 					evalListener.onEndEvaluate(cce, result);
 				}
 
@@ -299,13 +469,23 @@ public final class WorkbookEvaluator {
 				 }
 			 } finally {
 				tracker.endEvaluate(cce);
+				if (profiler != null) {
+					profiler.onEndEvaluate();
+				}
 			}
 		} else {
 			if(evalListener != null) {
 				evalListener.onCacheHit(sheetIndex, rowIndex, columnIndex, cce.getValue());
 			}
+			if (_profiler != null) {
+				_profiler.onCacheHit();
+			}
 			return cce.getValue();
 		}
+		if (!isDependencyRecorded && cce.isVolatile()) {
+			// only known once the formula was compiled
+			tracker.acceptFormulaDependency(cce);
+		}
 		if (isDebugLogEnabled()) {
 			String sheetName = getSheetName(sheetIndex);
 			CellReference cr = new CellReference(rowIndex, columnIndex);
@@ -372,6 +552,60 @@ public final class WorkbookEvaluator {
 	// current indent level for evalution; negative value for no output
 	private int dbgEvaluationOutputIndent = -1;
 
+	/**
+	 * Evaluates the formula of a cell through its compiled {@link FormulaPlan}, which is
+	 * kept with the cache entry and shared between cells holding the same relative formula.
+	 */
+	private ValueEval evaluateFormula(OperationEvaluationContext ec, EvaluationCell srcCell, FormulaCellCacheEntry cce) {
+		FormulaPlan plan = cce.getFormulaPlan();
+		if (plan == null) {
+			Ptg[] ptgs = _workbook.getFormulaTokens(srcCell);
+			String key = FormulaPlan.createKey(ptgs, ec.getRowIndex(), ec.getColumnIndex());
+			if (key != null) {
+				plan = _formulaPlansByKey.get(key);
+			}
+			if (plan == null) {
+				plan = FormulaPlan.compile(ptgs, ec.getRowIndex(), ec.getColumnIndex());
+				plan.setVolatile(isVolatileFormula(ptgs));
+				if (key != null && plan.isCompiled()) {
+					_formulaPlansByKey.put(key, plan);
+				}
+			}
+			cce.setFormulaPlan(plan);
+		}
+		if (dbgEvaluationOutputForNextEval || dbgEvaluationOutputIndent > 0) {
+			// debug output is written token by token
+			return evaluateFormula(ec, _workbook.getFormulaTokens(srcCell));
+		}
+		if (!plan.isCompiled()) {
+			return evaluateFormula(ec, plan.getTokens());
+		}
+		return plan.evaluate(this, ec);
+	}
+
+	private boolean isVolatileFormula(Ptg[] ptgs) {
+		for (Ptg ptg : ptgs) {
+			if (ptg instanceof AbstractFunctionPtg) {
+				FunctionMetadata fm = FunctionMetadataRegistry.getFunctionByIndex(((AbstractFunctionPtg) ptg).getFunctionIndex());
+				if (fm != null && isFunctionVolatile(fm)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean isFunctionVolatile(FunctionMetadata fm) {
+		if (_stabilityClassifier instanceof IVolatilityClassifier) {
+			return ((IVolatilityClassifier) _stabilityClassifier).isFunctionVolatile(fm);
+		}
+		// the cells read through INDIRECT and OFFSET are recorded like those of other references
+		int functionIndex = fm.getIndex();
+		return fm.isVolatile()
+				&& functionIndex != FunctionMetadataRegistry.FUNCTION_INDEX_INDIRECT
+				&& functionIndex != FunctionMetadataRegistry.FUNCTION_INDEX_OFFSET;
+	}
+
 	// visibility raised for testing
 	/* package */ ValueEval evaluateFormula(OperationEvaluationContext ec, Ptg[] ptgs) {
 
@@ -500,7 +734,13 @@ public final class WorkbookEvaluator {
 					ops[j] = p;
 				}
 //				logDebug("invoke " + operation + " (nAgs=" + numops + ")");
-				opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+				if (_profiler == null) {
+					opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+				} else {
+					long startNanos = System.nanoTime();
+					opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+					_profiler.onEndOperation(optg, startNanos);
+				}
 			} else {
 				opResult = getEvalForPtg(ptg, ec);
 			}
@@ -587,7 +827,7 @@ public final class WorkbookEvaluator {
     * StringPtg, BoolPtg <br/>special Note: OperationPtg subtypes cannot be
     * passed here!
     */
-   private ValueEval getEvalForPtg(Ptg ptg, OperationEvaluationContext ec) {
+   /* package */ ValueEval getEvalForPtg(Ptg ptg, OperationEvaluationContext ec) {
        //  consider converting all these (ptg instanceof XxxPtg) expressions to (ptg.getClass() == XxxPtg.class)
 
        if (ptg instanceof NamePtg) {
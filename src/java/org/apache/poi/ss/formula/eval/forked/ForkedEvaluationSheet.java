@@ -17,8 +17,10 @@
 
 package org.apache.poi.ss.formula.eval.forked;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.poi.ss.formula.EvaluationCell;
@@ -77,6 +79,20 @@ final class ForkedEvaluationSheet implements EvaluationSheet {
 		return result;
 	}
 
+	/**
+	 * Logically replaces all updated cells with their master cells again.
+	 *
+	 * @return the master cells of the cells which had been updated
+	 */
+	public List<EvaluationCell> clearUpdatedCells() {
+		List<EvaluationCell> result = new ArrayList<EvaluationCell>(_sharedCellsByRowCol.size());
+		for (RowColKey key : _sharedCellsByRowCol.keySet()) {
+			result.add(_masterSheet.getCell(key.getRowIndex(), key.getColumnIndex()));
+		}
+		_sharedCellsByRowCol.clear();
+		return result;
+	}
+
 	public void copyUpdatedCells(Sheet sheet) {
 		RowColKey[] keys = new RowColKey[_sharedCellsByRowCol.size()];
 		_sharedCellsByRowCol.keySet().toArray(keys);
@@ -0,0 +1,221 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula.eval.forked;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.formula.EvaluationWorkbook;
+import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.WorkbookEvaluator;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * A master workbook whose formulas are evaluated just once, so that the results can be shared
+ * by many {@link ForkedEvaluator}s.  The evaluators are created with {@link #createEvaluator()}
+ * and may be used concurrently on separate threads, as any forked evaluators.  Each of them only
+ * evaluates the formula cells which depend on the cells it has updated, all other formula
+ * results are taken from the template.  Evaluators which are used for many short calculations can
+ * be reused with {@link #borrowEvaluator()} and {@link #returnEvaluator(ForkedEvaluator)}.<p/>
+ *
+ * The master workbook must not be modified after the template has been created.
+ */
+public final class ForkedEvaluationTemplate {
+
+	/**
+	 * Identifies a cell by its position, since the cells of the master workbook and those of the
+	 * forked workbooks are different objects
+	 */
+	/* package */ static final class CellKey {
+		private final int _sheetIndex;
+		private final int _rowIndex;
+		private final int _columnIndex;
+
+		public CellKey(int sheetIndex, int rowIndex, int columnIndex) {
+			_sheetIndex = sheetIndex;
+			_rowIndex = rowIndex;
+			_columnIndex = columnIndex;
+		}
+		public int getSheetIndex() {
+			return _sheetIndex;
+		}
+		public int getRowIndex() {
+			return _rowIndex;
+		}
+		public int getColumnIndex() {
+			return _columnIndex;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			CellKey other = (CellKey) obj;
+			return _sheetIndex == other._sheetIndex && _rowIndex == other._rowIndex
+					&& _columnIndex == other._columnIndex;
+		}
+		@Override
+		public int hashCode() {
+			return (_sheetIndex * 31 + _rowIndex) * 31 + _columnIndex;
+		}
+	}
+
+	private static final CellKey[] EMPTY_KEY_ARRAY = { };
+
+	private final EvaluationWorkbook _masterBook;
+	private final IStabilityClassifier _stabilityClassifier;
+	/**
+	 * Holds the dependencies of all formula cells once they have been evaluated.  Only used for
+	 * (synchronized) dependency queries after creation.
+	 */
+	private final WorkbookEvaluator _masterEvaluator;
+	/**
+	 * Filled in the constructor and never modified afterwards, so that it can be read
+	 * from any thread once the template has been constructed
+	 */
+	private final Map<CellKey, ValueEval> _formulaResults;
+	private final ConcurrentMap<CellKey, CellKey[]> _dependentFormulaCellsByCell;
+	/** evaluators which have been returned for reuse */
+	private final Queue<ForkedEvaluator> _idleEvaluators;
+
+	private ForkedEvaluationTemplate(Workbook wb, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+		_masterBook = ForkedEvaluator.createEvaluationWorkbook(wb);
+		_stabilityClassifier = stabilityClassifier;
+		_masterEvaluator = new WorkbookEvaluator(_masterBook, stabilityClassifier, udfFinder);
+		_formulaResults = new HashMap<CellKey, ValueEval>();
+		_dependentFormulaCellsByCell = new ConcurrentHashMap<CellKey, CellKey[]>();
+		_idleEvaluators = new ConcurrentLinkedQueue<ForkedEvaluator>();
+		evaluateAllFormulaCells(wb);
+	}
+
+	/**
+	 * Evaluates all formula cells of the master workbook.
+	 *
+	 * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+	 */
+	public static ForkedEvaluationTemplate create(Workbook wb, IStabilityClassifier stabilityClassifier,
+			UDFFinder udfFinder) {
+		return new ForkedEvaluationTemplate(wb, stabilityClassifier, udfFinder);
+	}
+
+	private void evaluateAllFormulaCells(Workbook wb) {
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			Sheet sheet = wb.getSheetAt(i);
+			EvaluationSheet evalSheet = _masterBook.getSheet(i);
+			for (Row r : sheet) {
+				for (Cell c : r) {
+					if (c.getCellType() != Cell.CELL_TYPE_FORMULA) {
+						continue;
+					}
+					ValueEval result;
+					try {
+						result = _masterEvaluator.evaluate(evalSheet.getCell(c.getRowIndex(), c.getColumnIndex()));
+					} catch (RuntimeException e) {
+						// leave it to the forked evaluators to report the problem
+						continue;
+					}
+					_formulaResults.put(new CellKey(i, c.getRowIndex(), c.getColumnIndex()), result);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an evaluator which starts off with the formula results of this template.
+	 * This method may be called concurrently.
+	 */
+	public ForkedEvaluator createEvaluator() {
+		// the UDFs have already been added to the master workbook
+		return new ForkedEvaluator(_masterBook, _stabilityClassifier, null, this);
+	}
+
+	/**
+	 * Takes an evaluator returned by {@link #returnEvaluator(ForkedEvaluator)}, or creates a new
+	 * one if there is none.  Reusing evaluators keeps the results they took from this template,
+	 * as well as their compiled formulas.  This method may be called concurrently.
+	 */
+	public ForkedEvaluator borrowEvaluator() {
+		ForkedEvaluator result = _idleEvaluators.poll();
+		if (result == null) {
+			result = createEvaluator();
+		}
+		return result;
+	}
+
+	/**
+	 * Resets the evaluator, discarding its updated cells, and keeps it for the next call to
+	 * {@link #borrowEvaluator()}.  The evaluator must not be used by the caller any more.
+	 * This method may be called concurrently.
+	 *
+	 * @param evaluator an evaluator created by this template
+	 */
+	public void returnEvaluator(ForkedEvaluator evaluator) {
+		if (evaluator.getTemplate() != this) {
+			throw new IllegalArgumentException("Evaluator was not created by this template");
+		}
+		evaluator.reset();
+		_idleEvaluators.add(evaluator);
+	}
+
+	/**
+	 * @return the result of the formula cell in the master workbook, <code>null</code> if unknown
+	 */
+	/* package */ ValueEval getFormulaResult(CellKey key) {
+		return _formulaResults.get(key);
+	}
+
+	/**
+	 * @return the formula cells whose results in the master workbook depend, directly or
+	 * indirectly, on the specified cell
+	 */
+	/* package */ CellKey[] getDependentFormulaCells(CellKey key) {
+		CellKey[] result = _dependentFormulaCellsByCell.get(key);
+		if (result == null) {
+			result = findDependentFormulaCells(key);
+			_dependentFormulaCellsByCell.putIfAbsent(key, result);
+		}
+		return result;
+	}
+
+	private CellKey[] findDependentFormulaCells(CellKey key) {
+		synchronized (_masterEvaluator) {
+			EvaluationCell cell = _masterBook.getSheet(key.getSheetIndex()).getCell(key.getRowIndex(), key.getColumnIndex());
+			if (cell == null) {
+				return EMPTY_KEY_ARRAY;
+			}
+			List<EvaluationCell> cells = _masterEvaluator.getDependentFormulaCells(Collections.singleton(cell));
+			CellKey[] result = new CellKey[cells.size()];
+			for (int i = 0; i < result.length; i++) {
+				EvaluationCell dependent = cells.get(i);
+				result[i] = new CellKey(_masterBook.getSheetIndex(dependent.getSheet()),
+						dependent.getRowIndex(), dependent.getColumnIndex());
+			}
+			return result;
+		}
+	}
+}
@@ -17,7 +17,9 @@
 
 package org.apache.poi.ss.formula.eval.forked;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.poi.ss.formula.EvaluationCell;
@@ -68,6 +70,17 @@ final class ForkedEvaluationWorkbook implements EvaluationWorkbook {
 		return result;
 	}
 
+	/**
+	 * @return the master cells of all cells which had been updated
+	 */
+	public List<EvaluationCell> clearUpdatedCells() {
+		List<EvaluationCell> result = new ArrayList<EvaluationCell>();
+		for (ForkedEvaluationSheet sheet : _sharedSheetsByName.values()) {
+			result.addAll(sheet.clearUpdatedCells());
+		}
+		return result;
+	}
+
 	public void copyUpdatedCells(Workbook workbook) {
 		String[] sheetNames = new String[_sharedSheetsByName.size()];
 		_sharedSheetsByName.keySet().toArray(sheetNames);
@@ -17,6 +17,9 @@
 
 package org.apache.poi.ss.formula.eval.forked;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.NumberEval;
@@ -28,8 +31,10 @@ import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment;
 import org.apache.poi.ss.formula.EvaluationCell;
 import org.apache.poi.ss.formula.EvaluationWorkbook;
+import org.apache.poi.ss.formula.IFormulaResultProvider;
 import org.apache.poi.ss.formula.IStabilityClassifier;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
+import org.apache.poi.ss.formula.eval.forked.ForkedEvaluationTemplate.CellKey;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Workbook;
 
@@ -40,6 +45,8 @@ import org.apache.poi.ss.usermodel.Workbook;
  * This class enables a 'master workbook' to be loaded just once and shared between many evaluation
  * clients.  Each evaluation client creates its own {@link ForkedEvaluator} and can set cell values
  * that will be used for local evaluations (and don't disturb evaluations on other evaluators).
+ * Evaluators created by a {@link ForkedEvaluationTemplate} also share the formula results of the
+ * master workbook, and only evaluate the formulas affected by their updated cells.
  *
  * @author Josh Micich
  */
@@ -47,12 +54,33 @@ public final class ForkedEvaluator {
 
 	private WorkbookEvaluator _evaluator;
 	private ForkedEvaluationWorkbook _sewb;
+	/** <code>null</code> if this evaluator was not created by a template */
+	private final ForkedEvaluationTemplate _template;
+	/** the formula cells which depend on updated cells, and can't use the results of the template */
+	private final Set<CellKey> _updatedFormulaCells;
 
 	private ForkedEvaluator(EvaluationWorkbook masterWorkbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+		this(masterWorkbook, stabilityClassifier, udfFinder, null);
+	}
+	/* package */ ForkedEvaluator(EvaluationWorkbook masterWorkbook, IStabilityClassifier stabilityClassifier,
+			UDFFinder udfFinder, ForkedEvaluationTemplate template) {
 		_sewb = new ForkedEvaluationWorkbook(masterWorkbook);
 		_evaluator = new WorkbookEvaluator(_sewb, stabilityClassifier, udfFinder);
+		_template = template;
+		_updatedFormulaCells = new HashSet<CellKey>();
+		if (template != null) {
+			_evaluator.setFormulaResultProvider(new IFormulaResultProvider() {
+				public ValueEval getFormulaResult(int sheetIndex, int rowIndex, int columnIndex) {
+					CellKey key = new CellKey(sheetIndex, rowIndex, columnIndex);
+					if (_updatedFormulaCells.contains(key)) {
+						return null;
+					}
+					return _template.getFormulaResult(key);
+				}
+			});
+		}
 	}
-	private static EvaluationWorkbook createEvaluationWorkbook(Workbook wb) {
+	/* package */ static EvaluationWorkbook createEvaluationWorkbook(Workbook wb) {
 		if (wb instanceof HSSFWorkbook) {
 			return HSSFEvaluationWorkbook.create((HSSFWorkbook) wb);
 		}
@@ -86,6 +114,42 @@ public final class ForkedEvaluator {
 		ForkedEvaluationCell cell = _sewb.getOrCreateUpdatableCell(sheetName, rowIndex, columnIndex);
 		cell.setValue(value);
 		_evaluator.notifyUpdateCell(cell);
+		if (_template != null) {
+			notifyDependentFormulaCells(new CellKey(_sewb.getSheetIndex(sheetName), rowIndex, columnIndex));
+		}
+	}
+	/**
+	 * Discards all updated cells, so that this evaluator can be reused as if it was new.
+	 * The cached results of formula cells which don't depend on any updated cell are kept.
+	 */
+	public void reset() {
+		for (EvaluationCell cell : _sewb.clearUpdatedCells()) {
+			_evaluator.notifyUpdateCell(cell);
+		}
+		if (_template != null) {
+			for (CellKey key : _updatedFormulaCells) {
+				EvaluationCell cell = _sewb.getSheet(key.getSheetIndex()).getCell(key.getRowIndex(), key.getColumnIndex());
+				_evaluator.notifyUpdateCell(cell);
+			}
+			_updatedFormulaCells.clear();
+		}
+	}
+
+	/* package */ ForkedEvaluationTemplate getTemplate() {
+		return _template;
+	}
+
+	/**
+	 * Stops using the template results of the formula cells depending on the updated cell.
+	 * Any of these results already used have no recorded inputs, so they are cleared explicitly.
+	 */
+	private void notifyDependentFormulaCells(CellKey updatedCell) {
+		for (CellKey key : _template.getDependentFormulaCells(updatedCell)) {
+			if (_updatedFormulaCells.add(key)) {
+				EvaluationCell cell = _sewb.getSheet(key.getSheetIndex()).getCell(key.getRowIndex(), key.getColumnIndex());
+				_evaluator.notifyUpdateCell(cell);
+			}
+		}
 	}
 	/**
 	 * Copies the values of all updated cells (modified by calls to {@link
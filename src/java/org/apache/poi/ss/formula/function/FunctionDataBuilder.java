@@ -43,9 +43,9 @@ final class FunctionDataBuilder {
 	}
 
 	public void add(int functionIndex, String functionName, int minParams, int maxParams,
-			byte returnClassCode, byte[] parameterClassCodes, boolean hasFootnote) {
+			byte returnClassCode, byte[] parameterClassCodes, boolean isVolatile, boolean hasFootnote) {
 		FunctionMetadata fm = new FunctionMetadata(functionIndex, functionName, minParams, maxParams,
-				returnClassCode, parameterClassCodes);
+				returnClassCode, parameterClassCodes, isVolatile);
 
 		Integer indexKey = Integer.valueOf(functionIndex);
 
@@ -39,15 +39,17 @@ public final class FunctionMetadata {
 	private final int _maxParams;
 	private final byte _returnClassCode;
 	private final byte[] _parameterClassCodes;
+	private final boolean _isVolatile;
 
 	/* package */ FunctionMetadata(int index, String name, int minParams, int maxParams,
-			byte returnClassCode, byte[] parameterClassCodes) {
+			byte returnClassCode, byte[] parameterClassCodes, boolean isVolatile) {
 		_index = index;
 		_name = name;
 		_minParams = minParams;
 		_maxParams = maxParams;
 		_returnClassCode = returnClassCode;
 		_parameterClassCodes = parameterClassCodes;
+		_isVolatile = isVolatile;
 	}
 	public int getIndex() {
 		return _index;
@@ -70,6 +72,13 @@ public final class FunctionMetadata {
 	public byte[] getParameterClassCodes() {
 		return _parameterClassCodes.clone();
 	}
+	/**
+	 * @return <code>true</code> if Excel recalculates calls of this function (like RAND or NOW)
+	 * on every recalculation, regardless of changes to their arguments
+	 */
+	public boolean isVolatile() {
+		return _isVolatile;
+	}
 	/**
 	 * Some varags functions (like VLOOKUP) have a specific limit to the number of arguments that 
 	 * can be passed.  Other functions (like SUM) don't have such a limit.  For those functions,
@@ -17,9 +17,16 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.AreaValuesCache;
+import org.apache.poi.ss.formula.AreaValuesCache.AreaValues;
 import org.apache.poi.ss.formula.ThreeDEval;
 import org.apache.poi.ss.formula.TwoDEval;
 import org.apache.poi.ss.formula.eval.RefEval;
+import org.apache.poi.ss.formula.eval.StringEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
 
 /**
@@ -47,6 +54,12 @@ final class CountUtils {
      * @return the number of evaluated cells in the range that match the specified criteria
      */
     public static int countMatchingCellsInArea(ThreeDEval areaEval, I_MatchPredicate criteriaPredicate) {
+        if (!(criteriaPredicate instanceof I_MatchAreaPredicate)) {
+            AreaValues values = AreaValuesCache.getValues(areaEval);
+            if (values != null) {
+                return countMatchingValues(values, criteriaPredicate);
+            }
+        }
         int result = 0;
 
         for (int sIx=areaEval.getFirstSheetIndex(); sIx <= areaEval.getLastSheetIndex(); sIx++) {
@@ -69,6 +82,49 @@ final class CountUtils {
         }
         return result;
     }
+    private static int countMatchingValues(AreaValues values, I_MatchPredicate criteriaPredicate) {
+        boolean[] matches = new boolean[values.getSize()];
+        Arrays.fill(matches, true);
+        matchValues(values, criteriaPredicate, matches);
+        int result = 0;
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i]) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears the flags of the values which do not match the specified criteria.  Values whose
+     * flag is already cleared are not tested, and each distinct string is tested only once.
+     *
+     * @param matches a flag for each of the <tt>values</tt>, in the same order
+     */
+    public static void matchValues(AreaValues values, I_MatchPredicate criteriaPredicate, boolean[] matches) {
+        // strings are shared, so their results can be looked up by identity
+        Map<ValueEval, Boolean> stringMatches = null;
+        for (int i = 0; i < matches.length; i++) {
+            if (!matches[i]) {
+                continue;
+            }
+            ValueEval ve = values.getValue(i);
+            if (ve instanceof StringEval) {
+                if (stringMatches == null) {
+                    stringMatches = new IdentityHashMap<ValueEval, Boolean>();
+                }
+                Boolean result = stringMatches.get(ve);
+                if (result == null) {
+                    result = Boolean.valueOf(criteriaPredicate.matches(ve));
+                    stringMatches.put(ve, result);
+                }
+                matches[i] = result.booleanValue();
+            } else {
+                matches[i] = criteriaPredicate.matches(ve);
+            }
+        }
+    }
+
 	/**
      * @return the number of evaluated cells in the range that match the specified criteria
 	 */
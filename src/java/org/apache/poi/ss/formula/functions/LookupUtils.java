@@ -20,6 +20,7 @@ package org.apache.poi.ss.formula.functions;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.poi.ss.formula.LookupIndexCache;
 import org.apache.poi.ss.formula.TwoDEval;
 import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.BoolEval;
@@ -484,7 +485,7 @@ final class LookupUtils {
 		if(isRangeLookup) {
 			result = performBinarySearch(vector, lookupComparer);
 		} else {
-			result = lookupIndexOfExactValue(lookupComparer, vector);
+			result = lookupIndexOfExactValue(lookupValue, lookupComparer, vector);
 		}
 		if(result < 0) {
 			throw new EvaluationException(ErrorEval.NA);
@@ -495,13 +496,19 @@ final class LookupUtils {
 
 	/**
 	 * Finds first (lowest index) exact occurrence of specified value.
+	 * @param lookupValue the value <tt>lookupComparer</tt> was created for
 	 * @param lookupComparer the value to be found in column or row vector
 	 * @param vector the values to be searched. For VLOOKUP this is the first column of the
 	 * 	tableArray. For HLOOKUP this is the first row of the tableArray.
 	 * @return zero based index into the vector, -1 if value cannot be found
 	 */
-	private static int lookupIndexOfExactValue(LookupValueComparer lookupComparer, ValueVector vector) {
+	public static int lookupIndexOfExactValue(ValueEval lookupValue, LookupValueComparer lookupComparer,
+			ValueVector vector) {
 
+		int result = lookupIndexOfExactValueInIndex(lookupValue, vector);
+		if (result != LookupIndexCache.NOT_INDEXED) {
+			return result;
+		}
 		// find first occurrence of lookup value
 		int size = vector.getSize();
 		for (int i = 0; i < size; i++) {
@@ -513,6 +520,29 @@ final class LookupUtils {
 	}
 
 
+	/**
+	 * Uses the {@link LookupIndexCache} of the evaluator when the vector is a row or column of
+	 * a sheet area and the lookup value is not a wildcard pattern.
+	 */
+	private static int lookupIndexOfExactValueInIndex(ValueEval lookupValue, ValueVector vector) {
+		if (lookupValue == BlankEval.instance) {
+			// as in createLookupComparer
+			lookupValue = NumberEval.ZERO;
+		} else if (lookupValue instanceof StringEval
+				&& Countif.StringMatcher.getWildCardPattern(((StringEval) lookupValue).getStringValue()) != null) {
+			return LookupIndexCache.NOT_INDEXED;
+		}
+		if (vector instanceof ColumnVector) {
+			ColumnVector cv = (ColumnVector) vector;
+			return LookupIndexCache.lookupIndexOfExactValue(cv._tableArray, true, cv._columnIndex, lookupValue);
+		}
+		if (vector instanceof RowVector) {
+			RowVector rv = (RowVector) vector;
+			return LookupIndexCache.lookupIndexOfExactValue(rv._tableArray, false, rv._rowIndex, lookupValue);
+		}
+		return LookupIndexCache.NOT_INDEXED;
+	}
+
 	/**
 	 * Encapsulates some standard binary search functionality so the unusual Excel behaviour can
 	 * be clearly distinguished.
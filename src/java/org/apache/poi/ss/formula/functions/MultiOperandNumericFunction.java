@@ -17,6 +17,8 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import org.apache.poi.ss.formula.AreaValuesCache;
+import org.apache.poi.ss.formula.AreaValuesCache.AreaValues;
 import org.apache.poi.ss.formula.ThreeDEval;
 import org.apache.poi.ss.formula.TwoDEval;
 import org.apache.poi.ss.formula.eval.BlankEval;
@@ -79,6 +81,12 @@ public abstract class MultiOperandNumericFunction implements Function {
 			_array[_count] = value;
 			_count++;
 		}
+
+		public void addAll(double[] values) {
+			ensureCapacity(_count + values.length);
+			System.arraycopy(values, 0, _array, _count, values.length);
+			_count += values.length;
+		}
 	}
 
 	private static final int DEFAULT_MAX_NUM_OPERANDS = 30;
@@ -143,6 +151,11 @@ public abstract class MultiOperandNumericFunction implements Function {
 	private void collectValues(ValueEval operand, DoubleList temp) throws EvaluationException {
         if (operand instanceof ThreeDEval) {
             ThreeDEval ae = (ThreeDEval) operand;
+            AreaValues values = AreaValuesCache.getValues(ae);
+            if (values != null) {
+                collectValues(values, temp);
+                return;
+            }
             for (int sIx=ae.getFirstSheetIndex(); sIx <= ae.getLastSheetIndex(); sIx++) {
                 int width = ae.getWidth();
                 int height = ae.getHeight();
@@ -178,6 +191,22 @@ public abstract class MultiOperandNumericFunction implements Function {
 		}
 		collectValue(operand, false, temp);
 	}
+	/**
+	 * Collects the cached values of an area, as if they were collected one by one.
+	 * The cached areas don't contain formulas, so none of the values is a subtotal.
+	 */
+	private void collectValues(AreaValues values, DoubleList temp) throws EvaluationException {
+		if (values.getFirstError() != null) {
+			throw new EvaluationException(values.getFirstError());
+		}
+		if ((_isBlankCounted && values.hasBlanks()) || (_isReferenceBoolCounted && values.hasBooleans())) {
+			for (int i = 0, iSize = values.getSize(); i < iSize; i++) {
+				collectValue(values.getValue(i), true, temp);
+			}
+			return;
+		}
+		temp.addAll(values.getNumericValues());
+	}
 	private void collectValue(ValueEval ve, boolean isViaReference, DoubleList temp)  throws EvaluationException {
 		if (ve == null) {
 			throw new IllegalArgumentException("ve must not be null");
@@ -17,6 +17,10 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import java.util.Arrays;
+
+import org.apache.poi.ss.formula.AreaValuesCache;
+import org.apache.poi.ss.formula.AreaValuesCache.AreaValues;
 import org.apache.poi.ss.formula.eval.AreaEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.EvaluationException;
@@ -83,6 +87,22 @@ public final class Sumif extends Var2or3ArgFunction {
 		int height=aeRange.getHeight();
 		int width= aeRange.getWidth();
 
+		AreaValues values = AreaValuesCache.getValues(aeRange);
+		AreaValues sumValues = values == null ? null : AreaValuesCache.getValues(aeSum);
+		if (sumValues != null) {
+			// both ranges are cached, scan them in a single loop
+			boolean[] matches = new boolean[height * width];
+			Arrays.fill(matches, true);
+			CountUtils.matchValues(values, mp, matches);
+			double result = 0.0;
+			for (int i = 0; i < matches.length; i++) {
+				if (matches[i]) {
+					result += sumValues.getNumber(i);
+				}
+			}
+			return result;
+		}
+
 		double result = 0.0;
 		for (int r=0; r<height; r++) {
 			for (int c=0; c<width; c++) {
@@ -19,6 +19,10 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import java.util.Arrays;
+
+import org.apache.poi.ss.formula.AreaValuesCache;
+import org.apache.poi.ss.formula.AreaValuesCache.AreaValues;
 import org.apache.poi.ss.formula.OperationEvaluationContext;
 import org.apache.poi.ss.formula.eval.AreaEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -124,24 +128,35 @@ public final class Sumifs implements FreeRefFunction {
         int height = aeSum.getHeight();
         int width = aeSum.getWidth();
 
-        double result = 0.0;
-        for (int r = 0; r < height; r++) {
-            for (int c = 0; c < width; c++) {
-
-                boolean matches = true;
-                for(int i = 0; i < ranges.length; i++){
-                    AreaEval aeRange = ranges[i];
-                    I_MatchPredicate mp = predicates[i];
-
-                    if (!mp.matches(aeRange.getRelativeValue(r, c))) {
-                        matches = false;
-                        break;
+        // the criteria are applied one range at a time, so that cached range values can be
+        // scanned in a single loop.  Cells already excluded by earlier criteria are still skipped.
+        boolean[] matches = new boolean[height * width];
+        Arrays.fill(matches, true);
+        for(int i = 0; i < ranges.length; i++){
+            AreaEval aeRange = ranges[i];
+            I_MatchPredicate mp = predicates[i];
+
+            AreaValues values = AreaValuesCache.getValues(aeRange);
+            if (values != null) {
+                CountUtils.matchValues(values, mp, matches);
+                continue;
+            }
+            for (int r = 0, k = 0; r < height; r++) {
+                for (int c = 0; c < width; c++, k++) {
+                    if (matches[k] && !mp.matches(aeRange.getRelativeValue(r, c))) {
+                        matches[k] = false;
                     }
-
                 }
+            }
+        }
 
-                if(matches) { // sum only if all of the corresponding criteria specified are true for that cell.
-                    result += accumulate(aeSum, r, c);
+        // sum only if all of the corresponding criteria specified are true for that cell.
+        AreaValues sumValues = AreaValuesCache.getValues(aeSum);
+        double result = 0.0;
+        for (int r = 0, k = 0; r < height; r++) {
+            for (int c = 0; c < width; c++, k++) {
+                if (matches[k]) {
+                    result += sumValues == null ? accumulate(aeSum, r, c) : sumValues.getNumber(k);
                 }
             }
         }
@@ -0,0 +1,48 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.ss.usermodel;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link FormulaEvaluator} which keeps track of the dependencies between the cells it
+ * evaluates, so that after a change only the affected formula cells need to be evaluated
+ * again.
+ */
+public interface IncrementalFormulaEvaluator extends FormulaEvaluator {
+
+    /**
+     * Returns the formula cells whose results depend, directly or indirectly, on the specified
+     * cell.  Dependencies are recorded while evaluating, so formula cells which have not been
+     * evaluated since the cache was last cleared are not included.
+     *
+     * @return the dependent formula cells, each before the formula cells depending on it
+     */
+    List<Cell> getDependentFormulaCells(Cell cell);
+
+    /**
+     * Tells the cell value cache that the specified (value or formula) cells have changed, and
+     * re-evaluates the changed formula cells and those {@link #getDependentFormulaCells(Cell)
+     * depending} on the changed cells.  As with {@link #evaluateFormulaCell(Cell)}, the results
+     * are saved in the formula cells.  Call {@link #evaluateAll()} once before the first
+     * changes, so that the dependencies of all formula cells are known.
+     *
+     * @return the re-evaluated formula cells
+     */
+    List<Cell> recalculateDependentCells(Collection<Cell> changedCells);
+}
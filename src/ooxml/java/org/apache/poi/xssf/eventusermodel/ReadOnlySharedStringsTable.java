@@ -93,6 +93,14 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
      */
     private List<String> strings;
 
+    /**
+     * For subclasses which store the strings differently, and so
+     *  need to be set up before calling {@link #readFrom(InputStream)}
+     *  themselves.
+     */
+    protected ReadOnlySharedStringsTable() {
+    }
+
     /**
      * @param pkg
      * @throws IOException
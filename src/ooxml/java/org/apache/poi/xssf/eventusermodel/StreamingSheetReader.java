@@ -0,0 +1,490 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.StaxHelper;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+/**
+ * <p>A pull based alternative to {@link XSSFSheetXMLHandler}, which
+ *  reads the rows of a sheet#.xml part one at a time with a StAX
+ *  cursor, rather than pushing them through SAX callbacks.</p>
+ * <p>Only the row currently being returned is held in memory. Cell
+ *  values are kept in their raw, typed form: numbers as doubles,
+ *  shared strings as their index (looked up in the
+ *  {@link ReadOnlySharedStringsTable} only when asked for), plus the
+ *  style index. Formatting through a {@link DataFormatter} is only
+ *  done on request.</p>
+ * <p>Typical usage, alongside {@link XSSFReader.SheetIterator}:</p>
+ * <pre>
+ * XSSFReader reader = new XSSFReader(pkg);
+ * ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+ * StylesTable styles = reader.getStylesTable();
+ * XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator)reader.getSheetsData();
+ * while (sheets.hasNext()) {
+ *     StreamingSheetReader rows = new StreamingSheetReader(sheets.next(), strings, styles);
+ *     try {
+ *         while (rows.hasNext()) {
+ *             StreamingSheetReader.StreamingRow row = rows.next();
+ *             ...
+ *         }
+ *     } finally {
+ *         rows.close();
+ *     }
+ * }
+ * </pre>
+ */
+public class StreamingSheetReader implements Iterator<StreamingSheetReader.StreamingRow>, Closeable {
+    private static final int INITIAL_CELLS = 16;
+
+    private final InputStream sheetData;
+    private final XMLStreamReader reader;
+    private final ReadOnlySharedStringsTable sharedStringsTable;
+    private final StylesTable stylesTable;
+
+    private StreamingRow nextRow;
+    private boolean sheetDataDone;
+    private int nextRowNum;
+
+    // Per-row buffers, re-used between rows and copied to
+    //  exactly sized arrays once the row is complete
+    private int cellCount;
+    private int[] columns = new int[INITIAL_CELLS];
+    private int[] cellTypes = new int[INITIAL_CELLS];
+    private int[] styles = new int[INITIAL_CELLS];
+    private double[] values = new double[INITIAL_CELLS];
+    private String[] texts = new String[INITIAL_CELLS];
+    private boolean[] formulas = new boolean[INITIAL_CELLS];
+    private boolean hasTexts;
+
+    /**
+     * Creates a reader over the given sheet part, which
+     *  must not be shared with anything else.
+     *
+     * @param sheetData the contents of the sheet, as returned by
+     *  {@link XSSFReader#getSheet(String)} or {@link XSSFReader.SheetIterator#next()}
+     * @param strings the shared strings table, may be null if the workbook
+     *  doesn't have one
+     * @param styles the styles table, may be null if cell values will never
+     *  be formatted
+     */
+    public StreamingSheetReader(InputStream sheetData, ReadOnlySharedStringsTable strings, StylesTable styles)
+    throws XMLStreamException {
+        this.sheetData = sheetData;
+        this.sharedStringsTable = strings;
+        this.stylesTable = styles;
+        this.reader = StaxHelper.newXMLInputFactory().createXMLStreamReader(sheetData);
+    }
+
+    /**
+     * Returns <tt>true</tt> if there is another row in the sheet.
+     */
+    public boolean hasNext() {
+        if (nextRow == null && !sheetDataDone) {
+            try {
+                nextRow = readRow();
+            } catch (XMLStreamException e) {
+                throw new POIXMLException(e);
+            }
+        }
+        return nextRow != null;
+    }
+
+    /**
+     * Returns the next row of the sheet, in the order they are stored.
+     * Rows with no cells in the file are returned, rows which are
+     *  missing from the file are not.
+     */
+    public StreamingRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StreamingRow row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    /**
+     * We're read only, so remove isn't supported
+     */
+    public void remove() {
+        throw new IllegalStateException("Not supported");
+    }
+
+    /**
+     * Closes the StAX cursor, and the sheet data stream
+     */
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            sheetData.close();
+        }
+    }
+
+    /**
+     * Advances the cursor to the end of the next row, or the
+     *  end of the sheet data.
+     *
+     * @return the row, or <code>null</code> if there are no more
+     */
+    private StreamingRow readRow() throws XMLStreamException {
+        int rowNum = -1;
+        int cellType = -1;
+        String cellTypeAttr = null;
+        int style = 0;
+        int column = -1;
+        String value = null;
+        StringBuilder inlineString = null;
+        boolean formula = false;
+        boolean isIsOpen = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("row".equals(name)) {
+                    String rowNumStr = reader.getAttributeValue(null, "r");
+                    if (rowNumStr != null) {
+                        rowNum = Integer.parseInt(rowNumStr) - 1;
+                    } else {
+                        rowNum = nextRowNum;
+                    }
+                    cellCount = 0;
+                    hasTexts = false;
+                    column = -1;
+                } else if ("c".equals(name)) {
+                    String ref = reader.getAttributeValue(null, "r");
+                    column = (ref != null) ? XSSFSheetXMLHandler.parseColumn(ref) : column + 1;
+                    cellTypeAttr = reader.getAttributeValue(null, "t");
+                    String styleStr = reader.getAttributeValue(null, "s");
+                    style = (styleStr != null) ? Integer.parseInt(styleStr) : 0;
+                    value = null;
+                    inlineString = null;
+                    formula = false;
+                } else if ("v".equals(name)) {
+                    value = reader.getElementText();
+                } else if ("f".equals(name)) {
+                    formula = true;
+                } else if ("is".equals(name)) {
+                    isIsOpen = true;
+                    inlineString = new StringBuilder();
+                } else if ("t".equals(name) && isIsOpen) {
+                    inlineString.append(reader.getElementText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("c".equals(name)) {
+                    addCell(column, cellTypeAttr, style, value, inlineString, formula);
+                } else if ("is".equals(name)) {
+                    isIsOpen = false;
+                } else if ("row".equals(name)) {
+                    nextRowNum = rowNum + 1;
+                    return buildRow(rowNum);
+                } else if ("sheetData".equals(name)) {
+                    sheetDataDone = true;
+                    return null;
+                }
+            }
+        }
+        sheetDataDone = true;
+        return null;
+    }
+
+    private void addCell(int column, String type, int style, String value, StringBuilder inlineString, boolean formula) {
+        ensureCapacity(cellCount + 1);
+        int idx = cellCount++;
+        columns[idx] = column;
+        styles[idx] = style;
+        formulas[idx] = formula;
+        values[idx] = 0;
+        texts[idx] = null;
+
+        if ("s".equals(type)) {
+            cellTypes[idx] = Cell.CELL_TYPE_STRING;
+            values[idx] = (value == null) ? -1 : Integer.parseInt(value);
+        } else if ("inlineStr".equals(type)) {
+            cellTypes[idx] = Cell.CELL_TYPE_STRING;
+            texts[idx] = (inlineString != null) ? inlineString.toString() : (value != null) ? value : "";
+            hasTexts = true;
+        } else if ("str".equals(type)) {
+            cellTypes[idx] = Cell.CELL_TYPE_STRING;
+            texts[idx] = (value != null) ? value : "";
+            hasTexts = true;
+        } else if ("b".equals(type)) {
+            cellTypes[idx] = Cell.CELL_TYPE_BOOLEAN;
+            values[idx] = (value != null && value.length() > 0 && value.charAt(0) != '0') ? 1 : 0;
+        } else if ("e".equals(type)) {
+            cellTypes[idx] = Cell.CELL_TYPE_ERROR;
+            texts[idx] = (value != null) ? value : "";
+            hasTexts = true;
+        } else if (value == null || value.length() == 0) {
+            cellTypes[idx] = Cell.CELL_TYPE_BLANK;
+        } else {
+            cellTypes[idx] = Cell.CELL_TYPE_NUMERIC;
+            values[idx] = Double.parseDouble(value);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= columns.length) {
+            return;
+        }
+        int newSize = Math.max(size, columns.length * 2);
+        int[] newColumns = new int[newSize];
+        int[] newCellTypes = new int[newSize];
+        int[] newStyles = new int[newSize];
+        double[] newValues = new double[newSize];
+        String[] newTexts = new String[newSize];
+        boolean[] newFormulas = new boolean[newSize];
+        System.arraycopy(columns, 0, newColumns, 0, cellCount);
+        System.arraycopy(cellTypes, 0, newCellTypes, 0, cellCount);
+        System.arraycopy(styles, 0, newStyles, 0, cellCount);
+        System.arraycopy(values, 0, newValues, 0, cellCount);
+        System.arraycopy(texts, 0, newTexts, 0, cellCount);
+        System.arraycopy(formulas, 0, newFormulas, 0, cellCount);
+        columns = newColumns;
+        cellTypes = newCellTypes;
+        styles = newStyles;
+        values = newValues;
+        texts = newTexts;
+        formulas = newFormulas;
+    }
+
+    private StreamingRow buildRow(int rowNum) {
+        int n = cellCount;
+        int[] rowColumns = new int[n];
+        int[] rowCellTypes = new int[n];
+        int[] rowStyles = new int[n];
+        double[] rowValues = new double[n];
+        boolean[] rowFormulas = new boolean[n];
+        String[] rowTexts = null;
+        System.arraycopy(columns, 0, rowColumns, 0, n);
+        System.arraycopy(cellTypes, 0, rowCellTypes, 0, n);
+        System.arraycopy(styles, 0, rowStyles, 0, n);
+        System.arraycopy(values, 0, rowValues, 0, n);
+        System.arraycopy(formulas, 0, rowFormulas, 0, n);
+        if (hasTexts) {
+            rowTexts = new String[n];
+            System.arraycopy(texts, 0, rowTexts, 0, n);
+        }
+        return new StreamingRow(rowNum, rowColumns, rowCellTypes, rowStyles,
+                rowValues, rowTexts, rowFormulas, sharedStringsTable, stylesTable);
+    }
+
+    /**
+     * A single row read from the sheet. Cells are addressed by their
+     *  position within the row (0 to {@link #getCellCount()} - 1),
+     *  which is not necessarily the same as their column index.
+     */
+    public static final class StreamingRow {
+        private final int rowNum;
+        private final int[] columns;
+        private final int[] cellTypes;
+        private final int[] styles;
+        private final double[] values;
+        private final String[] texts;
+        private final boolean[] formulas;
+        private final ReadOnlySharedStringsTable sharedStringsTable;
+        private final StylesTable stylesTable;
+
+        private StreamingRow(int rowNum, int[] columns, int[] cellTypes, int[] styles,
+                double[] values, String[] texts, boolean[] formulas,
+                ReadOnlySharedStringsTable sharedStringsTable, StylesTable stylesTable) {
+            this.rowNum = rowNum;
+            this.columns = columns;
+            this.cellTypes = cellTypes;
+            this.styles = styles;
+            this.values = values;
+            this.texts = texts;
+            this.formulas = formulas;
+            this.sharedStringsTable = sharedStringsTable;
+            this.stylesTable = stylesTable;
+        }
+
+        /**
+         * @return the zero based row number
+         */
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        /**
+         * @return the number of cells stored in this row
+         */
+        public int getCellCount() {
+            return columns.length;
+        }
+
+        /**
+         * @return the zero based column index of the given cell
+         */
+        public int getColumnIndex(int cell) {
+            return columns[cell];
+        }
+
+        /**
+         * Returns the type of the (cached) value of the cell, one of
+         *  {@link Cell#CELL_TYPE_NUMERIC}, {@link Cell#CELL_TYPE_STRING},
+         *  {@link Cell#CELL_TYPE_BOOLEAN}, {@link Cell#CELL_TYPE_ERROR} or
+         *  {@link Cell#CELL_TYPE_BLANK}. Formula cells report the type
+         *  of their last calculated result, see {@link #isFormula(int)}.
+         */
+        public int getCellType(int cell) {
+            return cellTypes[cell];
+        }
+
+        /**
+         * @return whether the cell holds a formula
+         */
+        public boolean isFormula(int cell) {
+            return formulas[cell];
+        }
+
+        /**
+         * @return the index into the styles table of the cell's style
+         */
+        public int getStyleIndex(int cell) {
+            return styles[cell];
+        }
+
+        /**
+         * @return the numeric value of the cell
+         * @throws IllegalStateException if the cell isn't numeric
+         */
+        public double getNumericCellValue(int cell) {
+            checkType(cell, Cell.CELL_TYPE_NUMERIC);
+            return values[cell];
+        }
+
+        /**
+         * @return the boolean value of the cell
+         * @throws IllegalStateException if the cell isn't boolean
+         */
+        public boolean getBooleanCellValue(int cell) {
+            checkType(cell, Cell.CELL_TYPE_BOOLEAN);
+            return values[cell] != 0;
+        }
+
+        /**
+         * @return the index into the shared strings table, or -1
+         *  if the cell value isn't a shared string
+         */
+        public int getSharedStringIndex(int cell) {
+            if (cellTypes[cell] != Cell.CELL_TYPE_STRING || texts != null && texts[cell] != null) {
+                return -1;
+            }
+            return (int)values[cell];
+        }
+
+        /**
+         * Returns the text of the cell. Shared strings are only looked
+         *  up at this point. Errors are returned as their error code
+         *  text, eg <code>#DIV/0!</code>
+         *
+         * @throws IllegalStateException if the cell is neither a string
+         *  nor an error
+         */
+        public String getStringCellValue(int cell) {
+            int type = cellTypes[cell];
+            if (type != Cell.CELL_TYPE_STRING && type != Cell.CELL_TYPE_ERROR) {
+                throw typeMismatch(cell, Cell.CELL_TYPE_STRING);
+            }
+            int sstIndex = getSharedStringIndex(cell);
+            if (sstIndex == -1) {
+                // a shared string cell without a <v> is empty
+                String text = (texts == null) ? null : texts[cell];
+                return (text == null) ? "" : text;
+            }
+            if (sharedStringsTable == null) {
+                throw new IllegalStateException("No shared strings table to look up entry " + sstIndex);
+            }
+            return sharedStringsTable.getEntryAt(sstIndex);
+        }
+
+        /**
+         * Formats the cell value as Excel would display it, using the
+         *  number format of the cell's style.
+         *
+         * @return the formatted value, or <code>null</code> for a blank cell
+         */
+        public String getFormattedCellValue(int cell, DataFormatter formatter) {
+            switch (cellTypes[cell]) {
+                case Cell.CELL_TYPE_NUMERIC:
+                    short formatIndex = 0;
+                    String formatString = null;
+                    if (stylesTable != null && stylesTable.getNumCellStyles() > 0) {
+                        XSSFCellStyle style = stylesTable.getStyleAt(styles[cell]);
+                        if (style != null) {
+                            formatIndex = style.getDataFormat();
+                            formatString = style.getDataFormatString();
+                        }
+                    }
+                    if (formatString == null) {
+                        formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+                    }
+                    return formatter.formatRawCellContents(values[cell], formatIndex, formatString);
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return values[cell] != 0 ? "TRUE" : "FALSE";
+                case Cell.CELL_TYPE_STRING:
+                case Cell.CELL_TYPE_ERROR:
+                    return getStringCellValue(cell);
+                default:
+                    return null;
+            }
+        }
+
+        private void checkType(int cell, int expected) {
+            if (cellTypes[cell] != expected) {
+                throw typeMismatch(cell, expected);
+            }
+        }
+
+        private IllegalStateException typeMismatch(int cell, int expected) {
+            return new IllegalStateException("Cannot get a " + typeName(expected) + " value from a "
+                    + typeName(cellTypes[cell]) + " cell at column " + columns[cell] + " of row " + rowNum);
+        }
+
+        private static String typeName(int cellType) {
+            switch (cellType) {
+                case Cell.CELL_TYPE_NUMERIC: return "numeric";
+                case Cell.CELL_TYPE_STRING: return "text";
+                case Cell.CELL_TYPE_BOOLEAN: return "boolean";
+                case Cell.CELL_TYPE_ERROR: return "error";
+                case Cell.CELL_TYPE_BLANK: return "blank";
+                default: return "#unknown cell type (" + cellType + ")#";
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.StringUtil;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>A variant of {@link ReadOnlySharedStringsTable} which doesn't
+ *  hold the strings on the heap. While the Shared Strings Table is
+ *  parsed, each entry is written as UTF-8 to a temporary data file,
+ *  with its offset written to a temporary index file. Entries are then
+ *  read back and decoded from those files whenever they are asked for.</p>
+ * <p>A bounded cache of recently used entries can be kept, to avoid
+ *  going back to the files for strings which are used over and over.</p>
+ * <p>Heap use is therefore fixed, however many unique strings the
+ *  workbook has, at the cost of slower lookups. Like
+ *  {@link ReadOnlySharedStringsTable}, this class isn't thread safe.</p>
+ * <p>The temporary files are created via {@link TempFile}, and should
+ *  be removed by calling {@link #close()} when done.</p>
+ */
+public class TempFileSharedStringsTable extends ReadOnlySharedStringsTable implements Closeable {
+    private final int cacheSize;
+    private final Map<Integer, String> cache;
+
+    private int count;
+    private int uniqueCount;
+    private int size;
+
+    private File dataFile;
+    private File indexFile;
+    private DataOutputStream dataOut;
+    private DataOutputStream indexOut;
+    private long dataLength;
+    private RandomAccessFile dataRaf;
+    private RandomAccessFile indexRaf;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private List<String> items;
+
+    /**
+     * @param pkg the package holding the Shared Strings Table
+     * @param cacheSize the number of recently used entries to keep
+     *  on the heap, or zero to always read them from the files
+     */
+    public TempFileSharedStringsTable(OPCPackage pkg, int cacheSize)
+            throws IOException, SAXException {
+        this.cacheSize = cacheSize;
+        this.cache = createCache(cacheSize);
+
+        ArrayList<PackagePart> parts =
+                pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+
+        // Some workbooks have no shared strings table.
+        if (parts.size() > 0) {
+            PackagePart sstPart = parts.get(0);
+            readPart(sstPart);
+        }
+    }
+
+    /**
+     * @param part the Shared Strings Table part
+     * @param cacheSize the number of recently used entries to keep
+     *  on the heap, or zero to always read them from the files
+     */
+    public TempFileSharedStringsTable(PackagePart part, int cacheSize)
+            throws IOException, SAXException {
+        this.cacheSize = cacheSize;
+        this.cache = createCache(cacheSize);
+        readPart(part);
+    }
+
+    /**
+     * Reads the part into the temporary files, removing them again
+     *  if that fails, as the caller never gets an instance to close.
+     */
+    private void readPart(PackagePart part) throws IOException, SAXException {
+        boolean success = false;
+        try {
+            readFrom(part.getInputStream());
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
+    }
+
+    private static Map<Integer, String> createCache(final int cacheSize) {
+        if (cacheSize <= 0) {
+            return null;
+        }
+        return new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public int getCount() {
+        return this.count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return this.uniqueCount;
+    }
+
+    /**
+     * @return the number of recently used entries kept on the heap
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Return the string at a given index, reading it back
+     *  from the temporary files if it isn't cached.
+     * Formatting is ignored.
+     *
+     * @param idx index of item to return.
+     * @return the item at the specified position in this Shared String table.
+     */
+    @Override
+    public String getEntryAt(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+        if (cache != null) {
+            String str = cache.get(idx);
+            if (str != null) {
+                return str;
+            }
+        }
+
+        String str;
+        try {
+            str = readEntry(idx);
+        } catch (IOException e) {
+            throw new POIXMLException("Unable to read shared string " + idx, e);
+        }
+
+        if (cache != null) {
+            cache.put(idx, str);
+        }
+        return str;
+    }
+
+    /**
+     * Returns a read only view of the strings, which are only
+     *  read back from the temporary files as they are asked for.
+     */
+    @Override
+    public List<String> getItems() {
+        return items;
+    }
+
+    private String readEntry(int idx) throws IOException {
+        ByteBuffer offsets = ByteBuffer.allocate(16);
+        readFully(indexChannel, offsets, idx * 8L);
+        long start = offsets.getLong(0);
+        long end = offsets.getLong(8);
+
+        ByteBuffer data = ByteBuffer.allocate((int)(end - start));
+        readFully(dataChannel, data, start);
+        return new String(data.array(), StringUtil.UTF8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of temporary file");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Closes and deletes the temporary files. Entries can't
+     *  be looked up after this has been called.
+     */
+    public void close() throws IOException {
+        // only the read back files are open once parsing succeeded
+        IOUtils.closeQuietly(dataOut);
+        IOUtils.closeQuietly(indexOut);
+        IOUtils.closeQuietly(dataRaf);
+        IOUtils.closeQuietly(indexRaf);
+        dataOut = indexOut = null;
+        dataRaf = indexRaf = null;
+        dataChannel = indexChannel = null;
+        if (dataFile != null) {
+            dataFile.delete();
+            dataFile = null;
+        }
+        if (indexFile != null) {
+            indexFile.delete();
+            indexFile = null;
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+        size = 0;
+    }
+
+    //// ContentHandler methods ////
+
+    private StringBuffer characters;
+    private boolean tIsOpen;
+
+    @Override
+    public void startElement(String uri, String localName, String name,
+                             Attributes attributes) throws SAXException {
+        if ("sst".equals(name)) {
+            String count = attributes.getValue("count");
+            if(count != null) this.count = Integer.parseInt(count);
+            String uniqueCount = attributes.getValue("uniqueCount");
+            if(uniqueCount != null) this.uniqueCount = Integer.parseInt(uniqueCount);
+
+            try {
+                dataFile = TempFile.createTempFile("poi-sst", ".dat");
+                indexFile = TempFile.createTempFile("poi-sst", ".idx");
+                dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+                indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+
+            characters = new StringBuffer();
+        } else if ("si".equals(name)) {
+            characters.setLength(0);
+        } else if ("t".equals(name)) {
+            tIsOpen = true;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String name)
+            throws SAXException {
+        try {
+            if ("si".equals(name)) {
+                byte[] bytes = characters.toString().getBytes(StringUtil.UTF8);
+                indexOut.writeLong(dataLength);
+                dataOut.write(bytes);
+                dataLength += bytes.length;
+                size++;
+            } else if ("t".equals(name)) {
+                tIsOpen = false;
+            } else if ("sst".equals(name)) {
+                // Mark the end of the last entry, then switch over to reading
+                indexOut.writeLong(dataLength);
+                dataOut.close();
+                indexOut.close();
+                dataOut = indexOut = null;
+
+                dataRaf = new RandomAccessFile(dataFile, "r");
+                indexRaf = new RandomAccessFile(indexFile, "r");
+                dataChannel = dataRaf.getChannel();
+                indexChannel = indexRaf.getChannel();
+                items = new AbstractList<String>() {
+                    @Override
+                    public String get(int index) {
+                        return getEntryAt(index);
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Captures characters only if a t(ext) element is open.
+     */
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        if (tIsOpen)
+            characters.append(ch, start, length);
+    }
+}
@@ -77,6 +77,12 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
     */
    private final SheetContentsHandler output;
 
+   /**
+    * Where our raw typed values are going, if we were asked
+    *  for those instead of formatted text
+    */
+   private final SheetTypedContentsHandler typedOutput;
+
    // Set when V start element is seen
    private boolean vIsOpen;
    // Set when F start element is seen
@@ -93,12 +99,17 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
    // Used to format numeric cell values.
    private short formatIndex;
    private String formatString;
-   private final DataFormatter formatter;
+   private DataFormatter formatter;
    private int rowNum;
    private int nextRowNum;      // some sheets do not have rowNums, Excel can read them so we should try to handle them correctly as well
    private String cellRef;
    private boolean formulasNotResults;
 
+   // Used in typed mode, in place of the cell reference and formatting
+   private int columnIndex;
+   private int styleIndex;
+   private boolean formulaStringResult;
+
    // Gathers characters as they are seen.
    private StringBuffer value = new StringBuffer();
    private StringBuffer formula = new StringBuffer();
@@ -123,6 +134,7 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
        this.commentsTable = comments;
        this.sharedStringsTable = strings;
        this.output = sheetContentsHandler;
+       this.typedOutput = null;
        this.formulasNotResults = formulasNotResults;
        this.nextDataType = xssfDataType.NUMBER;
        this.formatter = dataFormatter;
@@ -157,6 +169,30 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            boolean formulasNotResults) {
        this(styles, strings, sheetContentsHandler, new DataFormatter(), formulasNotResults);
    }
+
+   /**
+    * Accepts objects needed while parsing, for reporting the raw
+    *  typed values of cells rather than formatted text.
+    * Cell comments and headers / footers are not reported, and
+    *  formula cells are reported with their cached results.
+    *
+    * @param styles  Table of styles, only used if values are later
+    *  formatted with {@link #formatRawCellContents(double, int)}
+    * @param strings Table of shared strings, not used during
+    *  parsing, as only the indexes into it are reported
+    * 
+    * @since POI 3.14-Beta2
+    */
+   public XSSFSheetXMLHandler(
+           StylesTable styles,
+           ReadOnlySharedStringsTable strings,
+           SheetTypedContentsHandler sheetTypedContentsHandler) {
+       this.stylesTable = styles;
+       this.sharedStringsTable = strings;
+       this.output = null;
+       this.typedOutput = sheetTypedContentsHandler;
+       this.nextDataType = xssfDataType.NUMBER;
+   }
    
    private void init() {
        if (commentsTable != null) {
@@ -245,7 +281,34 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            } else {
                rowNum = nextRowNum;
            }
-           output.startRow(rowNum);
+           if (typedOutput != null) {
+               columnIndex = -1;
+               typedOutput.startRow(rowNum);
+           } else {
+               output.startRow(rowNum);
+           }
+       }
+       // c => cell, when only the raw values are wanted
+       else if ("c".equals(name) && typedOutput != null) {
+           this.nextDataType = xssfDataType.NUMBER;
+           this.formulaStringResult = false;
+           String ref = attributes.getValue("r");
+           columnIndex = (ref != null) ? parseColumn(ref) : columnIndex + 1;
+           String cellType = attributes.getValue("t");
+           String cellStyleStr = attributes.getValue("s");
+           styleIndex = (cellStyleStr != null) ? Integer.parseInt(cellStyleStr) : 0;
+           if ("b".equals(cellType))
+               nextDataType = xssfDataType.BOOLEAN;
+           else if ("e".equals(cellType))
+               nextDataType = xssfDataType.ERROR;
+           else if ("inlineStr".equals(cellType))
+               nextDataType = xssfDataType.INLINE_STRING;
+           else if ("s".equals(cellType))
+               nextDataType = xssfDataType.SST_STRING;
+           else if ("str".equals(cellType)) {
+               nextDataType = xssfDataType.FORMULA;
+               formulaStringResult = true;
+           }
        }
        // c => cell
        else if ("c".equals(name)) {
@@ -290,8 +353,13 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            throws SAXException {
        String thisStr = null;
 
+       // v => contents of a cell, when only the raw values are wanted
+       if (isTextTag(name) && typedOutput != null) {
+           vIsOpen = false;
+           outputTypedCell();
+       }
        // v => contents of a cell
-       if (isTextTag(name)) {
+       else if (isTextTag(name)) {
            vIsOpen = false;
            
            // Process the value contents as required, now we have it all
@@ -368,6 +436,9 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
           fIsOpen = false;
        } else if ("is".equals(name)) {
           isIsOpen = false;
+       } else if ("row".equals(name) && typedOutput != null) {
+          typedOutput.endRow(rowNum);
+          nextRowNum = rowNum + 1;
        } else if ("row".equals(name)) {
           // Handle any "missing" cells which had comments attached
           checkForEmptyCellComments(EmptyCellCommentsCheckType.END_OF_ROW);
@@ -384,15 +455,134 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
        else if("oddHeader".equals(name) || "evenHeader".equals(name) ||
              "firstHeader".equals(name)) {
           hfIsOpen = false;
-          output.headerFooter(headerFooter.toString(), true, name);
+          if (output != null) {
+             output.headerFooter(headerFooter.toString(), true, name);
+          }
        }
        else if("oddFooter".equals(name) || "evenFooter".equals(name) ||
              "firstFooter".equals(name)) {
           hfIsOpen = false;
-          output.headerFooter(headerFooter.toString(), false, name);
+          if (output != null) {
+             output.headerFooter(headerFooter.toString(), false, name);
+          }
        }
    }
 
+   /**
+    * Passes the raw value of the current cell to the typed handler.
+    * Numbers and shared string indexes are parsed straight from the
+    *  gathered characters, so no Strings are created for those.
+    */
+   private void outputTypedCell() {
+       switch (nextDataType) {
+           case BOOLEAN:
+               typedOutput.booleanCell(rowNum, columnIndex, styleIndex,
+                       value.length() > 0 && value.charAt(0) != '0');
+               break;
+
+           case ERROR:
+               typedOutput.errorCell(rowNum, columnIndex, styleIndex, value.toString());
+               break;
+
+           case FORMULA:
+               if (formulaStringResult) {
+                   typedOutput.stringCell(rowNum, columnIndex, styleIndex, value.toString());
+               } else {
+                   typedOutput.numericCell(rowNum, columnIndex, styleIndex, parseDouble(value));
+               }
+               break;
+
+           case INLINE_STRING:
+               typedOutput.stringCell(rowNum, columnIndex, styleIndex, value.toString());
+               break;
+
+           case SST_STRING:
+               // an empty <v/> has no string, the cell is blank
+               if (value.length() > 0) {
+                   typedOutput.sharedStringCell(rowNum, columnIndex, styleIndex, (int)parseDouble(value));
+               }
+               break;
+
+           case NUMBER:
+               if (value.length() > 0) {
+                   typedOutput.numericCell(rowNum, columnIndex, styleIndex, parseDouble(value));
+               }
+               break;
+
+           default:
+               logger.log(POILogger.WARN, "Unexpected cell type: " + nextDataType);
+               break;
+       }
+   }
+
+   /**
+    * Parses a number, without going via a String for the common
+    *  case of a whole number that a double holds exactly.
+    */
+   private static double parseDouble(CharSequence chars) {
+       int len = chars.length();
+       int start = (len > 0 && chars.charAt(0) == '-') ? 1 : 0;
+       if (len > start && len - start <= 15) {
+           long result = 0;
+           int i = start;
+           for (; i < len; i++) {
+               char ch = chars.charAt(i);
+               if (ch < '0' || ch > '9') {
+                   break;
+               }
+               result = result * 10 + (ch - '0');
+           }
+           if (i == len) {
+               return (start == 1) ? -result : result;
+           }
+       }
+       return Double.parseDouble(chars.toString());
+   }
+
+   /**
+    * Works out the zero based column index from a cell reference
+    *  such as "AB12", without creating a {@link CellAddress}
+    */
+   static int parseColumn(String ref) {
+       int col = 0;
+       for (int i = 0; i < ref.length(); i++) {
+           char ch = ref.charAt(i);
+           if (ch >= 'A' && ch <= 'Z') {
+               col = col * 26 + (ch - 'A' + 1);
+           } else if (ch >= 'a' && ch <= 'z') {
+               col = col * 26 + (ch - 'a' + 1);
+           } else if (ch != '$') {
+               break;
+           }
+       }
+       return col - 1;
+   }
+
+   /**
+    * Formats a raw numeric value reported to a {@link SheetTypedContentsHandler}
+    *  in the same way as a {@link SheetContentsHandler} would have been given it,
+    *  based on the number format of the given cell style.
+    * 
+    * @since POI 3.14-Beta2
+    */
+   public String formatRawCellContents(double value, int styleIndex) {
+       if (formatter == null) {
+           formatter = new DataFormatter();
+       }
+       XSSFCellStyle style = null;
+       if (stylesTable != null && stylesTable.getNumCellStyles() > 0) {
+           style = stylesTable.getStyleAt(styleIndex);
+       }
+       if (style == null) {
+           return formatter.formatRawCellContents(value, 0, BuiltinFormats.getBuiltinFormat(0));
+       }
+       String format = style.getDataFormatString();
+       if (format == null) {
+           format = BuiltinFormats.getBuiltinFormat(style.getDataFormat());
+       }
+       return formatter.formatRawCellContents(value, style.getDataFormat(), format);
+   }
+
    /**
     * Captures characters only if a suitable element is open.
     * Originally was just "v"; extended for inlineStr also.
@@ -497,4 +687,31 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
       /** A header or footer has been encountered */
       public void headerFooter(String text, boolean isHeader, String tagName);
    }
+
+   /**
+    * A lower level alternative to {@link SheetContentsHandler}, which
+    *  is given the raw typed values of cells, with the row and column
+    *  as (zero based) ints rather than a cell reference. No formatting
+    *  is done, use {@link XSSFSheetXMLHandler#formatRawCellContents(double, int)}
+    *  for the values where that is wanted.
+    * Cells without a value are not reported.
+    * 
+    * @since POI 3.14-Beta2
+    */
+   public interface SheetTypedContentsHandler {
+      /** A row with the (zero based) row number has started */
+      public void startRow(int rowNum);
+      /** A row with the (zero based) row number has ended */
+      public void endRow(int rowNum);
+      /** A number, or the numeric result of a formula */
+      public void numericCell(int rowNum, int column, int styleIndex, double value);
+      /** A string held in the shared strings table, at the given index */
+      public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex);
+      /** An inline string, or the string result of a formula */
+      public void stringCell(int rowNum, int column, int styleIndex, String value);
+      /** A boolean, or the boolean result of a formula */
+      public void booleanCell(int rowNum, int column, int styleIndex, boolean value);
+      /** An error, given as its error code text, eg <code>#DIV/0!</code> */
+      public void errorCell(int rowNum, int column, int styleIndex, String errorCode);
+   }
 }
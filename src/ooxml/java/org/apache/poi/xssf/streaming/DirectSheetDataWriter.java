@@ -0,0 +1,128 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.poi.xssf.model.SharedStringsTable;
+
+/**
+ * Writes the rows of a sheet straight into the zip entry of the sheet part,
+ * for the direct streaming mode of {@link SXSSFWorkbook}, instead of
+ * keeping them in a temp file until the workbook is written.
+ * <p>
+ * The workbook opens the entry, via {@link #begin(String)}, when the first
+ * row is flushed and closes it, via {@link #end(String)}, once the sheet
+ * is finished. Only one sheet can be written at a time.
+ * </p>
+ */
+final class DirectSheetDataWriter extends SheetDataWriter {
+    private final SXSSFWorkbook _workbook;
+    private final Utf8XmlWriter _xml;
+    private boolean _started;
+    private boolean _finished;
+    private boolean _discarded;
+
+    DirectSheetDataWriter(SXSSFWorkbook workbook, OutputStream zip, SharedStringsTable sharedStringsTable) {
+        this(workbook, new Utf8XmlWriter(new EntryOutputStream(zip)), sharedStringsTable);
+    }
+
+    private DirectSheetDataWriter(SXSSFWorkbook workbook, Utf8XmlWriter xml, SharedStringsTable sharedStringsTable) {
+        super(sharedStringsTable, xml);
+        _workbook = workbook;
+        _xml = xml;
+    }
+
+    @Override
+    public void writeRow(int rownum, SXSSFRow row) throws IOException {
+        if (_discarded) {
+            return;
+        }
+        _workbook.startDirectSheet(this);
+        super.writeRow(rownum, row);
+    }
+
+    /**
+     * Writes the start of the worksheet XML, up to where the rows go,
+     * once the zip entry has been opened
+     */
+    void begin(String worksheetStart) throws IOException {
+        _started = true;
+        _xml.write(worksheetStart);
+    }
+
+    /**
+     * Writes the rest of the worksheet XML, after the rows, before the zip entry is closed
+     */
+    void end(String worksheetEnd) throws IOException {
+        _xml.write(worksheetEnd);
+        _xml.flush();
+        _finished = true;
+    }
+
+    /**
+     * Drops the rows of a sheet which is removed before any of them were written
+     *
+     * @throws IllegalStateException if the sheet has already started to be written
+     */
+    void discard() {
+        if (_started) {
+            throw new IllegalStateException("A sheet cannot be removed once its rows have started to be written");
+        }
+        _discarded = true;
+    }
+
+    boolean isStarted() {
+        return _started;
+    }
+
+    boolean isFinished() {
+        return _finished;
+    }
+
+    /**
+     * The rows have already been written to the workbook's output
+     */
+    @Override
+    public InputStream getWorksheetXMLInputStream() {
+        throw new IllegalStateException("The sheet data is streamed directly to the workbook output");
+    }
+
+    /**
+     * Passes writes through to the zip stream, but leaves it open when closed,
+     * as it is shared by all the sheets
+     */
+    private static final class EntryOutputStream extends FilterOutputStream {
+        EntryOutputStream(OutputStream zip) {
+            super(zip);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // the zip stream is closed by the workbook
+        }
+    }
+}
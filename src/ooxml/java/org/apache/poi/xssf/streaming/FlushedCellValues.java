@@ -0,0 +1,227 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * The values of cells in a range of columns of a SXSSF sheet, kept as their
+ * rows are flushed so that formulas can still be evaluated against them.
+ * <p>
+ * Values are stored by column, in parallel arrays of row numbers, types and
+ * numbers, which costs about 13 bytes a cell. Strings are held once each,
+ * with the number giving their index. Formula cells keep their cached result.
+ * </p>
+ */
+final class FlushedCellValues {
+    private static final byte NUMERIC = (byte)Cell.CELL_TYPE_NUMERIC;
+    private static final byte STRING = (byte)Cell.CELL_TYPE_STRING;
+    private static final byte BOOLEAN = (byte)Cell.CELL_TYPE_BOOLEAN;
+    private static final byte ERROR = (byte)Cell.CELL_TYPE_ERROR;
+
+    private final int _firstColumn;
+    private final int _lastColumn;
+    /** indexed from the first column, and grown as needed, as the range may cover every column of the sheet */
+    private Column[] _columns = new Column[0];
+    private final List<String> _strings = new ArrayList<String>();
+    private final Map<String,Integer> _stringIndexes = new HashMap<String,Integer>();
+
+    FlushedCellValues(int firstColumn, int lastColumn) {
+        if (firstColumn < 0 || lastColumn < firstColumn) {
+            throw new IllegalArgumentException("Invalid column range " + firstColumn + " to " + lastColumn);
+        }
+        _firstColumn = firstColumn;
+        _lastColumn = lastColumn;
+    }
+
+    boolean isRetained(int columnIndex) {
+        return columnIndex >= _firstColumn && columnIndex <= _lastColumn;
+    }
+
+    /**
+     * Keeps the values of the row, which is about to be flushed.
+     * Rows are flushed in order, so the row numbers of each column stay sorted.
+     */
+    void addRow(int rowNum, SXSSFRow row) {
+        Iterator<Cell> cells = row.allCellsIterator();
+        int columnIndex = 0;
+        while (cells.hasNext()) {
+            Cell cell = cells.next();
+            if (cell != null && isRetained(columnIndex)) {
+                addCell(rowNum, columnIndex, cell);
+            }
+            columnIndex++;
+        }
+    }
+
+    private void addCell(int rowNum, int columnIndex, Cell cell) {
+        int cellType = cell.getCellType();
+        if (cellType == Cell.CELL_TYPE_FORMULA) {
+            cellType = cell.getCachedFormulaResultType();
+        }
+        switch (cellType) {
+            case Cell.CELL_TYPE_NUMERIC:
+                getColumn(columnIndex).add(rowNum, NUMERIC, cell.getNumericCellValue());
+                break;
+            case Cell.CELL_TYPE_STRING:
+                getColumn(columnIndex).add(rowNum, STRING, getStringIndex(cell.getRichStringCellValue().getString()));
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                getColumn(columnIndex).add(rowNum, BOOLEAN, cell.getBooleanCellValue() ? 1 : 0);
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                getColumn(columnIndex).add(rowNum, ERROR, cell.getErrorCellValue());
+                break;
+            default:
+                // blank cells evaluate the same as missing ones
+                break;
+        }
+    }
+
+    private int getStringIndex(String value) {
+        Integer index = _stringIndexes.get(value);
+        if (index == null) {
+            index = Integer.valueOf(_strings.size());
+            _strings.add(value);
+            _stringIndexes.put(value, index);
+        }
+        return index.intValue();
+    }
+
+    private Column getColumn(int columnIndex) {
+        int i = columnIndex - _firstColumn;
+        if (i >= _columns.length) {
+            _columns = Arrays.copyOf(_columns, Math.min(Math.max(i + 1, _columns.length * 2),
+                    _lastColumn - _firstColumn + 1));
+        }
+        Column column = _columns[i];
+        if (column == null) {
+            column = new Column();
+            _columns[i] = column;
+        }
+        return column;
+    }
+
+    /**
+     * @return the kept value of the cell, or <code>null</code> if it was blank or missing
+     */
+    EvaluationCell getCell(EvaluationSheet sheet, int rowIndex, int columnIndex) {
+        int i = columnIndex - _firstColumn;
+        if (i >= _columns.length || _columns[i] == null) {
+            return null;
+        }
+        Column column = _columns[i];
+        int pos = Arrays.binarySearch(column._rows, 0, column._size, rowIndex);
+        if (pos < 0) {
+            return null;
+        }
+        return new FlushedEvaluationCell(sheet, rowIndex, columnIndex, column._types[pos], column._values[pos]);
+    }
+
+    /**
+     * @return the number of values kept
+     */
+    int getNumberOfValues() {
+        int count = 0;
+        for (Column column : _columns) {
+            if (column != null) {
+                count += column._size;
+            }
+        }
+        return count;
+    }
+
+    private static final class Column {
+        private int[] _rows = new int[16];
+        private byte[] _types = new byte[16];
+        private double[] _values = new double[16];
+        private int _size;
+
+        void add(int rowNum, byte type, double value) {
+            if (_size == _rows.length) {
+                int capacity = _size * 2;
+                _rows = Arrays.copyOf(_rows, capacity);
+                _types = Arrays.copyOf(_types, capacity);
+                _values = Arrays.copyOf(_values, capacity);
+            }
+            _rows[_size] = rowNum;
+            _types[_size] = type;
+            _values[_size] = value;
+            _size++;
+        }
+    }
+
+    /**
+     * A flushed cell, seen by the evaluator as a plain value
+     */
+    private final class FlushedEvaluationCell implements EvaluationCell {
+        private final EvaluationSheet _sheet;
+        private final int _rowIndex;
+        private final int _columnIndex;
+        private final int _cellType;
+        private final double _value;
+
+        FlushedEvaluationCell(EvaluationSheet sheet, int rowIndex, int columnIndex, int cellType, double value) {
+            _sheet = sheet;
+            _rowIndex = rowIndex;
+            _columnIndex = columnIndex;
+            _cellType = cellType;
+            _value = value;
+        }
+
+        public Object getIdentityKey() {
+            return this;
+        }
+        public EvaluationSheet getSheet() {
+            return _sheet;
+        }
+        public int getRowIndex() {
+            return _rowIndex;
+        }
+        public int getColumnIndex() {
+            return _columnIndex;
+        }
+        public int getCellType() {
+            return _cellType;
+        }
+        public double getNumericCellValue() {
+            return _value;
+        }
+        public String getStringCellValue() {
+            return _strings.get((int)_value);
+        }
+        public boolean getBooleanCellValue() {
+            return _value != 0;
+        }
+        public int getErrorCellValue() {
+            return (int)_value;
+        }
+        public int getCachedFormulaResultType() {
+            return _cellType;
+        }
+    }
+}
@@ -24,7 +24,6 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -61,7 +60,7 @@ public class GZIPSheetDataWriter extends SheetDataWriter {
      */
     @Override
 	public Writer createWriter(File fd)throws IOException {
-        return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(fd)), "UTF-8");
+        return createWriter(new GZIPOutputStream(new FileOutputStream(fd)));
     }
 
 
@@ -0,0 +1,83 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips the SXSSF temp files at a chosen deflate level.
+ * {@link Deflater#BEST_SPEED} costs much less CPU than the default level
+ * used by {@link SXSSFWorkbook#setCompressTempFiles(boolean)}, and still
+ * shrinks sheet XML several times.
+ */
+public class GZIPTempFileCodec implements TempFileCodec {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int _level;
+
+    /**
+     * Gzip at {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public GZIPTempFileCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level the deflate level, from {@link Deflater#BEST_SPEED} (1)
+     *  to {@link Deflater#BEST_COMPRESSION} (9), or
+     *  {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public GZIPTempFileCodec(int level) {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+                && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        _level = level;
+    }
+
+    /**
+     * @return the deflate level
+     */
+    public int getLevel() {
+        return _level;
+    }
+
+    public String getFileSuffix() {
+        return ".gz";
+    }
+
+    public OutputStream encode(OutputStream out) throws IOException {
+        return new LevelGZIPOutputStream(out, _level);
+    }
+
+    public InputStream decode(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+
+    private static final class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
@@ -37,6 +37,10 @@ final class SXSSFEvaluationSheet implements EvaluationSheet {
         SXSSFRow row = _xs.getRow(rowIndex);
         if (row == null) {
             if (rowIndex <= _xs.getLastFlushedRowNum()) {
+                FlushedCellValues flushedValues = _xs.getFlushedCellValues();
+                if (flushedValues != null && flushedValues.isRetained(columnIndex)) {
+                    return flushedValues.getCell(this, rowIndex, columnIndex);
+                }
                 throw new SXSSFFormulaEvaluator.RowFlushedException(rowIndex);
             }
             return null;
@@ -30,6 +30,9 @@ import org.apache.poi.xssf.usermodel.BaseXSSFFormulaEvaluator;
 /**
  * Streaming-specific Formula Evaluator, which is able to 
  *  lookup cells within the current Window.
+ * Cells of rows which have been flushed can also be looked
+ *  up, if the sheet keeps their values, see
+ *  {@link SXSSFSheet#retainFlushedValues(int, int)}.
  */
 public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
     private static POILogger logger = POILogFactory.getLogger(SXSSFFormulaEvaluator.class);
@@ -97,8 +100,9 @@ public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
      *  it can either skip them silently, or give an exception
      */
     public static void evaluateAllFormulaCells(SXSSFWorkbook wb, boolean skipOutOfWindow) {
-        SXSSFFormulaEvaluator eval = new SXSSFFormulaEvaluator(wb);
-        
+        evaluateAllFormulaCells(wb, new SXSSFFormulaEvaluator(wb), skipOutOfWindow);
+    }
+    private static void evaluateAllFormulaCells(SXSSFWorkbook wb, SXSSFFormulaEvaluator eval, boolean skipOutOfWindow) {
         // Check they're all available
         for (int i=0; i<wb.getNumberOfSheets(); i++) {
             SXSSFSheet s = wb.getSheetAt(i);
@@ -138,7 +142,7 @@ public final class SXSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
      */
     public void evaluateAll() {
         // Have the evaluation done, with exceptions
-        evaluateAllFormulaCells(wb, false);
+        evaluateAllFormulaCells(wb, this, false);
     }
     
     public static class SheetsFlushedException extends IllegalStateException {
@@ -68,6 +68,7 @@ public class SXSSFSheet implements Sheet, Cloneable
     private int outlineLevelRow = 0;
     private int lastFlushedRowNumber = -1;
     private boolean allFlushed = false;
+    private FlushedCellValues _flushedValues;
 
     public SXSSFSheet(SXSSFWorkbook workbook, XSSFSheet xSheet) throws IOException {
         _workbook = workbook;
@@ -1803,6 +1804,47 @@ public class SXSSFSheet implements Sheet, Cloneable
         return lastFlushedRowNumber;
     }
 
+    /**
+     * Keep the values of all cells when their rows are flushed, so that
+     * {@link SXSSFFormulaEvaluator} can still evaluate formulas which refer to them.
+     *
+     * @see #retainFlushedValues(int, int)
+     */
+    public void retainFlushedValues()
+    {
+        retainFlushedValues(0, SpreadsheetVersion.EXCEL2007.getLastColumnIndex());
+    }
+
+    /**
+     * Keep the values of the cells in the given columns when their rows are flushed,
+     * so that {@link SXSSFFormulaEvaluator} can still evaluate formulas which refer
+     * to them, such as totals or lookups over the rows written so far.
+     * <p>
+     * Values are kept compactly, at around 13 bytes a cell, with each distinct string
+     * held once. Formula cells keep their cached result, so should be evaluated before
+     * they are flushed. Cells outside the columns still can't be referred to once flushed.
+     * </p>
+     *
+     * @param firstColumn the first column to keep, 0-based
+     * @param lastColumn the last column to keep, 0-based
+     * @throws IllegalStateException if rows have already been flushed
+     */
+    public void retainFlushedValues(int firstColumn, int lastColumn)
+    {
+        if (lastFlushedRowNumber > -1) {
+            throw new IllegalStateException("Rows have already been flushed, their values can no longer be kept");
+        }
+        _flushedValues = new FlushedCellValues(firstColumn, lastColumn);
+    }
+
+    /**
+     * @return the values kept of flushed rows, or null if they are not kept
+     */
+    FlushedCellValues getFlushedCellValues()
+    {
+        return _flushedValues;
+    }
+
     /**
      * Specifies how many rows can be accessed at most via getRow().
      * The exeeding rows (if any) are flushed to the disk while rows
@@ -1832,6 +1874,7 @@ public class SXSSFSheet implements Sheet, Cloneable
             SXSSFRow row = _rows.get(firstRowNum);
             // Update the best fit column widths for auto-sizing just before the rows are flushed
             _autoSizeColumnTracker.updateColumnWidths(row);
+            if (_flushedValues != null) _flushedValues.addRow(rowIndex, row);
             _writer.writeRow(rowIndex, row);
             _rows.remove(firstRowNum);
             lastFlushedRowNumber = rowIndex;
@@ -17,6 +17,8 @@
 
 package org.apache.poi.xssf.streaming;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -24,14 +26,21 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.poi.openxml4j.opc.OPCPackage;
@@ -67,6 +76,20 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  *
  * Carefully review your memory budget and compatibility needs before deciding
  * whether to enable shared strings or not.
+ *
+ * Alternatively, shared strings can be written to a temp file as they are added,
+ * with only a bounded number of recently used strings kept in memory to find
+ * duplicates, see {@link #SXSSFWorkbook(XSSFWorkbook, int, boolean, boolean, int)}.
+ *
+ * Sheets should be created from a single thread, but once created different
+ * sheets can be filled with rows (and so flushed) from different threads at the
+ * same time. Each sheet, and its rows and cells, must only be used by one thread
+ * at a time, and workbook wide objects such as cell styles and fonts should be
+ * created up front. The remaining rows of all sheets can also be flushed in
+ * parallel when the workbook is written, see {@link #setWriteThreads(int)}.
+ * <p>
+ * When sheets are filled one after another, they can be streamed straight into
+ * the output, without temp files, see {@link #setDirectStreamingOutput(OutputStream)}.
  */
 public class SXSSFWorkbook implements Workbook {
     /**
@@ -91,11 +114,45 @@ public class SXSSFWorkbook implements Workbook {
      */
     private boolean _compressTmpFiles = false;
 
+    /**
+     * encodes the temp files, overriding <code>_compressTmpFiles</code> when not null
+     */
+    private TempFileCodec _tempFileCodec;
+
+    /**
+     * the stream given to {@link #setDirectStreamingOutput(OutputStream)}, and the zip
+     * stream over it which sheets are written to as their rows are flushed, or null
+     * when sheet data is kept in temp files until the workbook is written
+     */
+    private OutputStream _directOut;
+    private ZipOutputStream _directZip;
+
+    /**
+     * the sheet writer whose zip entry is open, in direct streaming mode
+     */
+    private DirectSheetDataWriter _openDirectWriter;
+
+    /**
+     * whether the workbook has been written, in direct streaming mode
+     */
+    private boolean _directWritten;
+
+    /**
+     * number of threads used to flush the sheets when writing the workbook
+     */
+    private int _writeThreads = 1;
+
     /**
      * shared string table - a cache of strings in this workbook
      */
     private final SharedStringsTable _sharedStringSource;
 
+    /**
+     * shared string table which is written to a temp file as strings are added,
+     * used instead of <code>_sharedStringSource</code> when not null
+     */
+    private final StreamingSharedStringsTable _streamingSharedStringSource;
+
     /**
      * Construct a new workbook
      */
@@ -216,17 +273,69 @@ public class SXSSFWorkbook implements Workbook {
      * @param useSharedStringsTable whether to use a shared strings table
      */
     public SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles, boolean useSharedStringsTable){
+        this(workbook, rowAccessWindowSize, compressTmpFiles, useSharedStringsTable, 0);
+    }
+
+    /**
+     * Constructs an workbook from an existing workbook.
+     * <p>
+     * When a new node is created via createRow() and the total number
+     * of unflushed records would exceed the specified value, then the
+     * row with the lowest index value is flushed and cannot be accessed
+     * via getRow() anymore.
+     * </p>
+     * <p>
+     * A value of -1 indicates unlimited access. In this case all
+     * records that have not been flushed by a call to flush() are available
+     * for random access.
+     * <p>
+     * <p></p>
+     * A value of 0 is not allowed because it would flush any newly created row
+     * without having a chance to specify any cells.
+     * </p>
+     * <p>
+     * If a shared strings table is used and <code>sharedStringsCacheSize</code>
+     * is greater than zero, the table isn't kept in memory. New strings are
+     * written to a temp file as they are added, and only that many of the most
+     * recently used strings are remembered to find duplicates. A string which is
+     * no longer remembered gets a new entry when it is next used, so the table
+     * may be less compact than an in-memory one, but memory use stays fixed.
+     * </p>
+     *
+     * @param workbook  the template workbook
+     * @param rowAccessWindowSize
+     * @param compressTmpFiles whether to use gzip compression for temporary files
+     * @param useSharedStringsTable whether to use a shared strings table
+     * @param sharedStringsCacheSize the number of recently used shared strings to keep
+     *  in memory, or zero to keep the whole shared strings table in memory
+     */
+    public SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles,
+            boolean useSharedStringsTable, int sharedStringsCacheSize){
         setRandomAccessWindowSize(rowAccessWindowSize);
         setCompressTempFiles(compressTmpFiles);
-        if (workbook == null)
+        if (sharedStringsCacheSize < 0) {
+            throw new IllegalArgumentException("sharedStringsCacheSize must not be negative");
+        }
+        _wb = (workbook == null) ? new XSSFWorkbook() : workbook;
+        if (useSharedStringsTable && sharedStringsCacheSize > 0)
         {
-            _wb=new XSSFWorkbook();
-            _sharedStringSource = useSharedStringsTable ? _wb.getSharedStringSource() : null;
+            _sharedStringSource = null;
+            try
+            {
+                _streamingSharedStringSource = new StreamingSharedStringsTable(_wb.getSharedStringSource(), sharedStringsCacheSize);
+            }
+            catch (IOException ioe)
+            {
+                throw new RuntimeException(ioe);
+            }
         }
         else
         {
-            _wb=workbook;
             _sharedStringSource = useSharedStringsTable ? _wb.getSharedStringSource() : null;
+            _streamingSharedStringSource = null;
+        }
+        if (workbook != null)
+        {
             for ( int i = 0; i < _wb.getNumberOfSheets(); i++ )
             {
                 XSSFSheet sheet = _wb.getSheetAt( i );
@@ -287,12 +396,99 @@ public class SXSSFWorkbook implements Workbook {
         _compressTmpFiles = compress;
     }
 
+    /**
+     * Set the codec which encodes the temp files of sheets created from now on.
+     * <p>
+     *   This is a more flexible alternative to {@link #setCompressTempFiles(boolean)},
+     *   and takes precedence over it. {@link GZIPTempFileCodec} compresses best, at a
+     *   chosen deflate level, while {@link BlockTempFileCodec} compresses less but
+     *   costs a fraction of the CPU of gzip.
+     * </p>
+     *
+     * @param codec the codec, or null to go back to {@link #setCompressTempFiles(boolean)}
+     */
+    public void setTempFileCodec(TempFileCodec codec) {
+        _tempFileCodec = codec;
+    }
+
+    /**
+     * @return the codec set by {@link #setTempFileCodec(TempFileCodec)}, or null
+     */
+    public TempFileCodec getTempFileCodec() {
+        return _tempFileCodec;
+    }
+
+    /**
+     * Stream the sheet data straight into the given stream as rows are flushed,
+     * instead of keeping it in temp files and copying it when the workbook is written.
+     * This halves the I/O of the sheet data, and needs no space in the temp directory.
+     * <p>
+     *   The zip entry of a sheet is started when its first row is flushed, and finished
+     *   when rows of another sheet are flushed, so sheets must be filled one after
+     *   another. Adding rows to a sheet which has been finished fails with an
+     *   IllegalStateException. Settings which are saved before the rows, such as
+     *   column widths and panes, must be made before the first row of the sheet is
+     *   flushed, while those saved after the rows, such as merged regions and
+     *   hyperlinks, can be made until the sheet is finished.
+     * </p>
+     * <p>
+     *   The remaining parts, such as the workbook, styles and shared strings, are
+     *   written by {@link #write(OutputStream)}, which must be given the same stream.
+     *   In this mode temp file compression and write threads are not used, and the
+     *   workbook must only be used from one thread.
+     * </p>
+     *
+     * @param stream the stream the workbook will be written to
+     * @throws IllegalStateException if the workbook already has sheets
+     */
+    public void setDirectStreamingOutput(OutputStream stream) {
+        if (_wb.getNumberOfSheets() > 0) {
+            throw new IllegalStateException("Direct streaming must be set up before any sheets are created");
+        }
+        _directOut = stream;
+        _directZip = (stream == null) ? null : new ZipOutputStream(stream);
+    }
+
+    /**
+     * Set the number of threads used to flush the remaining rows of each
+     * sheet to its temp file when the workbook is written.
+     * <p>
+     *     With a value greater than one, sheets are flushed in parallel. The
+     *     default is <code>1</code>, which flushes the sheets one after another
+     *     on the calling thread.
+     * </p>
+     *
+     * @param threads the number of threads, at least 1
+     */
+    public void setWriteThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        _writeThreads = threads;
+    }
+
+    /**
+     * @return the number of threads used to flush sheets when writing the workbook
+     */
+    public int getWriteThreads() {
+        return _writeThreads;
+    }
+
     SheetDataWriter createSheetDataWriter() throws IOException {
-        if(_compressTmpFiles) {
-            return new GZIPSheetDataWriter(_sharedStringSource);
+        SheetDataWriter writer;
+        if(_directZip != null) {
+            writer = new DirectSheetDataWriter(this, _directZip, _sharedStringSource);
+        } else if(_tempFileCodec != null) {
+            writer = new SheetDataWriter(_sharedStringSource, _tempFileCodec);
+        } else if(_compressTmpFiles) {
+            writer = new GZIPSheetDataWriter(_sharedStringSource);
+        } else {
+            writer = new SheetDataWriter(_sharedStringSource);
         }
-        
-        return new SheetDataWriter(_sharedStringSource);
+        if (_streamingSharedStringSource != null) {
+            writer.setStreamingSharedStringsTable(_streamingSharedStringSource);
+        }
+        return writer;
     }
 
     XSSFSheet getXSSFSheet(SXSSFSheet sheet)
@@ -307,6 +503,15 @@ public class SXSSFWorkbook implements Workbook {
         return result;
     }
 
+    private SXSSFSheet getSXSSFSheet(SheetDataWriter writer)
+    {
+        for (SXSSFSheet sheet : _sxFromXHash.keySet())
+        {
+            if (sheet.getSheetDataWriter() == writer) return sheet;
+        }
+        return null;
+    }
+
     void registerSheetMapping(SXSSFSheet sxSheet,XSSFSheet xSheet)
     {
         _sxFromXHash.put(sxSheet,xSheet);
@@ -335,8 +540,14 @@ public class SXSSFWorkbook implements Workbook {
         }
         return null;
     }
+    private String getSharedStringsZipEntryName()
+    {
+        if (_streamingSharedStringSource == null) return null;
+        return _wb.getSharedStringSource().getPackagePart().getPartName().getName().substring(1);
+    }
     private void injectData(File zipfile, OutputStream out) throws IOException 
     {
+        String sstRef = getSharedStringsZipEntryName();
         ZipFile zip = ZipHelper.openZipFile(zipfile);
         try
         {
@@ -363,6 +574,10 @@ public class SXSSFWorkbook implements Workbook {
                             xis.close();
                         }
                     }
+                    else if(ze.getName().equals(sstRef))
+                    {
+                        _streamingSharedStringSource.writeTo(zos);
+                    }
                     else
                     {
                         copyStream(is, zos);
@@ -764,6 +979,11 @@ public class SXSSFWorkbook implements Workbook {
         // Get the sheet to be removed
         XSSFSheet xSheet = _wb.getSheetAt(index);
         SXSSFSheet sxSheet = getSXSSFSheet(xSheet);
+        if (_directZip != null)
+        {
+            // the rows of the sheet must not be written when it is disposed
+            ((DirectSheetDataWriter)sxSheet.getSheetDataWriter()).discard();
+        }
         
         // De-register it
         _wb.removeSheetAt(index);
@@ -908,6 +1128,14 @@ public class SXSSFWorkbook implements Workbook {
                 // ignore exception here
             }
         }
+        if (_streamingSharedStringSource != null)
+        {
+            try {
+                _streamingSharedStringSource.close();
+            } catch (IOException e) {
+                // ignore exception here
+            }
+        }
 
         
         // Tell the base workbook to close, does nothing if 
@@ -924,11 +1152,13 @@ public class SXSSFWorkbook implements Workbook {
     @Override
     public void write(OutputStream stream) throws IOException
     {
-    	for (SXSSFSheet sheet : _xFromSxHash.values())
-    	{
-    		sheet.flushRows();
-    	}
-    	
+        if (_directZip != null)
+        {
+            writeDirect(stream);
+            return;
+        }
+        flushSheets();
+
         //Save the template
         File tmplFile = TempFile.createTempFile("poi-sxssf-template", ".xlsx");
         try
@@ -954,6 +1184,184 @@ public class SXSSFWorkbook implements Workbook {
         }
     }
     
+    /**
+     * Finish writing the sheets in direct streaming mode, then add the
+     * remaining parts of the workbook from the template.
+     */
+    private void writeDirect(OutputStream stream) throws IOException
+    {
+        if (stream != _directOut) {
+            throw new IllegalArgumentException("The workbook must be written to the stream given to setDirectStreamingOutput");
+        }
+        if (_directWritten) {
+            throw new IllegalStateException("The workbook has already been written");
+        }
+        _directWritten = true;
+
+        for (int i = 0; i < _wb.getNumberOfSheets(); i++)
+        {
+            SXSSFSheet sheet = getSXSSFSheet(_wb.getSheetAt(i));
+            if (((DirectSheetDataWriter)sheet.getSheetDataWriter()).isFinished())
+            {
+                // fails if rows were added after the sheet was finished
+                sheet.flushRows();
+            }
+            else
+            {
+                finishDirectSheet(sheet);
+            }
+        }
+
+        // the template has no rows, so is small enough to keep in memory
+        ByteArrayOutputStream tmpl = new ByteArrayOutputStream();
+        _wb.write(tmpl);
+
+        String sstRef = getSharedStringsZipEntryName();
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(tmpl.toByteArray()));
+        try
+        {
+            ZipEntry ze;
+            while ((ze = zis.getNextEntry()) != null)
+            {
+                if (getSheetFromZipEntryName(ze.getName()) != null)
+                {
+                    // already written
+                    continue;
+                }
+                _directZip.putNextEntry(new ZipEntry(ze.getName()));
+                if (ze.getName().equals(sstRef))
+                {
+                    _streamingSharedStringSource.writeTo(_directZip);
+                }
+                else
+                {
+                    copyStream(zis, _directZip);
+                }
+                _directZip.closeEntry();
+            }
+        }
+        finally
+        {
+            zis.close();
+        }
+        _directZip.close();
+    }
+
+    /**
+     * Open the zip entry of the sheet which the writer belongs to, in direct
+     * streaming mode, unless it is already open. Any other open sheet is finished.
+     *
+     * @throws IllegalStateException if the sheet has already been finished
+     */
+    void startDirectSheet(DirectSheetDataWriter writer) throws IOException
+    {
+        if (writer == _openDirectWriter) return;
+        if (writer.isFinished() || _directWritten) {
+            throw new IllegalStateException("Rows cannot be added to a sheet which has already been written, "
+                    + "in direct streaming mode sheets must be filled one after another");
+        }
+        if (_openDirectWriter != null) {
+            finishDirectSheet(getSXSSFSheet(_openDirectWriter));
+        }
+        XSSFSheet xSheet = getXSSFSheet(getSXSSFSheet(writer));
+        String worksheetStart = splitWorksheet(xSheet)[0];
+        _directZip.putNextEntry(new ZipEntry(xSheet.getPackagePart().getPartName().getName().substring(1)));
+        _openDirectWriter = writer;
+        writer.begin(worksheetStart);
+    }
+
+    /**
+     * Write the remaining rows and the rest of the worksheet XML of the sheet,
+     * in direct streaming mode, and close its zip entry
+     */
+    private void finishDirectSheet(SXSSFSheet sheet) throws IOException
+    {
+        DirectSheetDataWriter writer = (DirectSheetDataWriter)sheet.getSheetDataWriter();
+        startDirectSheet(writer);
+        sheet.flushRows();
+        writer.end(splitWorksheet(getXSSFSheet(sheet))[1]);
+        _directZip.closeEntry();
+        _openDirectWriter = null;
+    }
+
+    /**
+     * Split the worksheet XML where new rows go: into the XML up to and including
+     * any rows already in the sheetData element, and the rest from its end tag.
+     */
+    private static String[] splitWorksheet(XSSFSheet sheet) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        sheet.writeWorksheet(bos);
+        String xml = bos.toString("UTF-8");
+        int start = xml.indexOf("<sheetData");
+        if (start == -1) {
+            throw new IOException("The worksheet XML of " + sheet.getSheetName() + " has no sheetData element");
+        }
+        int tagEnd = xml.indexOf('>', start);
+        if (xml.charAt(tagEnd - 1) == '/') {
+            return new String[] { xml.substring(0, start) + "<sheetData>", "</sheetData>" + xml.substring(tagEnd + 1) };
+        }
+        int end = xml.indexOf("</sheetData>", tagEnd);
+        return new String[] { xml.substring(0, end), xml.substring(end) };
+    }
+
+    /**
+     * Flush the remaining rows of every sheet to its temp file, using
+     * the configured number of threads.
+     */
+    private void flushSheets() throws IOException
+    {
+        int threads = Math.min(_writeThreads, _xFromSxHash.size());
+        if (threads <= 1)
+        {
+            for (SXSSFSheet sheet : _xFromSxHash.values())
+            {
+                sheet.flushRows();
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final SXSSFSheet sheet : _xFromSxHash.values())
+            {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        sheet.flushRows();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results)
+            {
+                try
+                {
+                    result.get();
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException)cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+                    if (cause instanceof Error) throw (Error)cause;
+                    throw new IOException(cause);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing sheets", e);
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Dispose of temporary files backing this workbook on disk.
      * Calling this method will render the workbook unusable.
@@ -962,10 +1370,24 @@ public class SXSSFWorkbook implements Workbook {
     public boolean dispose()
     {
         boolean success = true;
-        for (SXSSFSheet sheet : _sxFromXHash.keySet())
+        // in direct streaming mode there are no sheet temp files, and
+        //  flushing the remaining rows would write them to the output
+        if (_directZip == null)
+        {
+            for (SXSSFSheet sheet : _sxFromXHash.keySet())
+            {
+                try {
+                    success = sheet.dispose() && success;
+                } catch (IOException e) {
+                    logger.log(POILogger.WARN, e);
+                    success = false;
+                }
+            }
+        }
+        if (_streamingSharedStringSource != null)
         {
             try {
-                success = sheet.dispose() && success;
+                success = _streamingSharedStringSource.dispose() && success;
             } catch (IOException e) {
                 logger.log(POILogger.WARN, e);
                 success = false;
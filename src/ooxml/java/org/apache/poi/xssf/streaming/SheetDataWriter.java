@@ -19,13 +19,12 @@
 
 package org.apache.poi.xssf.streaming;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.Iterator;
 
@@ -46,7 +45,11 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
  */
 public class SheetDataWriter {
     private final File _fd;
+    /** encodes the temp file, or null to write plain XML */
+    private final TempFileCodec _codec;
     private final Writer _out;
+    /** <code>_out</code> when it can write numbers and escaped text directly as bytes, otherwise null */
+    private final Utf8XmlWriter _xmlOut;
     private int _rownum;
     private int _numberOfFlushedRows;
     private int _lowestIndexOfFlushedRows; // meaningful only of _numberOfFlushedRows>0
@@ -59,13 +62,44 @@ public class SheetDataWriter {
      */
     private SharedStringsTable _sharedStringSource;
 
+    /**
+     * Table of strings shared across this workbook, which is written out
+     * as strings are added rather than being held in memory.
+     * Used instead of <code>_sharedStringSource</code> when set.
+     */
+    private StreamingSharedStringsTable _streamingSharedStringSource;
+
     public SheetDataWriter() throws IOException {
+        this(null, (TempFileCodec)null);
+    }
+
+    public SheetDataWriter(SharedStringsTable sharedStringsTable) throws IOException{
+        this(sharedStringsTable, (TempFileCodec)null);
+    }
+
+    /**
+     * @param sharedStringsTable the shared strings table, or null if inline text is used
+     * @param codec encodes the temp file, or null to write plain XML
+     */
+    public SheetDataWriter(SharedStringsTable sharedStringsTable, TempFileCodec codec) throws IOException {
+        _codec = codec;
         _fd = createTempFile();
         _out = createWriter(_fd);
+        _xmlOut = (_out instanceof Utf8XmlWriter) ? (Utf8XmlWriter)_out : null;
+        this._sharedStringSource = sharedStringsTable;
     }
 
-    public SheetDataWriter(SharedStringsTable sharedStringsTable) throws IOException{
-        this();
+    /**
+     * Writes the sheet data to the given writer rather than to a temp file
+     *
+     * @param sharedStringsTable the shared strings table, or null if inline text is used
+     * @param out where to write the sheet data
+     */
+    SheetDataWriter(SharedStringsTable sharedStringsTable, Writer out) {
+        _codec = null;
+        _fd = null;
+        _out = out;
+        _xmlOut = (_out instanceof Utf8XmlWriter) ? (Utf8XmlWriter)_out : null;
         this._sharedStringSource = sharedStringsTable;
     }
     /**
@@ -77,16 +111,36 @@ public class SheetDataWriter {
      * @return temp file to write sheet data
      */
     public File createTempFile() throws IOException {
+        if (_codec != null) {
+            return TempFile.createTempFile("poi-sxssf-sheet-xml", _codec.getFileSuffix());
+        }
         return TempFile.createTempFile("poi-sxssf-sheet", ".xml");
     }
 
     /**
      * Create a writer for the sheet data.
+     * The default writer encodes straight to UTF-8 bytes, and lets
+     * cell references, numbers and escaped text be written without
+     * creating intermediate Strings.
      * 
      * @param  fd the file to write to
      */
     public Writer createWriter(File fd)throws IOException {
-        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fd), "UTF-8"));
+        if (_codec != null) {
+            return createWriter(_codec.encode(new FileOutputStream(fd)));
+        }
+        return createWriter(new FileOutputStream(fd));
+    }
+
+    /**
+     * Create a writer for the sheet data which encodes to UTF-8 directly
+     * into the given stream, for use by subclasses which wrap the
+     * file stream, e.g. to compress it
+     *
+     * @param  out the stream to write to
+     */
+    protected Writer createWriter(OutputStream out) {
+        return new Utf8XmlWriter(out);
     }
 
     /**
@@ -98,6 +152,10 @@ public class SheetDataWriter {
         _out.close();
     }
 
+    void setStreamingSharedStringsTable(StreamingSharedStringsTable sharedStringsTable) {
+        this._streamingSharedStringSource = sharedStringsTable;
+    }
+
     File getTempFile(){
         return _fd;
     }
@@ -107,6 +165,9 @@ public class SheetDataWriter {
      */
     public InputStream getWorksheetXMLInputStream() throws IOException {
         File fd = getTempFile();
+        if (_codec != null) {
+            return _codec.decode(new FileInputStream(fd));
+        }
         return new FileInputStream(fd);
     }
 
@@ -128,7 +189,9 @@ public class SheetDataWriter {
 
     @Override
     protected void finalize() throws Throwable {
-        _fd.delete();
+        if (_fd != null) {
+            _fd.delete();
+        }
 
         super.finalize();
     }
@@ -155,7 +218,9 @@ public class SheetDataWriter {
     }
 
     void beginRow(int rownum, SXSSFRow row) throws IOException {
-        _out.write("<row r=\"" + (rownum + 1) + "\"");
+        _out.write("<row r=\"");
+        writeInt(rownum + 1);
+        _out.write("\"");
         if (row.hasCustomHeight())
             _out.write(" customHeight=\"true\"  ht=\"" + row.getHeightInPoints() + "\"");
         if (row.getZeroHeight())
@@ -186,14 +251,17 @@ public class SheetDataWriter {
         if (cell == null) {
             return;
         }
-        String ref = new CellReference(_rownum, columnIndex).formatAsString();
-        _out.write("<c r=\"" + ref + "\"");
+        _out.write("<c r=\"");
+        writeCellReference(_rownum, columnIndex);
+        _out.write("\"");
         CellStyle cellStyle = cell.getCellStyle();
         if (cellStyle.getIndex() != 0) {
             // need to convert the short to unsigned short as the indexes can be up to 64k
             // ideally we would use int for this index, but that would need changes to some more 
             // APIs
-            _out.write(" s=\"" + (cellStyle.getIndex() & 0xffff) + "\"");
+            _out.write(" s=\"");
+            writeInt(cellStyle.getIndex() & 0xffff);
+            _out.write("\"");
         }
         int cellType = cell.getCellType();
         switch (cellType) {
@@ -210,20 +278,30 @@ public class SheetDataWriter {
                     case Cell.CELL_TYPE_NUMERIC:
                         double nval = cell.getNumericCellValue();
                         if (!Double.isNaN(nval)) {
-                            _out.write("<v>" + nval + "</v>");
+                            _out.write("<v>");
+                            writeDouble(nval);
+                            _out.write("</v>");
                         }
                         break;
                 }
                 break;
             }
             case Cell.CELL_TYPE_STRING: {
-                if (_sharedStringSource != null) {
-                    XSSFRichTextString rt = new XSSFRichTextString(cell.getStringCellValue());
-                    int sRef = _sharedStringSource.addEntry(rt.getCTRst());
+                if (_streamingSharedStringSource != null || _sharedStringSource != null) {
+                    int sRef;
+                    if (_streamingSharedStringSource != null) {
+                        sRef = _streamingSharedStringSource.addEntry(cell.getStringCellValue());
+                    } else {
+                        XSSFRichTextString rt = new XSSFRichTextString(cell.getStringCellValue());
+                        // the table is shared by all sheets, which may be flushed from different threads
+                        synchronized (_sharedStringSource) {
+                            sRef = _sharedStringSource.addEntry(rt.getCTRst());
+                        }
+                    }
 
                     _out.write(" t=\"" + STCellType.S.toString() + "\">");
                     _out.write("<v>");
-                    _out.write(String.valueOf(sRef));
+                    writeInt(sRef);
                     _out.write("</v>");
                 } else {
                     _out.write(" t=\"inlineStr\">");
@@ -239,7 +317,9 @@ public class SheetDataWriter {
             }
             case Cell.CELL_TYPE_NUMERIC: {
                 _out.write(" t=\"n\">");
-                _out.write("<v>" + cell.getNumericCellValue() + "</v>");
+                _out.write("<v>");
+                writeDouble(cell.getNumericCellValue());
+                _out.write("</v>");
                 break;
             }
             case Cell.CELL_TYPE_BOOLEAN: {
@@ -267,6 +347,10 @@ public class SheetDataWriter {
      *  need to be preserved with the xml:space=\"preserve\" attribute
      */
     boolean hasLeadingTrailingSpaces(String str) {
+        return hasLeadingOrTrailingSpaces(str);
+    }
+
+    static boolean hasLeadingOrTrailingSpaces(String str) {
         if (str != null && str.length() > 0) {
             char firstChar = str.charAt(0);
             char lastChar  = str.charAt(str.length() - 1);
@@ -275,8 +359,40 @@ public class SheetDataWriter {
         return false;
     }
 
+    private void writeInt(int value) throws IOException {
+        if (_xmlOut != null) {
+            _xmlOut.writeInt(value);
+        } else {
+            _out.write(Integer.toString(value));
+        }
+    }
+
+    private void writeDouble(double value) throws IOException {
+        if (_xmlOut != null) {
+            _xmlOut.writeDouble(value);
+        } else {
+            _out.write(Double.toString(value));
+        }
+    }
+
+    private void writeCellReference(int row, int col) throws IOException {
+        if (_xmlOut != null) {
+            _xmlOut.writeCellReference(row, col);
+        } else {
+            _out.write(new CellReference(row, col).formatAsString());
+        }
+    }
+
+    protected void outputQuotedString(String s) throws IOException {
+        if (_xmlOut != null) {
+            _xmlOut.writeQuotedString(s);
+        } else {
+            writeQuotedString(_out, s);
+        }
+    }
+
     //Taken from jdk1.3/src/javax/swing/text/html/HTMLWriter.java
-     protected void outputQuotedString(String s) throws IOException {
+    static void writeQuotedString(Writer _out, String s) throws IOException {
         if (s == null || s.length() == 0) {
             return;
         }
@@ -370,10 +486,10 @@ public class SheetDataWriter {
 
     /**
      * Deletes the temporary file that backed this sheet on disk.
-     * @return true if the file was deleted, false if it wasn't.
+     * @return true if the file was deleted, or there was none, false if it wasn't.
      */
     boolean dispose() throws IOException {
         _out.close();
-        return _fd.delete();
+        return _fd == null || _fd.delete();
     }
 }
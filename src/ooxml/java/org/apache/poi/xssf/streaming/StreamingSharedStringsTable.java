@@ -0,0 +1,191 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import static org.apache.poi.POIXMLTypeLoader.DEFAULT_XML_OPTIONS;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSst;
+
+/**
+ * A shared strings table for SXSSF which isn't held in memory.
+ * <p>
+ * Each new string is given the next index and its <code>&lt;si&gt;</code>
+ * element is written straight away to a temp file. To de-duplicate,
+ * only a bounded number of the most recently used strings are remembered.
+ * A string which has dropped out of that cache is added again under a new
+ * index when it next turns up, which is allowed by the file format, so
+ * memory use stays fixed at the price of a less compact table.
+ * </p>
+ * <p>
+ * When the workbook is written, the entries are appended to those of the
+ * template workbook's own shared strings table, see {@link #writeTo(OutputStream)}.
+ * </p>
+ */
+final class StreamingSharedStringsTable {
+    private static final String NS_SPREADSHEETML = CTSst.type.getName().getNamespaceURI();
+
+    private final SharedStringsTable _template;
+    private final File _fd;
+    private final Utf8XmlWriter _out;
+    private final Map<String, Integer> _cache;
+
+    /**
+     * the index of the first entry written by this table, after any entries
+     * the template workbook already had
+     */
+    private final int _firstIndex;
+    private int _count;
+    private int _uniqueCount;
+
+    /**
+     * @param template the shared strings table of the template workbook
+     * @param cacheSize the number of recently used strings to remember for de-duplication
+     */
+    StreamingSharedStringsTable(SharedStringsTable template, final int cacheSize) throws IOException {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be greater than 0");
+        }
+        _template = template;
+        _firstIndex = template.getItems().size();
+        _count = template.getCount();
+        _cache = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        _fd = TempFile.createTempFile("poi-sxssf-sst", ".xml");
+        _out = new Utf8XmlWriter(new FileOutputStream(_fd));
+    }
+
+    /**
+     * Add a string to the table, unless it has been recently added already.
+     * Sheets flushed from different threads may call this concurrently.
+     *
+     * @return the index of the string
+     */
+    synchronized int addEntry(String str) throws IOException {
+        _count++;
+        Integer idx = _cache.get(str);
+        if (idx != null) {
+            return idx;
+        }
+
+        _out.write("<si><t");
+        if (SheetDataWriter.hasLeadingOrTrailingSpaces(str)) {
+            _out.write(" xml:space=\"preserve\"");
+        }
+        _out.write(">");
+        _out.writeQuotedString(str);
+        _out.write("</t></si>");
+
+        int newIdx = _firstIndex + _uniqueCount++;
+        _cache.put(str, newIdx);
+        return newIdx;
+    }
+
+    /**
+     * @return the total number of strings added, including those of the template workbook
+     */
+    synchronized int getCount() {
+        return _count;
+    }
+
+    /**
+     * @return the number of entries in the table, including those of the template workbook
+     */
+    synchronized int getUniqueCount() {
+        return _firstIndex + _uniqueCount;
+    }
+
+    /**
+     * Writes the complete shared strings part, being the entries of the template
+     * workbook followed by the entries of this table.
+     *
+     * @param out where to write the complete part
+     */
+    synchronized void writeTo(OutputStream out) throws IOException {
+        _out.flush();
+
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<sst xmlns=\"" + NS_SPREADSHEETML + "\" count=\"" + getCount()
+                + "\" uniqueCount=\"" + getUniqueCount() + "\">");
+        if (_firstIndex > 0) {
+            XmlOptions options = new XmlOptions(DEFAULT_XML_OPTIONS);
+            options.setSaveSyntheticDocumentElement(new QName(NS_SPREADSHEETML, "si"));
+            options.setSaveImplicitNamespaces(Collections.singletonMap("", NS_SPREADSHEETML));
+            // no CDATA, as in SharedStringsTable.writeTo()
+            options.setSaveCDataLengthThreshold(1000000);
+            options.setSaveCDataEntityCountThreshold(-1);
+            List<CTRst> items = _template.getItems();
+            for (int i = 0; i < _firstIndex; i++) {
+                writer.write(items.get(i).xmlText(options));
+            }
+        }
+        writer.flush();
+
+        InputStream entries = new FileInputStream(_fd);
+        try {
+            IOUtils.copy(entries, out);
+        } finally {
+            entries.close();
+        }
+
+        writer.write("</sst>");
+        writer.flush();
+    }
+
+    /**
+     * Flush and close the temp file writer
+     */
+    void close() throws IOException {
+        _out.close();
+    }
+
+    /**
+     * Deletes the temporary file that backed this table on disk.
+     * @return true if the file was deleted, false if it wasn't.
+     */
+    boolean dispose() throws IOException {
+        _out.close();
+        return _fd.delete();
+    }
+}
@@ -0,0 +1,61 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes the temp files in which SXSSF keeps the sheet data until the
+ * workbook is written, trading CPU for disk space and I/O.
+ * <p>
+ * Built in codecs are {@link GZIPTempFileCodec}, which has a configurable
+ * deflate level, and {@link BlockTempFileCodec}, a much faster codec
+ * with a lower compression ratio. Set one with
+ * {@link SXSSFWorkbook#setTempFileCodec(TempFileCodec)}.
+ * </p>
+ * <p>
+ * Codecs may be used by several sheets at the same time, so
+ * implementations must be thread safe.
+ * </p>
+ */
+public interface TempFileCodec {
+    /**
+     * @return the suffix of the temp files, e.g. <code>.gz</code>
+     */
+    String getFileSuffix();
+
+    /**
+     * Wraps the stream which writes a temp file.
+     * Closing the returned stream must close <code>out</code>.
+     *
+     * @param out the stream writing the temp file
+     * @return a stream which encodes what is written to it into <code>out</code>
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+
+    /**
+     * Wraps the stream which reads a temp file.
+     * Closing the returned stream must close <code>in</code>.
+     *
+     * @param in the stream reading the temp file
+     * @return a stream which decodes the data read from <code>in</code>
+     */
+    InputStream decode(InputStream in) throws IOException;
+}
@@ -0,0 +1,268 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A Writer which encodes straight to UTF-8 into its own buffer, without
+ * going through a charset encoder, and which can write the numbers, cell
+ * references and escaped text of the sheet data XML without creating
+ * intermediate Strings.
+ * <p>
+ * Unpaired surrogates are written as <code>?</code>, as an
+ * OutputStreamWriter would. This class is not thread safe.
+ * </p>
+ */
+final class Utf8XmlWriter extends Writer {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream _out;
+    private final byte[] _buf = new byte[BUFFER_SIZE];
+    private int _pos;
+    private char _highSurrogate;
+
+    Utf8XmlWriter(OutputStream out) {
+        _out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureSpace(4);
+        writeChar((char)c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            ensureSpace(4);
+            writeChar(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            ensureSpace(4);
+            writeChar(str.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the decimal digits of the given number
+     */
+    void writeInt(int value) throws IOException {
+        writeLong(value);
+    }
+
+    private void writeLong(long value) throws IOException {
+        // 19 digits plus a sign
+        ensureSpace(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                write(Long.toString(value));
+                return;
+            }
+            _buf[_pos++] = '-';
+            value = -value;
+        }
+        int start = _pos;
+        do {
+            _buf[_pos++] = (byte)('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // digits were written least significant first
+        for (int i = start, j = _pos - 1; i < j; i++, j--) {
+            byte tmp = _buf[i];
+            _buf[i] = _buf[j];
+            _buf[j] = tmp;
+        }
+    }
+
+    /**
+     * Writes the number in the same form as {@link Double#toString(double)}.
+     * Whole numbers which that prints in plain notation are written without
+     * creating a String.
+     */
+    void writeDouble(double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 1e7) {
+            if (value == 0 && 1 / value < 0) {
+                write("-0.0");
+            } else {
+                writeLong((long)value);
+                write(".0");
+            }
+        } else {
+            write(Double.toString(value));
+        }
+    }
+
+    /**
+     * Writes an A1 style reference, eg <code>AB12</code>, to the given zero based cell
+     */
+    void writeCellReference(int row, int col) throws IOException {
+        ensureSpace(8);
+        // column letters are "bijective base 26", written most significant first
+        int start = _pos;
+        int colNum = col + 1;
+        while (colNum > 0) {
+            int rem = (colNum - 1) % 26;
+            _buf[_pos++] = (byte)('A' + rem);
+            colNum = (colNum - 1) / 26;
+        }
+        for (int i = start, j = _pos - 1; i < j; i++, j--) {
+            byte tmp = _buf[i];
+            _buf[i] = _buf[j];
+            _buf[j] = tmp;
+        }
+        writeLong(row + 1L);
+    }
+
+    /**
+     * Writes the text escaped for use in element content or attribute values,
+     * in the same way as {@link SheetDataWriter#writeQuotedString(Writer, String)}
+     */
+    void writeQuotedString(String s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        int length = s.length();
+        for (int counter = 0; counter < length; counter++) {
+            char c = s.charAt(counter);
+            ensureSpace(12);
+            switch (c) {
+                case '<':
+                    writeAscii("&lt;");
+                    break;
+                case '>':
+                    writeAscii("&gt;");
+                    break;
+                case '&':
+                    writeAscii("&amp;");
+                    break;
+                case '"':
+                    writeAscii("&quot;");
+                    break;
+                // Special characters
+                case '\n':
+                case '\r':
+                    writeAscii("&#xa;");
+                    break;
+                case '\t':
+                    writeAscii("&#x9;");
+                    break;
+                case 0xa0:
+                    writeAscii("&#xa0;");
+                    break;
+                default:
+                    // YK: XmlBeans silently replaces all ISO control characters ( < 32) with question marks.
+                    // the same rule applies to unicode surrogates and "not a character" symbols.
+                    if( c < ' ' || Character.isLowSurrogate(c) || Character.isHighSurrogate(c) ||
+                            ('\uFFFE' <= c && c <= '\uFFFF')) {
+                        _buf[_pos++] = '?';
+                    }
+                    else if (c > 127) {
+                        // If the character is outside of ascii, write the
+                        // numeric value.
+                        _buf[_pos++] = '&';
+                        _buf[_pos++] = '#';
+                        writeLong(c);
+                        _buf[_pos++] = ';';
+                    }
+                    else {
+                        _buf[_pos++] = (byte)c;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Copies a short, known to be ASCII, String into the buffer,
+     * for which there must already be space
+     */
+    private void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            _buf[_pos++] = (byte)s.charAt(i);
+        }
+    }
+
+    private void writeChar(char c) {
+        if (_highSurrogate != 0) {
+            char high = _highSurrogate;
+            _highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                _buf[_pos++] = (byte)(0xF0 | (cp >> 18));
+                _buf[_pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                _buf[_pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                _buf[_pos++] = (byte)(0x80 | (cp & 0x3F));
+                return;
+            }
+            _buf[_pos++] = '?';
+            // there is still space for the current char, as at most
+            //  one byte has been used out of the four ensured
+        }
+        if (c < 0x80) {
+            _buf[_pos++] = (byte)c;
+        } else if (c < 0x800) {
+            _buf[_pos++] = (byte)(0xC0 | (c >> 6));
+            _buf[_pos++] = (byte)(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            _highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            _buf[_pos++] = '?';
+        } else {
+            _buf[_pos++] = (byte)(0xE0 | (c >> 12));
+            _buf[_pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+            _buf[_pos++] = (byte)(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void ensureSpace(int bytes) throws IOException {
+        if (_pos + bytes > _buf.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buf, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_highSurrogate != 0) {
+            _highSurrogate = 0;
+            ensureSpace(1);
+            _buf[_pos++] = '?';
+        }
+        flushBuffer();
+        _out.close();
+    }
+}
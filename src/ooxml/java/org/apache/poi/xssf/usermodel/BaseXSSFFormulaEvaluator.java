@@ -17,10 +17,14 @@
 
 package org.apache.poi.xssf.usermodel;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment;
 import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationProfiler;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.formula.WorkbookEvaluatorProvider;
 import org.apache.poi.ss.formula.eval.BoolEval;
@@ -31,11 +35,12 @@ import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellValue;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.IncrementalFormulaEvaluator;
 
 /**
  * Internal POI use only - parent of XSSF and SXSSF formula evaluators
  */
-public abstract class BaseXSSFFormulaEvaluator implements FormulaEvaluator, WorkbookEvaluatorProvider {
+public abstract class BaseXSSFFormulaEvaluator implements IncrementalFormulaEvaluator, WorkbookEvaluatorProvider {
     private WorkbookEvaluator _bookEvaluator;
 
     protected BaseXSSFFormulaEvaluator(WorkbookEvaluator bookEvaluator) {
@@ -61,6 +66,33 @@ public abstract class BaseXSSFFormulaEvaluator implements FormulaEvaluator, Work
         _bookEvaluator.notifyUpdateCell(new XSSFEvaluationCell((XSSFCell)cell));
     }
 
+    public List<Cell> getDependentFormulaCells(Cell cell) {
+        List<EvaluationCell> evalCells = new ArrayList<EvaluationCell>(1);
+        evalCells.add(toEvaluationCell(cell));
+        return toCells(_bookEvaluator.getDependentFormulaCells(evalCells));
+    }
+
+    public List<Cell> recalculateDependentCells(Collection<Cell> changedCells) {
+        List<EvaluationCell> evalCells = new ArrayList<EvaluationCell>(changedCells.size());
+        for (Cell cell : changedCells) {
+            evalCells.add(toEvaluationCell(cell));
+        }
+        List<Cell> result = toCells(_bookEvaluator.notifyUpdateCells(evalCells));
+        for (Cell cell : result) {
+            evaluateFormulaCell(cell);
+        }
+        return result;
+    }
+
+    private static List<Cell> toCells(List<EvaluationCell> evalCells) {
+        List<Cell> result = new ArrayList<Cell>(evalCells.size());
+        for (EvaluationCell evalCell : evalCells) {
+            // the identity key of XSSF and SXSSF evaluation cells is the cell itself
+            result.add((Cell)evalCell.getIdentityKey());
+        }
+        return result;
+    }
+
     /**
      * If cell contains a formula, the formula is evaluated and returned,
      * else the CellValue simply copies the appropriate cell value from
@@ -222,4 +254,23 @@ public abstract class BaseXSSFFormulaEvaluator implements FormulaEvaluator, Work
     public void setDebugEvaluationOutputForNextEval(boolean value){
         _bookEvaluator.setDebugEvaluationOutputForNextEval(value);
     }
+
+    /**
+     * Drops the cached results of formulas calling volatile functions (like RAND or NOW) and of
+     * all formulas depending on them.
+     *
+     * @see org.apache.poi.ss.formula.IVolatilityClassifier
+     */
+    public void clearVolatileCachedResultValues() {
+        _bookEvaluator.clearVolatileCachedResultValues();
+    }
+
+    /**
+     * Sets the profiler which collects statistics about the evaluations of this evaluator.
+     *
+     * @param profiler pass <code>null</code> to stop profiling
+     */
+    public void setEvaluationProfiler(EvaluationProfiler profiler) {
+        _bookEvaluator.setEvaluationProfiler(profiler);
+    }
 }
@@ -0,0 +1,159 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The cells of a row, ordered by column index, held in a pair of parallel
+ * arrays rather than a TreeMap. This saves the map entry and boxed key of
+ * each cell, around 40 bytes a cell, and makes iteration a walk along an
+ * array. Lookups are binary searches, and cells are usually added in
+ * column order, which only appends.
+ */
+final class SortedCellArray implements Iterable<XSSFCell> {
+    private static final int[] EMPTY_COLUMNS = {};
+    private static final XSSFCell[] EMPTY_CELLS = {};
+
+    private int[] _columns = EMPTY_COLUMNS;
+    private XSSFCell[] _cells = EMPTY_CELLS;
+    private int _size;
+    private int _modCount;
+
+    SortedCellArray() {
+    }
+
+    SortedCellArray(int initialCapacity) {
+        if (initialCapacity > 0) {
+            _columns = new int[initialCapacity];
+            _cells = new XSSFCell[initialCapacity];
+        }
+    }
+
+    int size() {
+        return _size;
+    }
+
+    /**
+     * @return the lowest column index, the array must not be empty
+     */
+    int firstKey() {
+        if (_size == 0) throw new NoSuchElementException();
+        return _columns[0];
+    }
+
+    /**
+     * @return the highest column index, the array must not be empty
+     */
+    int lastKey() {
+        if (_size == 0) throw new NoSuchElementException();
+        return _columns[_size - 1];
+    }
+
+    XSSFCell get(int column) {
+        int pos = indexOf(column);
+        return pos < 0 ? null : _cells[pos];
+    }
+
+    /**
+     * @return the cell previously at the column, or <code>null</code>
+     */
+    XSSFCell put(int column, XSSFCell cell) {
+        // cells are normally added left to right
+        int pos = (_size == 0 || column > _columns[_size - 1]) ? -(_size + 1) : indexOf(column);
+        if (pos >= 0) {
+            XSSFCell prev = _cells[pos];
+            _cells[pos] = cell;
+            return prev;
+        }
+        pos = -(pos + 1);
+        if (_size == _columns.length) {
+            int capacity = Math.max(4, _size + (_size >> 1));
+            _columns = Arrays.copyOf(_columns, capacity);
+            _cells = Arrays.copyOf(_cells, capacity);
+        }
+        System.arraycopy(_columns, pos, _columns, pos + 1, _size - pos);
+        System.arraycopy(_cells, pos, _cells, pos + 1, _size - pos);
+        _columns[pos] = column;
+        _cells[pos] = cell;
+        _size++;
+        _modCount++;
+        return null;
+    }
+
+    /**
+     * @return the cell removed from the column, or <code>null</code>
+     */
+    XSSFCell remove(int column) {
+        int pos = indexOf(column);
+        if (pos < 0) {
+            return null;
+        }
+        XSSFCell prev = _cells[pos];
+        removeAt(pos);
+        return prev;
+    }
+
+    private void removeAt(int pos) {
+        System.arraycopy(_columns, pos + 1, _columns, pos, _size - pos - 1);
+        System.arraycopy(_cells, pos + 1, _cells, pos, _size - pos - 1);
+        _size--;
+        _cells[_size] = null;
+        _modCount++;
+    }
+
+    private int indexOf(int column) {
+        return Arrays.binarySearch(_columns, 0, _size, column);
+    }
+
+    /**
+     * @return the cells in column order; the iterator supports removal
+     */
+    public Iterator<XSSFCell> iterator() {
+        return new CellIterator();
+    }
+
+    private final class CellIterator implements Iterator<XSSFCell> {
+        private int _next;
+        private int _last = -1;
+        private int _expectedModCount = _modCount;
+
+        public boolean hasNext() {
+            return _next < _size;
+        }
+
+        public XSSFCell next() {
+            if (_expectedModCount != _modCount) throw new ConcurrentModificationException();
+            if (_next >= _size) throw new NoSuchElementException();
+            _last = _next++;
+            return _cells[_last];
+        }
+
+        public void remove() {
+            if (_last < 0) throw new IllegalStateException();
+            if (_expectedModCount != _modCount) throw new ConcurrentModificationException();
+            removeAt(_last);
+            _next = _last;
+            _last = -1;
+            _expectedModCount = _modCount;
+        }
+    }
+}
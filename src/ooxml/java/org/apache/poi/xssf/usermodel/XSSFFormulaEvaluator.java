@@ -23,6 +23,7 @@ import org.apache.poi.ss.formula.IStabilityClassifier;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
 
 /**
  * Evaluates formula cells.<p/>
@@ -102,7 +103,17 @@ public final class XSSFFormulaEvaluator extends BaseXSSFFormulaEvaluator {
      *  cells, and calling evaluateFormulaCell on each one.
      */
     public void evaluateAll() {
-        HSSFFormulaEvaluator.evaluateAllFormulaCells(_book);
+        // with this evaluator, so that it knows the dependencies of the cells afterwards
+        for (int i = 0; i < _book.getNumberOfSheets(); i++) {
+            XSSFSheet sheet = _book.getSheetAt(i);
+            for (Row r : sheet) {
+                for (Cell c : r) {
+                    if (c.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                        evaluateFormulaCell(c);
+                    }
+                }
+            }
+        }
     }
 
     /**
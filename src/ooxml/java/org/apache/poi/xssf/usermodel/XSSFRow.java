@@ -20,7 +20,6 @@ package org.apache.poi.xssf.usermodel;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.TreeMap;
 
 import org.apache.poi.ss.formula.FormulaShifter;
 import org.apache.poi.ss.SpreadsheetVersion;
@@ -51,9 +50,9 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
 
     /**
      * Cells of this row keyed by their column indexes.
-     * The TreeMap ensures that the cells are ordered by columnIndex in the ascending order.
+     * The SortedCellArray keeps the cells ordered by columnIndex in the ascending order.
      */
-    private final TreeMap<Integer, XSSFCell> _cells;
+    private final SortedCellArray _cells;
 
     /**
      * the parent sheet
@@ -69,8 +68,9 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
     protected XSSFRow(CTRow row, XSSFSheet sheet) {
         _row = row;
         _sheet = sheet;
-        _cells = new TreeMap<Integer, XSSFCell>();
-        for (CTCell c : row.getCArray()) {
+        CTCell[] cArray = row.getCArray();
+        _cells = new SortedCellArray(cArray.length);
+        for (CTCell c : cArray) {
             XSSFCell cell = new XSSFCell(this, c);
             _cells.put(cell.getColumnIndex(), cell);
             sheet.onReadCell(cell);
@@ -99,7 +99,7 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
      */
     @SuppressWarnings("unchecked")
 	public Iterator<Cell> cellIterator() {
-        return (Iterator<Cell>)(Iterator<? extends Cell>)_cells.values().iterator();
+        return (Iterator<Cell>)(Iterator<? extends Cell>)_cells.iterator();
     }
 
     /**
@@ -481,7 +481,7 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
             isOrdered = false;
         } else {
             int i = 0;
-            for (XSSFCell cell : _cells.values()) {
+            for (XSSFCell cell : _cells) {
                 CTCell c1 = cell.getCTCell();
                 CTCell c2 = cArray[i++];
 
@@ -497,7 +497,7 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
         if(!isOrdered){
             cArray = new CTCell[_cells.size()];
             int i = 0;
-            for (XSSFCell xssfCell : _cells.values()) {
+            for (XSSFCell xssfCell : _cells) {
                 cArray[i] = (CTCell) xssfCell.getCTCell().copy();
                 
                 // we have to copy and re-create the XSSFCell here because the 
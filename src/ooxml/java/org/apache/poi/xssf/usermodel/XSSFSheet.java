@@ -3233,6 +3233,15 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
         out.close();
     }
 
+    /**
+     * Writes the worksheet XML, as it is saved in the package, to the given stream.
+     * Used by SXSSF to write out a sheet before the rest of the workbook.
+     */
+    @Internal
+    public void writeWorksheet(OutputStream out) throws IOException {
+        write(out);
+    }
+
     protected void write(OutputStream out) throws IOException {
         boolean setToNull = false;
         if(worksheet.sizeOfColsArray() == 1) {
@@ -0,0 +1,165 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.POIDataSamples;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.eventusermodel.StreamingSheetReader.StreamingRow;
+
+/**
+ * Tests for {@link StreamingSheetReader}
+ */
+public final class TestStreamingSheetReader extends TestCase {
+    private static POIDataSamples _ssTests = POIDataSamples.getSpreadSheetInstance();
+
+    public void testReadRows() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        try {
+            XSSFReader r = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = r.getStylesTable();
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator)r.getSheetsData();
+
+            // First sheet is all shared strings
+            StreamingSheetReader sheet = new StreamingSheetReader(it.next(), strings, styles);
+            try {
+                StreamingRow row = sheet.next();
+                assertEquals(0, row.getRowNum());
+                assertEquals(1, row.getCellCount());
+                assertEquals(Cell.CELL_TYPE_STRING, row.getCellType(0));
+                assertEquals(0, row.getSharedStringIndex(0));
+                assertEquals("Test spreadsheet", row.getStringCellValue(0));
+
+                row = sheet.next();
+                assertEquals(1, row.getRowNum());
+                assertEquals(2, row.getCellCount());
+                assertEquals(1, row.getColumnIndex(1));
+                assertEquals("2nd row 2nd column", row.getStringCellValue(1));
+
+                // Row 3 is missing from the file
+                row = sheet.next();
+                assertEquals(3, row.getRowNum());
+                assertEquals(1, row.getStyleIndex(0));
+                assertEquals("This one is red", row.getStringCellValue(0));
+
+                assertFalse(sheet.hasNext());
+                try {
+                    sheet.next();
+                    fail("No more rows");
+                } catch (NoSuchElementException e) {
+                    // expected here
+                }
+            } finally {
+                sheet.close();
+            }
+
+            // Second sheet ends with numbers and a formula
+            sheet = new StreamingSheetReader(it.next(), strings, styles);
+            try {
+                StreamingRow row = null;
+                while (sheet.hasNext()) {
+                    row = sheet.next();
+                }
+                assertNotNull(row);
+                assertEquals(6, row.getRowNum());
+                assertEquals(4, row.getCellCount());
+                assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCellType(0));
+                assertEquals(1.0, row.getNumericCellValue(0), 0);
+                assertEquals(10.0, row.getNumericCellValue(1), 0);
+                assertEquals(-1, row.getSharedStringIndex(1));
+                assertFalse(row.isFormula(2));
+                assertTrue(row.isFormula(3));
+                assertEquals(13.0, row.getNumericCellValue(3), 0);
+                assertEquals("13", row.getFormattedCellValue(3, new DataFormatter()));
+                try {
+                    row.getStringCellValue(0);
+                    fail("Numeric cells have no string value");
+                } catch (IllegalStateException e) {
+                    // expected here
+                }
+            } finally {
+                sheet.close();
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    public void testInlineTypes() throws Exception {
+        String xml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" +
+            "<row><c t=\"inlineStr\"><is><t>in</t><r><t>line</t></r></is></c><c t=\"b\"><v>1</v></c><c t=\"e\"><v>#N/A</v></c><c s=\"3\"/></row>" +
+            "<row><c r=\"AB2\" t=\"str\"><f>\"x\"</f><v>x</v></c></row>" +
+            "</sheetData></worksheet>";
+        StreamingSheetReader sheet = new StreamingSheetReader(
+                new ByteArrayInputStream(xml.getBytes("UTF-8")), null, null);
+        try {
+            StreamingRow row = sheet.next();
+            assertEquals(0, row.getRowNum());
+            assertEquals(4, row.getCellCount());
+            assertEquals(0, row.getColumnIndex(0));
+            assertEquals("inline", row.getStringCellValue(0));
+            assertEquals(-1, row.getSharedStringIndex(0));
+            assertEquals(1, row.getColumnIndex(1));
+            assertTrue(row.getBooleanCellValue(1));
+            assertEquals("TRUE", row.getFormattedCellValue(1, new DataFormatter()));
+            assertEquals(Cell.CELL_TYPE_ERROR, row.getCellType(2));
+            assertEquals("#N/A", row.getStringCellValue(2));
+            assertEquals(Cell.CELL_TYPE_BLANK, row.getCellType(3));
+            assertEquals(3, row.getStyleIndex(3));
+
+            row = sheet.next();
+            assertEquals(1, row.getRowNum());
+            assertEquals(27, row.getColumnIndex(0));
+            assertTrue(row.isFormula(0));
+            assertEquals("x", row.getStringCellValue(0));
+            assertFalse(sheet.hasNext());
+        } finally {
+            sheet.close();
+        }
+    }
+
+    public void testSharedStringWithoutValue() throws Exception {
+        String xml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" +
+            "<row><c t=\"s\"/></row>" +
+            "<row><c t=\"s\"/><c t=\"str\"><v>x</v></c></row>" +
+            "</sheetData></worksheet>";
+        StreamingSheetReader sheet = new StreamingSheetReader(
+                new ByteArrayInputStream(xml.getBytes("UTF-8")), null, null);
+        try {
+            StreamingRow row = sheet.next();
+            assertEquals(Cell.CELL_TYPE_STRING, row.getCellType(0));
+            assertEquals(-1, row.getSharedStringIndex(0));
+            assertEquals("", row.getStringCellValue(0));
+
+            row = sheet.next();
+            assertEquals("", row.getStringCellValue(0));
+            assertEquals("x", row.getStringCellValue(1));
+            assertFalse(sheet.hasNext());
+        } finally {
+            sheet.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.POIDataSamples;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.SAXException;
+
+/**
+ * Tests for {@link TempFileSharedStringsTable}
+ */
+public final class TestTempFileSharedStringsTable extends TestCase {
+    private static POIDataSamples _ssTests = POIDataSamples.getSpreadSheetInstance();
+
+    public void testMatchesReadOnlyTable() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        List<PackagePart> parts = pkg.getPartsByName(Pattern.compile("/xl/sharedStrings.xml"));
+        assertEquals(1, parts.size());
+
+        ReadOnlySharedStringsTable rtbl = new ReadOnlySharedStringsTable(parts.get(0));
+        for (int cacheSize : new int[] { 0, 2, 100 }) {
+            TempFileSharedStringsTable ttbl = new TempFileSharedStringsTable(parts.get(0), cacheSize);
+            try {
+                assertEquals(cacheSize, ttbl.getCacheSize());
+                assertEquals(rtbl.getCount(), ttbl.getCount());
+                assertEquals(rtbl.getUniqueCount(), ttbl.getUniqueCount());
+                assertEquals(rtbl.getItems().size(), ttbl.getItems().size());
+
+                // Go forwards and backwards, so the cache is both hit and evicted from
+                for (int i = 0; i < rtbl.getUniqueCount(); i++) {
+                    assertEquals(rtbl.getEntryAt(i), ttbl.getEntryAt(i));
+                }
+                for (int i = rtbl.getUniqueCount() - 1; i >= 0; i--) {
+                    assertEquals(rtbl.getEntryAt(i), ttbl.getEntryAt(i));
+                }
+                assertEquals(rtbl.getItems(), ttbl.getItems());
+
+                try {
+                    ttbl.getEntryAt(rtbl.getUniqueCount());
+                    fail("Index past the end of the table");
+                } catch (IndexOutOfBoundsException e) {
+                    // expected here
+                }
+            } finally {
+                ttbl.close();
+            }
+        }
+        pkg.revert();
+    }
+
+    public void testEmptySST() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("noSharedStringTable.xlsx"));
+        TempFileSharedStringsTable sst = new TempFileSharedStringsTable(pkg, 10);
+        assertEquals(0, sst.getCount());
+        assertEquals(0, sst.getUniqueCount());
+        assertNull(sst.getItems());
+        sst.close();
+        pkg.revert();
+    }
+
+    /**
+     * The temporary files must be removed if the part can't be parsed,
+     *  as there is then no instance to close
+     */
+    public void testTempFilesRemovedOnParseFailure() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        PackagePart part = pkg.createPart(PackagingURIHelper.createPartName("/xl/brokenStrings.xml"),
+                XSSFRelation.SHARED_STRINGS.getContentType());
+        OutputStream out = part.getOutputStream();
+        out.write("<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><si><t>a</t></si><si>".getBytes("UTF-8"));
+        out.close();
+
+        File dir = TempFile.createTempFile("poi-sst-test", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        TempFile.setTempFileCreationStrategy(new TempFile.DefaultTempFileCreationStrategy(dir));
+        try {
+            new TempFileSharedStringsTable(part, 10);
+            fail("Truncated shared strings part should not be read");
+        } catch (SAXException e) {
+            // expected here
+        } finally {
+            TempFile.setTempFileCreationStrategy(new TempFile.DefaultTempFileCreationStrategy());
+        }
+        assertEquals(0, dir.list().length);
+        assertTrue(dir.delete());
+        pkg.revert();
+    }
+}
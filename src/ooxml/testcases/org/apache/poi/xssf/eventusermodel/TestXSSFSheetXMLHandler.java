@@ -0,0 +1,120 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.POIDataSamples;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetTypedContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Tests for {@link XSSFSheetXMLHandler}
+ */
+public final class TestXSSFSheetXMLHandler extends TestCase {
+    private static POIDataSamples _ssTests = POIDataSamples.getSpreadSheetInstance();
+
+    public void testTypedContents() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        try {
+            XSSFReader r = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator)r.getSheetsData();
+            it.next().close();
+
+            RecordingHandler handler = new RecordingHandler();
+            XSSFSheetXMLHandler sheetHandler = new XSSFSheetXMLHandler(r.getStylesTable(), strings, handler);
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(sheetHandler);
+            InputStream sheet = it.next();
+            try {
+                parser.parse(new InputSource(sheet));
+            } finally {
+                sheet.close();
+            }
+
+            assertEquals(
+                "start 0|sst 0,0 s0 3|end 0|" +
+                "start 1|sst 1,0 s0 4|end 1|" +
+                "start 3|sst 3,0 s2 6|end 3|" +
+                "start 5|sst 5,0 s0 7|sst 5,1 s0 8|sst 5,2 s0 9|sst 5,3 s0 10|end 5|" +
+                "start 6|num 6,0 s0 1.0|num 6,1 s0 10.0|num 6,2 s0 2.0|num 6,3 s0 13.0|end 6|",
+                handler.events.toString());
+            assertEquals("Sheet 2 row 2", strings.getEntryAt(4));
+            assertEquals("13", sheetHandler.formatRawCellContents(13.0, 0));
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    public void testTypedContentsWithEmptySharedStringValue() throws Exception {
+        String xml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+            + "<row r=\"1\"><c r=\"A1\" t=\"s\"><v></v></c><c r=\"B1\" t=\"s\"><v>2</v></c></row>"
+            + "<row r=\"2\"><c r=\"A2\" t=\"s\"><v/></c><c r=\"B2\"><v/></c><c r=\"C2\"><v>1.5</v></c></row>"
+            + "</sheetData></worksheet>";
+
+        RecordingHandler handler = new RecordingHandler();
+        XSSFSheetXMLHandler sheetHandler = new XSSFSheetXMLHandler(new StylesTable(), null, handler);
+        XMLReader parser = SAXHelper.newXMLReader();
+        parser.setContentHandler(sheetHandler);
+        parser.parse(new InputSource(new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+
+        // the cells without a value are blank, so not reported
+        assertEquals(
+            "start 0|sst 0,1 s0 2|end 0|" +
+            "start 1|num 1,2 s0 1.5|end 1|",
+            handler.events.toString());
+    }
+
+    private static class RecordingHandler implements SheetTypedContentsHandler {
+        private final StringBuilder events = new StringBuilder();
+
+        public void startRow(int rowNum) {
+            events.append("start ").append(rowNum).append('|');
+        }
+        public void endRow(int rowNum) {
+            events.append("end ").append(rowNum).append('|');
+        }
+        public void numericCell(int rowNum, int column, int styleIndex, double value) {
+            cell("num", rowNum, column, styleIndex).append(value).append('|');
+        }
+        public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex) {
+            cell("sst", rowNum, column, styleIndex).append(sstIndex).append('|');
+        }
+        public void stringCell(int rowNum, int column, int styleIndex, String value) {
+            cell("str", rowNum, column, styleIndex).append(value).append('|');
+        }
+        public void booleanCell(int rowNum, int column, int styleIndex, boolean value) {
+            cell("bool", rowNum, column, styleIndex).append(value).append('|');
+        }
+        public void errorCell(int rowNum, int column, int styleIndex, String errorCode) {
+            cell("err", rowNum, column, styleIndex).append(errorCode).append('|');
+        }
+        private StringBuilder cell(String type, int rowNum, int column, int styleIndex) {
+            return events.append(type).append(' ').append(rowNum).append(',').append(column)
+                    .append(" s").append(styleIndex).append(' ');
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.poi.util.IOUtils;
+import org.junit.Test;
+
+public final class TestBlockTempFileCodec {
+    private final TempFileCodec codec = new BlockTempFileCodec();
+
+    @Test
+    public void roundTripSheetXml() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int r = 1; r <= 20000; r++) {
+            sb.append("<row r=\"").append(r).append("\">");
+            sb.append("<c r=\"A").append(r).append("\" t=\"n\"><v>").append(r * 1.5).append("</v></c>");
+            sb.append("<c r=\"B").append(r).append("\" t=\"s\"><v>").append(r % 7).append("</v></c>");
+            sb.append("</row>\n");
+        }
+        byte[] data = sb.toString().getBytes("UTF-8");
+        byte[] encoded = encode(data);
+        assertTrue("compressed to " + encoded.length + " of " + data.length,
+                encoded.length * 3 < data.length);
+        assertArrayEquals(data, decode(encoded));
+    }
+
+    @Test
+    public void roundTripEdgeCases() throws IOException {
+        Random rnd = new Random(12345);
+        byte[] random = new byte[3 * BlockTempFileCodec.BLOCK_SIZE + 17];
+        rnd.nextBytes(random);
+        byte[] zeros = new byte[BlockTempFileCodec.BLOCK_SIZE + 1];
+        byte[][] inputs = {
+                new byte[0], new byte[] { 1 }, "abcdabcdabcdabcd".getBytes("UTF-8"),
+                random, zeros
+        };
+        for (byte[] data : inputs) {
+            assertArrayEquals(data, decode(encode(data)));
+        }
+    }
+
+    @Test
+    public void byteAtATime() throws IOException {
+        byte[] data = new byte[BlockTempFileCodec.BLOCK_SIZE * 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)"<c r=\"A1\"/>".charAt(i % 11);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = codec.encode(bos);
+        for (byte b : data) {
+            out.write(b);
+        }
+        out.close();
+
+        InputStream in = codec.decode(new ByteArrayInputStream(bos.toByteArray()));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            decoded.write(b);
+        }
+        in.close();
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+
+    @Test
+    public void truncatedData() throws IOException {
+        byte[] encoded = encode("<row r=\"1\"><c r=\"A1\"/></row>".getBytes("UTF-8"));
+        byte[] truncated = new byte[encoded.length - 3];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        try {
+            decode(truncated);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private byte[] encode(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = codec.encode(bos);
+        out.write(data);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private byte[] decode(byte[] data) throws IOException {
+        InputStream in = codec.decode(new ByteArrayInputStream(data));
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -23,9 +23,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.IncrementalFormulaEvaluator;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
@@ -115,6 +119,54 @@ public final class TestSXSSFFormulaEvaluation {
         wb.close();
     }
     
+    /**
+     * With the values of flushed rows kept, formulas can refer to
+     *  them, but only in the columns that were kept
+     */
+    @Test
+    public void testEvaluateRefToRetainedFlushedValues() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(5);
+        SXSSFSheet s = wb.createSheet();
+        s.retainFlushedValues(0, 1);
+        
+        for (int i=0; i<100; i++) {
+            SXSSFRow r = s.createRow(i);
+            r.createCell(0).setCellValue("k" + i);
+            r.createCell(1).setCellValue(i * 2);
+            r.createCell(2).setCellValue(i);
+        }
+        assertEquals(94, s.getLastFlushedRowNum());
+        
+        SXSSFRow r = s.createRow(100);
+        Cell sum = r.createCell(0);
+        sum.setCellFormula("SUM(B1:B100)");
+        Cell lookup = r.createCell(1);
+        lookup.setCellFormula("VLOOKUP(\"k42\",A1:B100,2,FALSE)");
+        Cell notKept = r.createCell(2);
+        notKept.setCellFormula("C1+1");
+        
+        FormulaEvaluator eval = wb.getCreationHelper().createFormulaEvaluator();
+        assertEquals(9900, eval.evaluate(sum).getNumberValue(), 0);
+        assertEquals(84, eval.evaluate(lookup).getNumberValue(), 0);
+        try {
+            eval.evaluateFormulaCell(notKept);
+            fail("Evaluate shouldn't work, as column C of flushed rows isn't kept");
+        } catch(SXSSFFormulaEvaluator.RowFlushedException e) {
+            // Expected
+        }
+        
+        // too late to keep the values once rows are flushed
+        try {
+            wb.createSheet().retainFlushedValues();
+            s.retainFlushedValues();
+            fail("Values of rows already flushed can't be kept");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        
+        wb.close();
+    }
+    
     /**
      * If all formula cells + their references are inside the window,
      *  then evaluation works
@@ -178,4 +230,29 @@ public final class TestSXSSFFormulaEvaluation {
         
         wb.close();
     }
+    
+    @Test
+    public void testRecalculateDependentCells() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(5);
+        SXSSFSheet s = wb.createSheet();
+        SXSSFCell a1 = s.createRow(0).createCell(0);
+        a1.setCellValue(1);
+        SXSSFCell b1 = s.getRow(0).createCell(1);
+        b1.setCellFormula("A1*10");
+        SXSSFCell b2 = s.createRow(1).createCell(1);
+        b2.setCellFormula("B1+1");
+        SXSSFCell c2 = s.getRow(1).createCell(2);
+        c2.setCellFormula("2*3");
+        
+        IncrementalFormulaEvaluator eval = (IncrementalFormulaEvaluator) wb.getCreationHelper().createFormulaEvaluator();
+        eval.evaluateAll();
+        assertEquals(new HashSet<Cell>(Arrays.asList(b1, b2)), new HashSet<Cell>(eval.getDependentFormulaCells(a1)));
+        
+        a1.setCellValue(2);
+        assertEquals(Arrays.<Cell>asList(b1, b2), eval.recalculateDependentCells(Collections.<Cell>singleton(a1)));
+        assertEquals(20, (int)b1.getNumericCellValue());
+        assertEquals(21, (int)b2.getNumericCellValue());
+        
+        wb.close();
+    }
 }
@@ -22,12 +22,16 @@ package org.apache.poi.xssf.streaming;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.zip.Deflater;
 
 import org.apache.poi.POITestCase;
 import org.apache.poi.ss.SpreadsheetVersion;
@@ -37,10 +41,13 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
 import org.apache.poi.xssf.XSSFTestDataSamples;
 import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.After;
 import org.junit.Assume;
@@ -140,6 +147,125 @@ public final class TestSXSSFWorkbook extends BaseTestWorkbook {
         xssfWorkbook.close();
     }
 
+    @Test
+    public void useStreamingSharedStringsTable() throws Exception {
+        XSSFWorkbook template = new XSSFWorkbook();
+        template.createSheet("S0").createRow(0).createCell(0).setCellValue("T");
+        SXSSFWorkbook wb = new SXSSFWorkbook(template, 10, false, true, 2);
+
+        assertNull(POITestCase.getFieldValue(SXSSFWorkbook.class, wb, SharedStringsTable.class, "_sharedStringSource"));
+
+        Row row = wb.createSheet("S1").createRow(0);
+        row.createCell(0).setCellValue("A");
+        row.createCell(1).setCellValue("B");
+        row.createCell(2).setCellValue("A");
+        // "A" drops out of the cache of 2 recently used strings, so gets a second entry
+        row.createCell(3).setCellValue("C");
+        row.createCell(4).setCellValue("D");
+        row.createCell(5).setCellValue("A");
+        row.createCell(6).setCellValue(" <&> ");
+
+        XSSFWorkbook xssfWorkbook = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertTrue(wb.dispose());
+
+        SharedStringsTable sst = xssfWorkbook.getSharedStringSource();
+        assertEquals(8, sst.getCount());
+        assertEquals(7, sst.getUniqueCount());
+        assertEquals(7, sst.getItems().size());
+
+        assertEquals("T", xssfWorkbook.getSheetAt(0).getRow(0).getCell(0).getStringCellValue());
+        row = xssfWorkbook.getSheetAt(1).getRow(0);
+        String[] expected = { "A", "B", "A", "C", "D", "A", " <&> " };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], row.getCell(i).getStringCellValue());
+        }
+
+        xssfWorkbook.close();
+        wb.close();
+    }
+
+    @Test
+    public void streamingSharedStringsTableKeepsTemplateEntries() throws Exception {
+        XSSFWorkbook template = new XSSFWorkbook();
+        Row templateRow = template.createSheet("S0").createRow(0);
+        XSSFFont bold = template.createFont();
+        bold.setBold(true);
+        XSSFRichTextString rich = new XSSFRichTextString("bold plain");
+        rich.applyFont(0, 4, bold);
+        templateRow.createCell(0).setCellValue(rich);
+        templateRow.createCell(1).setCellValue("  spaced  ");
+        SXSSFWorkbook wb = new SXSSFWorkbook(template, 10, false, true, 2);
+        wb.createSheet("S1").createRow(0).createCell(0).setCellValue("new");
+
+        XSSFWorkbook xssfWorkbook = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertTrue(wb.dispose());
+
+        SharedStringsTable sst = xssfWorkbook.getSharedStringSource();
+        assertEquals(3, sst.getCount());
+        assertEquals(3, sst.getUniqueCount());
+        Row row = xssfWorkbook.getSheetAt(0).getRow(0);
+        XSSFRichTextString readRich = (XSSFRichTextString) row.getCell(0).getRichStringCellValue();
+        assertEquals("bold plain", readRich.getString());
+        assertEquals(2, readRich.numFormattingRuns());
+        assertTrue(readRich.getFontAtIndex(0).getBold());
+        assertEquals("  spaced  ", row.getCell(1).getStringCellValue());
+        assertEquals("new", xssfWorkbook.getSheetAt(1).getRow(0).getCell(0).getStringCellValue());
+
+        xssfWorkbook.close();
+        wb.close();
+    }
+
+    @Test
+    public void fillSheetsFromSeveralThreads() throws Exception {
+        final SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, true);
+        wb.setWriteThreads(3);
+        assertEquals(3, wb.getWriteThreads());
+
+        final int sheets = 4, rows = 500;
+        Thread[] threads = new Thread[sheets];
+        final Throwable[] failures = new Throwable[sheets];
+        for (int s = 0; s < sheets; s++) {
+            final int sheetNum = s;
+            final Sheet sheet = wb.createSheet("S" + s);
+            threads[s] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int r = 0; r < rows; r++) {
+                            Row row = sheet.createRow(r);
+                            row.createCell(0).setCellValue(r);
+                            row.createCell(1).setCellValue("row " + r);
+                            row.createCell(2).setCellValue("sheet " + sheetNum);
+                        }
+                    } catch (Throwable t) {
+                        failures[sheetNum] = t;
+                    }
+                }
+            };
+            threads[s].start();
+        }
+        for (int s = 0; s < sheets; s++) {
+            threads[s].join();
+            assertNull(failures[s]);
+        }
+
+        XSSFWorkbook xssfWorkbook = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertTrue(wb.dispose());
+        assertEquals(rows + sheets, xssfWorkbook.getSharedStringSource().getUniqueCount());
+        for (int s = 0; s < sheets; s++) {
+            Sheet sheet = xssfWorkbook.getSheetAt(s);
+            assertEquals(rows, sheet.getPhysicalNumberOfRows());
+            for (int r = 0; r < rows; r++) {
+                Row row = sheet.getRow(r);
+                assertEquals(r, row.getCell(0).getNumericCellValue(), 0);
+                assertEquals("row " + r, row.getCell(1).getStringCellValue());
+                assertEquals("sheet " + s, row.getCell(2).getStringCellValue());
+            }
+        }
+        xssfWorkbook.close();
+        wb.close();
+    }
+
     @Test
     public void addToExistingWorkbook() throws IOException {
     	XSSFWorkbook xssfWb1 = new XSSFWorkbook();
@@ -291,6 +417,101 @@ public final class TestSXSSFWorkbook extends BaseTestWorkbook {
         xwb.close();
     }
 
+    @Test
+    public void tempFileCodecs() throws IOException {
+        TempFileCodec[] codecs = {
+                new BlockTempFileCodec(), new GZIPTempFileCodec(Deflater.BEST_SPEED)
+        };
+        for (TempFileCodec codec : codecs) {
+            SXSSFWorkbook wb = new SXSSFWorkbook(10);
+            wb.setTempFileCodec(codec);
+            SXSSFSheet sh = wb.createSheet("codec");
+            assertTrue(sh.getSheetDataWriter().getTempFile().getName().endsWith(codec.getFileSuffix()));
+            int rowNum = 1000;
+            for(int j = 0; j < rowNum; j++){
+                Row row = sh.createRow(j);
+                Cell cell1 = row.createCell(0);
+                cell1.setCellValue(new CellReference(cell1).formatAsString());
+                row.createCell(1).setCellValue(j);
+            }
+
+            XSSFWorkbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+            Sheet xsh = xwb.getSheet("codec");
+            for(int j = 0; j < rowNum; j++){
+                Row row = xsh.getRow(j);
+                assertNotNull("row[" + j + "]", row);
+                Cell cell1 = row.getCell(0);
+                assertEquals(new CellReference(cell1).formatAsString(), cell1.getStringCellValue());
+                assertEquals(j, (int)row.getCell(1).getNumericCellValue());
+            }
+
+            assertTrue(wb.dispose());
+            xwb.close();
+        }
+    }
+
+    @Test
+    public void directStreaming() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, true);
+        wb.setDirectStreamingOutput(out);
+        int rowNum = 100;
+        for (int i = 0; i < 3; i++) {
+            SXSSFSheet sh = wb.createSheet("sheet" + i);
+            sh.setColumnWidth(0, 20 * 256);
+            for (int j = 0; j < rowNum; j++) {
+                Row row = sh.createRow(j);
+                row.createCell(0).setCellValue("s" + i + "r" + j);
+                row.createCell(1).setCellValue(j);
+            }
+            // written after the rows, so can be added until the sheet is finished
+            sh.addMergedRegion(new CellRangeAddress(0, 0, 2, 3));
+            // no temp file is used
+            assertNull(sh.getSheetDataWriter().getTempFile());
+        }
+        // the first sheet was finished when the rows of the second were flushed
+        Sheet first = wb.getSheetAt(0);
+        try {
+            for (int j = rowNum; j < rowNum + 20; j++) {
+                first.createRow(j);
+            }
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        for (int j = rowNum; j < rowNum + 20; j++) {
+            Row row = first.getRow(j);
+            if (row != null) {
+                first.removeRow(row);
+            }
+        }
+        try {
+            wb.write(new ByteArrayOutputStream());
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        wb.write(out);
+        assertTrue(wb.dispose());
+        wb.close();
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, xwb.getNumberOfSheets());
+        for (int i = 0; i < 3; i++) {
+            Sheet sh = xwb.getSheetAt(i);
+            assertEquals("sheet" + i, sh.getSheetName());
+            assertEquals(20 * 256, sh.getColumnWidth(0));
+            assertEquals(1, sh.getNumMergedRegions());
+            for (int j = 0; j < rowNum; j++) {
+                Row row = sh.getRow(j);
+                assertNotNull("row[" + j + "]", row);
+                assertEquals("s" + i + "r" + j, row.getCell(0).getStringCellValue());
+                assertEquals(j, (int)row.getCell(1).getNumericCellValue());
+            }
+        }
+        xwb.close();
+    }
+
     static void assertWorkbookDispose(SXSSFWorkbook wb)
     {
         int rowNum = 1000;
@@ -0,0 +1,151 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.apache.poi.ss.util.CellReference;
+import org.junit.Test;
+
+/**
+ * Checks that {@link Utf8XmlWriter} produces the same bytes as the
+ *  String based writing which it replaces
+ */
+public final class TestUtf8XmlWriter {
+
+    @Test
+    public void plainText() throws IOException {
+        String[] texts = {
+                "", "abc", "<row r=\"1\">", "caf\u00E9", "\u20AC100",
+                "\uD83D\uDE00 smile", "bad \ud800 surrogate", "\udc00 low first"
+        };
+        for (String text : texts) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Writer w = new OutputStreamWriter(expected, "UTF-8");
+            w.write(text);
+            w.close();
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            w = new Utf8XmlWriter(actual);
+            w.write(text);
+            w.close();
+            assertEquals(text, expected.toString("UTF-8"), actual.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void numbers() throws IOException {
+        double[] values = {
+                0, -0.0, 1, -1, 42, 1.5, -2.25, 9999999, 10000000, 1e15, 1e-4, 0.001,
+                123456.789, Double.MAX_VALUE, Double.MIN_VALUE, Long.MAX_VALUE, -1e22
+        };
+        for (double value : values) {
+            assertEquals(Double.toString(value), written(new NumberWrite(value)));
+        }
+        int[] ints = { 0, 1, -1, 10, 65535, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for (int value : ints) {
+            assertEquals(Integer.toString(value), written(new IntWrite(value)));
+        }
+    }
+
+    @Test
+    public void cellReferences() throws IOException {
+        int[] rows = { 0, 1, 9, 99, 1048575 };
+        int[] cols = { 0, 1, 25, 26, 27, 51, 52, 701, 702, 703, 16383 };
+        for (int row : rows) {
+            for (int col : cols) {
+                assertEquals(new CellReference(row, col).formatAsString(),
+                        written(new CellReferenceWrite(row, col)));
+            }
+        }
+    }
+
+    @Test
+    public void quotedText() throws IOException {
+        String[] texts = {
+                "", "plain", "a < b && c > \"d\"", "line\nbreak\r\ttab",
+                "\u00A0nbsp caf\u00E9 \u20AC", "ctrl\u0001\u001f", "\uFFFE\uFFFF",
+                "\uD83D\uDE00", " padded "
+        };
+        for (String text : texts) {
+            StringWriter expected = new StringWriter();
+            SheetDataWriter.writeQuotedString(expected, text);
+            assertEquals(text, expected.toString(), written(new QuotedWrite(text)));
+        }
+    }
+
+    @Test
+    public void largeOutputIsFlushedInPieces() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        Utf8XmlWriter w = new Utf8XmlWriter(actual);
+        for (int i = 0; i < 5000; i++) {
+            w.write("<c r=\"");
+            w.writeCellReference(i, i % 100);
+            w.write("\"><v>");
+            w.writeDouble(i * 0.5);
+            w.write("</v></c>\u00E9");
+            expected.append("<c r=\"").append(new CellReference(i, i % 100).formatAsString())
+                    .append("\"><v>").append(i * 0.5).append("</v></c>\u00E9");
+        }
+        w.close();
+        assertEquals(expected.toString(), actual.toString("UTF-8"));
+    }
+
+    private static String written(Write write) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8XmlWriter w = new Utf8XmlWriter(out);
+        write.to(w);
+        w.close();
+        return out.toString("UTF-8");
+    }
+
+    private interface Write {
+        void to(Utf8XmlWriter w) throws IOException;
+    }
+
+    private static final class NumberWrite implements Write {
+        private final double _value;
+        NumberWrite(double value) { _value = value; }
+        public void to(Utf8XmlWriter w) throws IOException { w.writeDouble(_value); }
+    }
+
+    private static final class IntWrite implements Write {
+        private final int _value;
+        IntWrite(int value) { _value = value; }
+        public void to(Utf8XmlWriter w) throws IOException { w.writeInt(_value); }
+    }
+
+    private static final class CellReferenceWrite implements Write {
+        private final int _row, _col;
+        CellReferenceWrite(int row, int col) { _row = row; _col = col; }
+        public void to(Utf8XmlWriter w) throws IOException { w.writeCellReference(_row, _col); }
+    }
+
+    private static final class QuotedWrite implements Write {
+        private final String _text;
+        QuotedWrite(String text) { _text = text; }
+        public void to(Utf8XmlWriter w) throws IOException { w.writeQuotedString(_text); }
+    }
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
+import java.util.Iterator;
 
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.BaseTestRow;
@@ -50,6 +51,42 @@ public final class TestXSSFRow extends BaseTestRow {
     public void testCellBounds() throws IOException {
         baseTestCellBounds(SpreadsheetVersion.EXCEL2007.getLastColumnIndex());
     }
+
+    @Test
+    public void testCellsKeptInColumnOrder() throws IOException {
+        final XSSFWorkbook workbook = new XSSFWorkbook();
+        final XSSFRow row = workbook.createSheet("test").createRow(0);
+        int[] columns = { 5, 1, 9, 3, 7, 0 };
+        for (int col : columns) {
+            row.createCell(col).setCellValue(col);
+        }
+        assertEquals(0, row.getFirstCellNum());
+        assertEquals(10, row.getLastCellNum());
+        assertEquals(6, row.getPhysicalNumberOfCells());
+
+        // re-creating a cell replaces it
+        row.createCell(3).setCellValue("three");
+        assertEquals(6, row.getPhysicalNumberOfCells());
+        assertEquals("three", row.getCell(3).getStringCellValue());
+
+        // removing through the iterator
+        int expected = 0;
+        for (Iterator<Cell> it = row.cellIterator(); it.hasNext(); ) {
+            Cell cell = it.next();
+            assertEquals(expected, cell.getColumnIndex());
+            expected += (expected == 0) ? 1 : 2;
+            if (cell.getColumnIndex() == 9) {
+                it.remove();
+            }
+        }
+        assertEquals(5, row.getPhysicalNumberOfCells());
+        assertEquals(8, row.getLastCellNum());
+
+        row.removeCell(row.getCell(0));
+        assertEquals(1, row.getFirstCellNum());
+
+        workbook.close();
+    }
     
     public void testCopyRowFrom() throws IOException {
         final XSSFWorkbook workbook = new XSSFWorkbook();
@@ -72,6 +72,7 @@ import org.junit.runners.Suite;
     TestPaneRecord.class,
     TestPLVRecord.class,
     TestRecalcIdRecord.class,
+    TestRecordCursor.class,
     TestRecordFactory.class,
     TestRecordFactoryInputStream.class,
     TestRecordInputStream.class,
@@ -0,0 +1,166 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.record;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.poi.hssf.HSSFTestDataSamples;
+import org.apache.poi.hssf.record.crypto.Biff8EncryptionKey;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.HexRead;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RecordCursor}
+ */
+public final class TestRecordCursor {
+    // to not affect other tests running in the same JVM
+    @After
+    public void resetPassword() {
+        Biff8EncryptionKey.setCurrentUserPassword(null);
+    }
+
+    private static final String BOF = "09 08 10 00"
+        + "00 06  05 00  D3 10  CC 07  01 00 00 00  00 06 00 00";
+
+    private static final String WINDOW1 = "3D 00 12 00"
+        + "00 00 00 00 40 38 55 23 38 00 00 00 00 00 01 00 58 02";
+
+    private static final String EOF = "0A 00 00 00";
+
+    @Test
+    public void skipsUnreadData() {
+        byte[] data = HexRead.readFromString(BOF + WINDOW1 + EOF
+                // padding after the last EOF record
+                + "00 00 00 00 00 00 00 00");
+        RecordCursor cursor = new RecordCursor(new ByteArrayInputStream(data));
+
+        assertTrue(cursor.next());
+        assertEquals(BOFRecord.sid, cursor.getSid());
+        assertEquals(16, cursor.getRemaining());
+        // read part of the record only
+        assertEquals(0x0600, cursor.getRecordInputStream().readUShort());
+
+        assertTrue(cursor.next());
+        assertEquals(WindowOneRecord.sid, cursor.getSid());
+        assertEquals(18, cursor.getRemaining());
+        assertArrayEquals(HexRead.readFromString(WINDOW1), cursor.getRecord().serialize());
+
+        assertTrue(cursor.next());
+        assertEquals(EOFRecord.sid, cursor.getSid());
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+        try {
+            cursor.getSid();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void decryptsRecords() {
+        // see TestRecordFactoryInputStream.suppliedPasswordOK()
+        byte[] data = HexRead.readFromString(BOF
+                // FILEPASS
+                + "2F 00 36 00"
+                + "01 00  01 00  01 00"
+                + "BAADF00D BAADF00D BAADF00D BAADF00D" // docId
+                + "DEADBEEF DEADBEEF DEADBEEF DEADBEEF" // saltData
+                + "C728659A C38E35E0 568A338F C3FC9D70" // saltHash
+                // encrypted WINDOW1
+                + "3D 00 12 00"
+                + "45, B9, 90, FE, B6, C6, EC, 73, EE, 3F, 52, 45, 97, DB, E3, C1, D6, FE");
+
+        Biff8EncryptionKey.setCurrentUserPassword("passw0rd");
+        RecordCursor cursor = new RecordCursor(new ByteArrayInputStream(data));
+        assertTrue(cursor.next());
+        assertEquals(BOFRecord.sid, cursor.getSid());
+        // the FILEPASS record is skipped
+        assertTrue(cursor.next());
+        assertEquals(WindowOneRecord.sid, cursor.getSid());
+        assertArrayEquals(HexRead.readFromString(WINDOW1), cursor.getRecord().serialize());
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * Reads the string cell values by creating only the {@link SSTRecord} and reading
+     * the fields of the {@link LabelSSTRecord}s directly
+     */
+    @Test
+    public void readSelectedRecords() throws IOException {
+        InputStream is = HSSFTestDataSamples.openSampleFileStream("SampleSS.xls");
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(is);
+        is.close();
+
+        List<String> strings = new ArrayList<String>();
+        SSTRecord sst = null;
+        int nRecords = 0;
+        RecordCursor cursor = new RecordCursor(fs.createDocumentInputStream("Workbook"));
+        while (cursor.next()) {
+            nRecords++;
+            switch (cursor.getSid()) {
+                case SSTRecord.sid:
+                    sst = (SSTRecord) cursor.getRecord();
+                    break;
+                case LabelSSTRecord.sid:
+                    RecordInputStream in = cursor.getRecordInputStream();
+                    in.readUShort(); // row
+                    in.readUShort(); // column
+                    in.readUShort(); // xf index
+                    strings.add(sst.getString(in.readInt()).getString());
+                    break;
+            }
+        }
+        fs.close();
+        assertTrue(nRecords > 100);
+
+        List<String> expected = new ArrayList<String>();
+        HSSFWorkbook wb = HSSFTestDataSamples.openSampleWorkbook("SampleSS.xls");
+        for (Sheet sheet : wb) {
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    if (cell.getCellType() == Cell.CELL_TYPE_STRING) {
+                        expected.add(cell.getStringCellValue());
+                    }
+                }
+            }
+        }
+        wb.close();
+        assertFalse(expected.isEmpty());
+        Collections.sort(expected);
+        Collections.sort(strings);
+        assertEquals(expected, strings);
+    }
+}
@@ -110,6 +110,28 @@ public final class TestRecordFactory extends TestCase {
 		assertEquals(21, numberRecord.getXFIndex());
 	}
 
+	/**
+	 * Each record creator must be registered under the sid its record class declares,
+	 * and create instances of that class
+	 */
+	public void testRecordCreatorsMatchRecordClasses() throws Exception {
+		short[] sids = RecordFactory.getAllKnownRecordSIDs();
+		assertTrue(sids.length > 100);
+		for (short sid : sids) {
+			Class<? extends Record> recClass = RecordFactory.getRecordClass(sid);
+			assertNotNull(recClass);
+			assertEquals(recClass.getName(), sid, recClass.getField("sid").getShort(null));
+		}
+		assertNull(RecordFactory.getRecordClass(-1));
+		assertNull(RecordFactory.getRecordClass(0xFFFF));
+
+		Record[] record = RecordFactory.createRecord(TestcaseRecordInputStream.create(InterfaceEndRecord.sid, new byte[0]));
+		assertSame(InterfaceEndRecord.instance, record[0]);
+
+		record = RecordFactory.createRecord(TestcaseRecordInputStream.create(0x7FFF, new byte[] { 1, 2, }));
+		assertEquals(UnknownRecord.class, record[0].getClass());
+	}
+
 	/**
 	 * TEST NAME:  Test Creating ContinueRecords After Unknown Records From An InputStream <P>
 	 * OBJECTIVE:  Test that the RecordFactory given an InputStream
@@ -0,0 +1,192 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.streaming;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SHSSFWorkbook}
+ */
+public final class TestSHSSFWorkbook {
+
+    private static final int NUM_ROWS = 300;
+
+    /**
+     * The streamed workbook stream must be identical to the one of an
+     * {@link HSSFWorkbook} which holds the same rows in memory
+     */
+    @Test
+    public void writeMatchesHSSFWorkbook() throws IOException {
+        HSSFWorkbook hwb = new HSSFWorkbook();
+        HSSFCellStyle hstyle = hwb.createCellStyle();
+        hstyle.setWrapText(true);
+        for (int s = 0; s < 2; s++) {
+            HSSFSheet sheet = hwb.createSheet("Sheet" + s);
+            for (int r = 0; r < NUM_ROWS; r++) {
+                if (r % 7 == 3) {
+                    // leave some rows out
+                    continue;
+                }
+                HSSFRow row = sheet.createRow(r);
+                row.createCell(0).setCellValue("text " + s + "-" + r);
+                row.createCell(1).setCellValue(r * 1.5);
+                row.createCell(3).setCellValue(r % 2 == 0);
+                HSSFCell cell = row.createCell(4);
+                cell.setCellFormula("B" + (r + 1) + "*2");
+                cell.setCellStyle(hstyle);
+            }
+        }
+
+        SHSSFWorkbook swb = new SHSSFWorkbook(10);
+        HSSFCellStyle sstyle = swb.getHSSFWorkbook().createCellStyle();
+        sstyle.setWrapText(true);
+        for (int s = 0; s < 2; s++) {
+            SHSSFSheet sheet = swb.createSheet("Sheet" + s);
+            for (int r = 0; r < NUM_ROWS; r++) {
+                if (r % 7 == 3) {
+                    continue;
+                }
+                SHSSFRow row = sheet.createRow(r);
+                row.createCell(0).setCellValue("text " + s + "-" + r);
+                row.createCell(1).setCellValue(r * 1.5);
+                row.createCell(3).setCellValue(r % 2 == 0);
+                SHSSFCell cell = row.createCell(4);
+                cell.setCellFormula("B" + (r + 1) + "*2");
+                cell.setCellStyle(sstyle);
+            }
+        }
+
+        byte[] expected = getWorkbookStream(hwb);
+        byte[] actual = getWorkbookStream(swb);
+        hwb.close();
+        assertArrayEquals(expected, actual);
+
+        // writing again gives the same result
+        assertArrayEquals(expected, getWorkbookStream(swb));
+        assertTrue(swb.dispose());
+        swb.close();
+    }
+
+    @Test
+    public void readBack() throws IOException {
+        SHSSFWorkbook swb = new SHSSFWorkbook(5);
+        SHSSFSheet sheet = swb.createSheet("Data");
+        for (int r = 0; r < NUM_ROWS; r++) {
+            SHSSFRow row = sheet.createRow(r);
+            if (r % 11 == 5) {
+                // leave some rows empty
+                row.setHeightInPoints(30);
+                continue;
+            }
+            row.createCell(2).setCellValue("row " + r);
+            row.createCell(3).setCellValue(r);
+            row.createCell(4).setCellErrorValue(FormulaError.NA.getCode());
+        }
+        swb.createSheet("Empty");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        swb.write(out);
+        swb.close();
+
+        HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, wb.getNumberOfSheets());
+        HSSFSheet sh = wb.getSheet("Data");
+        assertEquals(0, sh.getFirstRowNum());
+        assertEquals(NUM_ROWS - 1, sh.getLastRowNum());
+        for (int r = 0; r < NUM_ROWS; r++) {
+            HSSFRow row = sh.getRow(r);
+            if (r % 11 == 5) {
+                assertEquals(30, row.getHeightInPoints(), 0);
+                assertEquals(0, row.getPhysicalNumberOfCells());
+                continue;
+            }
+            assertEquals(2, row.getFirstCellNum());
+            assertEquals(5, row.getLastCellNum());
+            assertEquals("row " + r, row.getCell(2).getStringCellValue());
+            assertEquals(r, row.getCell(3).getNumericCellValue(), 0);
+            assertEquals(FormulaError.NA.getCode(), row.getCell(4).getErrorCellValue());
+        }
+        assertEquals(0, wb.getSheet("Empty").getPhysicalNumberOfRows());
+        wb.close();
+    }
+
+    @Test
+    public void flushedRowsCannotBeAccessed() throws IOException {
+        SHSSFWorkbook swb = new SHSSFWorkbook(2);
+        SHSSFSheet sheet = swb.createSheet();
+        sheet.createRow(0);
+        sheet.createRow(1).createCell(0).setCellValue(1.0);
+        sheet.createRow(2);
+        assertNull(sheet.getRow(0));
+        assertNotNull(sheet.getRow(1));
+        assertEquals(2, sheet.getPhysicalNumberOfRows());
+        assertEquals(2, sheet.getLastRowNum());
+        assertEquals(Cell.CELL_TYPE_NUMERIC, sheet.getRow(1).getCell(0).getCellType());
+        try {
+            sheet.createRow(0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Attempting to write a row[0] in the range [0,0] that is already written to disk.", e.getMessage());
+        }
+
+        sheet.flushRows();
+        assertNull(sheet.getRow(1));
+        assertEquals(2, sheet.getLastRowNum());
+        swb.close();
+    }
+
+    private static byte[] getWorkbookStream(Object wb) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (wb instanceof SHSSFWorkbook) {
+            ((SHSSFWorkbook) wb).write(out);
+        } else {
+            ((HSSFWorkbook) wb).write(out);
+        }
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        InputStream is = fs.createDocumentInputStream("Workbook");
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = is.read(buf)) > 0) {
+            result.write(buf, 0, len);
+        }
+        is.close();
+        fs.close();
+        return result.toByteArray();
+    }
+}
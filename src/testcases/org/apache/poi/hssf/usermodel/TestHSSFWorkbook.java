@@ -32,6 +32,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.poi.POIDataSamples;
@@ -1257,6 +1258,114 @@ public final class TestHSSFWorkbook extends BaseTestWorkbook {
 
     }
     
+    /**
+     * The workbook stream is written record by record, it must be identical to
+     * the one returned by {@link HSSFWorkbook#getBytes()}
+     */
+    @Test
+    public void writeStreamsWorkbookRecords() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        for (int s = 0; s < 3; s++) {
+            HSSFSheet sheet = wb.createSheet("Sheet" + s);
+            for (int r = 0; r < 2000; r++) {
+                HSSFRow row = sheet.createRow(r);
+                // unique strings make the SST larger than the write buffer
+                row.createCell(0).setCellValue("text " + s + "-" + r);
+                row.createCell(1).setCellValue(r);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        byte[] expected = wb.getBytes();
+        wb.close();
+
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        InputStream is = fs.createDocumentInputStream("Workbook");
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = is.read(buf)) > 0) {
+            actual.write(buf, 0, len);
+        }
+        is.close();
+        assertEquals(expected.length, actual.size());
+        assertTrue(Arrays.equals(expected, actual.toByteArray()));
+
+        HSSFWorkbook wb2 = new HSSFWorkbook(fs.getRoot(), true);
+        assertEquals(3, wb2.getNumberOfSheets());
+        assertEquals("text 2-1999", wb2.getSheetAt(2).getRow(1999).getCell(0).getStringCellValue());
+        assertEquals(1999, wb2.getSheetAt(2).getRow(1999).getCell(1).getNumericCellValue(), 0);
+        wb2.close();
+        fs.close();
+    }
+
+    @Test
+    public void loadSheetsOnDemand() throws IOException {
+        String[] files = { "SampleSS.xls", "44010-TwoCharts.xls", "ComplexFunctionTestCaseData.xls" };
+        for (String file : files) {
+            HSSFWorkbook eager = HSSFTestDataSamples.openSampleWorkbook(file);
+            NPOIFSFileSystem fs = new NPOIFSFileSystem(HSSFTestDataSamples.openSampleFileStream(file));
+            HSSFWorkbook lazy = new HSSFWorkbook(fs.getRoot(), false, true);
+            assertTrue(lazy._sheets instanceof LazySheetList);
+            LazySheetList sheets = (LazySheetList)lazy._sheets;
+
+            int count = eager.getNumberOfSheets();
+            assertEquals(file, count, lazy.getNumberOfSheets());
+            for (int i = 0; i < count; i++) {
+                assertFalse(sheets.isLoaded(i));
+            }
+            HSSFSheet last = lazy.getSheetAt(count - 1);
+            assertTrue(sheets.isLoaded(count - 1));
+            assertEquals(count - 1, lazy.getSheetIndex(last));
+            for (int i = 0; i < count - 1; i++) {
+                assertFalse(sheets.isLoaded(i));
+            }
+
+            for (int i = 0; i < count; i++) {
+                HSSFSheet expected = eager.getSheetAt(i);
+                HSSFSheet actual = lazy.getSheetAt(i);
+                assertEquals(expected.getFirstRowNum(), actual.getFirstRowNum());
+                assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+                assertEquals(expected.getPhysicalNumberOfRows(), actual.getPhysicalNumberOfRows());
+            }
+            assertTrue(file, Arrays.equals(eager.getBytes(), lazy.getBytes()));
+
+            lazy.close();
+            fs.close();
+            eager.close();
+        }
+    }
+
+    @Test
+    public void loadSheetsOnDemandThenModify() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        for (int s = 0; s < 3; s++) {
+            wb.createSheet("Sheet" + s).createRow(0).createCell(0).setCellValue("text " + s);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        wb.close();
+
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        HSSFWorkbook lazy = new HSSFWorkbook(fs.getRoot(), false, true);
+        lazy.removeSheetAt(0);
+        lazy.createSheet("Added").createRow(0).createCell(0).setCellValue("added");
+        lazy.setSheetOrder("Added", 1);
+        HSSFWorkbook wb2 = HSSFTestDataSamples.writeOutAndReadBack(lazy);
+        lazy.close();
+        fs.close();
+
+        assertEquals(3, wb2.getNumberOfSheets());
+        assertEquals("Sheet1", wb2.getSheetName(0));
+        assertEquals("Added", wb2.getSheetName(1));
+        assertEquals("Sheet2", wb2.getSheetName(2));
+        assertEquals("text 1", wb2.getSheetAt(0).getRow(0).getCell(0).getStringCellValue());
+        assertEquals("added", wb2.getSheetAt(1).getRow(0).getCell(0).getStringCellValue());
+        assertEquals("text 2", wb2.getSheetAt(2).getRow(0).getCell(0).getStringCellValue());
+        wb2.close();
+    }
+
     @Test
     @Override
     public void getSpreadsheetVersion() throws IOException {
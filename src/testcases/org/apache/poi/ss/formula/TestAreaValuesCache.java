@@ -0,0 +1,222 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+/**
+ * Tests {@link AreaValuesCache} through the range aggregation functions.
+ */
+public final class TestAreaValuesCache {
+
+    private static final int TABLE_SIZE = 100;
+
+    /**
+     * Creates a table in A1:C100 with the categories "Cat0".."Cat4" in column A,
+     * the numbers 1..100 in column B and TRUE/FALSE/blank/text in column C.
+     */
+    private static Sheet createTable(HSSFWorkbook wb) {
+        Sheet sheet = wb.createSheet("Table");
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue("Cat" + (i % 5));
+            row.createCell(1).setCellValue(i + 1);
+            switch (i % 4) {
+                case 0: row.createCell(2).setCellValue(true); break;
+                case 1: row.createCell(2).setCellValue(false); break;
+                case 2: row.createCell(2).setCellValue("text"); break;
+                default: break;
+            }
+        }
+        return sheet;
+    }
+
+    private static Cell createFormula(Sheet sheet, int rowIndex, String formula) {
+        Row row = sheet.getRow(rowIndex);
+        if (row == null) {
+            row = sheet.createRow(rowIndex);
+        }
+        Cell cell = row.createCell(10);
+        cell.setCellFormula(formula);
+        return cell;
+    }
+
+    /**
+     * Evaluates the formula in several cells, so that it is also computed from cached values
+     */
+    private static void confirm(FormulaEvaluator fe, Sheet sheet, String formula, double expected) {
+        for (int i = 0; i < 3; i++) {
+            Cell cell = createFormula(sheet, i, formula);
+            assertEquals(formula, expected, fe.evaluate(cell).getNumberValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void aggregations() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        FormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        // Cat2 is in rows 3, 8, .. 98
+        confirm(fe, sheet, "SUMIF($A$1:$A$100,\"cat2\",$B$1:$B$100)", 1010);
+        confirm(fe, sheet, "SUMIF($B$1:$B$100,\">90\")", 955);
+        confirm(fe, sheet, "SUMIFS($B$1:$B$100,$A$1:$A$100,\"Cat2\",$B$1:$B$100,\"<50\")", 255);
+        confirm(fe, sheet, "COUNTIF($A$1:$A$100,\"Cat*\")", 100);
+        confirm(fe, sheet, "COUNTIF($C$1:$C$100,TRUE)", 25);
+        confirm(fe, sheet, "COUNTIFS($A$1:$A$100,\"Cat1\")", 20);
+        confirm(fe, sheet, "SUM($B$1:$B$100)", 5050);
+        confirm(fe, sheet, "AVERAGE($B$1:$B$100)", 50.5);
+        confirm(fe, sheet, "COUNT($A$1:$C$100)", 100);
+        confirm(fe, sheet, "COUNTA($A$1:$C$100)", 275);
+        // booleans in references are ignored by SUM
+        confirm(fe, sheet, "SUM($B$1:$C$100)", 5050);
+        wb.close();
+    }
+
+    @Test
+    public void updateWithinCachedRange() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        FormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        confirm(fe, sheet, "SUMIF($A$1:$A$100,\"Cat0\",$B$1:$B$100)", 970);
+        Cell sum = createFormula(sheet, 50, "SUMIF($A$1:$A$100,\"Cat0\",$B$1:$B$100)");
+        assertEquals(970, fe.evaluate(sum).getNumberValue(), 0.0);
+
+        Cell value = sheet.getRow(0).getCell(1);
+        value.setCellValue(101);
+        fe.notifyUpdateCell(value);
+        assertEquals(1070, fe.evaluate(sum).getNumberValue(), 0.0);
+
+        Cell category = sheet.getRow(1).getCell(0);
+        category.setCellValue("Cat0");
+        fe.notifyUpdateCell(category);
+        assertEquals(1072, fe.evaluate(sum).getNumberValue(), 0.0);
+
+        Cell error = sheet.getRow(2).getCell(1);
+        error.setCellFormula("1/0");
+        fe.notifyUpdateCell(error);
+        for (int i = 0; i < 3; i++) {
+            Cell cell = createFormula(sheet, i, "SUM($B$1:$B$100)");
+            assertEquals("#DIV/0!", fe.evaluate(cell).formatAsString());
+        }
+        wb.close();
+    }
+
+    @Test
+    public void updateClearsOnlyDependentFormulas() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        AreaValuesCache cache = fe._getWorkbookEvaluator().getAreaValuesCache();
+        confirm(fe, sheet, "SUM($B$1:$B$100)", 5050);
+        assertEquals(100, cache.getNumberOfCachedCells());
+        Cell other = createFormula(sheet, 10, "$B$2*2");
+        assertEquals(4, fe.evaluate(other).getNumberValue(), 0.0);
+
+        Cell value = sheet.getRow(0).getCell(1);
+        value.setCellValue(101);
+        List<Cell> dependents = fe.getDependentFormulaCells(value);
+        Set<Integer> rows = new HashSet<Integer>();
+        for (Cell cell : dependents) {
+            rows.add(cell.getRowIndex());
+        }
+        assertEquals(3, dependents.size());
+        // the formulas in K1:K3
+        assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2)), rows);
+        fe.notifyUpdateCell(value);
+        assertEquals(0, cache.getNumberOfCachedCells());
+
+        // not notified, the result of the unrelated formula must still be the cached one
+        sheet.getRow(1).getCell(1).setCellValue(50);
+        assertEquals(4, fe.evaluate(other).getNumberValue(), 0.0);
+        wb.close();
+    }
+
+    @Test
+    public void runningTotalsAreNotCached() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = wb.createSheet("Totals");
+        for (int i = 0; i < 200; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue(1);
+            row.createCell(1).setCellFormula("SUM($A$1:A" + (i + 1) + ")");
+        }
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        AreaValuesCache cache = fe._getWorkbookEvaluator().getAreaValuesCache();
+        fe.evaluateAll();
+        Cell first = sheet.getRow(0).getCell(0);
+        first.setCellValue(2);
+        fe.notifyUpdateCell(first);
+        fe.evaluateAll();
+        // each area is only read by one formula
+        assertEquals(0, cache.getNumberOfCachedCells());
+        assertEquals(201, fe.evaluate(sheet.getRow(199).getCell(1)).getNumberValue(), 0.0);
+        wb.close();
+    }
+
+    @Test
+    public void leastRecentlyUsedAreasAreDropped() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        createTable(wb);
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        EvaluationTracker tracker = new EvaluationTracker(new EvaluationCache(null));
+        SheetRefEvaluator sre = new SheetRefEvaluator(fe._getWorkbookEvaluator(), tracker, 0);
+        SheetRangeEvaluator sheets = new SheetRangeEvaluator(0, sre);
+        LazyAreaEval columnA = new LazyAreaEval(0, 0, TABLE_SIZE - 1, 0, sheets);
+        LazyAreaEval columnB = new LazyAreaEval(0, 1, TABLE_SIZE - 1, 1, sheets);
+        FormulaCellCacheEntry first = new FormulaCellCacheEntry();
+        FormulaCellCacheEntry second = new FormulaCellCacheEntry();
+        // room for one of the columns only
+        AreaValuesCache cache = new AreaValuesCache(150);
+
+        assertNull(get(cache, tracker, sre, first, columnA));
+        assertNotNull(get(cache, tracker, sre, second, columnA));
+        assertEquals(100, cache.getNumberOfCachedCells());
+        assertNull(get(cache, tracker, sre, first, columnB));
+        assertNotNull(get(cache, tracker, sre, second, columnB));
+        assertEquals(100, cache.getNumberOfCachedCells());
+        // column A was dropped, so its next use counts as the first one again
+        assertNull(get(cache, tracker, sre, second, columnA));
+        assertNotNull(get(cache, tracker, sre, second, columnB));
+        wb.close();
+    }
+
+    private static AreaValuesCache.AreaValues get(AreaValuesCache cache, EvaluationTracker tracker,
+            SheetRefEvaluator sre, FormulaCellCacheEntry formula, LazyAreaEval area) {
+        tracker.startEvaluate(formula);
+        try {
+            return cache.get(sre, area);
+        } finally {
+            tracker.endEvaluate(formula);
+        }
+    }}
@@ -0,0 +1,104 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.EvaluationProfiler.CellStatistics;
+import org.apache.poi.ss.formula.EvaluationProfiler.FunctionStatistics;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.junit.Test;
+
+/**
+ * Tests {@link EvaluationProfiler}
+ */
+public final class TestEvaluationProfiler {
+
+    @Test
+    public void testStatistics() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = wb.createSheet("Sheet1");
+        // A1=1, A2=A1+1, .. A10=A9+1, B1=SUM(A1:A10)
+        sheet.createRow(0).createCell(0).setCellValue(1);
+        for (int i = 1; i < 10; i++) {
+            sheet.createRow(i).createCell(0).setCellFormula("A" + i + "+1");
+        }
+        sheet.getRow(0).createCell(1).setCellFormula("SUM(A1:A10)");
+
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        EvaluationProfiler profiler = new EvaluationProfiler(5);
+        fe.setEvaluationProfiler(profiler);
+
+        assertEquals(10.0, fe.evaluate(sheet.getRow(9).getCell(0)).getNumberValue(), 0.0);
+        assertEquals(9, profiler.getCacheMisses());
+        assertEquals(0, profiler.getCacheHits());
+        List<CellReference> chain = profiler.getDeepestDependencyChain();
+        assertEquals(9, chain.size());
+        assertEquals("Sheet1!A10", chain.get(0).formatAsString());
+        assertEquals("Sheet1!A2", chain.get(8).formatAsString());
+
+        assertEquals(55.0, fe.evaluate(sheet.getRow(0).getCell(1)).getNumberValue(), 0.0);
+        assertEquals(10, profiler.getCacheMisses());
+        assertEquals(9, profiler.getCacheHits());
+
+        List<FunctionStatistics> functions = profiler.getFunctionStatistics();
+        assertEquals(2, functions.size());
+        for (FunctionStatistics statistics : functions) {
+            if (statistics.getName().equals("SUM")) {
+                assertEquals(1, statistics.getCallCount());
+            } else {
+                assertEquals("Add", statistics.getName());
+                assertEquals(9, statistics.getCallCount());
+            }
+        }
+
+        List<CellStatistics> cells = profiler.getSlowestCells();
+        assertEquals(5, cells.size());
+        for (int i = 0; i < cells.size(); i++) {
+            CellStatistics statistics = cells.get(i);
+            assertTrue(statistics.getSelfNanos() <= statistics.getTotalNanos());
+            if (i > 0) {
+                assertTrue(statistics.getSelfNanos() <= cells.get(i - 1).getSelfNanos());
+            }
+        }
+
+        String report = profiler.formatReport();
+        assertTrue(report, report.contains("Formula results: 10 evaluated, 9 from cache"));
+        assertTrue(report, report.contains("  SUM: 1, "));
+        assertTrue(report, report.contains("  Add: 9, "));
+        assertTrue(report, report.contains("Deepest dependency chain (9 cells): Sheet1!A10 Sheet1!A9 "));
+
+        profiler.reset();
+        fe.setEvaluationProfiler(null);
+        fe.clearAllCachedResultValues();
+        fe.evaluate(sheet.getRow(0).getCell(1));
+        assertEquals(0, profiler.getCacheMisses());
+        assertEquals(0, profiler.getFunctionStatistics().size());
+        assertEquals(0, profiler.getDeepestDependencyChain().size());
+
+        wb.close();
+    }
+}
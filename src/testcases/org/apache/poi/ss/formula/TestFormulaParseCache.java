@@ -0,0 +1,88 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.RefPtg;
+import org.apache.poi.ss.usermodel.Name;
+import org.junit.Test;
+
+/**
+ * Tests {@link FormulaParseCache} through {@link FormulaParser}.
+ */
+public final class TestFormulaParseCache {
+
+    @Test
+    public void testCopies() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        wb.createSheet("Sheet1");
+        FormulaParseCache.clear();
+
+        Ptg[] ptgs1 = HSSFFormulaParser.parse("A1*2+B3", wb);
+        assertEquals(1, FormulaParseCache.size());
+        Ptg[] ptgs2 = HSSFFormulaParser.parse("A1*2+B3", wb);
+        assertEquals(1, FormulaParseCache.size());
+        assertNotSame(ptgs1, ptgs2);
+        assertNotSame(ptgs1[0], ptgs2[0]);
+
+        // changes to the tokens of one cell must not show up in others
+        ((RefPtg) ptgs1[0]).setRow(10);
+        assertEquals("A11*2+B3", HSSFFormulaParser.toFormulaString(wb, ptgs1));
+        assertEquals("A1*2+B3", HSSFFormulaParser.toFormulaString(wb, ptgs2));
+        assertEquals("A1*2+B3", HSSFFormulaParser.toFormulaString(wb, HSSFFormulaParser.parse("A1*2+B3", wb)));
+
+        // the formula type is part of the key
+        HSSFFormulaParser.parse("A1*2+B3", wb, FormulaType.NAMEDRANGE, 0);
+        assertEquals(2, FormulaParseCache.size());
+
+        wb.close();
+    }
+
+    @Test
+    public void testWorkbookDependentFormulasNotCached() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        wb.createSheet("Sheet1");
+        wb.createSheet("Sheet2");
+        Name name = wb.createName();
+        name.setNameName("Total");
+        name.setRefersToFormula("Sheet1!$A$1");
+        FormulaParseCache.clear();
+
+        HSSFFormulaParser.parse("Total*2", wb);
+        HSSFFormulaParser.parse("Sheet2!A1*2", wb);
+        HSSFFormulaParser.parse("SUM(Sheet1:Sheet2!A1)", wb);
+        HSSFFormulaParser.parse("myFunc(1)", wb);
+        assertEquals(0, FormulaParseCache.size());
+
+        // the undefined function is still added to the names of other workbooks
+        HSSFWorkbook wb2 = new HSSFWorkbook();
+        wb2.createSheet("Sheet1");
+        HSSFFormulaParser.parse("myFunc(1)", wb2);
+        assertEquals(1, wb2.getNumberOfNames());
+
+        wb2.close();
+        wb.close();
+    }
+}
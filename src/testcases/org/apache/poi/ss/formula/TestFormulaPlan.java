@@ -0,0 +1,129 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+/**
+ * Tests {@link FormulaPlan}
+ */
+public final class TestFormulaPlan {
+
+    private static String createKey(HSSFWorkbook wb, String formula, int rowIndex, int columnIndex) {
+        Ptg[] ptgs = HSSFFormulaParser.parse(formula, wb);
+        return FormulaPlan.createKey(ptgs, rowIndex, columnIndex);
+    }
+
+    @Test
+    public void keyOfFilledDownFormulas() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        wb.createSheet("Sheet1");
+        String key = createKey(wb, "A1*2+SUM($A$1:A1)", 0, 1);
+        assertNotNull(key);
+        assertEquals(key, createKey(wb, "A2*2+SUM($A$1:A2)", 1, 1));
+        assertEquals(key, createKey(wb, "B6*2+SUM($A$1:B6)", 5, 2));
+        assertFalse(key.equals(createKey(wb, "A2*2+SUM($A$2:A2)", 1, 1)));
+        assertFalse(key.equals(createKey(wb, "A2*3+SUM($A$1:A2)", 1, 1)));
+        assertFalse(key.equals(createKey(wb, "A1*2+SUM($A$1:A1)", 1, 1)));
+        assertFalse(createKey(wb, "\"x\"&A1", 0, 1).equals(createKey(wb, "\"y\"&A2", 1, 1)));
+
+        // array constants are not shared
+        assertNull(createKey(wb, "SUM({1,2,3})", 0, 1));
+        wb.close();
+    }
+
+    @Test
+    public void evaluateFilledDownFormulas() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = wb.createSheet("Sheet1");
+        for (int i = 0; i < 10; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue(i + 1);
+            int r = i + 1;
+            row.createCell(1).setCellFormula("A" + r + "*2+SUM($A$1:A" + r + ")");
+            row.createCell(2).setCellFormula("IF(A" + r + ">5,\"big\",CHOOSE(A" + r + ",\"a\",\"b\",\"c\"))");
+            row.createCell(3).setCellFormula("IF(MOD(A" + r + ",2)=0,A" + r + ")");
+        }
+        FormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        String[] choices = { "a", "b", "c", "#VALUE!", "#VALUE!", };
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            Row row = sheet.getRow(i);
+            sum += i + 1;
+            assertEquals((i + 1) * 2 + sum, fe.evaluate(row.getCell(1)).getNumberValue(), 0.0);
+            String expected = i < 5 ? choices[i] : "big";
+            assertEquals(expected, fe.evaluate(row.getCell(2)).formatAsString().replace("\"", ""));
+            if (i % 2 == 0) {
+                assertFalse(fe.evaluate(row.getCell(3)).getBooleanValue());
+            } else {
+                assertEquals(i + 1, fe.evaluate(row.getCell(3)).getNumberValue(), 0.0);
+            }
+        }
+
+        // a changed formula must not reuse the plan of the old one
+        Cell cell = sheet.getRow(3).getCell(1);
+        cell.setCellFormula("A4*3");
+        fe.notifySetFormula(cell);
+        assertEquals(12, fe.evaluate(cell).getNumberValue(), 0.0);
+        wb.close();
+    }
+
+    @Test
+    public void compileKeepsTokens() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        wb.createSheet("Sheet1");
+        Ptg[] ptgs = HSSFFormulaParser.parse("SUM(1,2)", wb);
+        FormulaPlan plan = FormulaPlan.compile(ptgs, 0, 0);
+        assertTrue(plan.isCompiled());
+        assertSame(ptgs, plan.getTokens());
+        wb.close();
+    }
+
+    @Test
+    public void sharedPlansAreBounded() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = wb.createSheet("Sheet1");
+        sheet.createRow(0).createCell(0).setCellValue(1);
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        for (int i = 1; i <= 1500; i++) {
+            // each formula differs from the others, so all have their own plan
+            Cell cell = sheet.createRow(i).createCell(0);
+            cell.setCellFormula("$A$1+" + i);
+            assertEquals(i + 1, fe.evaluate(cell).getNumberValue(), 0.0);
+        }
+        assertEquals(1000, fe._getWorkbookEvaluator().getNumberOfFormulaPlans());
+        wb.close();
+    }
+}
@@ -0,0 +1,190 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+/**
+ * Tests {@link LookupIndexCache} through exact match lookup functions.
+ */
+public final class TestLookupIndexCache {
+
+    private static final int TABLE_SIZE = 40;
+
+    /**
+     * Creates a table in A1:B40 with keys "Key0".."Key39" in column A and their
+     * numbers in column B.  Row 0 also holds the keys in C1:AP1.
+     */
+    private static Sheet createTable(HSSFWorkbook wb) {
+        Sheet sheet = wb.createSheet("Table");
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            Row row = i == 0 ? header : sheet.createRow(i);
+            row.createCell(0).setCellValue("Key" + i);
+            row.createCell(1).setCellValue(i);
+            header.createCell(2 + i).setCellValue("Key" + i);
+        }
+        return sheet;
+    }
+
+    private static Cell createFormula(Sheet sheet, int rowIndex, String formula) {
+        Row row = sheet.getRow(rowIndex);
+        if (row == null) {
+            row = sheet.createRow(rowIndex);
+        }
+        Cell cell = row.createCell(50);
+        cell.setCellFormula(formula);
+        return cell;
+    }
+
+    @Test
+    public void repeatedLookups() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        FormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            Cell v = createFormula(sheet, i, "VLOOKUP(\"key" + i + "\",$A$1:$B$40,2,FALSE)");
+            assertEquals(i, fe.evaluate(v).getNumberValue(), 0.0);
+        }
+        Cell match = createFormula(sheet, 50, "MATCH(\"KEY7\",$A$1:$A$40,0)");
+        assertEquals(8, fe.evaluate(match).getNumberValue(), 0.0);
+        Cell missing = createFormula(sheet, 51, "MATCH(\"nokey\",$A$1:$A$40,0)");
+        assertEquals("#N/A", fe.evaluate(missing).formatAsString());
+        Cell wildcard = createFormula(sheet, 52, "MATCH(\"key3?\",$A$1:$A$40,0)");
+        assertEquals(31, fe.evaluate(wildcard).getNumberValue(), 0.0);
+        Cell number = createFormula(sheet, 53, "MATCH(12,$B$1:$B$40,0)");
+        assertEquals(13, fe.evaluate(number).getNumberValue(), 0.0);
+        assertEquals(13, fe.evaluate(number).getNumberValue(), 0.0);
+        for (int i = 0; i < 2; i++) {
+            Cell h = createFormula(sheet, 54 + i, "HLOOKUP(\"Key25\",$C$1:$AP$1,1,FALSE)");
+            assertEquals("Key25", fe.evaluate(h).getStringValue());
+        }
+        wb.close();
+    }
+
+    @Test
+    public void updateWithinIndexedRange() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        FormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        Cell first = createFormula(sheet, 50, "VLOOKUP(\"Key5\",$A$1:$B$40,2,FALSE)");
+        Cell second = createFormula(sheet, 51, "VLOOKUP(\"New\",$A$1:$B$40,2,FALSE)");
+        assertEquals(5, fe.evaluate(first).getNumberValue(), 0.0);
+        assertEquals("#N/A", fe.evaluate(second).formatAsString());
+        // answered from the index
+        Cell third = createFormula(sheet, 52, "MATCH(\"New\",$A$1:$A$40,0)+VLOOKUP(\"Key9\",$A$1:$B$40,2,FALSE)");
+        assertEquals("#N/A", fe.evaluate(third).formatAsString());
+
+        Cell key = sheet.getRow(20).getCell(0);
+        key.setCellValue("New");
+        fe.notifyUpdateCell(key);
+        assertEquals(20, fe.evaluate(second).getNumberValue(), 0.0);
+        assertEquals(30, fe.evaluate(third).getNumberValue(), 0.0);
+
+        // a cell outside the range does not drop the index
+        Cell value = sheet.getRow(20).getCell(1);
+        value.setCellValue(-1);
+        fe.notifyUpdateCell(value);
+        assertEquals(-1, fe.evaluate(second).getNumberValue(), 0.0);
+        assertEquals(5, fe.evaluate(first).getNumberValue(), 0.0);
+        wb.close();
+    }
+
+    @Test
+    public void formulaKeysAreNotIndexed() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        Cell input = sheet.getRow(3).createCell(60);
+        input.setCellValue("Key3");
+        sheet.getRow(3).getCell(0).setCellFormula("BI4");
+        FormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        Cell lookup = createFormula(sheet, 50, "VLOOKUP(\"Other\",$A$1:$B$40,2,FALSE)");
+        assertEquals("#N/A", fe.evaluate(lookup).formatAsString());
+        assertEquals("#N/A", fe.evaluate(createFormula(sheet, 51, "VLOOKUP(\"Other\",$A$1:$B$40,2,FALSE)")).formatAsString());
+
+        // the key in A4 changes through its input, outside the table
+        input.setCellValue("Other");
+        fe.notifyUpdateCell(input);
+        assertEquals(3, fe.evaluate(lookup).getNumberValue(), 0.0);
+        wb.close();
+    }
+
+    @Test
+    public void updateClearsOnlyDependentFormulas() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = createTable(wb);
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        LookupIndexCache cache = fe._getWorkbookEvaluator().getLookupIndexCache();
+        Cell first = createFormula(sheet, 50, "MATCH(\"Key5\",$A$1:$A$40,0)");
+        Cell second = createFormula(sheet, 51, "MATCH(\"Key6\",$A$1:$A$40,0)");
+        Cell other = createFormula(sheet, 52, "$B$2*2");
+        assertEquals(6, fe.evaluate(first).getNumberValue(), 0.0);
+        assertEquals(7, fe.evaluate(second).getNumberValue(), 0.0);
+        assertEquals(2, fe.evaluate(other).getNumberValue(), 0.0);
+        assertEquals(TABLE_SIZE, cache.getNumberOfIndexedCells());
+
+        // the first formula stopped scanning at its key, the second one used the index
+        Cell key = sheet.getRow(30).getCell(0);
+        key.setCellValue("Key6");
+        List<Cell> dependents = fe.getDependentFormulaCells(key);
+        assertEquals(1, dependents.size());
+        assertEquals(second, dependents.get(0));
+        fe.notifyUpdateCell(key);
+        assertEquals(0, cache.getNumberOfIndexedCells());
+
+        // not notified, the result of the unrelated formula must still be the cached one
+        sheet.getRow(1).getCell(1).setCellValue(50);
+        assertEquals(2, fe.evaluate(other).getNumberValue(), 0.0);
+        assertEquals(7, fe.evaluate(second).getNumberValue(), 0.0);
+        wb.close();
+    }
+
+    @Test
+    public void leastRecentlyUsedIndexesAreDropped() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        createTable(wb);
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        EvaluationTracker tracker = new EvaluationTracker(new EvaluationCache(null));
+        SheetRefEvaluator sre = new SheetRefEvaluator(fe._getWorkbookEvaluator(), tracker, 0);
+        LazyAreaEval table = new LazyAreaEval(0, 0, TABLE_SIZE - 1, 1, new SheetRangeEvaluator(0, sre));
+        // room for the index of one of the columns only
+        LookupIndexCache cache = new LookupIndexCache(60);
+        // (the keys are the case folded lookup values)
+        assertEquals(LookupIndexCache.NOT_INDEXED, cache.lookup(sre, table, true, 0, "key3"));
+        assertEquals(3, cache.lookup(sre, table, true, 0, "key3"));
+        assertEquals(TABLE_SIZE, cache.getNumberOfIndexedCells());
+        assertEquals(LookupIndexCache.NOT_INDEXED, cache.lookup(sre, table, true, 1, Double.valueOf(4)));
+        assertEquals(4, cache.lookup(sre, table, true, 1, Double.valueOf(4)));
+        assertEquals(TABLE_SIZE, cache.getNumberOfIndexedCells());
+        // the index of column A was dropped, so its next lookup counts as the first one again
+        assertEquals(LookupIndexCache.NOT_INDEXED, cache.lookup(sre, table, true, 0, "key3"));
+        assertEquals(-1, cache.lookup(sre, table, true, 1, Double.valueOf(99)));
+        wb.close();
+    }
+}
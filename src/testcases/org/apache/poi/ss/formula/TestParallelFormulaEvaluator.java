@@ -0,0 +1,148 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+/**
+ * Tests {@link ParallelFormulaEvaluator}.
+ */
+public final class TestParallelFormulaEvaluator {
+
+    private static final int ROWS = 1000;
+
+    /**
+     * Column A holds inputs, B independent formulas, C a running total over B, E the same total
+     * over growing ranges, and the second sheet totals and lookups over the first one.
+     */
+    private static HSSFWorkbook createWorkbook() {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet data = wb.createSheet("Data");
+        Sheet summary = wb.createSheet("Summary");
+        for (int i = 0; i < ROWS; i++) {
+            Row row = data.createRow(i);
+            row.createCell(0).setCellValue(i);
+            row.createCell(1).setCellFormula("A" + (i + 1) + "*2");
+            row.createCell(2).setCellFormula(i == 0 ? "B1" : "C" + i + "+B" + (i + 1));
+            row.createCell(3).setCellFormula("IF(MOD(A" + (i + 1) + ",2)=0,\"even\",\"odd\")");
+            row.createCell(4).setCellFormula("SUM($B$1:B" + (i + 1) + ")");
+        }
+        Row row = summary.createRow(0);
+        row.createCell(0).setCellFormula("SUM(Data!B1:B" + ROWS + ")");
+        row.createCell(1).setCellFormula("Data!C" + ROWS);
+        row.createCell(2).setCellFormula("A1=B1");
+        row.createCell(3).setCellFormula("INDIRECT(\"Data!B10\")+1");
+        row.createCell(4).setCellFormula("F1+1");
+        row.createCell(5).setCellFormula("E1+1");
+        row.createCell(6).setCellFormula("COUNTIF(Data!D1:D" + ROWS + ",\"odd\")");
+        return wb;
+    }
+
+    @Test
+    public void evaluateAll() throws IOException {
+        HSSFWorkbook wb = createWorkbook();
+        ParallelFormulaEvaluator.evaluateAllFormulaCells(wb, 4);
+
+        Sheet data = wb.getSheet("Data");
+        for (int i = 0; i < ROWS; i++) {
+            Row row = data.getRow(i);
+            assertEquals(2.0 * i, row.getCell(1).getNumericCellValue(), 0.0);
+            assertEquals((double) i * (i + 1), row.getCell(2).getNumericCellValue(), 0.0);
+            assertEquals(i % 2 == 0 ? "even" : "odd", row.getCell(3).getStringCellValue());
+            assertEquals((double) i * (i + 1), row.getCell(4).getNumericCellValue(), 0.0);
+        }
+        Row row = wb.getSheet("Summary").getRow(0);
+        double total = (double) ROWS * (ROWS - 1);
+        assertEquals(total, row.getCell(0).getNumericCellValue(), 0.0);
+        assertEquals(total, row.getCell(1).getNumericCellValue(), 0.0);
+        assertEquals(true, row.getCell(2).getBooleanCellValue());
+        assertEquals(19.0, row.getCell(3).getNumericCellValue(), 0.0);
+        assertEquals(FormulaError.CIRCULAR_REF.getCode(), row.getCell(4).getErrorCellValue());
+        assertEquals(FormulaError.CIRCULAR_REF.getCode(), row.getCell(5).getErrorCellValue());
+        assertEquals(ROWS / 2, row.getCell(6).getNumericCellValue(), 0.0);
+        wb.close();
+    }
+
+    /**
+     * A running total over growing ranges would need about n<sup>2</sup>/2 links with one link
+     * per referenced formula cell.
+     */
+    @Test
+    public void growingRangesNeedFewLinks() throws IOException {
+        int rows = 20000;
+        HSSFWorkbook wb = new HSSFWorkbook();
+        Sheet sheet = wb.createSheet();
+        for (int i = 0; i < rows; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellFormula("ROW()");
+            row.createCell(1).setCellFormula("SUM($A$1:A" + (i + 1) + ")");
+        }
+        ParallelFormulaEvaluator pfe = ParallelFormulaEvaluator.create(wb,
+                HSSFFormulaEvaluator.create(wb, null, null)._getWorkbookEvaluator());
+
+        assertTrue(pfe.getNumberOfLinks() < 40 * rows);
+        assertEquals(2, pfe.getNumberOfLevels());
+        wb.close();
+    }
+
+    @Test
+    public void sameResultsAsSequentialEvaluation() throws IOException {
+        HSSFWorkbook expected = createWorkbook();
+        HSSFFormulaEvaluator.evaluateAllFormulaCells(expected);
+        HSSFWorkbook actual = createWorkbook();
+        ParallelFormulaEvaluator.evaluateAllFormulaCells(actual, 3);
+
+        for (int s = 0; s < expected.getNumberOfSheets(); s++) {
+            for (Row row : expected.getSheetAt(s)) {
+                for (Cell cell : row) {
+                    Cell other = actual.getSheetAt(s).getRow(row.getRowNum()).getCell(cell.getColumnIndex());
+                    assertEquals(getCachedResult(cell), getCachedResult(other));
+                }
+            }
+        }
+        expected.close();
+        actual.close();
+    }
+
+    private static Object getCachedResult(Cell cell) {
+        if (cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+            return null;
+        }
+        switch (cell.getCachedFormulaResultType()) {
+            case Cell.CELL_TYPE_NUMERIC:
+                return cell.getNumericCellValue();
+            case Cell.CELL_TYPE_STRING:
+                return cell.getStringCellValue();
+            case Cell.CELL_TYPE_BOOLEAN:
+                return cell.getBooleanCellValue();
+            default:
+                return cell.getErrorCellValue();
+        }
+    }
+}
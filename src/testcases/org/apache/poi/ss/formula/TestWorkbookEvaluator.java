@@ -18,7 +18,9 @@
 package org.apache.poi.ss.formula;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -34,6 +36,8 @@ import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.MissingArgEval;
 import org.apache.poi.ss.formula.eval.NumberEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.function.FunctionMetadata;
+import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
 import org.apache.poi.ss.formula.ptg.AreaErrPtg;
 import org.apache.poi.ss.formula.ptg.AttrPtg;
 import org.apache.poi.ss.formula.ptg.DeletedArea3DPtg;
@@ -575,4 +579,116 @@ public class TestWorkbookEvaluator {
         
         testIFEqualsFormulaEvaluation_teardown(wb);
     }
+
+    /**
+     * Creates A1=ABS(D1), B1=A1*2, C1=D1+1 and D1=1
+     */
+    private static HSSFSheet createVolatileChain(HSSFWorkbook wb) {
+        HSSFSheet sheet = wb.createSheet("Sheet1");
+        HSSFRow row = sheet.createRow(0);
+        row.createCell(0).setCellFormula("ABS(D1)");
+        row.createCell(1).setCellFormula("A1*2");
+        row.createCell(2).setCellFormula("D1+1");
+        row.createCell(3).setCellValue(1);
+        return sheet;
+    }
+
+    private static IVolatilityClassifier createVolatilityClassifier(final boolean areCellsFinal, final String volatileFunctionName) {
+        return new IVolatilityClassifier() {
+            public boolean isCellFinal(int sheetIndex, int rowIndex, int columnIndex) {
+                return areCellsFinal;
+            }
+            public boolean isFunctionVolatile(FunctionMetadata function) {
+                return function.getName().equals(volatileFunctionName);
+            }
+        };
+    }
+
+    @Test
+    public void testClearVolatileCachedResultValues() throws IOException {
+        for (boolean areCellsFinal : new boolean[] { false, true, }) {
+            HSSFWorkbook wb = new HSSFWorkbook();
+            HSSFRow row = createVolatileChain(wb).getRow(0);
+            HSSFFormulaEvaluator fe = HSSFFormulaEvaluator.create(wb, createVolatilityClassifier(areCellsFinal, "ABS"), null);
+            EvaluationProfiler profiler = new EvaluationProfiler();
+            fe.setEvaluationProfiler(profiler);
+            assertEquals(1.0, fe.evaluate(row.getCell(0)).getNumberValue(), 0.0);
+            assertEquals(2.0, fe.evaluate(row.getCell(1)).getNumberValue(), 0.0);
+            assertEquals(2.0, fe.evaluate(row.getCell(2)).getNumberValue(), 0.0);
+            assertEquals(3, profiler.getCacheMisses());
+
+            // only the volatile chain is evaluated again
+            profiler.reset();
+            fe.clearVolatileCachedResultValues();
+            assertEquals(2.0, fe.evaluate(row.getCell(1)).getNumberValue(), 0.0);
+            assertEquals(1.0, fe.evaluate(row.getCell(0)).getNumberValue(), 0.0);
+            assertEquals(2.0, fe.evaluate(row.getCell(2)).getNumberValue(), 0.0);
+            assertEquals(2, profiler.getCacheMisses());
+            assertEquals(2, profiler.getCacheHits());
+
+            wb.close();
+        }
+    }
+
+    @Test
+    public void testDefaultVolatileFunctions() throws IOException {
+        assertTrue(FunctionMetadataRegistry.getFunctionByName("RAND").isVolatile());
+        assertTrue(FunctionMetadataRegistry.getFunctionByName("INDIRECT").isVolatile());
+        assertFalse(FunctionMetadataRegistry.getFunctionByName("SUM").isVolatile());
+
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFRow row = createVolatileChain(wb).getRow(0);
+        // the cells read by INDIRECT are tracked, so its results are not volatile
+        row.getCell(0).setCellFormula("INDIRECT(\"D1\")");
+        row.getCell(2).setCellFormula("RAND()+D1");
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        EvaluationProfiler profiler = new EvaluationProfiler();
+        fe.setEvaluationProfiler(profiler);
+        assertEquals(2.0, fe.evaluate(row.getCell(1)).getNumberValue(), 0.0);
+        assertTrue(fe.evaluate(row.getCell(2)).getNumberValue() >= 1.0);
+        assertEquals(3, profiler.getCacheMisses());
+
+        profiler.reset();
+        fe.clearVolatileCachedResultValues();
+        assertEquals(2.0, fe.evaluate(row.getCell(1)).getNumberValue(), 0.0);
+        assertTrue(fe.evaluate(row.getCell(2)).getNumberValue() >= 1.0);
+        assertEquals(1, profiler.getCacheMisses());
+        assertEquals(1, profiler.getCacheHits());
+
+        wb.close();
+    }
+
+    /**
+     * The parsed reference texts of INDIRECT are cached, but not the sheets they refer to
+     */
+    @Test
+    public void testIndirectReferenceCache() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("Sheet1");
+        for (int i = 0; i < 3; i++) {
+            HSSFRow row = sheet.createRow(i);
+            row.createCell(0).setCellFormula("INDIRECT(\"Sheet2!B2\")");
+            row.createCell(1).setCellFormula("SUM(INDIRECT(\"'Sheet2'!B2:C3\"))");
+            row.createCell(2).setCellFormula("INDIRECT(\"Sheet2!2\")");
+        }
+        HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+        for (int i = 0; i < 3; i++) {
+            HSSFRow row = sheet.getRow(i);
+            assertEquals(ErrorEval.REF_INVALID.getErrorCode(), fe.evaluate(row.getCell(0)).getErrorValue());
+            assertEquals(ErrorEval.REF_INVALID.getErrorCode(), fe.evaluate(row.getCell(2)).getErrorValue());
+        }
+
+        HSSFSheet sheet2 = wb.createSheet("Sheet2");
+        sheet2.createRow(1).createCell(1).setCellValue(4);
+        sheet2.createRow(2).createCell(2).setCellValue(5);
+        fe.clearAllCachedResultValues();
+        for (int i = 0; i < 3; i++) {
+            HSSFRow row = sheet.getRow(i);
+            assertEquals(4.0, fe.evaluate(row.getCell(0)).getNumberValue(), 0.0);
+            assertEquals(9.0, fe.evaluate(row.getCell(1)).getNumberValue(), 0.0);
+            assertEquals(ErrorEval.REF_INVALID.getErrorCode(), fe.evaluate(row.getCell(2)).getErrorValue());
+        }
+
+        wb.close();
+    }
 }
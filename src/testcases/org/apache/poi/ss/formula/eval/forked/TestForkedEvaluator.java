@@ -80,6 +80,79 @@ public final class TestForkedEvaluator extends TestCase {
 		assertEquals(13.9, ((NumberEval) fe1.evaluate("Calculations", 0, 0)).getNumberValue(), 0.0);
 	}
 
+	/**
+	 * Evaluators created by a {@link ForkedEvaluationTemplate} share the results of the formula
+	 * cells which don't depend on their updated cells
+	 */
+	public void testTemplate() throws Exception {
+		HSSFWorkbook wb = createWorkbook();
+		HSSFRow row = wb.getSheet("Calculations").getRow(0);
+		row.createCell(2).setCellFormula("B1*2"); // Calculations!C1
+		row.createCell(3).setCellFormula("A1+1"); // Calculations!D1
+
+		final ForkedEvaluationTemplate template = ForkedEvaluationTemplate.create(wb, null, null);
+		ForkedEvaluator fe1 = template.createEvaluator();
+		ForkedEvaluator fe2 = template.createEvaluator();
+
+		assertEquals(8.0, ((NumberEval) fe2.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+		fe1.updateCell("Inputs", 0, 0, new NumberEval(4.0));
+		assertEquals(18.0, ((NumberEval) fe1.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+		assertEquals(17.0, ((NumberEval) fe1.evaluate("Calculations", 0, 0)).getNumberValue(), 0.0);
+		assertEquals(10.0, ((NumberEval) fe1.evaluate("Calculations", 0, 2)).getNumberValue(), 0.0);
+
+		// fe2 has already used the template result of D1
+		fe2.updateCell("Inputs", 0, 1, new NumberEval(1.0));
+		assertEquals(10.0, ((NumberEval) fe2.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+		assertEquals(18.0, ((NumberEval) fe1.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+
+		// the template can be used concurrently
+		final double[] results = new double[8];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int input = i;
+			threads[i] = new Thread() {
+				public void run() {
+					ForkedEvaluator fe = template.createEvaluator();
+					fe.updateCell("Inputs", 0, 0, new NumberEval(input));
+					results[input] = ((NumberEval) fe.evaluate("Calculations", 0, 3)).getNumberValue();
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+			assertEquals(5.0 * i - 3.0 + 1.0, results[i], 0.0);
+		}
+	}
+
+	public void testTemplateEvaluatorReuse() {
+		HSSFWorkbook wb = createWorkbook();
+		wb.getSheet("Calculations").getRow(0).createCell(3).setCellFormula("A1+1"); // Calculations!D1
+		ForkedEvaluationTemplate template = ForkedEvaluationTemplate.create(wb, null, null);
+
+		ForkedEvaluator fe = template.borrowEvaluator();
+		fe.updateCell("Inputs", 0, 0, new NumberEval(4.0));
+		fe.updateCell("Calculations", 0, 1, new NumberEval(1.0));
+		assertEquals(2.0, ((NumberEval) fe.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+		template.returnEvaluator(fe);
+
+		// the reset evaluator is handed out again, without its updates
+		assertSame(fe, template.borrowEvaluator());
+		assertEquals(5.0, ((NumberEval) fe.evaluate("Calculations", 0, 1)).getNumberValue(), 0.0);
+		assertEquals(8.0, ((NumberEval) fe.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+		fe.updateCell("Inputs", 0, 1, new NumberEval(0.0));
+		assertEquals(11.0, ((NumberEval) fe.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+		fe.reset();
+		assertEquals(8.0, ((NumberEval) fe.evaluate("Calculations", 0, 3)).getNumberValue(), 0.0);
+
+		try {
+			template.returnEvaluator(ForkedEvaluator.create(wb, null, null));
+			fail("expected exception");
+		} catch (IllegalArgumentException e) {
+			// expected during successful test
+		}
+	}
+
 	/**
 	 * As of Sep 2009, the Forked evaluator can update values from existing cells (this is because
 	 * the underlying 'master' cell is used as a key into the calculation cache.  Prior to the fix
@@ -22,6 +22,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import org.apache.poi.ss.ITestDataProvider;
 import org.junit.Test;
@@ -328,4 +332,52 @@ public abstract class BaseTestFormulaEvaluator {
         
         wb.close();
     }
+
+    @Test
+    public void testRecalculateDependentCells() throws IOException {
+        Workbook wb = _testDataProvider.createWorkbook();
+        Sheet sheet = wb.createSheet("Sheet1");
+        Row row1 = sheet.createRow(0);
+        Row row2 = sheet.createRow(1);
+        Cell a1 = row1.createCell(0);
+        a1.setCellValue(1);
+        row2.createCell(0).setCellValue(2);
+        Cell b1 = row1.createCell(1);
+        b1.setCellFormula("A1*10");
+        Cell b2 = row2.createCell(1);
+        b2.setCellFormula("A2*10");
+        Cell c1 = row1.createCell(2);
+        c1.setCellFormula("B1+B2");
+        Cell c2 = row2.createCell(2);
+        c2.setCellFormula("SUM(B1:B2)+D1");
+        Cell e1 = row1.createCell(4);
+        e1.setCellFormula("A2");
+        IncrementalFormulaEvaluator fe = (IncrementalFormulaEvaluator) wb.getCreationHelper().createFormulaEvaluator();
+        fe.evaluateAll();
+
+        List<Cell> dependents = fe.getDependentFormulaCells(a1);
+        assertEquals(new HashSet<Cell>(Arrays.asList(b1, c1, c2)), new HashSet<Cell>(dependents));
+        assertEquals(b1, dependents.get(0));
+
+        a1.setCellValue(5);
+        assertEquals(3, fe.recalculateDependentCells(Collections.singleton(a1)).size());
+        assertEquals(50.0, b1.getNumericCellValue(), 0.0);
+        assertEquals(70.0, c1.getNumericCellValue(), 0.0);
+        assertEquals(70.0, c2.getNumericCellValue(), 0.0);
+
+        // D1 was read as blank
+        Cell d1 = row1.createCell(3);
+        d1.setCellValue(100);
+        assertEquals(Collections.singletonList(c2), fe.recalculateDependentCells(Collections.singleton(d1)));
+        assertEquals(170.0, c2.getNumericCellValue(), 0.0);
+
+        b2.setCellFormula("A2*100");
+        List<Cell> recalculated = fe.recalculateDependentCells(Collections.singleton(b2));
+        assertEquals(new HashSet<Cell>(Arrays.asList(b2, c1, c2)), new HashSet<Cell>(recalculated));
+        assertEquals(250.0, c1.getNumericCellValue(), 0.0);
+        assertEquals(350.0, c2.getNumericCellValue(), 0.0);
+        assertEquals(2.0, e1.getNumericCellValue(), 0.0);
+
+        wb.close();
+    }
 }
\ No newline at end of file